@@ -5,6 +5,7 @@ public class IdentifierExpr implements Expression {
     private final int line;
     private final int column;
     private Type exprType;
+    private boolean field;
 
     public IdentifierExpr(String name, int line, int column) {
         this.name = name;
@@ -16,6 +17,14 @@ public class IdentifierExpr implements Expression {
         return name;
     }
 
+    public boolean isField() {
+        return field;
+    }
+
+    public void setField(boolean field) {
+        this.field = field;
+    }
+
     @Override
     public Type getExprType() {
         return exprType;
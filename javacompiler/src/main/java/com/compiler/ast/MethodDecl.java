@@ -6,9 +6,11 @@ public class MethodDecl implements ASTNode {
     private final String name;
     private final Type returnType;
     private final List<Parameter> parameters;
-    private final BlockStmt body;
+    private BlockStmt body;
     private final int line;
     private final int column;
+    private Purity purity;
+    private int memoCapacity;
 
     public MethodDecl(String name, Type returnType, List<Parameter> parameters, BlockStmt body, int line, int column) {
         this.name = name;
@@ -35,6 +37,33 @@ public class MethodDecl implements ASTNode {
         return body;
     }
 
+    // Optimization passes rewrite bodies in place so the declaration keeps its identity
+    public void setBody(BlockStmt body) {
+        this.body = body;
+    }
+
+    // Set by PurityAnalyzer; null until the method has been analyzed
+    public Purity getPurity() {
+        return purity;
+    }
+
+    public void setPurity(Purity purity) {
+        this.purity = purity;
+    }
+
+    // Size of the generated memo table, or 0 when the method is not memoized
+    public int getMemoCapacity() {
+        return memoCapacity;
+    }
+
+    public void setMemoCapacity(int memoCapacity) {
+        this.memoCapacity = memoCapacity;
+    }
+
+    public boolean isMemoized() {
+        return memoCapacity > 0;
+    }
+
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visit(this);
@@ -0,0 +1,13 @@
+package com.compiler.ast;
+
+public enum Purity {
+    // Result depends only on the arguments; no heap reads, writes, allocation or I/O
+    PURE,
+    // Reads fields or array elements but never writes, allocates or performs I/O
+    READ_ONLY,
+    SIDE_EFFECTING;
+
+    public Purity join(Purity other) {
+        return compareTo(other) >= 0 ? this : other;
+    }
+}
@@ -5,7 +5,10 @@ import org.objectweb.asm.*;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.objectweb.asm.Opcodes.*;
@@ -14,22 +17,44 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
     private ClassWriter classWriter;
     private MethodVisitor methodVisitor;
     private String currentClassName;
+    private final Map<String, ClassDecl> classes;
     private final Map<String, Integer> localVariables;
     private int localVarIndex;
+    private MemoTableGenerator currentMemo;
+    private int memoSlotLocal;
+    private int memoKeyLocal;
 
     public BytecodeGenerator() {
+        this.classes = new HashMap<>();
         this.localVariables = new HashMap<>();
     }
 
     public void generate(Program program, String outputDir) throws IOException {
+        for (Map.Entry<String, byte[]> entry : generate(program).entrySet()) {
+            String outputPath = outputDir + "/" + entry.getKey() + ".class";
+            try (FileOutputStream fos = new FileOutputStream(outputPath)) {
+                fos.write(entry.getValue());
+            }
+        }
+    }
+
+    public Map<String, byte[]> generate(Program program) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        
+        for (ClassDecl classDecl : program.getClasses()) {
+            classes.put(classDecl.getName(), classDecl);
+        }
+        
         for (ClassDecl classDecl : program.getClasses()) {
-            generateClass(classDecl, outputDir);
+            result.put(classDecl.getName(), generateClass(classDecl));
         }
+        
+        return result;
     }
 
-    private void generateClass(ClassDecl classDecl, String outputDir) throws IOException {
+    private byte[] generateClass(ClassDecl classDecl) {
         currentClassName = classDecl.getName();
-        classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter = new FrameComputingClassWriter();
         
         classWriter.visit(V1_8, ACC_PUBLIC, currentClassName, null, "java/lang/Object", null);
         
@@ -52,13 +77,35 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
             generateMethod(method);
         }
         
+        generateMemoTables(classDecl);
+        
         classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private void generateMemoTables(ClassDecl classDecl) {
+        MethodVisitor initializer = null;
         
-        // Write to file
-        byte[] bytecode = classWriter.toByteArray();
-        String outputPath = outputDir + "/" + currentClassName + ".class";
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            fos.write(bytecode);
+        for (MethodDecl method : classDecl.getMethods()) {
+            if (!method.isMemoized()) {
+                continue;
+            }
+            
+            if (initializer == null) {
+                initializer = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+                initializer.visitCode();
+            }
+            
+            MemoTableGenerator memo = new MemoTableGenerator(currentClassName, method);
+            memo.generateFields(classWriter);
+            memo.generateInitializer(initializer);
+            memo.generateHelpers(classWriter);
+        }
+        
+        if (initializer != null) {
+            initializer.visitInsn(RETURN);
+            initializer.visitMaxs(0, 0);
+            initializer.visitEnd();
         }
     }
 
@@ -80,6 +127,15 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
             localVariables.put(param.getName(), localVarIndex++);
         }
         
+        currentMemo = null;
+        if (method.isMemoized()) {
+            currentMemo = new MemoTableGenerator(currentClassName, method);
+            memoSlotLocal = localVarIndex++;
+            memoKeyLocal = localVarIndex;
+            localVarIndex += currentMemo.getArity();
+            currentMemo.generateLookup(methodVisitor, 1, memoSlotLocal, memoKeyLocal);
+        }
+        
         // Generate method body
         method.getBody().accept(this);
         
@@ -194,6 +250,9 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
         
         if (forStmt.getUpdate() != null) {
             forStmt.getUpdate().accept(this);
+            if (leavesValue(forStmt.getUpdate())) {
+                methodVisitor.visitInsn(POP);
+            }
         }
         
         methodVisitor.visitJumpInsn(GOTO, startLabel);
@@ -207,7 +266,10 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
             returnStmt.getValue().accept(this);
             com.compiler.ast.Type type = returnStmt.getValue().getExprType();
             
-            if (type.getName().equals("int") || type.getName().equals("boolean")) {
+            if (isIntLike(type)) {
+                if (currentMemo != null) {
+                    currentMemo.generateStore(methodVisitor, memoSlotLocal, memoKeyLocal);
+                }
                 methodVisitor.visitInsn(IRETURN);
             } else {
                 methodVisitor.visitInsn(ARETURN);
@@ -222,7 +284,7 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
     public Void visit(ExprStmt exprStmt) {
         exprStmt.getExpression().accept(this);
         // Pop result if not used
-        if (exprStmt.getExpression().getExprType() != null) {
+        if (leavesValue(exprStmt.getExpression())) {
             methodVisitor.visitInsn(POP);
         }
         return null;
@@ -310,16 +372,42 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
 
     @Override
     public Void visit(AssignExpr assignExpr) {
-        assignExpr.getValue().accept(this);
+        Expression targetExpr = assignExpr.getTarget();
         
-        if (assignExpr.getTarget() instanceof IdentifierExpr) {
-            IdentifierExpr target = (IdentifierExpr) assignExpr.getTarget();
+        // Assignments leave the assigned value on the stack
+        if (targetExpr instanceof IdentifierExpr) {
+            IdentifierExpr target = (IdentifierExpr) targetExpr;
             Integer index = localVariables.get(target.getName());
             
             if (index != null) {
+                assignExpr.getValue().accept(this);
                 methodVisitor.visitInsn(DUP);
                 storeVariable(target.getExprType(), index);
+            } else if (target.isField()) {
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                assignExpr.getValue().accept(this);
+                methodVisitor.visitInsn(DUP_X1);
+                methodVisitor.visitFieldInsn(PUTFIELD, currentClassName, target.getName(),
+                    getTypeDescriptor(target.getExprType()));
+            } else {
+                assignExpr.getValue().accept(this);
             }
+        } else if (targetExpr instanceof FieldAccessExpr) {
+            FieldAccessExpr target = (FieldAccessExpr) targetExpr;
+            target.getObject().accept(this);
+            assignExpr.getValue().accept(this);
+            methodVisitor.visitInsn(DUP_X1);
+            methodVisitor.visitFieldInsn(PUTFIELD, getOwner(target.getObject()), target.getFieldName(),
+                getTypeDescriptor(target.getExprType()));
+        } else if (targetExpr instanceof ArrayAccessExpr) {
+            ArrayAccessExpr target = (ArrayAccessExpr) targetExpr;
+            target.getArray().accept(this);
+            target.getIndex().accept(this);
+            assignExpr.getValue().accept(this);
+            methodVisitor.visitInsn(DUP_X2);
+            methodVisitor.visitInsn(getArrayOpcode(target.getExprType(), IASTORE));
+        } else {
+            assignExpr.getValue().accept(this);
         }
         
         return null;
@@ -327,26 +415,89 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
 
     @Override
     public Void visit(CallExpr callExpr) {
-        // Simplified: handle System.out.println
-        if (callExpr.getMethodName().equals("println")) {
+        if (isPrintln(callExpr)) {
             methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
             
+            String descriptor = "()V";
             if (!callExpr.getArguments().isEmpty()) {
-                callExpr.getArguments().get(0).accept(this);
+                Expression arg = callExpr.getArguments().get(0);
+                arg.accept(this);
+                descriptor = "(" + getPrintlnArgDescriptor(arg.getExprType()) + ")V";
             }
             
-            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", 
-                "(Ljava/lang/String;)V", false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", descriptor, false);
+            return null;
+        }
+        
+        MethodDecl target = resolveCall(callExpr);
+        if (target == null) {
+            throw new RuntimeException("Cannot generate call to unknown method: " + callExpr.getMethodName());
+        }
+        
+        if (callExpr.getCallee() != null) {
+            callExpr.getCallee().accept(this);
+        } else {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+        }
+        
+        for (Expression arg : callExpr.getArguments()) {
+            arg.accept(this);
         }
         
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, getOwner(callExpr.getCallee()), target.getName(),
+            getMethodDescriptor(target), false);
         return null;
     }
 
+    private boolean isPrintln(CallExpr callExpr) {
+        return callExpr.getMethodName().equals("println");
+    }
+
+    private MethodDecl resolveCall(CallExpr callExpr) {
+        ClassDecl owner = classes.get(getOwner(callExpr.getCallee()));
+        if (owner == null) {
+            return null;
+        }
+        
+        for (MethodDecl method : owner.getMethods()) {
+            if (method.getName().equals(callExpr.getMethodName())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    // Class that declares members accessed through the given receiver (null means 'this')
+    private String getOwner(Expression receiver) {
+        if (receiver == null || receiver.getExprType() == null || receiver.getExprType().isArray()
+                || !classes.containsKey(receiver.getExprType().getName())) {
+            return currentClassName;
+        }
+        return receiver.getExprType().getName();
+    }
+
+    private boolean leavesValue(Expression expression) {
+        if (expression instanceof CallExpr) {
+            CallExpr callExpr = (CallExpr) expression;
+            if (isPrintln(callExpr)) {
+                return false;
+            }
+            MethodDecl target = resolveCall(callExpr);
+            return target != null && !target.getReturnType().getName().equals("void");
+        }
+        return true;
+    }
+
+    private String getPrintlnArgDescriptor(com.compiler.ast.Type type) {
+        return Descriptors.println(type);
+    }
+
     @Override
     public Void visit(FieldAccessExpr fieldAccessExpr) {
         fieldAccessExpr.getObject().accept(this);
         String descriptor = getTypeDescriptor(fieldAccessExpr.getExprType());
-        methodVisitor.visitFieldInsn(GETFIELD, currentClassName, fieldAccessExpr.getFieldName(), descriptor);
+        methodVisitor.visitFieldInsn(GETFIELD, getOwner(fieldAccessExpr.getObject()),
+            fieldAccessExpr.getFieldName(), descriptor);
         return null;
     }
 
@@ -354,15 +505,36 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
     public Void visit(ArrayAccessExpr arrayAccessExpr) {
         arrayAccessExpr.getArray().accept(this);
         arrayAccessExpr.getIndex().accept(this);
-        methodVisitor.visitInsn(IALOAD);
+        methodVisitor.visitInsn(getArrayOpcode(arrayAccessExpr.getExprType(), IALOAD));
         return null;
     }
 
+    // IALOAD/IASTORE adjusted for the element type
+    private int getArrayOpcode(com.compiler.ast.Type elementType, int intOpcode) {
+        boolean load = intOpcode == IALOAD;
+        if (elementType == null || !isIntLike(elementType)) {
+            return elementType == null ? intOpcode : (load ? AALOAD : AASTORE);
+        }
+        if (elementType.getName().equals("boolean")) {
+            return load ? BALOAD : BASTORE;
+        }
+        return intOpcode;
+    }
+
     @Override
     public Void visit(NewExpr newExpr) {
         if (newExpr.isArrayCreation()) {
             newExpr.getArraySize().accept(this);
-            methodVisitor.visitIntInsn(NEWARRAY, T_INT);
+            switch (newExpr.getType().getName()) {
+                case "int":
+                    methodVisitor.visitIntInsn(NEWARRAY, T_INT);
+                    break;
+                case "boolean":
+                    methodVisitor.visitIntInsn(NEWARRAY, T_BOOLEAN);
+                    break;
+                default:
+                    methodVisitor.visitTypeInsn(ANEWARRAY, getInternalName(newExpr.getType().getName()));
+            }
         } else {
             methodVisitor.visitTypeInsn(NEW, newExpr.getType().getName());
             methodVisitor.visitInsn(DUP);
@@ -412,6 +584,10 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
         
         if (index != null) {
             loadVariable(identifierExpr.getExprType(), index);
+        } else if (identifierExpr.isField()) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, currentClassName, identifierExpr.getName(),
+                getTypeDescriptor(identifierExpr.getExprType()));
         }
         
         return null;
@@ -423,8 +599,12 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
         return null;
     }
 
+    private boolean isIntLike(com.compiler.ast.Type type) {
+        return Descriptors.isIntLike(type);
+    }
+
     private void loadVariable(com.compiler.ast.Type type, int index) {
-        if (type.getName().equals("int") || type.getName().equals("boolean")) {
+        if (isIntLike(type)) {
             methodVisitor.visitVarInsn(ILOAD, index);
         } else {
             methodVisitor.visitVarInsn(ALOAD, index);
@@ -432,7 +612,7 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
     }
 
     private void storeVariable(com.compiler.ast.Type type, int index) {
-        if (type.getName().equals("int") || type.getName().equals("boolean")) {
+        if (isIntLike(type)) {
             methodVisitor.visitVarInsn(ISTORE, index);
         } else {
             methodVisitor.visitVarInsn(ASTORE, index);
@@ -440,31 +620,18 @@ public class BytecodeGenerator implements ASTVisitor<Void> {
     }
 
     private String getTypeDescriptor(com.compiler.ast.Type type) {
-        if (type.isArray()) {
-            return "[" + getBaseTypeDescriptor(type.getName());
-        }
-        return getBaseTypeDescriptor(type.getName());
+        return Descriptors.type(type);
     }
 
-    private String getBaseTypeDescriptor(String typeName) {
-        switch (typeName) {
-            case "int": return "I";
-            case "boolean": return "Z";
-            case "void": return "V";
-            default: return "L" + typeName + ";";
-        }
+    private String getInternalName(String typeName) {
+        return Descriptors.internalName(typeName);
     }
 
     private String getMethodDescriptor(MethodDecl method) {
-        StringBuilder sb = new StringBuilder("(");
-        
+        List<com.compiler.ast.Type> parameterTypes = new ArrayList<>();
         for (Parameter param : method.getParameters()) {
-            sb.append(getTypeDescriptor(param.getType()));
+            parameterTypes.add(param.getType());
         }
-        
-        sb.append(")");
-        sb.append(getTypeDescriptor(method.getReturnType()));
-        
-        return sb.toString();
+        return Descriptors.method(parameterTypes, method.getReturnType());
     }
 }
@@ -0,0 +1,58 @@
+package com.compiler.backend;
+
+import com.compiler.ast.Type;
+
+import java.util.List;
+
+// JVM names and descriptors for source-level types
+final class Descriptors {
+    private Descriptors() {
+    }
+
+    static String type(Type type) {
+        if (type.isArray()) {
+            return "[" + baseType(type.getName());
+        }
+        return baseType(type.getName());
+    }
+
+    private static String baseType(String typeName) {
+        switch (typeName) {
+            case "int": return "I";
+            case "boolean": return "Z";
+            case "void": return "V";
+            default: return "L" + internalName(typeName) + ";";
+        }
+    }
+
+    static String internalName(String typeName) {
+        return typeName.equals("String") ? "java/lang/String" : typeName;
+    }
+
+    static String method(List<Type> parameterTypes, Type returnType) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Type parameterType : parameterTypes) {
+            sb.append(type(parameterType));
+        }
+        return sb.append(")").append(type(returnType)).toString();
+    }
+
+    static String println(Type argumentType) {
+        if (argumentType == null) {
+            return "Ljava/lang/Object;";
+        }
+        if (!argumentType.isArray()) {
+            switch (argumentType.getName()) {
+                case "int": return "I";
+                case "boolean": return "Z";
+                case "String": return "Ljava/lang/String;";
+            }
+        }
+        return "Ljava/lang/Object;";
+    }
+
+    // int and boolean live in int slots and use the I-prefixed instructions
+    static boolean isIntLike(Type type) {
+        return type != null && !type.isArray() && (type.getName().equals("int") || type.getName().equals("boolean"));
+    }
+}
@@ -0,0 +1,654 @@
+package com.compiler.backend;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.*;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
+
+// Generates bytecode from the IR. Each variable gets its own local slot, except temps that are
+// used exactly once in a way that matches the operand stack: those stay on the stack, which
+// turns "t = ADD a, b; x = MOVE t" back into iload/iload/iadd/istore. Slots are numbered
+// densely over the variables the code actually uses.
+public class IRBytecodeGenerator {
+    private ClassWriter classWriter;
+    private MethodVisitor methodVisitor;
+    private IRMethod method;
+    private Label[] labels;
+    private boolean[] onStack;
+    private int[] useCounts;
+    private int[] slots;
+    private int slotCount;
+    private MemoTableGenerator currentMemo;
+    private int memoSlotLocal;
+    private int memoKeyLocal;
+
+    public void generate(List<IRClass> classes, String outputDir) throws IOException {
+        for (Map.Entry<String, byte[]> entry : generate(classes).entrySet()) {
+            String outputPath = outputDir + "/" + entry.getKey() + ".class";
+            try (FileOutputStream fos = new FileOutputStream(outputPath)) {
+                fos.write(entry.getValue());
+            }
+        }
+    }
+
+    public Map<String, byte[]> generate(List<IRClass> classes) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (IRClass irClass : classes) {
+            result.put(irClass.getName(), generateClass(irClass));
+        }
+        return result;
+    }
+
+    private byte[] generateClass(IRClass irClass) {
+        classWriter = new FrameComputingClassWriter();
+        classWriter.visit(V1_8, ACC_PUBLIC, irClass.getName(), null, "java/lang/Object", null);
+
+        MethodVisitor constructor = classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        for (FieldRef field : irClass.getFields()) {
+            classWriter.visitField(ACC_PUBLIC, field.getName(), Descriptors.type(field.getType()), null, null).visitEnd();
+        }
+
+        MethodVisitor initializer = null;
+        for (IRMethod irMethod : irClass.getMethods()) {
+            generateMethod(irMethod);
+
+            if (irMethod.getDeclaration().isMemoized()) {
+                if (initializer == null) {
+                    initializer = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+                    initializer.visitCode();
+                }
+                MemoTableGenerator memo = new MemoTableGenerator(irClass.getName(), irMethod.getDeclaration());
+                memo.generateFields(classWriter);
+                memo.generateInitializer(initializer);
+                memo.generateHelpers(classWriter);
+            }
+        }
+        if (initializer != null) {
+            initializer.visitInsn(RETURN);
+            initializer.visitMaxs(0, 0);
+            initializer.visitEnd();
+        }
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private void generateMethod(IRMethod irMethod) {
+        method = irMethod;
+        List<Type> parameterTypes = new ArrayList<>();
+        for (int i = 1; i <= irMethod.getParameterCount(); i++) {
+            parameterTypes.add(irMethod.getVariable(irMethod.variable(i)).getType());
+        }
+        methodVisitor = classWriter.visitMethod(ACC_PUBLIC, irMethod.getName(),
+            Descriptors.method(parameterTypes, irMethod.getReturnType()), null, null);
+        methodVisitor.visitCode();
+
+        labels = new Label[irMethod.getLabelCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+        }
+        countUses();
+        assignStackTemps();
+        assignSlots();
+
+        currentMemo = null;
+        if (irMethod.getDeclaration().isMemoized()) {
+            currentMemo = new MemoTableGenerator(irMethod.getClassName(), irMethod.getDeclaration());
+            memoSlotLocal = slotCount;
+            memoKeyLocal = memoSlotLocal + 1;
+            currentMemo.generateLookup(methodVisitor, 1, memoSlotLocal, memoKeyLocal);
+        }
+
+        List<Insn> code = irMethod.getCode();
+        for (int i = 0; i < code.size(); i++) {
+            i += generate(code, i);
+        }
+        if (code.isEmpty() || !code.get(code.size() - 1).getOpcode().isTerminator()) {
+            // Only reachable when a non-void method falls off its end, e.g. after while (true)
+            methodVisitor.visitInsn(ACONST_NULL);
+            methodVisitor.visitInsn(ATHROW);
+        }
+
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+        method = null;
+    }
+
+    private void countUses() {
+        useCounts = new int[method.getVariableCount()];
+        for (Insn insn : method.getCode()) {
+            for (int arg : insn.getArgs()) {
+                if (Operand.isVar(arg)) {
+                    useCounts[Operand.index(arg)]++;
+                }
+            }
+        }
+    }
+
+    // Numbers the local slots densely: 'this' and the parameters keep their positions, then
+    // every other variable that needs a slot gets the next one in order of appearance.
+    // Optimized IR has many more variables than live values, so indexing slots by variable
+    // would waste wide instructions and stack map entries.
+    private void assignSlots() {
+        slots = new int[method.getVariableCount()];
+        Arrays.fill(slots, -1);
+        slotCount = 0;
+        for (int v = 0; v <= method.getParameterCount(); v++) {
+            slots[v] = slotCount++;
+        }
+        for (Insn insn : method.getCode()) {
+            assignSlot(insn.getDst());
+            for (int arg : insn.getArgs()) {
+                assignSlot(arg);
+            }
+        }
+    }
+
+    private void assignSlot(int operand) {
+        if (!Operand.isVar(operand) || isStacked(operand) || slots[Operand.index(operand)] >= 0) {
+            return;
+        }
+        if (Operand.isTemp(operand) && useCounts[Operand.index(operand)] == 0) {
+            return;
+        }
+        slots[Operand.index(operand)] = slotCount++;
+    }
+
+    private int slot(int operand) {
+        return slots[Operand.index(operand)];
+    }
+
+    // Decides which temps stay on the operand stack. A temp qualifies when its only use is in
+    // an instruction whose earlier value operands are all stack temps pushed in operand order,
+    // and the stack is empty again at every block boundary. Candidates that violate this are
+    // demoted to slots and the simulation restarts; each restart demotes at least one temp.
+    private void assignStackTemps() {
+        onStack = new boolean[method.getVariableCount()];
+        for (Insn insn : method.getCode()) {
+            int dst = insn.getDst();
+            if (Operand.isTemp(dst) && useCounts[Operand.index(dst)] == 1
+                    && insn.getOpcode() != Opcode.PHI) {
+                onStack[Operand.index(dst)] = true;
+            }
+        }
+
+        while (!simulateStack()) {
+            // retry with the demoted temps
+        }
+    }
+
+    private boolean simulateStack() {
+        List<Integer> stack = new ArrayList<>();
+
+        for (Insn insn : method.getCode()) {
+            if (insn.getOpcode() == Opcode.LABEL && !stack.isEmpty()) {
+                return demoteAll(stack);
+            }
+
+            int[] args = insn.getArgs();
+            if (isSwappedPair(insn)) {
+                int last = stack.isEmpty() ? Operand.NONE : stack.remove(stack.size() - 1);
+                if (last != valueOperand(insn, 1)) {
+                    return demoteOperands(args);
+                }
+                pushResult(insn, stack);
+                if (insn.getOpcode().endsBlock() && !stack.isEmpty()) {
+                    return demoteAll(stack);
+                }
+                continue;
+            }
+
+            int position = 0;
+            boolean prefix = true;
+            for (int arg : args) {
+                if (!Operand.isValue(arg)) {
+                    continue;
+                }
+                boolean stacked = Operand.isVar(arg) && onStack[Operand.index(arg)];
+                if (stacked && !prefix) {
+                    onStack[Operand.index(arg)] = false;
+                    return false;
+                }
+                prefix &= stacked;
+                if (stacked) {
+                    position++;
+                }
+            }
+
+            // The first 'position' value operands must be the top of the stack, in order
+            if (position > stack.size()) {
+                return demoteOperands(args);
+            }
+            int base = stack.size() - position;
+            int matched = 0;
+            for (int arg : args) {
+                if (matched == position) {
+                    break;
+                }
+                if (Operand.isValue(arg)) {
+                    if (stack.get(base + matched) != arg) {
+                        return demoteOperands(args);
+                    }
+                    matched++;
+                }
+            }
+            for (int i = 0; i < position; i++) {
+                stack.remove(stack.size() - 1);
+            }
+
+            pushResult(insn, stack);
+
+            if (insn.getOpcode().endsBlock() && !stack.isEmpty()) {
+                return demoteAll(stack);
+            }
+        }
+        return stack.isEmpty() || demoteAll(stack);
+    }
+
+    private void pushResult(Insn insn, List<Integer> stack) {
+        if (insn.hasDst() && Operand.isTemp(insn.getDst()) && onStack[Operand.index(insn.getDst())]) {
+            stack.add(insn.getDst());
+        }
+    }
+
+    // Two value operands where only the second is on the stack: the first is loaded on top
+    // and swapped under it, or simply left there when the operation is commutative
+    private boolean isSwappedPair(Insn insn) {
+        int count = 0;
+        for (int arg : insn.getArgs()) {
+            if (Operand.isValue(arg)) {
+                count++;
+            }
+        }
+        return count == 2 && !isStacked(valueOperand(insn, 0)) && isStacked(valueOperand(insn, 1));
+    }
+
+    private int valueOperand(Insn insn, int position) {
+        for (int arg : insn.getArgs()) {
+            if (Operand.isValue(arg) && position-- == 0) {
+                return arg;
+            }
+        }
+        return Operand.NONE;
+    }
+
+    private boolean demoteAll(List<Integer> stack) {
+        for (int operand : stack) {
+            onStack[Operand.index(operand)] = false;
+        }
+        return false;
+    }
+
+    private boolean demoteOperands(int[] args) {
+        for (int arg : args) {
+            if (Operand.isVar(arg)) {
+                onStack[Operand.index(arg)] = false;
+            }
+        }
+        return false;
+    }
+
+    private boolean isStacked(int operand) {
+        return Operand.isTemp(operand) && onStack[Operand.index(operand)];
+    }
+
+    // Generates code[index]; returns how many following instructions were folded into it
+    private int generate(List<Insn> code, int index) {
+        Insn insn = code.get(index);
+        Insn next = index + 1 < code.size() ? code.get(index + 1) : null;
+
+        switch (insn.getOpcode()) {
+            case MOVE:
+                if (insn.getDst() != insn.arg(0)) {
+                    load(insn.arg(0));
+                    store(insn.getDst());
+                }
+                return 0;
+
+            case ADD:
+            case SUB:
+                if (isIncrement(insn, next)) {
+                    int delta = (Integer) method.getConstant(insn.arg(1));
+                    methodVisitor.visitIincInsn(slot(insn.arg(0)), insn.getOpcode() == Opcode.ADD ? delta : -delta);
+                    return 1;
+                }
+                if (isIncrement(insn)) {
+                    int delta = (Integer) method.getConstant(insn.arg(1));
+                    methodVisitor.visitIincInsn(slot(insn.getDst()), insn.getOpcode() == Opcode.ADD ? delta : -delta);
+                    return 0;
+                }
+                loadArgs(insn);
+                methodVisitor.visitInsn(insn.getOpcode() == Opcode.ADD ? IADD : ISUB);
+                store(insn.getDst());
+                return 0;
+
+            case MUL:
+            case DIV:
+            case MOD:
+            case AND:
+            case OR:
+            case SHL:
+            case SHR:
+                loadArgs(insn);
+                methodVisitor.visitInsn(arithmeticOpcode(insn.getOpcode()));
+                store(insn.getDst());
+                return 0;
+
+            case EQ:
+            case NE:
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                loadArgs(insn);
+                if (next != null && next.getOpcode() == Opcode.IF_FALSE && next.arg(0) == insn.getDst()
+                        && isStacked(insn.getDst())) {
+                    methodVisitor.visitJumpInsn(negate(compareOpcode(insn)), labels[Operand.index(next.arg(1))]);
+                    return 1;
+                }
+                Label trueLabel = new Label();
+                Label endLabel = new Label();
+                methodVisitor.visitJumpInsn(compareOpcode(insn), trueLabel);
+                methodVisitor.visitInsn(ICONST_0);
+                methodVisitor.visitJumpInsn(GOTO, endLabel);
+                methodVisitor.visitLabel(trueLabel);
+                methodVisitor.visitInsn(ICONST_1);
+                methodVisitor.visitLabel(endLabel);
+                store(insn.getDst());
+                return 0;
+
+            case NEG:
+                loadArgs(insn);
+                methodVisitor.visitInsn(INEG);
+                store(insn.getDst());
+                return 0;
+
+            case NOT:
+                loadArgs(insn);
+                methodVisitor.visitInsn(ICONST_1);
+                methodVisitor.visitInsn(IXOR);
+                store(insn.getDst());
+                return 0;
+
+            case GETFIELD: {
+                FieldRef field = (FieldRef) method.getSymbol(insn.arg(1));
+                loadArgs(insn);
+                methodVisitor.visitFieldInsn(GETFIELD, field.getOwner(), field.getName(), Descriptors.type(field.getType()));
+                store(insn.getDst());
+                return 0;
+            }
+
+            case PUTFIELD: {
+                FieldRef field = (FieldRef) method.getSymbol(insn.arg(1));
+                loadArgs(insn);
+                methodVisitor.visitFieldInsn(PUTFIELD, field.getOwner(), field.getName(), Descriptors.type(field.getType()));
+                return 0;
+            }
+
+            case ALOAD:
+                loadArgs(insn);
+                methodVisitor.visitInsn(arrayOpcode(method.typeOf(insn.arg(0)), true));
+                store(insn.getDst());
+                return 0;
+
+            case ASTORE:
+                loadArgs(insn);
+                methodVisitor.visitInsn(arrayOpcode(method.typeOf(insn.arg(0)), false));
+                return 0;
+
+            case NEW: {
+                String className = ((Type) method.getSymbol(insn.arg(0))).getName();
+                methodVisitor.visitTypeInsn(NEW, className);
+                methodVisitor.visitInsn(DUP);
+                methodVisitor.visitMethodInsn(INVOKESPECIAL, className, "<init>", "()V", false);
+                store(insn.getDst());
+                return 0;
+            }
+
+            case NEWARRAY: {
+                String elementType = ((Type) method.getSymbol(insn.arg(1))).getName();
+                loadArgs(insn);
+                switch (elementType) {
+                    case "int":
+                        methodVisitor.visitIntInsn(NEWARRAY, T_INT);
+                        break;
+                    case "boolean":
+                        methodVisitor.visitIntInsn(NEWARRAY, T_BOOLEAN);
+                        break;
+                    default:
+                        methodVisitor.visitTypeInsn(ANEWARRAY, Descriptors.internalName(elementType));
+                }
+                store(insn.getDst());
+                return 0;
+            }
+
+            case CALL: {
+                MethodRef target = (MethodRef) method.getSymbol(insn.arg(0));
+                loadArgs(insn);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, target.getOwner(), target.getName(),
+                    Descriptors.method(target.getParameterTypes(), target.getReturnType()), false);
+                if (insn.hasDst()) {
+                    store(insn.getDst());
+                } else if (!target.isVoid()) {
+                    methodVisitor.visitInsn(POP);
+                }
+                return 0;
+            }
+
+            case NULLCHECK:
+                loadArgs(insn);
+                methodVisitor.visitMethodInsn(INVOKESTATIC, "java/util/Objects", "requireNonNull",
+                    "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                methodVisitor.visitInsn(POP);
+                return 0;
+
+            case PRINT:
+                if (insn.argCount() == 0) {
+                    methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "()V", false);
+                    return 0;
+                }
+                if (isStacked(insn.arg(0))) {
+                    methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                    methodVisitor.visitInsn(SWAP);
+                } else {
+                    methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                    load(insn.arg(0));
+                }
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println",
+                    "(" + Descriptors.println(method.typeOf(insn.arg(0))) + ")V", false);
+                return 0;
+
+            case LABEL:
+                methodVisitor.visitLabel(labels[Operand.index(insn.arg(0))]);
+                return 0;
+
+            case GOTO:
+                methodVisitor.visitJumpInsn(GOTO, labels[Operand.index(insn.arg(0))]);
+                return 0;
+
+            case IF_FALSE:
+                load(insn.arg(0));
+                methodVisitor.visitJumpInsn(IFEQ, labels[Operand.index(insn.arg(1))]);
+                return 0;
+
+            case RETURN:
+                if (insn.argCount() == 0) {
+                    methodVisitor.visitInsn(RETURN);
+                } else {
+                    load(insn.arg(0));
+                    if (Descriptors.isIntLike(method.getReturnType())) {
+                        if (currentMemo != null) {
+                            currentMemo.generateStore(methodVisitor, memoSlotLocal, memoKeyLocal);
+                        }
+                        methodVisitor.visitInsn(IRETURN);
+                    } else {
+                        methodVisitor.visitInsn(ARETURN);
+                    }
+                }
+                return 0;
+
+            default:
+                throw new IllegalStateException("Cannot generate bytecode for " + insn.getOpcode()
+                    + "; the IR must be out of SSA form");
+        }
+    }
+
+    // "t = ADD x, c; x = MOVE t" with t kept on the stack becomes IINC
+    private boolean isIncrement(Insn insn, Insn next) {
+        int variable = insn.arg(0);
+        int delta = insn.arg(1);
+        if (next == null || next.getOpcode() != Opcode.MOVE || next.arg(0) != insn.getDst()
+                || next.getDst() != variable || !isStacked(insn.getDst())
+                || !Operand.isVar(variable) || isStacked(variable) || !Operand.isConst(delta)
+                || !(method.getConstant(delta) instanceof Integer)) {
+            return false;
+        }
+        int value = (Integer) method.getConstant(delta);
+        return value >= Short.MIN_VALUE + 1 && value <= Short.MAX_VALUE;
+    }
+
+    // "x = ADD x, c", as left behind when out-of-SSA coalescing merges the temp into x
+    private boolean isIncrement(Insn insn) {
+        int variable = insn.getDst();
+        int delta = insn.arg(1);
+        if (!Operand.isVar(variable) || isStacked(variable) || insn.arg(0) != variable
+                || !Operand.isConst(delta) || !(method.getConstant(delta) instanceof Integer)) {
+            return false;
+        }
+        int value = (Integer) method.getConstant(delta);
+        return value >= Short.MIN_VALUE + 1 && value <= Short.MAX_VALUE;
+    }
+
+    private void loadArgs(Insn insn) {
+        if (isSwappedPair(insn)) {
+            load(valueOperand(insn, 0));
+            if (!insn.getOpcode().isCommutative()) {
+                methodVisitor.visitInsn(SWAP);
+            }
+            return;
+        }
+        for (int arg : insn.getArgs()) {
+            if (Operand.isValue(arg)) {
+                load(arg);
+            }
+        }
+    }
+
+    private void load(int operand) {
+        if (isStacked(operand)) {
+            return;
+        }
+        if (Operand.isVar(operand)) {
+            Type type = method.typeOf(operand);
+            methodVisitor.visitVarInsn(Descriptors.isIntLike(type) ? ILOAD : ALOAD, slot(operand));
+            return;
+        }
+
+        Object value = method.getConstant(operand);
+        if (value instanceof Integer) {
+            pushInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            methodVisitor.visitInsn((Boolean) value ? ICONST_1 : ICONST_0);
+        } else if (value == null) {
+            methodVisitor.visitInsn(ACONST_NULL);
+        } else {
+            methodVisitor.visitLdcInsn(value);
+        }
+    }
+
+    private void store(int operand) {
+        if (isStacked(operand)) {
+            return;
+        }
+        if (Operand.isTemp(operand) && useCounts[Operand.index(operand)] == 0) {
+            methodVisitor.visitInsn(POP);
+            return;
+        }
+        Type type = method.typeOf(operand);
+        methodVisitor.visitVarInsn(Descriptors.isIntLike(type) ? ISTORE : ASTORE, slot(operand));
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            methodVisitor.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            methodVisitor.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            methodVisitor.visitIntInsn(SIPUSH, value);
+        } else {
+            methodVisitor.visitLdcInsn(value);
+        }
+    }
+
+    private static int arithmeticOpcode(Opcode opcode) {
+        switch (opcode) {
+            case MUL: return IMUL;
+            case DIV: return IDIV;
+            case MOD: return IREM;
+            case AND: return IAND;
+            case OR: return IOR;
+            case SHL: return ISHL;
+            case SHR: return ISHR;
+            default: throw new IllegalArgumentException(opcode.toString());
+        }
+    }
+
+    // Jumps when the comparison holds; references compare by identity
+    private int compareOpcode(Insn insn) {
+        boolean references = !Descriptors.isIntLike(method.typeOf(insn.arg(0)))
+            || !Descriptors.isIntLike(method.typeOf(insn.arg(1)));
+        switch (insn.getOpcode()) {
+            case EQ: return references ? IF_ACMPEQ : IF_ICMPEQ;
+            case NE: return references ? IF_ACMPNE : IF_ICMPNE;
+            case LT: return IF_ICMPLT;
+            case GT: return IF_ICMPGT;
+            case LE: return IF_ICMPLE;
+            case GE: return IF_ICMPGE;
+            default: throw new IllegalArgumentException(insn.getOpcode().toString());
+        }
+    }
+
+    private static int negate(int jump) {
+        switch (jump) {
+            case IF_ICMPEQ: return IF_ICMPNE;
+            case IF_ICMPNE: return IF_ICMPEQ;
+            case IF_ICMPLT: return IF_ICMPGE;
+            case IF_ICMPGE: return IF_ICMPLT;
+            case IF_ICMPGT: return IF_ICMPLE;
+            case IF_ICMPLE: return IF_ICMPGT;
+            case IF_ACMPEQ: return IF_ACMPNE;
+            case IF_ACMPNE: return IF_ACMPEQ;
+            default: throw new IllegalArgumentException("Not a comparison: " + jump);
+        }
+    }
+
+    private static int arrayOpcode(Type arrayType, boolean load) {
+        if (arrayType != null && arrayType.isArray()) {
+            switch (arrayType.getName()) {
+                case "int": return load ? IALOAD : IASTORE;
+                case "boolean": return load ? BALOAD : BASTORE;
+                default: return load ? AALOAD : AASTORE;
+            }
+        }
+        return load ? IALOAD : IASTORE;
+    }
+}
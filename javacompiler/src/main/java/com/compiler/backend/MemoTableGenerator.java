@@ -0,0 +1,249 @@
+package com.compiler.backend;
+
+import com.compiler.ast.MethodDecl;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import static org.objectweb.asm.Opcodes.*;
+
+// Emits the memo table of a memoized method: an open-addressing int-to-int cache held in
+// static arrays, with bounded linear probing and eviction of the home slot when all probes
+// are taken. The table is not synchronized; memoized methods assume single-threaded callers.
+class MemoTableGenerator {
+    static final int PROBES = 4;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    private final String owner;
+    private final int arity;
+    private final int capacity;
+    private final String keysField;
+    private final String valuesField;
+    private final String usedField;
+    private final String findMethod;
+    private final String storeMethod;
+
+    MemoTableGenerator(String owner, MethodDecl method) {
+        this.owner = owner;
+        this.arity = method.getParameters().size();
+        this.capacity = method.getMemoCapacity();
+        String prefix = method.getName() + "$memo";
+        this.keysField = prefix + "Keys";
+        this.valuesField = prefix + "Values";
+        this.usedField = prefix + "Used";
+        this.findMethod = prefix + "Find";
+        this.storeMethod = prefix + "Store";
+    }
+
+    int getArity() {
+        return arity;
+    }
+
+    void generateFields(ClassWriter classWriter) {
+        int access = ACC_PRIVATE | ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC;
+        classWriter.visitField(access, keysField, "[I", null, null).visitEnd();
+        classWriter.visitField(access, valuesField, "[I", null, null).visitEnd();
+        classWriter.visitField(access, usedField, "[Z", null, null).visitEnd();
+    }
+
+    void generateInitializer(MethodVisitor mv) {
+        pushInt(mv, capacity * arity);
+        mv.visitIntInsn(NEWARRAY, T_INT);
+        mv.visitFieldInsn(PUTSTATIC, owner, keysField, "[I");
+        pushInt(mv, capacity);
+        mv.visitIntInsn(NEWARRAY, T_INT);
+        mv.visitFieldInsn(PUTSTATIC, owner, valuesField, "[I");
+        pushInt(mv, capacity);
+        mv.visitIntInsn(NEWARRAY, T_BOOLEAN);
+        mv.visitFieldInsn(PUTSTATIC, owner, usedField, "[Z");
+    }
+
+    void generateHelpers(ClassWriter classWriter) {
+        generateFind(classWriter);
+        generateStore(classWriter);
+    }
+
+    // Returns the slot holding the key, or ~slot of the slot a new entry should go to
+    private void generateFind(ClassWriter classWriter) {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC,
+            findMethod, findDescriptor(), null, null);
+        mv.visitCode();
+
+        int home = arity;
+        int probe = arity + 1;
+        int slot = arity + 2;
+
+        mv.visitInsn(ICONST_0);
+        for (int i = 0; i < arity; i++) {
+            pushInt(mv, 31);
+            mv.visitInsn(IMUL);
+            mv.visitVarInsn(ILOAD, i);
+            mv.visitInsn(IADD);
+        }
+        mv.visitLdcInsn(HASH_MULTIPLIER);
+        mv.visitInsn(IMUL);
+        pushInt(mv, 32 - Integer.numberOfTrailingZeros(capacity));
+        mv.visitInsn(IUSHR);
+        mv.visitVarInsn(ISTORE, home);
+
+        Label loop = new Label();
+        Label next = new Label();
+        Label evict = new Label();
+
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, probe);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, probe);
+        pushInt(mv, PROBES);
+        mv.visitJumpInsn(IF_ICMPGE, evict);
+
+        mv.visitVarInsn(ILOAD, home);
+        mv.visitVarInsn(ILOAD, probe);
+        mv.visitInsn(IADD);
+        pushInt(mv, capacity - 1);
+        mv.visitInsn(IAND);
+        mv.visitVarInsn(ISTORE, slot);
+
+        // Entries are never removed, so an empty slot ends the probe sequence
+        Label occupied = new Label();
+        mv.visitFieldInsn(GETSTATIC, owner, usedField, "[Z");
+        mv.visitVarInsn(ILOAD, slot);
+        mv.visitInsn(BALOAD);
+        mv.visitJumpInsn(IFNE, occupied);
+        mv.visitVarInsn(ILOAD, slot);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IXOR);
+        mv.visitInsn(IRETURN);
+
+        mv.visitLabel(occupied);
+        for (int i = 0; i < arity; i++) {
+            loadKey(mv, slot, i);
+            mv.visitVarInsn(ILOAD, i);
+            mv.visitJumpInsn(IF_ICMPNE, next);
+        }
+        mv.visitVarInsn(ILOAD, slot);
+        mv.visitInsn(IRETURN);
+
+        mv.visitLabel(next);
+        mv.visitIincInsn(probe, 1);
+        mv.visitJumpInsn(GOTO, loop);
+
+        mv.visitLabel(evict);
+        mv.visitVarInsn(ILOAD, home);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IXOR);
+        mv.visitInsn(IRETURN);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // store(value, ~slot, keys...)
+    private void generateStore(ClassWriter classWriter) {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC,
+            storeMethod, storeDescriptor(), null, null);
+        mv.visitCode();
+
+        int slot = arity + 2;
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IXOR);
+        mv.visitVarInsn(ISTORE, slot);
+
+        for (int i = 0; i < arity; i++) {
+            mv.visitFieldInsn(GETSTATIC, owner, keysField, "[I");
+            keyIndex(mv, slot, i);
+            mv.visitVarInsn(ILOAD, 2 + i);
+            mv.visitInsn(IASTORE);
+        }
+
+        mv.visitFieldInsn(GETSTATIC, owner, valuesField, "[I");
+        mv.visitVarInsn(ILOAD, slot);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(IASTORE);
+
+        mv.visitFieldInsn(GETSTATIC, owner, usedField, "[Z");
+        mv.visitVarInsn(ILOAD, slot);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(BASTORE);
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // Method prologue: copies the arguments (the body may reassign parameters) and returns on a hit
+    void generateLookup(MethodVisitor mv, int firstParam, int slotLocal, int firstKeyLocal) {
+        for (int i = 0; i < arity; i++) {
+            mv.visitVarInsn(ILOAD, firstParam + i);
+            mv.visitVarInsn(ISTORE, firstKeyLocal + i);
+        }
+
+        for (int i = 0; i < arity; i++) {
+            mv.visitVarInsn(ILOAD, firstKeyLocal + i);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, owner, findMethod, findDescriptor(), false);
+        mv.visitVarInsn(ISTORE, slotLocal);
+
+        Label miss = new Label();
+        mv.visitVarInsn(ILOAD, slotLocal);
+        mv.visitJumpInsn(IFLT, miss);
+        mv.visitFieldInsn(GETSTATIC, owner, valuesField, "[I");
+        mv.visitVarInsn(ILOAD, slotLocal);
+        mv.visitInsn(IALOAD);
+        mv.visitInsn(IRETURN);
+        mv.visitLabel(miss);
+    }
+
+    // Emitted before every IRETURN of the body, with the return value on the stack
+    void generateStore(MethodVisitor mv, int slotLocal, int firstKeyLocal) {
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ILOAD, slotLocal);
+        for (int i = 0; i < arity; i++) {
+            mv.visitVarInsn(ILOAD, firstKeyLocal + i);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, owner, storeMethod, storeDescriptor(), false);
+    }
+
+    private void loadKey(MethodVisitor mv, int slot, int index) {
+        mv.visitFieldInsn(GETSTATIC, owner, keysField, "[I");
+        keyIndex(mv, slot, index);
+        mv.visitInsn(IALOAD);
+    }
+
+    private void keyIndex(MethodVisitor mv, int slot, int index) {
+        mv.visitVarInsn(ILOAD, slot);
+        pushInt(mv, arity);
+        mv.visitInsn(IMUL);
+        pushInt(mv, index);
+        mv.visitInsn(IADD);
+    }
+
+    private String findDescriptor() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < arity; i++) {
+            sb.append("I");
+        }
+        return sb.append(")I").toString();
+    }
+
+    private String storeDescriptor() {
+        StringBuilder sb = new StringBuilder("(II");
+        for (int i = 0; i < arity; i++) {
+            sb.append("I");
+        }
+        return sb.append(")V").toString();
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package com.compiler.cli;
 
+import com.compiler.ast.ClassDecl;
+import com.compiler.ast.MethodDecl;
 import com.compiler.ast.Program;
 import com.compiler.backend.BytecodeGenerator;
+import com.compiler.backend.IRBytecodeGenerator;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRClass;
 import com.compiler.ir.IRGenerator;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.IRPrinter;
+import com.compiler.ir.LoopForest;
 import com.compiler.lexer.Lexer;
 import com.compiler.lexer.Token;
+import com.compiler.opt.IROptimizer;
+import com.compiler.opt.Memoizer;
+import com.compiler.opt.Optimizer;
 import com.compiler.parser.Parser;
+import com.compiler.semantic.PurityAnalyzer;
 import com.compiler.semantic.SemanticAnalyzer;
 import com.compiler.util.ASTPrinter;
 
@@ -13,12 +26,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 
 public class CompilerCLI {
     private boolean verbose = false;
     private boolean printAST = false;
     private boolean printIR = false;
     private boolean printTokens = false;
+    private boolean memoize = false;
+    private boolean optimize = false;
     private String outputDir = ".";
     private String inputFile;
 
@@ -70,6 +86,15 @@ public class CompilerCLI {
                     printTokens = true;
                     break;
                     
+                case "-O":
+                case "--optimize":
+                    optimize = true;
+                    break;
+                    
+                case "--memoize":
+                    memoize = true;
+                    break;
+                    
                 case "-o":
                 case "--output":
                     if (i + 1 < args.length) {
@@ -130,27 +155,71 @@ public class CompilerCLI {
         analyzer.analyze(program);
         log("语义分析完成");
         
+        PurityAnalyzer purityAnalyzer = new PurityAnalyzer();
+        purityAnalyzer.analyze(program);
+        for (ClassDecl classDecl : program.getClasses()) {
+            for (MethodDecl method : classDecl.getMethods()) {
+                log("  " + classDecl.getName() + "." + method.getName() + ": " + method.getPurity());
+            }
+        }
+        
+        if (optimize) {
+            log("\n=== 优化 ===");
+            Optimizer optimizer = new Optimizer();
+            optimizer.optimize(program);
+            for (Map.Entry<String, Integer> entry : optimizer.getStatistics().entrySet()) {
+                log("  " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        
+        if (memoize) {
+            for (MethodDecl method : new Memoizer().apply(program, purityAnalyzer)) {
+                log("  记忆化: " + method.getName());
+            }
+        }
+        
         // 5. 中间表示生成
         log("\n=== 中间表示生成 ===");
         IRGenerator irGenerator = new IRGenerator();
-        List<String> irCode = irGenerator.generate(program);
-        log("生成 " + irCode.size() + " 条 IR 指令");
+        List<IRClass> irClasses = irGenerator.generate(program);
+        log("生成 " + IRGenerator.countInstructions(irClasses) + " 条 IR 指令");
+        // 只为详细输出构建控制流图和循环
+        if (verbose) {
+            for (IRClass irClass : irClasses) {
+                for (IRMethod irMethod : irClass.getMethods()) {
+                    ControlFlowGraph cfg = ControlFlowGraph.build(irMethod);
+                    LoopForest loops = new LoopForest(cfg, DominatorTree.dominators(cfg));
+                    log("  " + irClass.getName() + "." + irMethod.getName() + ": " + cfg.size() + " 个基本块, "
+                        + loops.getLoops().size() + " 个循环");
+                }
+            }
+        }
+        
+        if (optimize) {
+            IROptimizer irOptimizer = new IROptimizer();
+            irOptimizer.optimize(irClasses);
+            for (Map.Entry<String, Integer> entry : irOptimizer.getStatistics().entrySet()) {
+                log("  " + entry.getKey() + ": " + entry.getValue());
+            }
+            log("优化后 " + IRGenerator.countInstructions(irClasses) + " 条 IR 指令");
+        }
         
         if (printIR) {
             System.out.println("\n--- IR ---");
-            for (String instruction : irCode) {
-                System.out.println(instruction);
-            }
+            System.out.print(IRPrinter.render(irClasses));
         }
         
         // 6. 字节码生成
         log("\n=== 字节码生成 ===");
-        BytecodeGenerator generator = new BytecodeGenerator();
-        
         // 确保输出目录存在
         Files.createDirectories(Paths.get(outputDir));
         
-        generator.generate(program, outputDir);
+        // 优化时从优化后的 IR 生成字节码，否则直接从 AST 生成
+        if (optimize) {
+            new IRBytecodeGenerator().generate(irClasses, outputDir);
+        } else {
+            new BytecodeGenerator().generate(program, outputDir);
+        }
         log("字节码生成完成，输出到: " + outputDir);
         
         System.out.println("\n✓ 编译成功!");
@@ -173,6 +242,8 @@ public class CompilerCLI {
         System.out.println("  --ast                  打印抽象语法树");
         System.out.println("  --ir                   打印中间表示");
         System.out.println("  --tokens               打印词法分析结果");
+        System.out.println("  -O, --optimize         启用优化（常量折叠、部分求值等）");
+        System.out.println("  --memoize              记忆化纯递归方法（int/boolean 参数）");
         System.out.println("  -h, --help             显示帮助信息");
         System.out.println();
         System.out.println("示例:");
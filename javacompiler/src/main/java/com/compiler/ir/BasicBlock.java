@@ -0,0 +1,89 @@
+package com.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A maximal straight-line run of instructions. Labels are not kept as instructions: the block
+// owns its label, and branch targets are taken from the successor list when linearizing.
+// For IF_FALSE the successors are [fall-through (condition true), branch target].
+public class BasicBlock {
+    private int id;
+    private int label;
+    private final List<Insn> insns;
+    private final List<BasicBlock> predecessors;
+    private final List<BasicBlock> successors;
+
+    BasicBlock(int id, int label) {
+        this.id = id;
+        this.label = label;
+        this.insns = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+        this.successors = new ArrayList<>();
+    }
+
+    // Index in the owning graph's block list
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    public int getLabel() {
+        return label;
+    }
+
+    void setLabel(int label) {
+        this.label = label;
+    }
+
+    public List<Insn> getInsns() {
+        return insns;
+    }
+
+    public List<BasicBlock> getPredecessors() {
+        return predecessors;
+    }
+
+    public List<BasicBlock> getSuccessors() {
+        return successors;
+    }
+
+    // The trailing GOTO, IF_FALSE or RETURN, or null when the block falls through
+    public Insn getTerminator() {
+        if (insns.isEmpty()) {
+            return null;
+        }
+        Insn last = insns.get(insns.size() - 1);
+        return last.getOpcode().endsBlock() ? last : null;
+    }
+
+    // Instructions before the terminator
+    public List<Insn> getBody() {
+        return getTerminator() != null ? insns.subList(0, insns.size() - 1) : insns;
+    }
+
+    // Number of leading PHI instructions
+    public int getPhiCount() {
+        int count = 0;
+        while (count < insns.size() && insns.get(count).getOpcode() == Opcode.PHI) {
+            count++;
+        }
+        return count;
+    }
+
+    public List<Insn> getPhis() {
+        return insns.subList(0, getPhiCount());
+    }
+
+    // Inserts before the terminator, or at the end when there is none
+    public void append(Insn insn) {
+        insns.add(getTerminator() != null ? insns.size() - 1 : insns.size(), insn);
+    }
+
+    @Override
+    public String toString() {
+        return "B" + id;
+    }
+}
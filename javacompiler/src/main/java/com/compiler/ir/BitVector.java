@@ -0,0 +1,124 @@
+package com.compiler.ir;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// A set of small non-negative ints of fixed capacity, one bit each in a long[]. Unlike
+// BitSet it never grows, so the bulk operations the dataflow solver runs on every visit are
+// plain loops over words of the same length, and no copy allocates.
+public final class BitVector {
+    private final long[] words;
+    private final int size;
+
+    public BitVector(int size) {
+        this.words = new long[(size + 63) >>> 6];
+        this.size = size;
+    }
+
+    // Number of bits, all of which start out clear
+    public int size() {
+        return size;
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    public boolean get(int bit) {
+        return (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    public void set(int bit) {
+        words[bit >>> 6] |= 1L << bit;
+    }
+
+    public void clear(int bit) {
+        words[bit >>> 6] &= ~(1L << bit);
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    // Sets every bit below size()
+    public void fill() {
+        Arrays.fill(words, -1L);
+        if ((size & 63) != 0) {
+            words[words.length - 1] = (1L << size) - 1;
+        }
+    }
+
+    public void copyFrom(BitVector other) {
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    public void or(BitVector other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    public void and(BitVector other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= other.words[i];
+        }
+    }
+
+    public void andNot(BitVector other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // The first set bit at or after from, or -1
+    public int nextSetBit(int from) {
+        int index = from >>> 6;
+        if (index >= words.length) {
+            return -1;
+        }
+        long word = words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    public BitSet toBitSet() {
+        return BitSet.valueOf(words);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BitVector && Arrays.equals(words, ((BitVector) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return toBitSet().toString();
+    }
+}
@@ -0,0 +1,422 @@
+package com.compiler.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Basic blocks of one method, in layout order; block 0 is the entry. Passes edit the graph
+// through the edge helpers, which keep predecessor lists and phi operands consistent, and
+// write it back with linearize().
+public class ControlFlowGraph {
+    private final IRMethod method;
+    private final List<BasicBlock> blocks;
+
+    private ControlFlowGraph(IRMethod method) {
+        this.method = method;
+        this.blocks = new ArrayList<>();
+    }
+
+    public static ControlFlowGraph build(IRMethod method) {
+        ControlFlowGraph cfg = new ControlFlowGraph(method);
+        Map<Integer, BasicBlock> blocksByLabel = new HashMap<>();
+
+        BasicBlock current = cfg.newBlock();
+        for (Insn insn : method.getCode()) {
+            if (insn.getOpcode() == Opcode.LABEL) {
+                // The entry never takes a label, so that it has no predecessors even when the
+                // method starts with a loop
+                if (!current.getInsns().isEmpty() || current.getLabel() != Operand.NONE || cfg.blocks.size() == 1) {
+                    current = cfg.newBlock();
+                }
+                current.setLabel(insn.arg(0));
+                blocksByLabel.put(insn.arg(0), current);
+                continue;
+            }
+            if (current.getTerminator() != null) {
+                current = cfg.newBlock();
+            }
+            current.getInsns().add(insn);
+        }
+
+        for (int i = 0; i < cfg.blocks.size(); i++) {
+            BasicBlock block = cfg.blocks.get(i);
+            BasicBlock next = i + 1 < cfg.blocks.size() ? cfg.blocks.get(i + 1) : null;
+            Insn terminator = block.getTerminator();
+
+            if (terminator == null) {
+                if (next != null) {
+                    cfg.addEdge(block, next);
+                }
+            } else if (terminator.getOpcode() == Opcode.GOTO) {
+                cfg.addEdge(block, blocksByLabel.get(terminator.arg(0)));
+            } else if (terminator.getOpcode() == Opcode.IF_FALSE) {
+                BasicBlock target = blocksByLabel.get(terminator.arg(1));
+                if (target == next) {
+                    // Both ways lead to the same place, and testing the condition has no effect
+                    block.getInsns().remove(block.getInsns().size() - 1);
+                    cfg.addEdge(block, next);
+                } else {
+                    cfg.addEdge(block, next);
+                    cfg.addEdge(block, target);
+                }
+            }
+        }
+        return cfg;
+    }
+
+    public IRMethod getMethod() {
+        return method;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    public BasicBlock getBlock(int id) {
+        return blocks.get(id);
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    // Appended at the end of the layout; linearize() adds the jumps it needs
+    public BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(blocks.size(), Operand.NONE);
+        blocks.add(block);
+        return block;
+    }
+
+    public void addEdge(BasicBlock from, BasicBlock to) {
+        from.getSuccessors().add(to);
+        to.getPredecessors().add(from);
+    }
+
+    // Removes one from->to edge, dropping the matching operand of every phi in 'to'
+    public void removeEdge(BasicBlock from, BasicBlock to) {
+        from.getSuccessors().remove(to);
+        int index = to.getPredecessors().indexOf(from);
+        to.getPredecessors().remove(index);
+        for (Insn phi : to.getPhis()) {
+            int[] args = phi.getArgs();
+            int[] remaining = new int[args.length - 1];
+            System.arraycopy(args, 0, remaining, 0, index);
+            System.arraycopy(args, index + 1, remaining, index, args.length - index - 1);
+            phi.setArgs(remaining);
+        }
+    }
+
+    // Makes from jump to newTo instead of oldTo; phi operands in newTo must be added by the caller
+    public void redirectEdge(BasicBlock from, BasicBlock oldTo, BasicBlock newTo) {
+        int successorIndex = from.getSuccessors().indexOf(oldTo);
+        removeEdge(from, oldTo);
+        from.getSuccessors().add(successorIndex, newTo);
+        newTo.getPredecessors().add(from);
+    }
+
+    // Puts an empty block on the from->to edge. The new block takes from's place among to's
+    // predecessors, so phi operands keep their positions.
+    public BasicBlock splitEdge(BasicBlock from, BasicBlock to) {
+        BasicBlock middle = newBlock();
+        int successorIndex = from.getSuccessors().indexOf(to);
+        int predecessorIndex = to.getPredecessors().indexOf(from);
+
+        from.getSuccessors().set(successorIndex, middle);
+        middle.getPredecessors().add(from);
+        middle.getSuccessors().add(to);
+        to.getPredecessors().set(predecessorIndex, middle);
+        return middle;
+    }
+
+    // Sends the given predecessors of a loop header through one new block laid out just before
+    // it. Header phis keep one operand for the preheader, merged by a phi there when there are
+    // several entries. Renumbers the blocks.
+    public BasicBlock insertPreheader(BasicBlock header, List<BasicBlock> entries) {
+        BasicBlock preheader = newBlock();
+        List<BasicBlock> predecessors = header.getPredecessors();
+        List<BasicBlock> kept = new ArrayList<>();
+        for (BasicBlock predecessor : predecessors) {
+            if (!entries.contains(predecessor)) {
+                kept.add(predecessor);
+            }
+        }
+
+        for (Insn phi : header.getPhis()) {
+            int[] args = new int[kept.size() + 1];
+            int[] entryArgs = new int[entries.size()];
+            for (int i = 0, k = 0; i < predecessors.size(); i++) {
+                int index = entries.indexOf(predecessors.get(i));
+                if (index >= 0) {
+                    entryArgs[index] = phi.arg(i);
+                } else {
+                    args[k++] = phi.arg(i);
+                }
+            }
+            if (entries.size() == 1) {
+                args[kept.size()] = entryArgs[0];
+            } else {
+                int merged = method.newTemp(method.typeOf(phi.getDst()));
+                preheader.getInsns().add(new Insn(Opcode.PHI, merged, entryArgs));
+                args[kept.size()] = merged;
+            }
+            phi.setArgs(args);
+        }
+
+        for (BasicBlock entry : entries) {
+            entry.getSuccessors().set(entry.getSuccessors().indexOf(header), preheader);
+            preheader.getPredecessors().add(entry);
+        }
+        predecessors.clear();
+        predecessors.addAll(kept);
+        addEdge(preheader, header);
+        placeBefore(preheader, header);
+        return preheader;
+    }
+
+    // Moves a block in the layout to just before another one, e.g. so that a block inserted on
+    // an edge falls through. Renumbers the blocks.
+    public void placeBefore(BasicBlock block, BasicBlock position) {
+        blocks.remove(block);
+        blocks.add(blocks.indexOf(position), block);
+        renumber();
+    }
+
+    // Turns a two-way branch into a jump to the given successor
+    public void replaceBranch(BasicBlock block, BasicBlock kept) {
+        List<BasicBlock> successors = new ArrayList<>(block.getSuccessors());
+        boolean keptOnce = false;
+        for (BasicBlock successor : successors) {
+            if (successor == kept && !keptOnce) {
+                keptOnce = true;
+            } else {
+                removeEdge(block, successor);
+            }
+        }
+        Insn terminator = block.getTerminator();
+        if (terminator != null && terminator.getOpcode() == Opcode.IF_FALSE) {
+            block.getInsns().remove(block.getInsns().size() - 1);
+        }
+    }
+
+    public List<BasicBlock> reversePostorder() {
+        List<BasicBlock> order = new ArrayList<>();
+        boolean[] visited = new boolean[blocks.size()];
+        Deque<BasicBlock> stack = new ArrayDeque<>();
+        Deque<Integer> nextSuccessor = new ArrayDeque<>();
+
+        stack.push(getEntry());
+        nextSuccessor.push(0);
+        visited[0] = true;
+        while (!stack.isEmpty()) {
+            BasicBlock block = stack.peek();
+            int index = nextSuccessor.pop();
+            if (index < block.getSuccessors().size()) {
+                nextSuccessor.push(index + 1);
+                BasicBlock successor = block.getSuccessors().get(index);
+                if (!visited[successor.getId()]) {
+                    visited[successor.getId()] = true;
+                    stack.push(successor);
+                    nextSuccessor.push(0);
+                }
+            } else {
+                stack.pop();
+                order.add(block);
+            }
+        }
+
+        Collections.reverse(order);
+        return order;
+    }
+
+    // Drops blocks that cannot be reached from the entry and renumbers the rest
+    public int removeUnreachableBlocks() {
+        boolean[] reachable = new boolean[blocks.size()];
+        for (BasicBlock block : reversePostorder()) {
+            reachable[block.getId()] = true;
+        }
+
+        int removed = 0;
+        for (BasicBlock block : new ArrayList<>(blocks)) {
+            if (!reachable[block.getId()]) {
+                for (BasicBlock successor : new ArrayList<>(block.getSuccessors())) {
+                    removeEdge(block, successor);
+                }
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            List<BasicBlock> kept = new ArrayList<>();
+            for (BasicBlock block : blocks) {
+                if (reachable[block.getId()]) {
+                    kept.add(block);
+                }
+            }
+            blocks.clear();
+            blocks.addAll(kept);
+            renumber();
+        }
+        return removed;
+    }
+
+    // Bypasses blocks that hold nothing but an optional GOTO, such as the empty else of an if,
+    // by sending their predecessors straight to the successor. The entry stays, and so does a
+    // block whose bypass would give a predecessor two edges to the same block.
+    public int removeEmptyBlocks() {
+        List<BasicBlock> removed = new ArrayList<>();
+        for (BasicBlock block : blocks) {
+            List<Insn> insns = block.getInsns();
+            boolean empty = insns.isEmpty() || insns.size() == 1 && insns.get(0).getOpcode() == Opcode.GOTO;
+            if (!empty || block == getEntry() || block.getSuccessors().size() != 1) {
+                continue;
+            }
+            BasicBlock successor = block.getSuccessors().get(0);
+            if (successor == block || hasEdgeFromAny(block.getPredecessors(), successor)) {
+                continue;
+            }
+
+            int index = successor.getPredecessors().indexOf(block);
+            successor.getPredecessors().remove(index);
+            for (Insn phi : successor.getPhis()) {
+                int value = phi.arg(index);
+                int[] args = phi.getArgs();
+                int[] rewired = new int[args.length - 1 + block.getPredecessors().size()];
+                System.arraycopy(args, 0, rewired, 0, index);
+                System.arraycopy(args, index + 1, rewired, index, args.length - index - 1);
+                Arrays.fill(rewired, args.length - 1, rewired.length, value);
+                phi.setArgs(rewired);
+            }
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                predecessor.getSuccessors().set(predecessor.getSuccessors().indexOf(block), successor);
+                successor.getPredecessors().add(predecessor);
+            }
+            block.getPredecessors().clear();
+            block.getSuccessors().clear();
+            removed.add(block);
+        }
+        if (!removed.isEmpty()) {
+            removeBlocks(removed);
+        }
+        return removed.size();
+    }
+
+    private static boolean hasEdgeFromAny(List<BasicBlock> predecessors, BasicBlock target) {
+        for (BasicBlock predecessor : predecessors) {
+            if (predecessor.getSuccessors().contains(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Removes the given blocks, which must already be disconnected, and renumbers the rest
+    public void removeBlocks(List<BasicBlock> removed) {
+        blocks.removeAll(removed);
+        renumber();
+    }
+
+    private void renumber() {
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).setId(i);
+        }
+    }
+
+    // Writes the blocks back to the method as a linear instruction list in layout order.
+    // Jumps to the next block are dropped and missing fall-through jumps are added.
+    public void linearize() {
+        boolean[] referenced = new boolean[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            BasicBlock next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            Insn terminator = block.getTerminator();
+            List<BasicBlock> successors = block.getSuccessors();
+
+            if (terminator != null && terminator.getOpcode() == Opcode.IF_FALSE) {
+                referenced[successors.get(1).getId()] = true;
+            }
+            if (!successors.isEmpty() && successors.get(0) != next) {
+                referenced[successors.get(0).getId()] = true;
+            }
+        }
+
+        List<Insn> code = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            BasicBlock next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+
+            if (referenced[i]) {
+                code.add(new Insn(Opcode.LABEL, Operand.NONE, labelOf(block)));
+            }
+
+            Insn terminator = block.getTerminator();
+            code.addAll(block.getBody());
+            List<BasicBlock> successors = block.getSuccessors();
+
+            if (terminator != null && terminator.getOpcode() == Opcode.RETURN) {
+                code.add(terminator);
+                continue;
+            }
+            if (terminator != null && terminator.getOpcode() == Opcode.IF_FALSE) {
+                terminator.setArg(1, labelOf(successors.get(1)));
+                code.add(terminator);
+            }
+            if (!successors.isEmpty() && successors.get(0) != next) {
+                code.add(new Insn(Opcode.GOTO, Operand.NONE, labelOf(successors.get(0))));
+            }
+        }
+        method.setCode(code);
+    }
+
+    private int labelOf(BasicBlock block) {
+        if (block.getLabel() == Operand.NONE) {
+            block.setLabel(method.newLabel());
+        }
+        return block.getLabel();
+    }
+
+    // Successor and predecessor ids per block, for graph algorithms that work on arrays
+    int[][] successorIds() {
+        int[][] result = new int[blocks.size()][];
+        for (BasicBlock block : blocks) {
+            result[block.getId()] = ids(block.getSuccessors());
+        }
+        return result;
+    }
+
+    int[][] predecessorIds() {
+        int[][] result = new int[blocks.size()][];
+        for (BasicBlock block : blocks) {
+            result[block.getId()] = ids(block.getPredecessors());
+        }
+        return result;
+    }
+
+    private static int[] ids(List<BasicBlock> blocks) {
+        int[] result = new int[blocks.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = blocks.get(i).getId();
+        }
+        return result;
+    }
+
+    // Debug rendering: each block with its edges and instructions
+    public String render() {
+        StringBuilder sb = new StringBuilder();
+        for (BasicBlock block : blocks) {
+            sb.append(block).append(" preds=").append(Arrays.toString(ids(block.getPredecessors())))
+                .append(" succs=").append(Arrays.toString(ids(block.getSuccessors()))).append('\n');
+            for (Insn insn : block.getInsns()) {
+                sb.append("    ").append(IRPrinter.format(method, insn)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
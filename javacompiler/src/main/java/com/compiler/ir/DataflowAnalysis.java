@@ -0,0 +1,228 @@
+package com.compiler.ir;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Iterative solver for gen/kill dataflow problems over the blocks of a graph, with one bit per
+// fact in a BitVector. A subclass says which facts a block generates and kills; the solver
+// meets what flows in from the neighbours on one side of each block, by union for "on some
+// path" problems such as liveness and reaching definitions, or by intersection for "on every
+// path" ones such as available expressions and definite assignment, and then computes
+//   forward:   out = gen | (in & ~kill)      backward:  in = gen | (out & ~kill)
+// until nothing changes. The value crossing an edge can be adjusted on the way, which is
+// how a phi's operand becomes live at the end of its own predecessor only.
+//
+// Blocks wait in a worklist ordered by reverse postorder, or postorder going backward, and
+// only those whose neighbours changed are visited again. On the reducible graphs structured
+// code lowers to, that settles in a few passes proportional to the loop nesting, and every
+// visit is a handful of loops over words. Only the side of each block a visit computes is
+// stored, with gen and kill as lists of bits, which keeps memory, the real cost of dense
+// sets on large methods, at one vector per block. Blocks that cannot be reached from the
+// entry are never visited and keep their initial values.
+public abstract class DataflowAnalysis {
+    public enum Direction {
+        FORWARD,
+        BACKWARD
+    }
+
+    public enum Meet {
+        // Facts holding on some path; everything starts out empty
+        UNION,
+        // Facts holding on every path; everything but the boundary starts out full
+        INTERSECTION
+    }
+
+    protected final ControlFlowGraph cfg;
+    private final Direction direction;
+    private final Meet meet;
+    private final int width;
+    private int[] position;
+    private BitVector[] results;
+    private BitVector[] joins;
+    private int visits;
+
+    protected DataflowAnalysis(ControlFlowGraph cfg, Direction direction, Meet meet, int width) {
+        this.cfg = cfg;
+        this.direction = direction;
+        this.meet = meet;
+        this.width = width;
+    }
+
+    // Facts a block makes hold on its far side, and facts it ends, each set in a cleared vector
+    protected abstract void local(BasicBlock block, BitVector gen, BitVector kill);
+
+    // Facts holding where the method starts, going forward, or where a block without
+    // successors ends, going backward; nothing by default
+    protected void boundary(BasicBlock block, BitVector value) {
+    }
+
+    // Adjusts the value crossing the edge from one block to another, in either direction
+    protected void edge(BasicBlock from, BasicBlock to, BitVector value) {
+    }
+
+    // Computes the fixpoint; called by subclasses once they are ready to answer local()
+    protected final void solve() {
+        int blockCount = cfg.size();
+        boolean forward = direction == Direction.FORWARD;
+        List<BasicBlock> order = cfg.reversePostorder();
+        if (!forward) {
+            Collections.reverse(order);
+        }
+        position = new int[blockCount];
+        Arrays.fill(position, -1);
+        for (int p = 0; p < order.size(); p++) {
+            position[order.get(p).getId()] = p;
+        }
+
+        // Gen and kill sets are usually a few bits, so they are kept as lists of them
+        int[][] gen = new int[blockCount][];
+        int[][] kill = new int[blockCount][];
+        BitVector genBits = new BitVector(width);
+        BitVector killBits = new BitVector(width);
+        results = new BitVector[blockCount];
+        joins = new BitVector[blockCount];
+        for (BasicBlock block : cfg.getBlocks()) {
+            int id = block.getId();
+            results[id] = initial();
+            if (position[id] >= 0) {
+                genBits.clear();
+                killBits.clear();
+                local(block, genBits, killBits);
+                gen[id] = bits(genBits);
+                kill[id] = bits(killBits);
+            }
+        }
+
+        BitVector joined = new BitVector(width);
+        BitVector incoming = new BitVector(width);
+        BitVector pending = new BitVector(order.size());
+        pending.fill();
+        visits = 0;
+        int next = 0;
+        while (true) {
+            int p = pending.nextSetBit(next);
+            if (p < 0) {
+                p = pending.nextSetBit(0);
+                if (p < 0) {
+                    break;
+                }
+            }
+            pending.clear(p);
+            next = p + 1;
+            visits++;
+
+            BasicBlock block = order.get(p);
+            int id = block.getId();
+            join(block, joined, incoming);
+            if (transfer(gen[id], joined, kill[id], results[id])) {
+                for (BasicBlock target : forward ? block.getSuccessors() : block.getPredecessors()) {
+                    if (position[target.getId()] >= 0) {
+                        pending.set(position[target.getId()]);
+                    }
+                }
+            }
+        }
+    }
+
+    private BitVector initial() {
+        BitVector value = new BitVector(width);
+        if (meet == Meet.INTERSECTION) {
+            value.fill();
+        }
+        return value;
+    }
+
+    private static int[] bits(BitVector vector) {
+        int[] bits = new int[vector.cardinality()];
+        int count = 0;
+        for (int bit = vector.nextSetBit(0); bit >= 0; bit = vector.nextSetBit(bit + 1)) {
+            bits[count++] = bit;
+        }
+        return bits;
+    }
+
+    // Meets into joined what flows into a block from the reachable neighbours on the side the
+    // analysis comes from, and from the boundary
+    private void join(BasicBlock block, BitVector joined, BitVector incoming) {
+        boolean forward = direction == Direction.FORWARD;
+        List<BasicBlock> sources = forward ? block.getPredecessors() : block.getSuccessors();
+        boolean first = true;
+        if (forward ? block == cfg.getEntry() : sources.isEmpty()) {
+            joined.clear();
+            boundary(block, joined);
+            first = false;
+        }
+        for (BasicBlock source : sources) {
+            if (position[source.getId()] < 0) {
+                continue;
+            }
+            incoming.copyFrom(results[source.getId()]);
+            if (forward) {
+                edge(source, block, incoming);
+            } else {
+                edge(block, source, incoming);
+            }
+            if (first) {
+                joined.copyFrom(incoming);
+                first = false;
+            } else if (meet == Meet.UNION) {
+                joined.or(incoming);
+            } else {
+                joined.and(incoming);
+            }
+        }
+    }
+
+    // result = gen | (joined & ~kill), trampling joined; whether that changed result
+    private static boolean transfer(int[] gen, BitVector joined, int[] kill, BitVector result) {
+        for (int bit : kill) {
+            joined.clear(bit);
+        }
+        for (int bit : gen) {
+            joined.set(bit);
+        }
+        long[] j = joined.words();
+        long[] r = result.words();
+        boolean changed = false;
+        for (int i = 0; i < r.length; i++) {
+            if (j[i] != r[i]) {
+                r[i] = j[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // The side of a block the analysis meets into is only kept for the block being visited,
+    // and met again from the neighbours' results when asked for
+    private BitVector joined(BasicBlock block) {
+        int id = block.getId();
+        if (joins[id] == null) {
+            joins[id] = initial();
+            if (position[id] >= 0) {
+                join(block, joins[id], new BitVector(width));
+            }
+        }
+        return joins[id];
+    }
+
+    // Facts holding where the block starts
+    public BitVector getIn(BasicBlock block) {
+        return direction == Direction.FORWARD ? joined(block) : results[block.getId()];
+    }
+
+    // Facts holding where the block ends
+    public BitVector getOut(BasicBlock block) {
+        return direction == Direction.FORWARD ? results[block.getId()] : joined(block);
+    }
+
+    public ControlFlowGraph getGraph() {
+        return cfg;
+    }
+
+    // Blocks visited until the fixpoint, for measuring how fast it settles
+    public int getVisits() {
+        return visits;
+    }
+}
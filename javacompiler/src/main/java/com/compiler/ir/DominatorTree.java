@@ -0,0 +1,224 @@
+package com.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Dominator or post-dominator tree over block ids, computed with the iterative algorithm of
+// Cooper, Harvey and Kennedy ("A Simple, Fast Dominance Algorithm"): immediate dominators are
+// refined in reverse postorder by intersecting predecessor paths until nothing changes.
+// Post-dominators use a virtual exit node, numbered size(), that follows every block without
+// successors. Nodes that cannot be reached from the root have no immediate dominator.
+public class DominatorTree {
+    public static final int NONE = -1;
+
+    private final int root;
+    private final int[] idom;
+    private final int[][] children;
+    private final int[] preorderIndex;
+    private final int[] subtreeEnd;
+    private final int[] preorder;
+
+    private DominatorTree(int root, int[][] successors, int[][] predecessors) {
+        int nodeCount = successors.length;
+        this.root = root;
+        this.idom = new int[nodeCount];
+        Arrays.fill(idom, NONE);
+
+        int[] order = postorder(root, successors);
+        int[] postorderIndex = new int[nodeCount];
+        Arrays.fill(postorderIndex, NONE);
+        for (int i = 0; i < order.length; i++) {
+            postorderIndex[order[i]] = i;
+        }
+
+        idom[root] = root;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = order.length - 1; i >= 0; i--) {
+                int node = order[i];
+                if (node == root) {
+                    continue;
+                }
+                int newIdom = NONE;
+                for (int predecessor : predecessors[node]) {
+                    if (idom[predecessor] == NONE) {
+                        continue;
+                    }
+                    newIdom = newIdom == NONE ? predecessor : intersect(predecessor, newIdom, postorderIndex);
+                }
+                if (newIdom != idom[node]) {
+                    idom[node] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        idom[root] = NONE;
+
+        List<List<Integer>> childLists = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            childLists.add(new ArrayList<>());
+        }
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            if (idom[node] != NONE) {
+                childLists.get(idom[node]).add(node);
+            }
+        }
+        this.children = new int[nodeCount][];
+        for (int i = 0; i < nodeCount; i++) {
+            children[i] = childLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Preorder numbering of the tree turns dominance queries into interval checks
+        this.preorderIndex = new int[nodeCount];
+        this.subtreeEnd = new int[nodeCount];
+        Arrays.fill(preorderIndex, NONE);
+        this.preorder = new int[order.length];
+        int[] stack = new int[order.length];
+        int[] nextChild = new int[nodeCount];
+        int depth = 0;
+        int counter = 0;
+        stack[depth++] = root;
+        preorderIndex[root] = counter;
+        preorder[counter++] = root;
+        while (depth > 0) {
+            int node = stack[depth - 1];
+            if (nextChild[node] < children[node].length) {
+                int child = children[node][nextChild[node]++];
+                preorderIndex[child] = counter;
+                preorder[counter++] = child;
+                stack[depth++] = child;
+            } else {
+                subtreeEnd[node] = counter;
+                depth--;
+            }
+        }
+    }
+
+    public static DominatorTree dominators(ControlFlowGraph cfg) {
+        return new DominatorTree(0, cfg.successorIds(), cfg.predecessorIds());
+    }
+
+    public static DominatorTree postDominators(ControlFlowGraph cfg) {
+        int exit = cfg.size();
+        int[][] forwardSuccessors = cfg.successorIds();
+        int[][] forwardPredecessors = cfg.predecessorIds();
+
+        // Edges reversed, with the virtual exit in front of every exit block
+        int[][] successors = new int[exit + 1][];
+        int[][] predecessors = new int[exit + 1][];
+        List<Integer> exits = new ArrayList<>();
+        for (int block = 0; block < exit; block++) {
+            successors[block] = forwardPredecessors[block];
+            if (forwardSuccessors[block].length == 0) {
+                exits.add(block);
+                predecessors[block] = Arrays.copyOf(forwardSuccessors[block], 1);
+                predecessors[block][0] = exit;
+            } else {
+                predecessors[block] = forwardSuccessors[block];
+            }
+        }
+        successors[exit] = exits.stream().mapToInt(Integer::intValue).toArray();
+        predecessors[exit] = new int[0];
+        return new DominatorTree(exit, successors, predecessors);
+    }
+
+    private int intersect(int a, int b, int[] postorderIndex) {
+        while (a != b) {
+            while (postorderIndex[a] < postorderIndex[b]) {
+                a = idom[a];
+            }
+            while (postorderIndex[b] < postorderIndex[a]) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    private static int[] postorder(int root, int[][] successors) {
+        int nodeCount = successors.length;
+        int[] order = new int[nodeCount];
+        int count = 0;
+        boolean[] visited = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int[] nextSuccessor = new int[nodeCount];
+        int depth = 0;
+
+        stack[depth++] = root;
+        visited[root] = true;
+        while (depth > 0) {
+            int node = stack[depth - 1];
+            if (nextSuccessor[node] < successors[node].length) {
+                int successor = successors[node][nextSuccessor[node]++];
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    stack[depth++] = successor;
+                }
+            } else {
+                order[count++] = node;
+                depth--;
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    // NONE for the root and for unreachable nodes
+    public int getImmediateDominator(int node) {
+        return idom[node];
+    }
+
+    public int[] getChildren(int node) {
+        return children[node];
+    }
+
+    public boolean isReachable(int node) {
+        return node < preorderIndex.length && preorderIndex[node] != NONE;
+    }
+
+    // Reflexive: every reachable node dominates itself
+    public boolean dominates(int a, int b) {
+        if (!isReachable(a) || !isReachable(b)) {
+            return false;
+        }
+        return preorderIndex[a] <= preorderIndex[b] && preorderIndex[b] < subtreeEnd[a];
+    }
+
+    public boolean strictlyDominates(int a, int b) {
+        return a != b && dominates(a, b);
+    }
+
+    // Dominance frontier of every block of a forward tree: the blocks where a block's dominance
+    // ends, which is where definitions in it need phis
+    public BitSet[] dominanceFrontiers(ControlFlowGraph cfg) {
+        BitSet[] frontiers = new BitSet[cfg.size()];
+        for (int i = 0; i < frontiers.length; i++) {
+            frontiers[i] = new BitSet();
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            int id = block.getId();
+            if (block.getPredecessors().size() < 2 || !isReachable(id)) {
+                continue;
+            }
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                int runner = predecessor.getId();
+                while (isReachable(runner) && runner != idom[id]) {
+                    frontiers[runner].set(id);
+                    runner = idom[runner];
+                }
+            }
+        }
+        return frontiers;
+    }
+
+    // Reachable nodes, parents before children
+    public int[] getPreorder() {
+        return preorder;
+    }
+}
@@ -0,0 +1,46 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Type;
+
+import java.util.Objects;
+
+public final class FieldRef {
+    private final String owner;
+    private final String name;
+    private final Type type;
+
+    public FieldRef(String owner, String name, Type type) {
+        this.owner = owner;
+        this.name = name;
+        this.type = type;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof FieldRef)) return false;
+        FieldRef other = (FieldRef) obj;
+        return owner.equals(other.owner) && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(owner, name);
+    }
+
+    @Override
+    public String toString() {
+        return owner + "." + name;
+    }
+}
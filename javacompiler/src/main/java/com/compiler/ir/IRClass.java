@@ -0,0 +1,37 @@
+package com.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IRClass {
+    private final String name;
+    private final List<FieldRef> fields;
+    private final List<IRMethod> methods;
+
+    public IRClass(String name) {
+        this.name = name;
+        this.fields = new ArrayList<>();
+        this.methods = new ArrayList<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<FieldRef> getFields() {
+        return fields;
+    }
+
+    public List<IRMethod> getMethods() {
+        return methods;
+    }
+
+    public IRMethod getMethod(String methodName) {
+        for (IRMethod method : methods) {
+            if (method.getName().equals(methodName)) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
@@ -2,294 +2,530 @@ package com.compiler.ir;
 
 import com.compiler.ast.*;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class IRGenerator implements ASTVisitor<String> {
-    private final List<String> instructions;
-    private int tempCounter;
-    private int labelCounter;
+// Lowers the typed AST to three-address IR. Every expression visit leaves its result operand
+// in 'value' rather than returning it, so lowering does not box operands.
+public class IRGenerator implements ASTVisitor<Void> {
+    private static final Type INT = new Type("int");
+    private static final Type BOOLEAN = new Type("boolean");
+
+    private final Map<String, ClassDecl> classes;
+    private final Deque<Map<String, Integer>> scopes;
+    private ClassDecl currentClass;
+    private IRClass currentIRClass;
+    private IRMethod method;
+    private int value;
 
     public IRGenerator() {
-        this.instructions = new ArrayList<>();
-        this.tempCounter = 0;
-        this.labelCounter = 0;
+        this.classes = new HashMap<>();
+        this.scopes = new ArrayDeque<>();
+    }
+
+    public List<IRClass> generate(Program program) {
+        for (ClassDecl classDecl : program.getClasses()) {
+            classes.put(classDecl.getName(), classDecl);
+        }
+
+        List<IRClass> result = new ArrayList<>();
+        for (ClassDecl classDecl : program.getClasses()) {
+            currentIRClass = new IRClass(classDecl.getName());
+            classDecl.accept(this);
+            result.add(currentIRClass);
+        }
+        return result;
     }
 
-    public List<String> generate(Program program) {
-        program.accept(this);
-        return instructions;
+    // Total instruction count, for reporting
+    public static int countInstructions(List<IRClass> classes) {
+        int count = 0;
+        for (IRClass irClass : classes) {
+            for (IRMethod irMethod : irClass.getMethods()) {
+                count += irMethod.getCode().size();
+            }
+        }
+        return count;
     }
 
-    private String newTemp() {
-        return "t" + (tempCounter++);
+    private int lower(Expression expression) {
+        expression.accept(this);
+        return value;
     }
 
-    private String newLabel() {
-        return "L" + (labelCounter++);
+    private int newTemp(Type type) {
+        return method.newTemp(type);
     }
 
-    private void emit(String instruction) {
-        instructions.add(instruction);
+    private void emit(Opcode opcode, int dst, int... args) {
+        method.emit(opcode, dst, args);
     }
 
-    @Override
-    public String visit(Program program) {
-        for (ClassDecl classDecl : program.getClasses()) {
-            classDecl.accept(this);
+    // Locals are read where they are used, so a local operand evaluated before an expression
+    // that assigns locals is copied first: in 'x + (x = 5)' the left operand is the old x
+    private int stable(int operand, Expression... later) {
+        if (Operand.kind(operand) != Operand.LOCAL) {
+            return operand;
+        }
+        for (Expression expression : later) {
+            if (assignsLocal(expression)) {
+                int copy = newTemp(method.typeOf(operand));
+                emit(Opcode.MOVE, copy, operand);
+                return copy;
+            }
         }
+        return operand;
+    }
+
+    private static boolean assignsLocal(Expression expression) {
+        if (expression instanceof AssignExpr) {
+            return true;
+        }
+        if (expression instanceof BinaryExpr) {
+            return assignsLocal(((BinaryExpr) expression).getLeft()) || assignsLocal(((BinaryExpr) expression).getRight());
+        }
+        if (expression instanceof UnaryExpr) {
+            return assignsLocal(((UnaryExpr) expression).getOperand());
+        }
+        if (expression instanceof FieldAccessExpr) {
+            return assignsLocal(((FieldAccessExpr) expression).getObject());
+        }
+        if (expression instanceof ArrayAccessExpr) {
+            ArrayAccessExpr access = (ArrayAccessExpr) expression;
+            return assignsLocal(access.getArray()) || assignsLocal(access.getIndex());
+        }
+        if (expression instanceof CallExpr) {
+            CallExpr call = (CallExpr) expression;
+            for (Expression arg : call.getArguments()) {
+                if (assignsLocal(arg)) {
+                    return true;
+                }
+            }
+            return call.getCallee() != null && assignsLocal(call.getCallee());
+        }
+        if (expression instanceof NewExpr && ((NewExpr) expression).getArraySize() != null) {
+            return assignsLocal(((NewExpr) expression).getArraySize());
+        }
+        return false;
+    }
+
+    private void enterScope() {
+        scopes.push(new HashMap<>());
+    }
+
+    private void exitScope() {
+        scopes.pop();
+    }
+
+    private Integer lookupLocal(String name) {
+        for (Map<String, Integer> scope : scopes) {
+            Integer operand = scope.get(name);
+            if (operand != null) {
+                return operand;
+            }
+        }
+        return null;
+    }
+
+    private int declareLocal(String name, Type type) {
+        int operand = method.newLocal(name, type);
+        scopes.peek().put(name, operand);
+        return operand;
+    }
+
+    @Override
+    public Void visit(Program program) {
         return null;
     }
 
     @Override
-    public String visit(ClassDecl classDecl) {
-        emit("CLASS " + classDecl.getName());
-        
+    public Void visit(ClassDecl classDecl) {
+        currentClass = classDecl;
+
         for (FieldDecl field : classDecl.getFields()) {
             field.accept(this);
         }
-        
-        for (MethodDecl method : classDecl.getMethods()) {
-            method.accept(this);
+
+        for (MethodDecl methodDecl : classDecl.getMethods()) {
+            methodDecl.accept(this);
         }
-        
-        emit("END_CLASS");
+
+        currentClass = null;
         return null;
     }
 
     @Override
-    public String visit(FieldDecl fieldDecl) {
-        emit("FIELD " + fieldDecl.getType() + " " + fieldDecl.getName());
+    public Void visit(FieldDecl fieldDecl) {
+        currentIRClass.getFields().add(new FieldRef(currentClass.getName(), fieldDecl.getName(), fieldDecl.getType()));
         return null;
     }
 
     @Override
-    public String visit(MethodDecl methodDecl) {
-        emit("METHOD " + methodDecl.getReturnType() + " " + methodDecl.getName());
-        
+    public Void visit(MethodDecl methodDecl) {
+        method = new IRMethod(currentClass.getName(), methodDecl);
+        scopes.clear();
+        enterScope();
+
+        method.newLocal("this", new Type(currentClass.getName()));
         for (Parameter param : methodDecl.getParameters()) {
-            emit("PARAM " + param.getType() + " " + param.getName());
+            declareLocal(param.getName(), param.getType());
         }
-        
+
         methodDecl.getBody().accept(this);
-        emit("END_METHOD");
+
+        List<Insn> code = method.getCode();
+        if (method.isVoid() && (code.isEmpty() || !code.get(code.size() - 1).getOpcode().isTerminator())) {
+            emit(Opcode.RETURN, Operand.NONE);
+        }
+
+        currentIRClass.getMethods().add(method);
+        exitScope();
+        method = null;
         return null;
     }
 
     @Override
-    public String visit(Parameter parameter) {
-        return parameter.getName();
+    public Void visit(Parameter parameter) {
+        return null;
     }
 
     @Override
-    public String visit(BlockStmt blockStmt) {
+    public Void visit(BlockStmt blockStmt) {
+        enterScope();
         for (Statement stmt : blockStmt.getStatements()) {
             stmt.accept(this);
         }
+        exitScope();
         return null;
     }
 
     @Override
-    public String visit(VarDeclStmt varDeclStmt) {
-        if (varDeclStmt.getInitializer() != null) {
-            String value = varDeclStmt.getInitializer().accept(this);
-            emit(varDeclStmt.getName() + " = " + value);
-        } else {
-            emit("DECLARE " + varDeclStmt.getType() + " " + varDeclStmt.getName());
-        }
+    public Void visit(VarDeclStmt varDeclStmt) {
+        // Evaluated before the declaration so that 'int x = x;' cannot see the new local
+        int init = varDeclStmt.getInitializer() != null
+            ? lower(varDeclStmt.getInitializer())
+            : method.defaultValue(varDeclStmt.getType());
+        int local = declareLocal(varDeclStmt.getName(), varDeclStmt.getType());
+        emit(Opcode.MOVE, local, init);
         return null;
     }
 
     @Override
-    public String visit(IfStmt ifStmt) {
-        String condition = ifStmt.getCondition().accept(this);
-        String elseLabel = newLabel();
-        String endLabel = newLabel();
-        
-        emit("IF_FALSE " + condition + " GOTO " + elseLabel);
+    public Void visit(IfStmt ifStmt) {
+        int condition = lower(ifStmt.getCondition());
+        int elseLabel = method.newLabel();
+        int endLabel = method.newLabel();
+
+        emit(Opcode.IF_FALSE, Operand.NONE, condition, elseLabel);
         ifStmt.getThenStmt().accept(this);
-        emit("GOTO " + endLabel);
-        
-        emit(elseLabel + ":");
+        emit(Opcode.GOTO, Operand.NONE, endLabel);
+
+        emit(Opcode.LABEL, Operand.NONE, elseLabel);
         if (ifStmt.getElseStmt() != null) {
             ifStmt.getElseStmt().accept(this);
         }
-        
-        emit(endLabel + ":");
+
+        emit(Opcode.LABEL, Operand.NONE, endLabel);
         return null;
     }
 
     @Override
-    public String visit(WhileStmt whileStmt) {
-        String startLabel = newLabel();
-        String endLabel = newLabel();
-        
-        emit(startLabel + ":");
-        String condition = whileStmt.getCondition().accept(this);
-        emit("IF_FALSE " + condition + " GOTO " + endLabel);
-        
+    public Void visit(WhileStmt whileStmt) {
+        int startLabel = method.newLabel();
+        int endLabel = method.newLabel();
+
+        emit(Opcode.LABEL, Operand.NONE, startLabel);
+        int condition = lower(whileStmt.getCondition());
+        emit(Opcode.IF_FALSE, Operand.NONE, condition, endLabel);
+
         whileStmt.getBody().accept(this);
-        emit("GOTO " + startLabel);
-        
-        emit(endLabel + ":");
+        emit(Opcode.GOTO, Operand.NONE, startLabel);
+
+        emit(Opcode.LABEL, Operand.NONE, endLabel);
         return null;
     }
 
     @Override
-    public String visit(ForStmt forStmt) {
+    public Void visit(ForStmt forStmt) {
+        enterScope();
         if (forStmt.getInit() != null) {
             forStmt.getInit().accept(this);
         }
-        
-        String startLabel = newLabel();
-        String endLabel = newLabel();
-        
-        emit(startLabel + ":");
-        
+
+        int startLabel = method.newLabel();
+        int endLabel = method.newLabel();
+
+        emit(Opcode.LABEL, Operand.NONE, startLabel);
+
         if (forStmt.getCondition() != null) {
-            String condition = forStmt.getCondition().accept(this);
-            emit("IF_FALSE " + condition + " GOTO " + endLabel);
+            int condition = lower(forStmt.getCondition());
+            emit(Opcode.IF_FALSE, Operand.NONE, condition, endLabel);
         }
-        
+
         forStmt.getBody().accept(this);
-        
+
         if (forStmt.getUpdate() != null) {
             forStmt.getUpdate().accept(this);
         }
-        
-        emit("GOTO " + startLabel);
-        emit(endLabel + ":");
+
+        emit(Opcode.GOTO, Operand.NONE, startLabel);
+        emit(Opcode.LABEL, Operand.NONE, endLabel);
+        exitScope();
         return null;
     }
 
     @Override
-    public String visit(ReturnStmt returnStmt) {
+    public Void visit(ReturnStmt returnStmt) {
         if (returnStmt.getValue() != null) {
-            String value = returnStmt.getValue().accept(this);
-            emit("RETURN " + value);
+            emit(Opcode.RETURN, Operand.NONE, lower(returnStmt.getValue()));
         } else {
-            emit("RETURN");
+            emit(Opcode.RETURN, Operand.NONE);
         }
         return null;
     }
 
     @Override
-    public String visit(ExprStmt exprStmt) {
+    public Void visit(ExprStmt exprStmt) {
         exprStmt.getExpression().accept(this);
         return null;
     }
 
     @Override
-    public String visit(BinaryExpr binaryExpr) {
-        String left = binaryExpr.getLeft().accept(this);
-        String right = binaryExpr.getRight().accept(this);
-        String temp = newTemp();
-        
-        String op = binaryExpr.getOperator().toString();
-        emit(temp + " = " + left + " " + op + " " + right);
-        
-        return temp;
+    public Void visit(BinaryExpr binaryExpr) {
+        int left = stable(lower(binaryExpr.getLeft()), binaryExpr.getRight());
+        int right = lower(binaryExpr.getRight());
+
+        Opcode opcode = Opcode.valueOf(binaryExpr.getOperator().name());
+        int temp = newTemp(opcode.isComparison() || opcode == Opcode.AND || opcode == Opcode.OR ? BOOLEAN : INT);
+        emit(opcode, temp, left, right);
+
+        value = temp;
+        return null;
     }
 
     @Override
-    public String visit(UnaryExpr unaryExpr) {
-        String operand = unaryExpr.getOperand().accept(this);
-        String temp = newTemp();
-        
-        String op = unaryExpr.getOperator().toString();
-        emit(temp + " = " + op + " " + operand);
-        
-        return temp;
+    public Void visit(UnaryExpr unaryExpr) {
+        int operand = lower(unaryExpr.getOperand());
+
+        boolean negate = unaryExpr.getOperator() == UnaryExpr.UnaryOp.NEG;
+        int temp = newTemp(negate ? INT : BOOLEAN);
+        emit(negate ? Opcode.NEG : Opcode.NOT, temp, operand);
+
+        value = temp;
+        return null;
     }
 
     @Override
-    public String visit(AssignExpr assignExpr) {
-        String target = assignExpr.getTarget().accept(this);
-        String value = assignExpr.getValue().accept(this);
-        
-        emit(target + " = " + value);
-        return target;
+    public Void visit(AssignExpr assignExpr) {
+        Expression targetExpr = assignExpr.getTarget();
+
+        // An assignment's value is the assigned value
+        if (targetExpr instanceof IdentifierExpr) {
+            IdentifierExpr target = (IdentifierExpr) targetExpr;
+            Integer local = lookupLocal(target.getName());
+
+            if (local != null) {
+                int assigned = lower(assignExpr.getValue());
+                emit(Opcode.MOVE, local, assigned);
+                value = assigned;
+            } else {
+                int field = fieldSymbol(currentClass.getName(), target.getName(), target.getExprType());
+                int assigned = lower(assignExpr.getValue());
+                emit(Opcode.PUTFIELD, Operand.NONE, method.thisOperand(), field, assigned);
+                value = assigned;
+            }
+        } else if (targetExpr instanceof FieldAccessExpr) {
+            FieldAccessExpr target = (FieldAccessExpr) targetExpr;
+            int object = stable(lower(target.getObject()), assignExpr.getValue());
+            int field = fieldSymbol(ownerOf(object), target.getFieldName(), target.getExprType());
+            int assigned = lower(assignExpr.getValue());
+            emit(Opcode.PUTFIELD, Operand.NONE, object, field, assigned);
+            value = assigned;
+        } else if (targetExpr instanceof ArrayAccessExpr) {
+            ArrayAccessExpr target = (ArrayAccessExpr) targetExpr;
+            int array = stable(lower(target.getArray()), target.getIndex(), assignExpr.getValue());
+            int index = stable(lower(target.getIndex()), assignExpr.getValue());
+            int assigned = lower(assignExpr.getValue());
+            emit(Opcode.ASTORE, Operand.NONE, array, index, assigned);
+            value = assigned;
+        } else {
+            value = lower(assignExpr.getValue());
+        }
+
+        return null;
     }
 
     @Override
-    public String visit(CallExpr callExpr) {
-        List<String> args = new ArrayList<>();
-        for (Expression arg : callExpr.getArguments()) {
-            args.add(arg.accept(this));
-        }
-        
-        String temp = newTemp();
-        String callee = callExpr.getCallee() != null ? callExpr.getCallee().accept(this) : "";
-        
-        if (!callee.isEmpty()) {
-            emit(temp + " = CALL " + callee + "." + callExpr.getMethodName() + "(" + String.join(", ", args) + ")");
-        } else {
-            emit(temp + " = CALL " + callExpr.getMethodName() + "(" + String.join(", ", args) + ")");
+    public Void visit(CallExpr callExpr) {
+        if (callExpr.getMethodName().equals("println")) {
+            if (callExpr.getArguments().isEmpty()) {
+                emit(Opcode.PRINT, Operand.NONE);
+            } else {
+                emit(Opcode.PRINT, Operand.NONE, lower(callExpr.getArguments().get(0)));
+            }
+            value = Operand.NONE;
+            return null;
+        }
+
+        List<Expression> arguments = callExpr.getArguments();
+        int receiver = callExpr.getCallee() != null
+            ? stable(lower(callExpr.getCallee()), arguments.toArray(new Expression[0]))
+            : method.thisOperand();
+        String owner = ownerOf(receiver);
+        MethodDecl target = resolve(classes.get(owner), callExpr.getMethodName());
+        if (target == null) {
+            throw new RuntimeException("Cannot generate call to unknown method: " + callExpr.getMethodName());
+        }
+
+        int[] args = new int[arguments.size() + 2];
+        args[0] = method.symbol(methodRef(owner, target));
+        args[1] = receiver;
+        for (int i = 0; i < arguments.size(); i++) {
+            args[i + 2] = stable(lower(arguments.get(i)),
+                arguments.subList(i + 1, arguments.size()).toArray(new Expression[0]));
+        }
+
+        boolean isVoid = target.getReturnType().getName().equals("void");
+        int temp = isVoid ? Operand.NONE : newTemp(target.getReturnType());
+        emit(Opcode.CALL, temp, args);
+
+        value = temp;
+        return null;
+    }
+
+    private static MethodDecl resolve(ClassDecl classDecl, String methodName) {
+        if (classDecl == null) {
+            return null;
+        }
+        for (MethodDecl candidate : classDecl.getMethods()) {
+            if (candidate.getName().equals(methodName)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private MethodRef methodRef(String owner, MethodDecl target) {
+        List<Type> parameterTypes = new ArrayList<>();
+        for (Parameter param : target.getParameters()) {
+            parameterTypes.add(param.getType());
+        }
+        return new MethodRef(owner, target.getName(), parameterTypes, target.getReturnType(), target.getPurity());
+    }
+
+    // Class declaring the members reached through the receiver; falls back to the current class
+    private String ownerOf(int receiver) {
+        Type type = method.typeOf(receiver);
+        if (type == null || type.isArray() || !classes.containsKey(type.getName())) {
+            return currentClass.getName();
+        }
+        return type.getName();
+    }
+
+    private int fieldSymbol(String owner, String name, Type fallbackType) {
+        Type type = fallbackType;
+        ClassDecl classDecl = classes.get(owner);
+        if (classDecl != null) {
+            for (FieldDecl field : classDecl.getFields()) {
+                if (field.getName().equals(name)) {
+                    type = field.getType();
+                }
+            }
         }
-        
-        return temp;
+        return method.symbol(new FieldRef(owner, name, type));
     }
 
     @Override
-    public String visit(FieldAccessExpr fieldAccessExpr) {
-        String object = fieldAccessExpr.getObject().accept(this);
-        String temp = newTemp();
-        
-        emit(temp + " = " + object + "." + fieldAccessExpr.getFieldName());
-        return temp;
+    public Void visit(FieldAccessExpr fieldAccessExpr) {
+        int object = lower(fieldAccessExpr.getObject());
+        int field = fieldSymbol(ownerOf(object), fieldAccessExpr.getFieldName(), fieldAccessExpr.getExprType());
+        int temp = newTemp(((FieldRef) method.getSymbol(field)).getType());
+        emit(Opcode.GETFIELD, temp, object, field);
+
+        value = temp;
+        return null;
     }
 
     @Override
-    public String visit(ArrayAccessExpr arrayAccessExpr) {
-        String array = arrayAccessExpr.getArray().accept(this);
-        String index = arrayAccessExpr.getIndex().accept(this);
-        String temp = newTemp();
-        
-        emit(temp + " = " + array + "[" + index + "]");
-        return temp;
+    public Void visit(ArrayAccessExpr arrayAccessExpr) {
+        int array = stable(lower(arrayAccessExpr.getArray()), arrayAccessExpr.getIndex());
+        int index = lower(arrayAccessExpr.getIndex());
+
+        Type arrayType = method.typeOf(array);
+        Type elementType = arrayType != null && arrayType.isArray()
+            ? new Type(arrayType.getName()) : arrayAccessExpr.getExprType();
+        int temp = newTemp(elementType);
+        emit(Opcode.ALOAD, temp, array, index);
+
+        value = temp;
+        return null;
     }
 
     @Override
-    public String visit(NewExpr newExpr) {
-        String temp = newTemp();
-        
+    public Void visit(NewExpr newExpr) {
+        String typeName = newExpr.getType().getName();
+
         if (newExpr.isArrayCreation()) {
-            String size = newExpr.getArraySize().accept(this);
-            emit(temp + " = NEW " + newExpr.getType() + "[" + size + "]");
+            int size = lower(newExpr.getArraySize());
+            int temp = newTemp(new Type(typeName, true));
+            emit(Opcode.NEWARRAY, temp, size, method.symbol(new Type(typeName)));
+            value = temp;
         } else {
-            emit(temp + " = NEW " + newExpr.getType());
+            int temp = newTemp(new Type(typeName));
+            emit(Opcode.NEW, temp, method.symbol(new Type(typeName)));
+            value = temp;
         }
-        
-        return temp;
+
+        return null;
     }
 
     @Override
-    public String visit(IntLiteral intLiteral) {
-        return String.valueOf(intLiteral.getValue());
+    public Void visit(IntLiteral intLiteral) {
+        value = method.constant(intLiteral.getValue());
+        return null;
     }
 
     @Override
-    public String visit(BoolLiteral boolLiteral) {
-        return String.valueOf(boolLiteral.getValue());
+    public Void visit(BoolLiteral boolLiteral) {
+        value = method.constant(boolLiteral.getValue());
+        return null;
     }
 
     @Override
-    public String visit(StringLiteral stringLiteral) {
-        return "\"" + stringLiteral.getValue() + "\"";
+    public Void visit(StringLiteral stringLiteral) {
+        value = method.constant(stringLiteral.getValue());
+        return null;
     }
 
     @Override
-    public String visit(NullLiteral nullLiteral) {
-        return "null";
+    public Void visit(NullLiteral nullLiteral) {
+        value = method.constant(null);
+        return null;
     }
 
     @Override
-    public String visit(IdentifierExpr identifierExpr) {
-        return identifierExpr.getName();
+    public Void visit(IdentifierExpr identifierExpr) {
+        Integer local = lookupLocal(identifierExpr.getName());
+
+        if (local != null) {
+            value = local;
+        } else {
+            int field = fieldSymbol(currentClass.getName(), identifierExpr.getName(), identifierExpr.getExprType());
+            int temp = newTemp(((FieldRef) method.getSymbol(field)).getType());
+            emit(Opcode.GETFIELD, temp, method.thisOperand(), field);
+            value = temp;
+        }
+
+        return null;
     }
 
     @Override
-    public String visit(ThisExpr thisExpr) {
-        return "this";
+    public Void visit(ThisExpr thisExpr) {
+        value = method.thisOperand();
+        return null;
     }
 }
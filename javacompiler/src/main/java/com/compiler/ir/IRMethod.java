@@ -0,0 +1,209 @@
+package com.compiler.ir;
+
+import com.compiler.ast.MethodDecl;
+import com.compiler.ast.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// IR of one method: a linear instruction list plus the tables its operands index into.
+// Variable 0 is 'this' and the parameters follow in declaration order.
+public class IRMethod {
+    private final String className;
+    private final MethodDecl declaration;
+    private final List<Variable> variables;
+    private final Set<String> localNames;
+    private final List<Object> constants;
+    private final Map<Object, Integer> constantIndex;
+    private final List<Object> symbols;
+    private final Map<Object, Integer> symbolIndex;
+    private int labelCount;
+    private int tempCount;
+    private List<Insn> code;
+
+    public IRMethod(String className, MethodDecl declaration) {
+        this.className = className;
+        this.declaration = declaration;
+        this.variables = new ArrayList<>();
+        this.localNames = new HashSet<>();
+        this.constants = new ArrayList<>();
+        this.constantIndex = new HashMap<>();
+        this.symbols = new ArrayList<>();
+        this.symbolIndex = new HashMap<>();
+        this.code = new ArrayList<>();
+    }
+
+    public static final class Variable {
+        private final String name;
+        private final Type type;
+        private final boolean temp;
+
+        Variable(String name, Type type, boolean temp) {
+            this.name = name;
+            this.type = type;
+            this.temp = temp;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public boolean isTemp() {
+            return temp;
+        }
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getName() {
+        return declaration.getName();
+    }
+
+    public MethodDecl getDeclaration() {
+        return declaration;
+    }
+
+    public Type getReturnType() {
+        return declaration.getReturnType();
+    }
+
+    public boolean isVoid() {
+        return getReturnType().getName().equals("void") && !getReturnType().isArray();
+    }
+
+    public int getParameterCount() {
+        return declaration.getParameters().size();
+    }
+
+    public int thisOperand() {
+        return Operand.make(Operand.LOCAL, 0);
+    }
+
+    // 'this' and the parameters, whose values come from the caller
+    public boolean isIncoming(int operand) {
+        return Operand.isVar(operand) && Operand.index(operand) <= getParameterCount();
+    }
+
+    public List<Insn> getCode() {
+        return code;
+    }
+
+    public void setCode(List<Insn> code) {
+        this.code = code;
+    }
+
+    public Insn emit(Opcode opcode, int dst, int... args) {
+        Insn insn = new Insn(opcode, dst, args);
+        code.add(insn);
+        return insn;
+    }
+
+    // Names are made unique so that shadowed locals stay apart in the printed IR
+    public int newLocal(String name, Type type) {
+        String unique = name;
+        for (int i = 1; !localNames.add(unique); i++) {
+            unique = name + "$" + i;
+        }
+        variables.add(new Variable(unique, type, false));
+        return Operand.make(Operand.LOCAL, variables.size() - 1);
+    }
+
+    public int newTemp(Type type) {
+        variables.add(new Variable("t" + tempCount++, type, true));
+        return Operand.make(Operand.TEMP, variables.size() - 1);
+    }
+
+    // A fresh variable of the same kind and type, named after the original (SSA versions, copies)
+    public int newVersion(int operand, int version) {
+        Variable original = getVariable(operand);
+        variables.add(new Variable(original.name + "_" + version, original.type, original.temp));
+        return Operand.make(Operand.kind(operand), variables.size() - 1);
+    }
+
+    public int getVariableCount() {
+        return variables.size();
+    }
+
+    public Variable getVariable(int operand) {
+        return variables.get(Operand.index(operand));
+    }
+
+    // Operand naming the variable with the given index
+    public int variable(int index) {
+        return Operand.make(variables.get(index).temp ? Operand.TEMP : Operand.LOCAL, index);
+    }
+
+    public int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return Operand.make(Operand.CONST, index);
+    }
+
+    // Constant holding the zero value of a type, as for an uninitialized local
+    public int defaultValue(Type type) {
+        if (type.isArray()) {
+            return constant(null);
+        }
+        switch (type.getName()) {
+            case "int": return constant(0);
+            case "boolean": return constant(false);
+            default: return constant(null);
+        }
+    }
+
+    // Integer, Boolean, String or null
+    public Object getConstant(int operand) {
+        return constants.get(Operand.index(operand));
+    }
+
+    public int symbol(Object symbol) {
+        Integer index = symbolIndex.get(symbol);
+        if (index == null) {
+            index = symbols.size();
+            symbols.add(symbol);
+            symbolIndex.put(symbol, index);
+        }
+        return Operand.make(Operand.SYMBOL, index);
+    }
+
+    // FieldRef, MethodRef or Type
+    public Object getSymbol(int operand) {
+        return symbols.get(Operand.index(operand));
+    }
+
+    public int newLabel() {
+        return Operand.label(labelCount++);
+    }
+
+    public int getLabelCount() {
+        return labelCount;
+    }
+
+    // Static type of a variable or constant operand; null for the null constant
+    public Type typeOf(int operand) {
+        if (Operand.isVar(operand)) {
+            return getVariable(operand).type;
+        }
+        if (Operand.isConst(operand)) {
+            Object value = getConstant(operand);
+            if (value instanceof Integer) return new Type("int");
+            if (value instanceof Boolean) return new Type("boolean");
+            if (value instanceof String) return new Type("String");
+        }
+        return null;
+    }
+}
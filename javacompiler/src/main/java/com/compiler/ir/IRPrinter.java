@@ -0,0 +1,89 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Parameter;
+
+import java.util.List;
+
+// Text form of the IR, only built for --ir and tests
+public class IRPrinter {
+    private final StringBuilder out;
+
+    public IRPrinter() {
+        this.out = new StringBuilder();
+    }
+
+    public static String render(List<IRClass> classes) {
+        IRPrinter printer = new IRPrinter();
+        for (IRClass irClass : classes) {
+            printer.print(irClass);
+        }
+        return printer.out.toString();
+    }
+
+    public static String render(IRMethod method) {
+        IRPrinter printer = new IRPrinter();
+        printer.print(method);
+        return printer.out.toString();
+    }
+
+    public void print(IRClass irClass) {
+        out.append("CLASS ").append(irClass.getName()).append('\n');
+        for (FieldRef field : irClass.getFields()) {
+            out.append("  FIELD ").append(field.getType()).append(' ').append(field.getName()).append('\n');
+        }
+        for (IRMethod method : irClass.getMethods()) {
+            print(method);
+        }
+        out.append("END_CLASS\n");
+    }
+
+    public void print(IRMethod method) {
+        out.append("  METHOD ").append(method.getReturnType()).append(' ').append(method.getName()).append('(');
+        List<Parameter> params = method.getDeclaration().getParameters();
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(params.get(i).getType()).append(' ').append(method.getVariable(method.variable(i + 1)).getName());
+        }
+        out.append(")\n");
+
+        for (Insn insn : method.getCode()) {
+            out.append(insn.getOpcode() == Opcode.LABEL ? "  " : "    ").append(format(method, insn)).append('\n');
+        }
+        out.append("  END_METHOD\n");
+    }
+
+    public static String format(IRMethod method, Insn insn) {
+        if (insn.getOpcode() == Opcode.LABEL) {
+            return operand(method, insn.arg(0)) + ":";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (insn.hasDst()) {
+            sb.append(operand(method, insn.getDst())).append(" = ");
+        }
+        sb.append(insn.getOpcode());
+        for (int i = 0; i < insn.argCount(); i++) {
+            sb.append(i == 0 ? " " : ", ").append(operand(method, insn.arg(i)));
+        }
+        return sb.toString();
+    }
+
+    public static String operand(IRMethod method, int operand) {
+        switch (Operand.kind(operand)) {
+            case Operand.TEMP:
+            case Operand.LOCAL:
+                return method.getVariable(operand).getName();
+            case Operand.CONST:
+                Object value = method.getConstant(operand);
+                return value instanceof String ? "\"" + value + "\"" : String.valueOf(value);
+            case Operand.LABEL:
+                return "L" + Operand.index(operand);
+            case Operand.SYMBOL:
+                return String.valueOf(method.getSymbol(operand));
+            default:
+                return "_";
+        }
+    }
+}
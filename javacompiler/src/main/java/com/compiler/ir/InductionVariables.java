@@ -0,0 +1,441 @@
+package com.compiler.ir;
+
+import com.compiler.ir.LoopForest.Loop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Induction variables of one loop in SSA form. A basic induction variable is a header phi
+// that enters with some value and comes back around every latch increased by the same
+// constant. A derived one is an affine function factor * i + offset of a basic variable i,
+// where factor and offset are constants or values defined outside the loop; only the forms
+// that need no code to describe are recognized, e.g. (i * c) + d but not (i + d) * n.
+//
+// The trip count is read off the header's exit test when it compares a basic variable with a
+// loop-invariant bound. It counts how often the test lets the body run, so it is an upper
+// bound when the body can also leave the loop by returning.
+public class InductionVariables {
+    private final ControlFlowGraph cfg;
+    private final IRMethod method;
+    private final Loop loop;
+    private final Map<Integer, Insn> definitions;
+    private final Map<Integer, Integer> copies;
+    private final Map<Integer, Induction> inductions;
+    private final List<Induction> basic;
+    private final TripCount tripCount;
+
+    public static final class Induction {
+        private final int variable;
+        private final Induction base;
+        private final int init;
+        private final int step;
+        private final int factor;
+        private final int offset;
+
+        Induction(int variable, Induction base, int init, int step, int factor, int offset) {
+            this.variable = variable;
+            this.base = base;
+            this.init = init;
+            this.step = step;
+            this.factor = factor;
+            this.offset = offset;
+        }
+
+        public int getVariable() {
+            return variable;
+        }
+
+        public boolean isBasic() {
+            return base == null;
+        }
+
+        // The basic variable a derived one is a function of; itself for a basic one
+        public Induction getBase() {
+            return base == null ? this : base;
+        }
+
+        // Value entering the loop, for basic variables
+        public int getInit() {
+            return init;
+        }
+
+        // Increment per iteration, for basic variables
+        public int getStep() {
+            return step;
+        }
+
+        // Constant or invariant operand; the constant 1 for basic variables
+        public int getFactor() {
+            return factor;
+        }
+
+        // Constant or invariant operand; the constant 0 for basic variables
+        public int getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            return isBasic() ? "IV(" + variable + ", step " + step + ")" : "IV(" + variable + " of " + base.variable + ")";
+        }
+    }
+
+    // The loop runs while 'induction comparison bound' holds at the header
+    public static final class TripCount {
+        private final Induction induction;
+        private final Opcode comparison;
+        private final int bound;
+        private final long count;
+
+        TripCount(Induction induction, Opcode comparison, int bound, long count) {
+            this.induction = induction;
+            this.comparison = comparison;
+            this.bound = bound;
+            this.count = count;
+        }
+
+        public Induction getInduction() {
+            return induction;
+        }
+
+        // One of LT, LE, GT, GE, NE or EQ
+        public Opcode getComparison() {
+            return comparison;
+        }
+
+        // Constant or invariant operand
+        public int getBound() {
+            return bound;
+        }
+
+        public boolean isConstant() {
+            return count >= 0;
+        }
+
+        // Number of iterations, or -1 when it depends on run-time values or the variable
+        // would wrap around before the test fails
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public InductionVariables(ControlFlowGraph cfg, Loop loop) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.loop = loop;
+        this.definitions = new LinkedHashMap<>();
+        this.copies = new LinkedHashMap<>();
+        this.inductions = new LinkedHashMap<>();
+        this.basic = new ArrayList<>();
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (!Operand.isVar(insn.getDst())) {
+                    continue;
+                }
+                if (loop.contains(block)) {
+                    definitions.put(insn.getDst(), insn);
+                }
+                if (insn.getOpcode() == Opcode.MOVE) {
+                    copies.put(insn.getDst(), insn.arg(0));
+                }
+            }
+        }
+        findBasic();
+        findDerived();
+        this.tripCount = computeTripCount();
+    }
+
+    private void findBasic() {
+        BasicBlock header = loop.getHeader();
+        List<BasicBlock> predecessors = header.getPredecessors();
+        for (Insn phi : header.getPhis()) {
+            int init = Operand.NONE;
+            Long step = null;
+            boolean valid = true;
+            for (int i = 0; i < predecessors.size() && valid; i++) {
+                int value = resolve(phi.arg(i));
+                if (!loop.contains(predecessors.get(i))) {
+                    valid = init == Operand.NONE || init == value;
+                    init = value;
+                    continue;
+                }
+                Long increment = distance(phi.getDst(), value, 0);
+                valid = increment != null && increment != 0 && increment == (int) (long) increment
+                    && (step == null || step.equals(increment));
+                step = increment;
+            }
+            if (valid && init != Operand.NONE && step != null && isInt(phi.getDst())) {
+                Induction induction = new Induction(phi.getDst(), null, init, (int) (long) step,
+                    method.constant(1), method.constant(0));
+                basic.add(induction);
+                inductions.put(phi.getDst(), induction);
+            }
+        }
+    }
+
+    // The constant c with value == phi + c through a chain of copies and constant increments,
+    // or null
+    private Long distance(int phi, int value, int depth) {
+        if (value == phi) {
+            return 0L;
+        }
+        Insn definition = definitions.get(value);
+        if (definition == null || depth > 16) {
+            return null;
+        }
+        switch (definition.getOpcode()) {
+            case MOVE:
+                return distance(phi, definition.arg(0), depth + 1);
+            case ADD: {
+                Integer constant = intConstant(definition.arg(1));
+                int other = definition.arg(0);
+                if (constant == null) {
+                    constant = intConstant(definition.arg(0));
+                    other = definition.arg(1);
+                }
+                Long rest = constant == null ? null : distance(phi, other, depth + 1);
+                return rest == null ? null : rest + constant;
+            }
+            case SUB: {
+                Integer constant = intConstant(definition.arg(1));
+                Long rest = constant == null ? null : distance(phi, definition.arg(0), depth + 1);
+                return rest == null ? null : rest - constant;
+            }
+            default:
+                return null;
+        }
+    }
+
+    // Definitions dominate their uses, so reverse postorder sees operands first
+    private void findDerived() {
+        for (BasicBlock block : cfg.reversePostorder()) {
+            if (!loop.contains(block)) {
+                continue;
+            }
+            for (Insn insn : block.getInsns()) {
+                int dst = insn.getDst();
+                if (!Operand.isVar(dst) || inductions.containsKey(dst) || !isInt(dst)) {
+                    continue;
+                }
+                Induction derived = derive(insn);
+                if (derived != null) {
+                    inductions.put(dst, derived);
+                }
+            }
+        }
+    }
+
+    private Induction derive(Insn insn) {
+        int dst = insn.getDst();
+        switch (insn.getOpcode()) {
+            case MOVE: {
+                Induction source = inductions.get(insn.arg(0));
+                return source == null ? null : derived(dst, source.getBase(), source.factor, source.offset);
+            }
+            case MUL: {
+                Induction source = inductions.get(insn.arg(0));
+                int scale = insn.arg(1);
+                if (source == null) {
+                    source = inductions.get(insn.arg(1));
+                    scale = insn.arg(0);
+                }
+                scale = resolve(scale);
+                if (source == null || !isInvariant(scale)) {
+                    return null;
+                }
+                if (isConstant(source.factor, 1) && isConstant(source.offset, 0)) {
+                    return derived(dst, source.getBase(), scale, source.offset);
+                }
+                Integer constant = intConstant(scale);
+                Integer factor = intConstant(source.factor);
+                Integer offset = intConstant(source.offset);
+                if (constant == null || factor == null || offset == null) {
+                    return null;
+                }
+                return derived(dst, source.getBase(), method.constant(factor * constant), method.constant(offset * constant));
+            }
+            case ADD:
+            case SUB: {
+                Induction source = inductions.get(insn.arg(0));
+                int addend = insn.arg(1);
+                if (source == null && insn.getOpcode() == Opcode.ADD) {
+                    source = inductions.get(insn.arg(1));
+                    addend = insn.arg(0);
+                }
+                addend = resolve(addend);
+                if (source == null || !isInvariant(addend)) {
+                    return null;
+                }
+                boolean subtract = insn.getOpcode() == Opcode.SUB;
+                Integer constant = intConstant(addend);
+                Integer offset = intConstant(source.offset);
+                if (constant != null && offset != null) {
+                    int sum = subtract ? offset - constant : offset + constant;
+                    return derived(dst, source.getBase(), source.factor, method.constant(sum));
+                }
+                if (!subtract && offset != null && offset == 0) {
+                    return derived(dst, source.getBase(), source.factor, addend);
+                }
+                return null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Induction derived(int variable, Induction base, int factor, int offset) {
+        return new Induction(variable, base, Operand.NONE, 0, factor, offset);
+    }
+
+    private TripCount computeTripCount() {
+        BasicBlock header = loop.getHeader();
+        Insn test = header.getTerminator();
+        if (test == null || test.getOpcode() != Opcode.IF_FALSE || !Operand.isVar(test.arg(0))) {
+            return null;
+        }
+        Insn condition = definitions.get(test.arg(0));
+        if (condition == null || !condition.getOpcode().isComparison()) {
+            return null;
+        }
+
+        Opcode comparison = condition.getOpcode();
+        Induction induction = inductions.get(condition.arg(0));
+        int bound = condition.arg(1);
+        if (induction == null || !induction.isBasic()) {
+            induction = inductions.get(condition.arg(1));
+            bound = condition.arg(0);
+            comparison = mirror(comparison);
+        }
+        bound = resolve(bound);
+        if (induction == null || !induction.isBasic() || !isInvariant(bound)) {
+            return null;
+        }
+        // IF_FALSE falls through while the condition holds
+        boolean staysOnTrue = loop.contains(header.getSuccessors().get(0));
+        if (staysOnTrue == loop.contains(header.getSuccessors().get(1))) {
+            return null;
+        }
+        if (!staysOnTrue) {
+            comparison = negate(comparison);
+        }
+
+        long count = -1;
+        Integer init = intConstant(induction.init);
+        Integer limit = intConstant(bound);
+        if (init != null && limit != null) {
+            count = count(comparison, init, induction.step, limit);
+        }
+        return new TripCount(induction, comparison, bound, count);
+    }
+
+    // Iterations of 'for (i = init; i comparison limit; i += step)' with int wrap-around
+    // ruled out, or -1
+    static long count(Opcode comparison, long init, long step, long limit) {
+        long count;
+        switch (comparison) {
+            case LT: count = init >= limit ? 0 : step > 0 ? (limit - init + step - 1) / step : -1; break;
+            case LE: count = init > limit ? 0 : step > 0 ? (limit - init) / step + 1 : -1; break;
+            case GT: count = init <= limit ? 0 : step < 0 ? (init - limit - step - 1) / -step : -1; break;
+            case GE: count = init < limit ? 0 : step < 0 ? (init - limit) / -step + 1 : -1; break;
+            case NE: {
+                long distance = limit - init;
+                count = distance % step == 0 && distance / step >= 0 ? distance / step : -1;
+                break;
+            }
+            case EQ: count = init != limit ? 0 : 1; break;
+            default: return -1;
+        }
+        if (count < 0) {
+            return -1;
+        }
+        // The value that fails the test must not have wrapped around
+        long last = init + count * step;
+        return last >= Integer.MIN_VALUE && last <= Integer.MAX_VALUE ? count : -1;
+    }
+
+    static Opcode mirror(Opcode comparison) {
+        switch (comparison) {
+            case LT: return Opcode.GT;
+            case GT: return Opcode.LT;
+            case LE: return Opcode.GE;
+            case GE: return Opcode.LE;
+            default: return comparison;
+        }
+    }
+
+    static Opcode negate(Opcode comparison) {
+        switch (comparison) {
+            case LT: return Opcode.GE;
+            case GE: return Opcode.LT;
+            case GT: return Opcode.LE;
+            case LE: return Opcode.GT;
+            case EQ: return Opcode.NE;
+            default: return Opcode.EQ;
+        }
+    }
+
+    // A constant or a variable defined outside the loop
+    public boolean isInvariant(int operand) {
+        return Operand.isConst(operand) || Operand.isVar(operand) && !definitions.containsKey(operand);
+    }
+
+    private boolean isInt(int operand) {
+        return "int".equals(method.typeOf(operand).getName()) && !method.typeOf(operand).isArray();
+    }
+
+    // The value at the start of a chain of copies, which is where constants and invariants show
+    // up before constant propagation has run
+    private int resolve(int operand) {
+        for (int depth = 0; depth < 16 && copies.containsKey(operand); depth++) {
+            operand = copies.get(operand);
+        }
+        return operand;
+    }
+
+    private Integer intConstant(int operand) {
+        operand = resolve(operand);
+        if (!Operand.isConst(operand)) {
+            return null;
+        }
+        Object value = method.getConstant(operand);
+        return value instanceof Integer ? (Integer) value : null;
+    }
+
+    private boolean isConstant(int operand, int value) {
+        Integer constant = intConstant(operand);
+        return constant != null && constant == value;
+    }
+
+    public Loop getLoop() {
+        return loop;
+    }
+
+    // Basic variables in header phi order
+    public List<Induction> getBasic() {
+        return Collections.unmodifiableList(basic);
+    }
+
+    // Basic and derived variables, in the order they were found
+    public List<Induction> getInductions() {
+        return new ArrayList<>(inductions.values());
+    }
+
+    // The induction variable an operand names, or null
+    public Induction getInduction(int operand) {
+        return inductions.get(operand);
+    }
+
+    // The instruction defining a variable inside the loop, or null
+    public Insn getDefinition(int operand) {
+        return definitions.get(operand);
+    }
+
+    // Null when the header does not exit on a test of a basic variable against an invariant
+    public TripCount getTripCount() {
+        return tripCount;
+    }
+}
@@ -0,0 +1,84 @@
+package com.compiler.ir;
+
+import java.util.Arrays;
+
+// One IR instruction. Passes rewrite instructions in place, so everything is mutable.
+public final class Insn {
+    private static final int[] NO_ARGS = new int[0];
+
+    private Opcode opcode;
+    private int dst;
+    private int[] args;
+
+    public Insn(Opcode opcode, int dst, int... args) {
+        this.opcode = opcode;
+        this.dst = dst;
+        this.args = args.length == 0 ? NO_ARGS : args;
+    }
+
+    public Opcode getOpcode() {
+        return opcode;
+    }
+
+    public void setOpcode(Opcode opcode) {
+        this.opcode = opcode;
+    }
+
+    public int getDst() {
+        return dst;
+    }
+
+    public void setDst(int dst) {
+        this.dst = dst;
+    }
+
+    public boolean hasDst() {
+        return dst != Operand.NONE;
+    }
+
+    public int argCount() {
+        return args.length;
+    }
+
+    public int arg(int index) {
+        return args[index];
+    }
+
+    public void setArg(int index, int operand) {
+        args[index] = operand;
+    }
+
+    // The backing array, not a copy
+    public int[] getArgs() {
+        return args;
+    }
+
+    public void setArgs(int... args) {
+        this.args = args.length == 0 ? NO_ARGS : args;
+    }
+
+    // Turns this instruction into another one, e.g. when a pass replaces an ADD by a MOVE
+    public void set(Opcode opcode, int dst, int... args) {
+        this.opcode = opcode;
+        this.dst = dst;
+        setArgs(args);
+    }
+
+    public boolean uses(int operand) {
+        for (int arg : args) {
+            if (arg == operand) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Insn copy() {
+        return new Insn(opcode, dst, args.length == 0 ? NO_ARGS : args.clone());
+    }
+
+    @Override
+    public String toString() {
+        return opcode + " " + Integer.toHexString(dst) + " " + Arrays.toString(args);
+    }
+}
@@ -0,0 +1,155 @@
+package com.compiler.ir;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Live variables per block, as a backward union problem for DataflowAnalysis. Works on SSA
+// and non-SSA graphs alike: a phi defines its result at the top of its block and uses each
+// operand at the end of the matching predecessor.
+//
+// Only variables read somewhere before being written in the same block, or by a phi, can
+// ever be live where a block starts or ends; most temps are not, so the others alone get a
+// bit in the analysis, and the sets handed out are translated back to variable indices.
+public class Liveness extends DataflowAnalysis {
+    private final int[] variables;
+    private final int[] bits;
+    private final BitSet[] liveIn;
+    private final BitSet[] liveOut;
+
+    public Liveness(ControlFlowGraph cfg) {
+        this(cfg, globalVariables(cfg));
+    }
+
+    private Liveness(ControlFlowGraph cfg, int[] variables) {
+        super(cfg, Direction.BACKWARD, Meet.UNION, variables.length);
+        this.variables = variables;
+        this.bits = new int[cfg.getMethod().getVariableCount()];
+        Arrays.fill(bits, -1);
+        for (int bit = 0; bit < variables.length; bit++) {
+            bits[variables[bit]] = bit;
+        }
+        this.liveIn = new BitSet[cfg.size()];
+        this.liveOut = new BitSet[cfg.size()];
+        solve();
+    }
+
+    // Variables used in some block before any definition there, or as a phi operand
+    private static int[] globalVariables(ControlFlowGraph cfg) {
+        BitSet global = new BitSet();
+        BitSet defined = new BitSet();
+        for (BasicBlock block : cfg.getBlocks()) {
+            defined.clear();
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg) && (insn.getOpcode() == Opcode.PHI || !defined.get(Operand.index(arg)))) {
+                        global.set(Operand.index(arg));
+                    }
+                }
+                if (Operand.isVar(insn.getDst())) {
+                    defined.set(Operand.index(insn.getDst()));
+                }
+            }
+        }
+        return global.stream().toArray();
+    }
+
+    // Uses not preceded by a definition in the block, and the block's definitions, its phis'
+    // results included
+    @Override
+    protected void local(BasicBlock block, BitVector uses, BitVector defs) {
+        List<Insn> insns = block.getInsns();
+        for (int i = insns.size() - 1; i >= block.getPhiCount(); i--) {
+            Insn insn = insns.get(i);
+            int dst = bit(insn.getDst());
+            if (dst >= 0) {
+                uses.clear(dst);
+                defs.set(dst);
+            }
+            for (int arg : insn.getArgs()) {
+                if (bit(arg) >= 0) {
+                    uses.set(bit(arg));
+                }
+            }
+        }
+        for (Insn phi : block.getPhis()) {
+            if (bit(phi.getDst()) >= 0) {
+                uses.clear(bit(phi.getDst()));
+                defs.set(bit(phi.getDst()));
+            }
+        }
+    }
+
+    // The operands a successor's phis take from this block are live at its end
+    @Override
+    protected void edge(BasicBlock from, BasicBlock to, BitVector live) {
+        if (to.getPhiCount() == 0) {
+            return;
+        }
+        int index = to.getPredecessors().indexOf(from);
+        for (Insn phi : to.getPhis()) {
+            if (bit(phi.arg(index)) >= 0) {
+                live.set(bit(phi.arg(index)));
+            }
+        }
+    }
+
+    // The bit of a global variable, or -1
+    private int bit(int operand) {
+        return Operand.isVar(operand) ? bits[Operand.index(operand)] : -1;
+    }
+
+    private BitSet toVariables(BitVector vector) {
+        BitSet live = new BitSet();
+        for (int bit = vector.nextSetBit(0); bit >= 0; bit = vector.nextSetBit(bit + 1)) {
+            live.set(variables[bit]);
+        }
+        return live;
+    }
+
+    // Backward transfer of one instruction: kill its definition, then add its uses
+    public static void transfer(Insn insn, BitSet live) {
+        if (Operand.isVar(insn.getDst())) {
+            live.clear(Operand.index(insn.getDst()));
+        }
+        for (int arg : insn.getArgs()) {
+            if (Operand.isVar(arg)) {
+                live.set(Operand.index(arg));
+            }
+        }
+    }
+
+    // Variables live on entry, not counting the results of the block's own phis
+    public BitSet getLiveIn(BasicBlock block) {
+        int id = block.getId();
+        if (liveIn[id] == null) {
+            liveIn[id] = toVariables(getIn(block));
+        }
+        return liveIn[id];
+    }
+
+    public BitSet getLiveOut(BasicBlock block) {
+        int id = block.getId();
+        if (liveOut[id] == null) {
+            liveOut[id] = toVariables(getOut(block));
+        }
+        return liveOut[id];
+    }
+
+    // Variables live right after insns[index] of the block; index -1 means the block entry,
+    // before its phis, and phiCount - 1 the point right after them
+    public BitSet liveAfter(BasicBlock block, int index) {
+        BitSet live = (BitSet) getLiveOut(block).clone();
+        List<Insn> insns = block.getInsns();
+        int phiCount = block.getPhiCount();
+        for (int i = insns.size() - 1; i > index && i >= phiCount; i--) {
+            transfer(insns.get(i), live);
+        }
+        if (index < 0) {
+            for (Insn phi : block.getPhis()) {
+                live.clear(Operand.index(phi.getDst()));
+            }
+        }
+        return live;
+    }
+}
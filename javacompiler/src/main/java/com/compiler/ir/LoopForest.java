@@ -0,0 +1,196 @@
+package com.compiler.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+// Natural loops of a method and how they nest. A back edge is an edge whose target dominates
+// its source; the loop of a header is everything that reaches one of its back edges without
+// passing through the header. Loops sharing a header are merged. The source language only
+// has structured loops, so every cycle in the graph has such a header.
+public class LoopForest {
+    private final List<Loop> loops;
+    private final List<Loop> roots;
+    private final Loop[] innermost;
+
+    public static final class Loop {
+        private final BasicBlock header;
+        private final List<BasicBlock> latches;
+        private final BitSet blocks;
+        private final List<Loop> children;
+        private Loop parent;
+        private int depth;
+
+        Loop(BasicBlock header) {
+            this.header = header;
+            this.latches = new ArrayList<>();
+            this.blocks = new BitSet();
+            this.children = new ArrayList<>();
+        }
+
+        public BasicBlock getHeader() {
+            return header;
+        }
+
+        // Sources of the back edges
+        public List<BasicBlock> getLatches() {
+            return latches;
+        }
+
+        public boolean contains(BasicBlock block) {
+            return blocks.get(block.getId());
+        }
+
+        public BitSet getBlockIds() {
+            return blocks;
+        }
+
+        public List<BasicBlock> getBlocks(ControlFlowGraph cfg) {
+            List<BasicBlock> result = new ArrayList<>();
+            for (int id = blocks.nextSetBit(0); id >= 0; id = blocks.nextSetBit(id + 1)) {
+                result.add(cfg.getBlock(id));
+            }
+            return result;
+        }
+
+        // Blocks outside the loop that are entered from inside it
+        public List<BasicBlock> getExits(ControlFlowGraph cfg) {
+            List<BasicBlock> exits = new ArrayList<>();
+            for (BasicBlock block : getBlocks(cfg)) {
+                for (BasicBlock successor : block.getSuccessors()) {
+                    if (!contains(successor) && !exits.contains(successor)) {
+                        exits.add(successor);
+                    }
+                }
+            }
+            return exits;
+        }
+
+        // Predecessors of the header from outside the loop
+        public List<BasicBlock> getEntries() {
+            List<BasicBlock> entries = new ArrayList<>();
+            for (BasicBlock predecessor : header.getPredecessors()) {
+                if (!contains(predecessor)) {
+                    entries.add(predecessor);
+                }
+            }
+            return entries;
+        }
+
+        public Loop getParent() {
+            return parent;
+        }
+
+        public List<Loop> getChildren() {
+            return children;
+        }
+
+        // 1 for outermost loops
+        public int getDepth() {
+            return depth;
+        }
+
+        public int size() {
+            return blocks.cardinality();
+        }
+
+        @Override
+        public String toString() {
+            return "Loop(" + header + ", " + blocks + ")";
+        }
+    }
+
+    public LoopForest(ControlFlowGraph cfg, DominatorTree dominators) {
+        this.loops = new ArrayList<>();
+        this.roots = new ArrayList<>();
+        this.innermost = new Loop[cfg.size()];
+
+        Loop[] byHeader = new Loop[cfg.size()];
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (!dominators.isReachable(block.getId())) {
+                continue;
+            }
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (dominators.dominates(successor.getId(), block.getId())) {
+                    Loop loop = byHeader[successor.getId()];
+                    if (loop == null) {
+                        loop = new Loop(successor);
+                        byHeader[successor.getId()] = loop;
+                        loops.add(loop);
+                    }
+                    loop.latches.add(block);
+                    collectBody(loop, block);
+                }
+            }
+        }
+
+        // Larger loops first, so each loop's parent is the last enclosing loop seen before it
+        loops.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        for (int i = 0; i < loops.size(); i++) {
+            Loop loop = loops.get(i);
+            for (int j = i - 1; j >= 0; j--) {
+                Loop candidate = loops.get(j);
+                if (candidate.contains(loop.header)) {
+                    loop.parent = candidate;
+                    candidate.children.add(loop);
+                    break;
+                }
+            }
+            if (loop.parent == null) {
+                roots.add(loop);
+            }
+            loop.depth = loop.parent == null ? 1 : loop.parent.depth + 1;
+
+            for (int id = loop.blocks.nextSetBit(0); id >= 0; id = loop.blocks.nextSetBit(id + 1)) {
+                innermost[id] = loop;
+            }
+        }
+    }
+
+    private static void collectBody(Loop loop, BasicBlock latch) {
+        loop.blocks.set(loop.header.getId());
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        if (!loop.blocks.get(latch.getId())) {
+            loop.blocks.set(latch.getId());
+            worklist.push(latch);
+        }
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.pop();
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                if (!loop.blocks.get(predecessor.getId())) {
+                    loop.blocks.set(predecessor.getId());
+                    worklist.push(predecessor);
+                }
+            }
+        }
+    }
+
+    // Outer loops before the loops they contain
+    public List<Loop> getLoops() {
+        return Collections.unmodifiableList(loops);
+    }
+
+    public List<Loop> getRoots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    // Innermost loop containing the block, or null
+    public Loop getLoop(BasicBlock block) {
+        return innermost[block.getId()];
+    }
+
+    public int getDepth(BasicBlock block) {
+        Loop loop = getLoop(block);
+        return loop == null ? 0 : loop.depth;
+    }
+
+    // Innermost loops first, the order in which loop transformations usually want them
+    public List<Loop> innermostFirst() {
+        List<Loop> result = new ArrayList<>(loops);
+        Collections.reverse(result);
+        return result;
+    }
+}
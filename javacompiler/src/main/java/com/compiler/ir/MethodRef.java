@@ -0,0 +1,65 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Purity;
+import com.compiler.ast.Type;
+
+import java.util.List;
+import java.util.Objects;
+
+public final class MethodRef {
+    private final String owner;
+    private final String name;
+    private final List<Type> parameterTypes;
+    private final Type returnType;
+    private final Purity purity;
+
+    public MethodRef(String owner, String name, List<Type> parameterTypes, Type returnType, Purity purity) {
+        this.owner = owner;
+        this.name = name;
+        this.parameterTypes = parameterTypes;
+        this.returnType = returnType;
+        this.purity = purity;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Type> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    public boolean isVoid() {
+        return returnType.getName().equals("void") && !returnType.isArray();
+    }
+
+    // Null when purity analysis has not run
+    public Purity getPurity() {
+        return purity;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MethodRef)) return false;
+        MethodRef other = (MethodRef) obj;
+        return owner.equals(other.owner) && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(owner, name);
+    }
+
+    @Override
+    public String toString() {
+        return owner + "." + name;
+    }
+}
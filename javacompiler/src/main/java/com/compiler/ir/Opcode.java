@@ -0,0 +1,102 @@
+package com.compiler.ir;
+
+// IR operations. Operand layout per opcode (dst is NONE where no value is produced):
+//   MOVE dst, src                    ADD..SHR dst, a, b           NEG/NOT dst, a
+//   GETFIELD dst, obj, field         PUTFIELD obj, field, value
+//   ALOAD dst, array, index          ASTORE array, index, value
+//   NEW dst, type                    NEWARRAY dst, size, elementType
+//   CALL dst?, method, receiver, args...                         PRINT [value]
+//   NULLCHECK object                 (throws NullPointerException for null, as a call would)
+//   LABEL label    GOTO label    IF_FALSE cond, label    RETURN [value]
+//   PHI dst, values...  (one value per predecessor block, in predecessor order)
+public enum Opcode {
+    MOVE(Flags.VALUE),
+    ADD(Flags.VALUE | Flags.COMMUTATIVE),
+    SUB(Flags.VALUE),
+    MUL(Flags.VALUE | Flags.COMMUTATIVE),
+    DIV(Flags.VALUE | Flags.MAY_THROW),
+    MOD(Flags.VALUE | Flags.MAY_THROW),
+    EQ(Flags.VALUE | Flags.COMMUTATIVE | Flags.COMPARISON),
+    NE(Flags.VALUE | Flags.COMMUTATIVE | Flags.COMPARISON),
+    LT(Flags.VALUE | Flags.COMPARISON),
+    GT(Flags.VALUE | Flags.COMPARISON),
+    LE(Flags.VALUE | Flags.COMPARISON),
+    GE(Flags.VALUE | Flags.COMPARISON),
+    AND(Flags.VALUE | Flags.COMMUTATIVE),
+    OR(Flags.VALUE | Flags.COMMUTATIVE),
+    // Shifts by a constant count; only introduced by optimization passes
+    SHL(Flags.VALUE),
+    SHR(Flags.VALUE),
+    NEG(Flags.VALUE),
+    NOT(Flags.VALUE),
+    GETFIELD(Flags.VALUE | Flags.MAY_THROW | Flags.READS_MEMORY),
+    PUTFIELD(Flags.SIDE_EFFECT | Flags.MAY_THROW),
+    ALOAD(Flags.VALUE | Flags.MAY_THROW | Flags.READS_MEMORY),
+    ASTORE(Flags.SIDE_EFFECT | Flags.MAY_THROW),
+    NEW(Flags.VALUE | Flags.SIDE_EFFECT),
+    NEWARRAY(Flags.VALUE | Flags.SIDE_EFFECT | Flags.MAY_THROW),
+    CALL(Flags.VALUE | Flags.SIDE_EFFECT | Flags.MAY_THROW | Flags.READS_MEMORY),
+    PRINT(Flags.SIDE_EFFECT),
+    NULLCHECK(Flags.SIDE_EFFECT | Flags.MAY_THROW),
+    LABEL(0),
+    GOTO(Flags.BRANCH | Flags.TERMINATOR),
+    IF_FALSE(Flags.BRANCH),
+    RETURN(Flags.TERMINATOR | Flags.SIDE_EFFECT),
+    PHI(Flags.VALUE);
+
+    private final int flags;
+
+    Opcode(int flags) {
+        this.flags = flags;
+    }
+
+    // May define a value in dst (CALL only does for non-void methods)
+    public boolean producesValue() {
+        return (flags & Flags.VALUE) != 0;
+    }
+
+    public boolean isCommutative() {
+        return (flags & Flags.COMMUTATIVE) != 0;
+    }
+
+    public boolean isComparison() {
+        return (flags & Flags.COMPARISON) != 0;
+    }
+
+    // Conservative for CALL: passes that know the callee's purity can do better
+    public boolean hasSideEffects() {
+        return (flags & Flags.SIDE_EFFECT) != 0;
+    }
+
+    public boolean mayThrow() {
+        return (flags & Flags.MAY_THROW) != 0;
+    }
+
+    public boolean readsMemory() {
+        return (flags & Flags.READS_MEMORY) != 0;
+    }
+
+    public boolean isBranch() {
+        return (flags & Flags.BRANCH) != 0;
+    }
+
+    // Control never falls through to the next instruction
+    public boolean isTerminator() {
+        return (flags & Flags.TERMINATOR) != 0;
+    }
+
+    public boolean endsBlock() {
+        return isBranch() || isTerminator();
+    }
+
+    private static final class Flags {
+        static final int VALUE = 1;
+        static final int COMMUTATIVE = 1 << 1;
+        static final int COMPARISON = 1 << 2;
+        static final int SIDE_EFFECT = 1 << 3;
+        static final int MAY_THROW = 1 << 4;
+        static final int READS_MEMORY = 1 << 5;
+        static final int BRANCH = 1 << 6;
+        static final int TERMINATOR = 1 << 7;
+    }
+}
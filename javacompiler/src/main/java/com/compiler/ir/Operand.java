@@ -0,0 +1,64 @@
+package com.compiler.ir;
+
+// Operands are plain ints: the kind lives in the top bits and an index into the owning
+// method's variable, constant, label or symbol table in the rest. 0 means "no operand".
+public final class Operand {
+    public static final int NONE = 0;
+
+    public static final int TEMP = 1;
+    public static final int LOCAL = 2;
+    public static final int CONST = 3;
+    public static final int LABEL = 4;
+    public static final int SYMBOL = 5;
+
+    private static final int KIND_SHIFT = 28;
+    private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+
+    private Operand() {
+    }
+
+    public static int make(int kind, int index) {
+        if (index < 0 || index > INDEX_MASK) {
+            throw new IllegalArgumentException("Operand index out of range: " + index);
+        }
+        return (kind << KIND_SHIFT) | index;
+    }
+
+    public static int kind(int operand) {
+        return operand >>> KIND_SHIFT;
+    }
+
+    public static int index(int operand) {
+        return operand & INDEX_MASK;
+    }
+
+    public static boolean isVar(int operand) {
+        int kind = kind(operand);
+        return kind == TEMP || kind == LOCAL;
+    }
+
+    public static boolean isTemp(int operand) {
+        return kind(operand) == TEMP;
+    }
+
+    public static boolean isConst(int operand) {
+        return kind(operand) == CONST;
+    }
+
+    public static boolean isLabel(int operand) {
+        return kind(operand) == LABEL;
+    }
+
+    public static boolean isSymbol(int operand) {
+        return kind(operand) == SYMBOL;
+    }
+
+    // Operands that are read as values, as opposed to labels and symbols
+    public static boolean isValue(int operand) {
+        return isVar(operand) || isConst(operand);
+    }
+
+    public static int label(int index) {
+        return make(LABEL, index);
+    }
+}
@@ -0,0 +1,232 @@
+package com.compiler.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Puts a method's control-flow graph into SSA form (Cytron et al.): phis are placed on the
+// iterated dominance frontier of each variable's definitions, then every definition gets a
+// fresh version and uses are renamed walking the dominator tree.
+//
+// Only variables with more than one definition are renamed; 'this' and the parameters count
+// as defined on entry. The generator gives every value its own temp and defines each local
+// before any use in its scope, so a single definition already dominates all of its uses.
+// Phis are only placed for variables that are live across blocks (semi-pruned form), and
+// those that end up unused are dropped again. A phi input on a path where the variable is
+// not defined, such as a loop-body local on the loop entry edge, is the type's default value.
+public class SSABuilder {
+    private final ControlFlowGraph cfg;
+    private final IRMethod method;
+    private final Map<Insn, Integer> phiVariables;
+    private DominatorTree dominators;
+    private List<Deque<Integer>> stacks;
+    private int[] versionCounts;
+    private int insertedPhis;
+    private int renamedVariables;
+
+    public SSABuilder(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.phiVariables = new IdentityHashMap<>();
+    }
+
+    public void build() {
+        cfg.removeUnreachableBlocks();
+        dominators = DominatorTree.dominators(cfg);
+
+        int variableCount = method.getVariableCount();
+        int[] definitionCounts = new int[variableCount];
+        List<BitSet> definitionBlocks = new ArrayList<>();
+        for (int v = 0; v < variableCount; v++) {
+            definitionBlocks.add(new BitSet());
+        }
+        BitSet global = new BitSet();
+
+        for (int v = 0; v <= method.getParameterCount(); v++) {
+            definitionCounts[v]++;
+            definitionBlocks.get(v).set(cfg.getEntry().getId());
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            BitSet killed = new BitSet();
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg) && !killed.get(Operand.index(arg))) {
+                        global.set(Operand.index(arg));
+                    }
+                }
+                if (Operand.isVar(insn.getDst())) {
+                    int v = Operand.index(insn.getDst());
+                    definitionCounts[v]++;
+                    definitionBlocks.get(v).set(block.getId());
+                    killed.set(v);
+                }
+            }
+        }
+
+        BitSet renamed = new BitSet();
+        for (int v = 0; v < variableCount; v++) {
+            if (definitionCounts[v] > 1) {
+                renamed.set(v);
+            }
+        }
+        renamedVariables = renamed.cardinality();
+
+        BitSet[] frontiers = dominators.dominanceFrontiers(cfg);
+        for (int v = renamed.nextSetBit(0); v >= 0; v = renamed.nextSetBit(v + 1)) {
+            if (global.get(v)) {
+                placePhis(v, definitionBlocks.get(v), frontiers);
+            }
+        }
+
+        stacks = new ArrayList<>();
+        versionCounts = new int[variableCount];
+        for (int v = 0; v < variableCount; v++) {
+            Deque<Integer> stack = null;
+            if (renamed.get(v)) {
+                stack = new ArrayDeque<>();
+                if (v <= method.getParameterCount()) {
+                    stack.push(method.variable(v));
+                }
+            }
+            stacks.add(stack);
+        }
+        rename(cfg.getEntry());
+
+        removeDeadPhis();
+    }
+
+    private void placePhis(int variable, BitSet definitions, BitSet[] frontiers) {
+        BitSet hasPhi = new BitSet();
+        BitSet queued = (BitSet) definitions.clone();
+        Deque<Integer> worklist = new ArrayDeque<>();
+        for (int id = definitions.nextSetBit(0); id >= 0; id = definitions.nextSetBit(id + 1)) {
+            worklist.push(id);
+        }
+        while (!worklist.isEmpty()) {
+            BitSet frontier = frontiers[worklist.pop()];
+            for (int id = frontier.nextSetBit(0); id >= 0; id = frontier.nextSetBit(id + 1)) {
+                if (hasPhi.get(id)) {
+                    continue;
+                }
+                hasPhi.set(id);
+                BasicBlock block = cfg.getBlock(id);
+                int[] args = new int[block.getPredecessors().size()];
+                Insn phi = new Insn(Opcode.PHI, method.variable(variable), args);
+                block.getInsns().add(0, phi);
+                phiVariables.put(phi, variable);
+                if (!queued.get(id)) {
+                    queued.set(id);
+                    worklist.push(id);
+                }
+            }
+        }
+    }
+
+    private void rename(BasicBlock block) {
+        List<Integer> pushed = new ArrayList<>();
+
+        for (Insn insn : block.getInsns()) {
+            if (insn.getOpcode() != Opcode.PHI) {
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = current(args[i]);
+                }
+            }
+            int dst = insn.getDst();
+            if (Operand.isVar(dst) && stacks.get(Operand.index(dst)) != null) {
+                int v = Operand.index(dst);
+                int version = method.newVersion(method.variable(v), ++versionCounts[v]);
+                stacks.get(v).push(version);
+                pushed.add(v);
+                insn.setDst(version);
+            }
+        }
+
+        for (BasicBlock successor : block.getSuccessors()) {
+            int index = successor.getPredecessors().indexOf(block);
+            for (Insn phi : successor.getPhis()) {
+                Integer variable = phiVariables.get(phi);
+                if (variable != null) {
+                    phi.setArg(index, current(method.variable(variable)));
+                }
+            }
+        }
+
+        for (int child : dominators.getChildren(block.getId())) {
+            rename(cfg.getBlock(child));
+        }
+
+        for (int v : pushed) {
+            stacks.get(v).pop();
+        }
+    }
+
+    // The reaching version of a renamed variable, or the operand itself
+    private int current(int operand) {
+        if (!Operand.isVar(operand)) {
+            return operand;
+        }
+        Deque<Integer> stack = stacks.get(Operand.index(operand));
+        if (stack == null) {
+            return operand;
+        }
+        return stack.isEmpty() ? method.defaultValue(method.typeOf(operand)) : stack.peek();
+    }
+
+    // Phis whose results no real instruction needs, directly or through other phis
+    private void removeDeadPhis() {
+        BitSet live = new BitSet();
+        Deque<Insn> worklist = new ArrayDeque<>();
+        Map<Integer, Insn> phisByResult = new HashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == Opcode.PHI) {
+                    phisByResult.put(Operand.index(insn.getDst()), insn);
+                }
+            }
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() != Opcode.PHI) {
+                    markUses(insn, live, phisByResult, worklist);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            markUses(worklist.pop(), live, phisByResult, worklist);
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            block.getInsns().removeIf(insn -> insn.getOpcode() == Opcode.PHI
+                && !live.get(Operand.index(insn.getDst())));
+            insertedPhis += block.getPhiCount();
+        }
+    }
+
+    private static void markUses(Insn insn, BitSet live, Map<Integer, Insn> phisByResult, Deque<Insn> worklist) {
+        for (int arg : insn.getArgs()) {
+            if (!Operand.isVar(arg) || live.get(Operand.index(arg))) {
+                continue;
+            }
+            Insn phi = phisByResult.get(Operand.index(arg));
+            if (phi != null) {
+                live.set(Operand.index(arg));
+                worklist.push(phi);
+            }
+        }
+    }
+
+    public int getInsertedPhis() {
+        return insertedPhis;
+    }
+
+    // Variables that had more than one definition and were split into versions
+    public int getRenamedVariables() {
+        return renamedVariables;
+    }
+}
@@ -0,0 +1,317 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Type;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+// Takes a graph out of SSA form. Phis are first isolated with copies (Sreedhar's method I):
+// for x = PHI(a1..an), each ai is copied into a fresh ai' at the end of its predecessor, the
+// phi becomes x' = PHI(a1'..an') and x = x' follows it. Critical edges are split first so the
+// copies run on their edge only. The ai' and x' never interfere, so each phi with its
+// operands forms one congruence class that can share a variable.
+//
+// Then copies are coalesced, innermost loops first: the two sides of a MOVE are merged into
+// one class unless some member of one class is live where a member of the other is defined.
+// A value copied from another does not interfere with it. Each class is finally renamed to
+// one variable (the incoming one if it holds 'this' or a parameter, preferably a local), the
+// phis disappear and copies that became self-moves are dropped, as are split-edge blocks that
+// ended up empty.
+public class SSADestructor {
+    private final ControlFlowGraph cfg;
+    private final IRMethod method;
+    private int[] parent;
+    private List<List<Integer>> members;
+    private BitSet[] liveAtDefinition;
+    private Insn[] definitions;
+    private int insertedCopies;
+    private int remainingCopies;
+
+    public SSADestructor(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+    }
+
+    public void destruct() {
+        List<BasicBlock> splitBlocks = splitCriticalEdges();
+
+        List<int[]> phiClasses = isolatePhis();
+
+        int variableCount = method.getVariableCount();
+        parent = new int[variableCount];
+        members = new ArrayList<>();
+        for (int v = 0; v < variableCount; v++) {
+            parent[v] = v;
+            List<Integer> singleton = new ArrayList<>();
+            singleton.add(v);
+            members.add(singleton);
+        }
+        for (int[] phiClass : phiClasses) {
+            for (int i = 1; i < phiClass.length; i++) {
+                union(phiClass[0], phiClass[i]);
+            }
+        }
+
+        computeInterference();
+        coalesceCopies();
+        rewrite();
+        removeEmptyBlocks(splitBlocks);
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == Opcode.MOVE && Operand.isVar(insn.arg(0))) {
+                    remainingCopies++;
+                }
+            }
+        }
+    }
+
+    // Splits every edge from a block with several successors into a block with phis
+    private List<BasicBlock> splitCriticalEdges() {
+        List<BasicBlock> splitBlocks = new ArrayList<>();
+        for (BasicBlock block : new ArrayList<>(cfg.getBlocks())) {
+            if (block.getPhiCount() == 0) {
+                continue;
+            }
+            for (BasicBlock predecessor : new ArrayList<>(block.getPredecessors())) {
+                if (predecessor.getSuccessors().size() > 1) {
+                    splitBlocks.add(cfg.splitEdge(predecessor, block));
+                }
+            }
+        }
+        return splitBlocks;
+    }
+
+    // Returns the variables of each phi's congruence class: x' followed by a1'..an'
+    private List<int[]> isolatePhis() {
+        List<int[]> classes = new ArrayList<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Insn> phis = new ArrayList<>(block.getPhis());
+            for (int p = 0; p < phis.size(); p++) {
+                Insn phi = phis.get(p);
+                int[] phiClass = new int[phi.argCount() + 1];
+                for (int i = 0; i < phi.argCount(); i++) {
+                    int copy = method.newTemp(method.typeOf(phi.getDst()));
+                    block.getPredecessors().get(i).append(new Insn(Opcode.MOVE, copy, phi.arg(i)));
+                    phi.setArg(i, copy);
+                    phiClass[i + 1] = Operand.index(copy);
+                    insertedCopies++;
+                }
+                int result = method.newTemp(method.typeOf(phi.getDst()));
+                block.getInsns().add(phis.size() + p, new Insn(Opcode.MOVE, phi.getDst(), result));
+                phi.setDst(result);
+                phiClass[0] = Operand.index(result);
+                insertedCopies++;
+                classes.add(phiClass);
+            }
+        }
+        return classes;
+    }
+
+    // For every variable, the variables live right after its definition
+    private void computeInterference() {
+        Liveness liveness = new Liveness(cfg);
+        int variableCount = method.getVariableCount();
+        liveAtDefinition = new BitSet[variableCount];
+        definitions = new Insn[variableCount];
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+            List<Insn> insns = block.getInsns();
+            int phiCount = block.getPhiCount();
+            for (int i = insns.size() - 1; i >= phiCount; i--) {
+                Insn insn = insns.get(i);
+                if (Operand.isVar(insn.getDst())) {
+                    liveAtDefinition[Operand.index(insn.getDst())] = (BitSet) live.clone();
+                    definitions[Operand.index(insn.getDst())] = insn;
+                }
+                Liveness.transfer(insn, live);
+            }
+            for (Insn phi : block.getPhis()) {
+                liveAtDefinition[Operand.index(phi.getDst())] = (BitSet) live.clone();
+                definitions[Operand.index(phi.getDst())] = phi;
+            }
+        }
+        BitSet entryLive = liveness.liveAfter(cfg.getEntry(), -1);
+        for (int v = 0; v <= method.getParameterCount(); v++) {
+            BitSet live = (BitSet) entryLive.clone();
+            // All incoming values are defined together on entry
+            for (int w = 0; w <= method.getParameterCount(); w++) {
+                live.set(w);
+            }
+            liveAtDefinition[v] = live;
+        }
+    }
+
+    private void coalesceCopies() {
+        LoopForest loops = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        List<BasicBlock> order = new ArrayList<>(cfg.getBlocks());
+        order.sort(Comparator.comparingInt(block -> -loops.getDepth(block)));
+
+        for (BasicBlock block : order) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == Opcode.MOVE && Operand.isVar(insn.arg(0))) {
+                    int a = find(Operand.index(insn.getDst()));
+                    int b = find(Operand.index(insn.arg(0)));
+                    if (a != b && canMerge(a, b)) {
+                        union(a, b);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean canMerge(int a, int b) {
+        if (hasIncoming(a) && hasIncoming(b)) {
+            return false;
+        }
+        for (int x : members.get(a)) {
+            for (int y : members.get(b)) {
+                if (interferes(x, y) || isReference(x) != isReference(y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean hasIncoming(int root) {
+        for (int v : members.get(root)) {
+            if (v <= method.getParameterCount()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Locals and stack entries are typed by kind only, so ints and booleans may share
+    private boolean isReference(int v) {
+        Type type = method.getVariable(method.variable(v)).getType();
+        return type.isArray() || !type.isPrimitive();
+    }
+
+    private boolean interferes(int x, int y) {
+        return liveAt(x, y) || liveAt(y, x);
+    }
+
+    // Whether x is live where y is defined and holds a different value there
+    private boolean liveAt(int x, int y) {
+        if (liveAtDefinition[y] == null || !liveAtDefinition[y].get(x)) {
+            return false;
+        }
+        Insn definition = definitions[y];
+        return definition == null || definition.getOpcode() != Opcode.MOVE
+            || definition.arg(0) != method.variable(x);
+    }
+
+    private int find(int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return;
+        }
+        if (members.get(a).size() < members.get(b).size()) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        members.get(a).addAll(members.get(b));
+        members.get(b).clear();
+    }
+
+    // The variable a class is renamed to: the incoming one if any, else its first local,
+    // else its first temp
+    private int representative(int root) {
+        int best = -1;
+        for (int v : members.get(root)) {
+            if (v <= method.getParameterCount()) {
+                return v;
+            }
+            if (best < 0 || rank(v) < rank(best) || rank(v) == rank(best) && v < best) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private int rank(int v) {
+        return method.getVariable(method.variable(v)).isTemp() ? 1 : 0;
+    }
+
+    private void rewrite() {
+        int[] names = new int[parent.length];
+        for (int v = 0; v < parent.length; v++) {
+            if (find(v) == v) {
+                int representative = method.variable(representative(v));
+                for (int member : members.get(v)) {
+                    names[member] = representative;
+                }
+            }
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Insn> kept = new ArrayList<>();
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == Opcode.PHI) {
+                    continue;
+                }
+                if (Operand.isVar(insn.getDst())) {
+                    insn.setDst(names[Operand.index(insn.getDst())]);
+                }
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    if (Operand.isVar(args[i])) {
+                        args[i] = names[Operand.index(args[i])];
+                    }
+                }
+                if (insn.getOpcode() == Opcode.MOVE && insn.getDst() == insn.arg(0)) {
+                    continue;
+                }
+                kept.add(insn);
+            }
+            block.getInsns().clear();
+            block.getInsns().addAll(kept);
+        }
+    }
+
+    // Split-edge blocks whose copies were all coalesced away
+    private void removeEmptyBlocks(List<BasicBlock> splitBlocks) {
+        List<BasicBlock> removed = new ArrayList<>();
+        for (BasicBlock block : splitBlocks) {
+            if (!block.getInsns().isEmpty()) {
+                continue;
+            }
+            BasicBlock predecessor = block.getPredecessors().get(0);
+            BasicBlock successor = block.getSuccessors().get(0);
+            predecessor.getSuccessors().set(predecessor.getSuccessors().indexOf(block), successor);
+            successor.getPredecessors().set(successor.getPredecessors().indexOf(block), predecessor);
+            block.getPredecessors().clear();
+            block.getSuccessors().clear();
+            removed.add(block);
+        }
+        if (!removed.isEmpty()) {
+            cfg.removeBlocks(removed);
+        }
+    }
+
+    // PHI operands and results isolated with MOVEs before coalescing
+    public int getInsertedCopies() {
+        return insertedCopies;
+    }
+
+    // Variable-to-variable MOVEs left after coalescing, including ones from the original code
+    public int getRemainingCopies() {
+        return remainingCopies;
+    }
+}
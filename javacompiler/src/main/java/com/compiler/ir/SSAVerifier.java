@@ -0,0 +1,160 @@
+package com.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Structural checks for a graph in SSA form, run between passes to catch a broken pass at
+// the point where it breaks things rather than in the bytecode verifier:
+//   - successor and predecessor lists mirror each other and match each block's terminator
+//   - every block is reachable from the entry
+//   - phis come first in their block and have one operand per predecessor
+//   - every variable has at most one definition, and 'this' and the parameters none
+//   - every definition dominates its uses; a phi operand is used at the end of its predecessor
+public final class SSAVerifier {
+    private SSAVerifier() {
+    }
+
+    public static void check(ControlFlowGraph cfg, String pass) {
+        List<String> errors = verify(cfg);
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Invalid SSA after " + pass + " in "
+                + cfg.getMethod().getClassName() + "." + cfg.getMethod().getName() + ": "
+                + String.join("; ", errors) + "\n" + cfg.render());
+        }
+    }
+
+    public static List<String> verify(ControlFlowGraph cfg) {
+        List<String> errors = new ArrayList<>();
+        IRMethod method = cfg.getMethod();
+        checkEdges(cfg, errors);
+
+        DominatorTree dominators = DominatorTree.dominators(cfg);
+        int variableCount = method.getVariableCount();
+        int[] definitionBlock = new int[variableCount];
+        int[] definitionIndex = new int[variableCount];
+        Arrays.fill(definitionBlock, DominatorTree.NONE);
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (!dominators.isReachable(block.getId())) {
+                errors.add(block + " is unreachable");
+            }
+            List<Insn> insns = block.getInsns();
+            int phiCount = block.getPhiCount();
+            for (int i = 0; i < insns.size(); i++) {
+                Insn insn = insns.get(i);
+                if (insn.getOpcode() == Opcode.PHI && i >= phiCount) {
+                    errors.add(block + ": phi after a non-phi instruction");
+                }
+                if (insn.getOpcode() == Opcode.LABEL) {
+                    errors.add(block + ": label inside a block");
+                }
+                if (insn.getOpcode() == Opcode.PHI && insn.argCount() != block.getPredecessors().size()) {
+                    errors.add(block + ": " + format(method, insn) + " has " + insn.argCount()
+                        + " operands for " + block.getPredecessors().size() + " predecessors");
+                }
+                if (insn.getOpcode().endsBlock() && i != insns.size() - 1) {
+                    errors.add(block + ": " + insn.getOpcode() + " in the middle of the block");
+                }
+
+                int dst = insn.getDst();
+                if (!Operand.isVar(dst)) {
+                    continue;
+                }
+                int v = Operand.index(dst);
+                if (method.isIncoming(dst)) {
+                    errors.add(block + ": " + format(method, insn) + " redefines incoming "
+                        + method.getVariable(dst).getName());
+                } else if (definitionBlock[v] != DominatorTree.NONE) {
+                    errors.add(method.getVariable(dst).getName() + " is defined more than once");
+                } else {
+                    definitionBlock[v] = block.getId();
+                    definitionIndex[v] = i;
+                }
+            }
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Insn> insns = block.getInsns();
+            for (int i = 0; i < insns.size(); i++) {
+                Insn insn = insns.get(i);
+                for (int a = 0; a < insn.argCount(); a++) {
+                    int arg = insn.arg(a);
+                    if (!Operand.isVar(arg) || method.isIncoming(arg)) {
+                        continue;
+                    }
+                    int v = Operand.index(arg);
+                    String name = method.getVariable(arg).getName();
+                    if (definitionBlock[v] == DominatorTree.NONE) {
+                        errors.add(block + ": " + format(method, insn) + " uses undefined " + name);
+                        continue;
+                    }
+                    boolean dominated;
+                    if (insn.getOpcode() == Opcode.PHI) {
+                        if (a >= block.getPredecessors().size()) {
+                            continue;
+                        }
+                        int predecessor = block.getPredecessors().get(a).getId();
+                        dominated = dominators.dominates(definitionBlock[v], predecessor);
+                    } else if (definitionBlock[v] == block.getId()) {
+                        dominated = definitionIndex[v] < i;
+                    } else {
+                        dominated = dominators.dominates(definitionBlock[v], block.getId());
+                    }
+                    if (!dominated) {
+                        errors.add(block + ": " + format(method, insn) + " uses " + name
+                            + " where its definition does not dominate");
+                    }
+                }
+            }
+        }
+        return errors;
+    }
+
+    private static void checkEdges(ControlFlowGraph cfg, List<String> errors) {
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (cfg.getBlock(block.getId()) != block) {
+                errors.add(block + " has a stale id");
+            }
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (count(successor.getPredecessors(), block) != count(block.getSuccessors(), successor)) {
+                    errors.add(block + " -> " + successor + " is not mirrored in the predecessor list");
+                }
+            }
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                if (!predecessor.getSuccessors().contains(block)) {
+                    errors.add(predecessor + " -> " + block + " is missing from the successor list");
+                }
+            }
+
+            Insn terminator = block.getTerminator();
+            int expected;
+            if (terminator == null) {
+                expected = block.getSuccessors().size() <= 1 ? block.getSuccessors().size() : 1;
+            } else if (terminator.getOpcode() == Opcode.IF_FALSE) {
+                expected = 2;
+            } else if (terminator.getOpcode() == Opcode.GOTO) {
+                expected = 1;
+            } else {
+                expected = 0;
+            }
+            if (block.getSuccessors().size() != expected) {
+                errors.add(block + " has " + block.getSuccessors().size() + " successors for its terminator");
+            }
+        }
+    }
+
+    private static int count(List<BasicBlock> blocks, BasicBlock block) {
+        int count = 0;
+        for (BasicBlock candidate : blocks) {
+            if (candidate == block) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String format(IRMethod method, Insn insn) {
+        return "'" + IRPrinter.format(method, insn).trim() + "'";
+    }
+}
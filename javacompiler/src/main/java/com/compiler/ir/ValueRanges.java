@@ -0,0 +1,433 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.InductionVariables.Induction;
+import com.compiler.ir.InductionVariables.TripCount;
+import com.compiler.ir.LoopForest.Loop;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Integer range analysis over SSA form: for every int variable an interval [low, high] its
+// value stays within. Constants are exact, arithmetic follows interval arithmetic and gives
+// up on the whole int range wherever the result could wrap around, and a phi covers what
+// flows into it. Loads, calls and parameters can be anything.
+//
+// Two sources narrow ranges beyond that. A basic induction variable whose loop exits on a
+// test against a bound stays between its start and the last value passing the test plus
+// one step, as long as that cannot wrap. And a branch on a comparison of a variable with
+// something of known range holds in every block dominated by a successor it alone leads to,
+// so inside 'if (i < n)' the range of i ends below the highest n; copies of the variable are
+// narrowed alike. Branch knowledge is applied where a range is asked for, in a given block.
+//
+// Ranges are found by iterating over the blocks in reverse postorder until nothing changes.
+// A bound still moving after a few rounds, as around a loop the tests above say nothing
+// about, is widened to the end of the int range so that the iteration stops.
+public class ValueRanges {
+    private static final int WIDENING_ROUNDS = 2;
+
+    private final ControlFlowGraph cfg;
+    private final IRMethod method;
+    private final DominatorTree dominators;
+    private final Map<Integer, Integer> copies;
+    private final Map<Integer, Insn> definitions;
+    private final Map<BasicBlock, Insn> guards;
+    private final Map<Integer, TripCount> tripCounts;
+    private final Range[] ranges;
+    private final int[] updates;
+
+    // A closed interval of int values
+    public static final class Range {
+        public static final Range FULL = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        private final long low;
+        private final long high;
+
+        private Range(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        // The interval, or FULL when it reaches outside the int range
+        static Range of(long low, long high) {
+            return low < Integer.MIN_VALUE || high > Integer.MAX_VALUE ? FULL : new Range(low, high);
+        }
+
+        public long getLow() {
+            return low;
+        }
+
+        public long getHigh() {
+            return high;
+        }
+
+        public boolean isConstant() {
+            return low == high;
+        }
+
+        public boolean isNonNegative() {
+            return low >= 0;
+        }
+
+        Range union(Range other) {
+            return other == null ? this : new Range(Math.min(low, other.low), Math.max(high, other.high));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Range && ((Range) o).low == low && ((Range) o).high == high;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(low) * 31 + Long.hashCode(high);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + low + ", " + high + "]";
+        }
+    }
+
+    public ValueRanges(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.dominators = DominatorTree.dominators(cfg);
+        this.copies = new HashMap<>();
+        this.definitions = new HashMap<>();
+        this.guards = new HashMap<>();
+        this.tripCounts = new HashMap<>();
+        this.ranges = new Range[method.getVariableCount()];
+        this.updates = new int[method.getVariableCount()];
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (!Operand.isVar(insn.getDst())) {
+                    continue;
+                }
+                definitions.put(insn.getDst(), insn);
+                if (insn.getOpcode() == Opcode.MOVE && Operand.isVar(insn.arg(0))) {
+                    copies.put(insn.getDst(), insn.arg(0));
+                }
+            }
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            findGuard(block);
+        }
+        for (Loop loop : new LoopForest(cfg, dominators).getLoops()) {
+            TripCount tripCount = new InductionVariables(cfg, loop).getTripCount();
+            if (tripCount != null) {
+                tripCounts.put(tripCount.getInduction().getVariable(), tripCount);
+            }
+        }
+        for (int v = 0; v < ranges.length; v++) {
+            if (method.isIncoming(method.variable(v)) && isInt(method.variable(v))) {
+                ranges[v] = Range.FULL;
+            }
+        }
+        solve();
+    }
+
+    // The comparison a block's only predecessor branched on to get there, stored with its
+    // opcode negated when the block is reached when it fails
+    private void findGuard(BasicBlock block) {
+        if (block.getPredecessors().size() != 1) {
+            return;
+        }
+        BasicBlock predecessor = block.getPredecessors().get(0);
+        Insn branch = predecessor.getTerminator();
+        if (branch == null || branch.getOpcode() != Opcode.IF_FALSE || !Operand.isVar(branch.arg(0))) {
+            return;
+        }
+        Insn comparison = definitions.get(root(branch.arg(0)));
+        if (comparison == null || !comparison.getOpcode().isComparison()
+                || !isInt(comparison.arg(0)) || !isInt(comparison.arg(1))) {
+            return;
+        }
+        // IF_FALSE falls through while the condition holds
+        boolean holds = predecessor.getSuccessors().get(0) == block;
+        Opcode opcode = holds ? comparison.getOpcode() : InductionVariables.negate(comparison.getOpcode());
+        guards.put(block, new Insn(opcode, Operand.NONE, comparison.arg(0), comparison.arg(1)));
+    }
+
+    private void solve() {
+        List<BasicBlock> order = cfg.reversePostorder();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                for (Insn insn : block.getInsns()) {
+                    int dst = insn.getDst();
+                    if (!Operand.isVar(dst) || !isInt(dst) || method.isIncoming(dst)) {
+                        continue;
+                    }
+                    Range range = evaluate(insn, block);
+                    if (range == null) {
+                        continue;
+                    }
+                    int v = Operand.index(dst);
+                    Range old = ranges[v];
+                    if (old != null) {
+                        range = range.union(old);
+                        if (range.equals(old)) {
+                            continue;
+                        }
+                        if (++updates[v] > WIDENING_ROUNDS) {
+                            range = new Range(range.low < old.low ? Integer.MIN_VALUE : old.low,
+                                range.high > old.high ? Integer.MAX_VALUE : old.high);
+                        }
+                    }
+                    ranges[v] = range;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // Null while an operand has no range yet
+    private Range evaluate(Insn insn, BasicBlock block) {
+        switch (insn.getOpcode()) {
+            case MOVE:
+                return getRange(insn.arg(0), block);
+            case PHI:
+                return evaluatePhi(insn, block);
+            case NEG: {
+                Range a = getRange(insn.arg(0), block);
+                return a == null ? null : Range.of(-a.high, -a.low);
+            }
+            case ADD: case SUB: case MUL: case DIV: case MOD:
+            case AND: case OR: case SHL: case SHR: {
+                Range a = getRange(insn.arg(0), block);
+                Range b = getRange(insn.arg(1), block);
+                return a == null || b == null ? null : arithmetic(insn.getOpcode(), a, b);
+            }
+            default:
+                return Range.FULL;
+        }
+    }
+
+    private static Range arithmetic(Opcode opcode, Range a, Range b) {
+        switch (opcode) {
+            case ADD:
+                return Range.of(a.low + b.low, a.high + b.high);
+            case SUB:
+                return Range.of(a.low - b.high, a.high - b.low);
+            case MUL:
+                return hull(a.low * b.low, a.low * b.high, a.high * b.low, a.high * b.high);
+            case DIV:
+                // For a divisor of one sign the quotient moves the same way in each operand
+                if (b.low <= 0 && b.high >= 0) {
+                    return Range.FULL;
+                }
+                return hull(a.low / b.low, a.low / b.high, a.high / b.low, a.high / b.high);
+            case MOD: {
+                if (b.low <= 0 && b.high >= 0) {
+                    return Range.FULL;
+                }
+                long largest = Math.max(Math.abs(b.low), Math.abs(b.high)) - 1;
+                if (a.low >= 0) {
+                    return Range.of(0, Math.min(a.high, largest));
+                }
+                if (a.high <= 0) {
+                    return Range.of(Math.max(a.low, -largest), 0);
+                }
+                return Range.of(-largest, largest);
+            }
+            case AND:
+                if (a.low >= 0 && b.low >= 0) {
+                    return Range.of(0, Math.min(a.high, b.high));
+                }
+                if (a.low >= 0 || b.low >= 0) {
+                    return Range.of(0, a.low >= 0 ? a.high : b.high);
+                }
+                return Range.FULL;
+            case OR:
+                if (a.low >= 0 && b.low >= 0) {
+                    return Range.of(Math.max(a.low, b.low), Math.max(0, Long.highestOneBit(Math.max(a.high, b.high)) * 2 - 1));
+                }
+                return Range.FULL;
+            case SHL:
+                if (!b.isConstant() || b.low < 0 || b.low > 31) {
+                    return Range.FULL;
+                }
+                return Range.of(a.low << b.low, a.high << b.low);
+            case SHR:
+                if (!b.isConstant() || b.low < 0 || b.low > 31) {
+                    return Range.FULL;
+                }
+                return Range.of(a.low >> b.low, a.high >> b.low);
+            default:
+                return Range.FULL;
+        }
+    }
+
+    private static Range hull(long... values) {
+        long low = Long.MAX_VALUE;
+        long high = Long.MIN_VALUE;
+        for (long value : values) {
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+        }
+        return Range.of(low, high);
+    }
+
+    // The values flowing in, each as known at the end of its predecessor, or for the basic
+    // induction variable tested at a loop header, the values it can take from its bounds
+    private Range evaluatePhi(Insn phi, BasicBlock block) {
+        TripCount tripCount = tripCounts.get(phi.getDst());
+        if (tripCount != null) {
+            Range range = inductionRange(tripCount, block);
+            if (range != null) {
+                return range;
+            }
+        }
+        Range range = null;
+        List<BasicBlock> predecessors = block.getPredecessors();
+        for (int p = 0; p < predecessors.size(); p++) {
+            Range value = getRange(phi.arg(p), predecessors.get(p));
+            if (value != null) {
+                range = value.union(range);
+            }
+        }
+        return range;
+    }
+
+    // Each value after the first passed the test one step earlier, so it lies between the
+    // start and the bound plus a step, if getting there cannot wrap around
+    private Range inductionRange(TripCount tripCount, BasicBlock header) {
+        Induction induction = tripCount.getInduction();
+        Range init = getRange(induction.getInit(), header);
+        Range bound = getRange(tripCount.getBound(), header);
+        if (init == null || bound == null) {
+            return null;
+        }
+        long step = induction.getStep();
+        if (tripCount.isConstant() && init.isConstant()) {
+            long last = init.low + tripCount.getCount() * step;
+            return Range.of(Math.min(init.low, last), Math.max(init.low, last));
+        }
+        switch (tripCount.getComparison()) {
+            case LT:
+            case LE:
+                if (step <= 0) {
+                    return null;
+                }
+                long high = bound.high + step - (tripCount.getComparison() == Opcode.LT ? 1 : 0);
+                return high > Integer.MAX_VALUE ? null : Range.of(init.low, Math.max(init.high, high));
+            case GT:
+            case GE:
+                if (step >= 0) {
+                    return null;
+                }
+                long low = bound.low + step + (tripCount.getComparison() == Opcode.GT ? 1 : 0);
+                return low < Integer.MIN_VALUE ? null : Range.of(Math.min(init.low, low), init.high);
+            default:
+                return null;
+        }
+    }
+
+    // The range of an int operand anywhere in the method, or null for other operands and for
+    // variables on no path the analysis found
+    public Range getRange(int operand) {
+        if (Operand.isConst(operand)) {
+            Object value = method.getConstant(operand);
+            return value instanceof Integer ? Range.of((Integer) value, (Integer) value) : null;
+        }
+        return Operand.isVar(operand) && Operand.index(operand) < ranges.length ? ranges[Operand.index(operand)] : null;
+    }
+
+    // The range of an operand in a block, narrowed by the branches taken to reach it
+    public Range getRange(int operand, BasicBlock block) {
+        Range range = getRange(operand);
+        if (range == null || !Operand.isVar(operand)) {
+            return range;
+        }
+        int variable = root(operand);
+        for (int id = block.getId(); id != DominatorTree.NONE; id = dominators.getImmediateDominator(id)) {
+            Insn guard = guards.get(cfg.getBlock(id));
+            if (guard == null) {
+                continue;
+            }
+            Range narrowed = null;
+            if (root(guard.arg(0)) == variable && root(guard.arg(1)) != variable) {
+                narrowed = narrow(range, guard.getOpcode(), getRange(guard.arg(1)));
+            } else if (root(guard.arg(1)) == variable && root(guard.arg(0)) != variable) {
+                narrowed = narrow(range, InductionVariables.mirror(guard.getOpcode()), getRange(guard.arg(0)));
+            }
+            // An empty range would mean the block is never reached; it is not relied upon
+            if (narrowed != null && narrowed.low <= narrowed.high) {
+                range = narrowed;
+            }
+        }
+        return range;
+    }
+
+    // The part of a range where 'value comparison other' can hold
+    private static Range narrow(Range range, Opcode comparison, Range other) {
+        if (other == null) {
+            return null;
+        }
+        switch (comparison) {
+            case LT: return new Range(range.low, Math.min(range.high, other.high - 1));
+            case LE: return new Range(range.low, Math.min(range.high, other.high));
+            case GT: return new Range(Math.max(range.low, other.low + 1), range.high);
+            case GE: return new Range(Math.max(range.low, other.low), range.high);
+            case EQ: return new Range(Math.max(range.low, other.low), Math.min(range.high, other.high));
+            case NE:
+                if (!other.isConstant()) {
+                    return null;
+                }
+                return new Range(range.low == other.low ? range.low + 1 : range.low,
+                    range.high == other.low ? range.high - 1 : range.high);
+            default:
+                return null;
+        }
+    }
+
+    // TRUE or FALSE when 'a comparison b' comes out the same on every run reaching the block,
+    // otherwise null
+    public Boolean decide(Opcode comparison, int a, int b, BasicBlock block) {
+        Range left = getRange(a, block);
+        Range right = getRange(b, block);
+        if (left == null || right == null) {
+            return null;
+        }
+        switch (comparison) {
+            case LT: return left.high < right.low ? Boolean.TRUE : left.low >= right.high ? Boolean.FALSE : null;
+            case LE: return left.high <= right.low ? Boolean.TRUE : left.low > right.high ? Boolean.FALSE : null;
+            case GT: return left.low > right.high ? Boolean.TRUE : left.high <= right.low ? Boolean.FALSE : null;
+            case GE: return left.low >= right.high ? Boolean.TRUE : left.high < right.low ? Boolean.FALSE : null;
+            case EQ:
+            case NE: {
+                Boolean equal = null;
+                if (left.high < right.low || right.high < left.low) {
+                    equal = Boolean.FALSE;
+                } else if (left.isConstant() && left.equals(right)) {
+                    equal = Boolean.TRUE;
+                }
+                if (equal == null || comparison == Opcode.EQ) {
+                    return equal;
+                }
+                return !equal;
+            }
+            default:
+                return null;
+        }
+    }
+
+    // The variable at the start of a chain of copies
+    private int root(int operand) {
+        Integer source = copies.get(operand);
+        while (source != null) {
+            operand = source;
+            source = copies.get(operand);
+        }
+        return operand;
+    }
+
+    private boolean isInt(int operand) {
+        Type type = method.typeOf(operand);
+        return type != null && "int".equals(type.getName()) && !type.isArray();
+    }
+}
@@ -0,0 +1,314 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Base class for passes that rewrite method bodies. Every visit returns the node to use in
+// place of the visited one; nodes are only rebuilt when one of their children changed, and
+// rebuilt expressions keep the type computed by semantic analysis.
+public abstract class ASTRewriter implements ASTVisitor<ASTNode> {
+    protected static final Type INT = new Type("int");
+    protected static final Type BOOLEAN = new Type("boolean");
+
+    protected ClassDecl currentClass;
+    protected MethodDecl currentMethod;
+
+    public void rewrite(Program program) {
+        for (ClassDecl classDecl : program.getClasses()) {
+            currentClass = classDecl;
+            for (MethodDecl method : classDecl.getMethods()) {
+                rewrite(method);
+            }
+            currentClass = null;
+        }
+    }
+
+    protected void rewrite(MethodDecl method) {
+        currentMethod = method;
+        BlockStmt body = (BlockStmt) method.getBody().accept(this);
+        if (body != method.getBody()) {
+            method.setBody(body);
+        }
+        currentMethod = null;
+    }
+
+    protected Expression rewrite(Expression expression) {
+        return expression == null ? null : (Expression) expression.accept(this);
+    }
+
+    protected Statement rewrite(Statement statement) {
+        return statement == null ? null : (Statement) statement.accept(this);
+    }
+
+    protected <T extends Expression> T typed(T expression, Type type) {
+        expression.setExprType(type);
+        return expression;
+    }
+
+    // Typed int or boolean literal that takes the place of the original expression
+    protected Expression literal(Object value, Expression original) {
+        if (value instanceof Integer) {
+            return typed(new IntLiteral((Integer) value, original.getLine(), original.getColumn()), INT);
+        }
+        return typed(new BoolLiteral((Boolean) value, original.getLine(), original.getColumn()), BOOLEAN);
+    }
+
+    @Override
+    public ASTNode visit(Program program) {
+        return program;
+    }
+
+    @Override
+    public ASTNode visit(ClassDecl classDecl) {
+        return classDecl;
+    }
+
+    @Override
+    public ASTNode visit(FieldDecl fieldDecl) {
+        return fieldDecl;
+    }
+
+    @Override
+    public ASTNode visit(MethodDecl methodDecl) {
+        return methodDecl;
+    }
+
+    @Override
+    public ASTNode visit(Parameter parameter) {
+        return parameter;
+    }
+
+    @Override
+    public ASTNode visit(BlockStmt blockStmt) {
+        List<Statement> statements = new ArrayList<>();
+        boolean changed = false;
+
+        for (Statement stmt : blockStmt.getStatements()) {
+            Statement rewritten = rewrite(stmt);
+            changed |= rewritten != stmt;
+            statements.add(rewritten);
+        }
+
+        return changed ? new BlockStmt(statements, blockStmt.getLine(), blockStmt.getColumn()) : blockStmt;
+    }
+
+    @Override
+    public ASTNode visit(VarDeclStmt varDeclStmt) {
+        Expression init = rewrite(varDeclStmt.getInitializer());
+        if (init == varDeclStmt.getInitializer()) {
+            return varDeclStmt;
+        }
+        return new VarDeclStmt(varDeclStmt.getName(), varDeclStmt.getType(), init,
+            varDeclStmt.getLine(), varDeclStmt.getColumn());
+    }
+
+    @Override
+    public ASTNode visit(IfStmt ifStmt) {
+        Expression condition = rewrite(ifStmt.getCondition());
+        Statement thenStmt = rewrite(ifStmt.getThenStmt());
+        Statement elseStmt = rewrite(ifStmt.getElseStmt());
+
+        if (condition == ifStmt.getCondition() && thenStmt == ifStmt.getThenStmt()
+                && elseStmt == ifStmt.getElseStmt()) {
+            return ifStmt;
+        }
+        return new IfStmt(condition, thenStmt, elseStmt, ifStmt.getLine(), ifStmt.getColumn());
+    }
+
+    @Override
+    public ASTNode visit(WhileStmt whileStmt) {
+        Expression condition = rewrite(whileStmt.getCondition());
+        Statement body = rewrite(whileStmt.getBody());
+
+        if (condition == whileStmt.getCondition() && body == whileStmt.getBody()) {
+            return whileStmt;
+        }
+        return new WhileStmt(condition, body, whileStmt.getLine(), whileStmt.getColumn());
+    }
+
+    @Override
+    public ASTNode visit(ForStmt forStmt) {
+        Statement init = rewrite(forStmt.getInit());
+        Expression condition = rewrite(forStmt.getCondition());
+        Expression update = rewrite(forStmt.getUpdate());
+        Statement body = rewrite(forStmt.getBody());
+
+        if (init == forStmt.getInit() && condition == forStmt.getCondition()
+                && update == forStmt.getUpdate() && body == forStmt.getBody()) {
+            return forStmt;
+        }
+        return new ForStmt(init, condition, update, body, forStmt.getLine(), forStmt.getColumn());
+    }
+
+    @Override
+    public ASTNode visit(ReturnStmt returnStmt) {
+        Expression value = rewrite(returnStmt.getValue());
+        if (value == returnStmt.getValue()) {
+            return returnStmt;
+        }
+        return new ReturnStmt(value, returnStmt.getLine(), returnStmt.getColumn());
+    }
+
+    @Override
+    public ASTNode visit(ExprStmt exprStmt) {
+        Expression expression = rewrite(exprStmt.getExpression());
+        if (expression == exprStmt.getExpression()) {
+            return exprStmt;
+        }
+        return new ExprStmt(expression, exprStmt.getLine(), exprStmt.getColumn());
+    }
+
+    @Override
+    public ASTNode visit(BinaryExpr binaryExpr) {
+        Expression left = rewrite(binaryExpr.getLeft());
+        Expression right = rewrite(binaryExpr.getRight());
+
+        if (left == binaryExpr.getLeft() && right == binaryExpr.getRight()) {
+            return binaryExpr;
+        }
+        return typed(new BinaryExpr(left, binaryExpr.getOperator(), right,
+            binaryExpr.getLine(), binaryExpr.getColumn()), binaryExpr.getExprType());
+    }
+
+    @Override
+    public ASTNode visit(UnaryExpr unaryExpr) {
+        Expression operand = rewrite(unaryExpr.getOperand());
+        if (operand == unaryExpr.getOperand()) {
+            return unaryExpr;
+        }
+        return typed(new UnaryExpr(unaryExpr.getOperator(), operand,
+            unaryExpr.getLine(), unaryExpr.getColumn()), unaryExpr.getExprType());
+    }
+
+    @Override
+    public ASTNode visit(AssignExpr assignExpr) {
+        Expression target = rewriteTarget(assignExpr.getTarget());
+        Expression value = rewrite(assignExpr.getValue());
+
+        if (target == assignExpr.getTarget() && value == assignExpr.getValue()) {
+            return assignExpr;
+        }
+        return typed(new AssignExpr(target, value, assignExpr.getLine(), assignExpr.getColumn()),
+            assignExpr.getExprType());
+    }
+
+    // The target itself is a location, not a value: only its subexpressions are rewritten
+    protected Expression rewriteTarget(Expression target) {
+        if (target instanceof FieldAccessExpr) {
+            FieldAccessExpr access = (FieldAccessExpr) target;
+            Expression object = rewrite(access.getObject());
+            if (object == access.getObject()) {
+                return access;
+            }
+            return typed(new FieldAccessExpr(object, access.getFieldName(), access.getLine(), access.getColumn()),
+                access.getExprType());
+        }
+
+        if (target instanceof ArrayAccessExpr) {
+            ArrayAccessExpr access = (ArrayAccessExpr) target;
+            Expression array = rewrite(access.getArray());
+            Expression index = rewrite(access.getIndex());
+            if (array == access.getArray() && index == access.getIndex()) {
+                return access;
+            }
+            return typed(new ArrayAccessExpr(array, index, access.getLine(), access.getColumn()),
+                access.getExprType());
+        }
+
+        return target;
+    }
+
+    @Override
+    public ASTNode visit(CallExpr callExpr) {
+        Expression callee = rewrite(callExpr.getCallee());
+        List<Expression> args = rewriteAll(callExpr.getArguments());
+
+        if (callee == callExpr.getCallee() && args == callExpr.getArguments()) {
+            return callExpr;
+        }
+        return typed(new CallExpr(callee, callExpr.getMethodName(), args, callExpr.getLine(), callExpr.getColumn()),
+            callExpr.getExprType());
+    }
+
+    @Override
+    public ASTNode visit(FieldAccessExpr fieldAccessExpr) {
+        Expression object = rewrite(fieldAccessExpr.getObject());
+        if (object == fieldAccessExpr.getObject()) {
+            return fieldAccessExpr;
+        }
+        return typed(new FieldAccessExpr(object, fieldAccessExpr.getFieldName(),
+            fieldAccessExpr.getLine(), fieldAccessExpr.getColumn()), fieldAccessExpr.getExprType());
+    }
+
+    @Override
+    public ASTNode visit(ArrayAccessExpr arrayAccessExpr) {
+        Expression array = rewrite(arrayAccessExpr.getArray());
+        Expression index = rewrite(arrayAccessExpr.getIndex());
+
+        if (array == arrayAccessExpr.getArray() && index == arrayAccessExpr.getIndex()) {
+            return arrayAccessExpr;
+        }
+        return typed(new ArrayAccessExpr(array, index, arrayAccessExpr.getLine(), arrayAccessExpr.getColumn()),
+            arrayAccessExpr.getExprType());
+    }
+
+    @Override
+    public ASTNode visit(NewExpr newExpr) {
+        List<Expression> args = rewriteAll(newExpr.getArguments());
+        Expression size = rewrite(newExpr.getArraySize());
+
+        if (args == newExpr.getArguments() && size == newExpr.getArraySize()) {
+            return newExpr;
+        }
+        return typed(new NewExpr(newExpr.getType(), args, size, newExpr.getLine(), newExpr.getColumn()),
+            newExpr.getExprType());
+    }
+
+    // Returns the same list when no element changed
+    protected List<Expression> rewriteAll(List<Expression> expressions) {
+        if (expressions == null) {
+            return null;
+        }
+
+        List<Expression> result = new ArrayList<>();
+        boolean changed = false;
+        for (Expression expression : expressions) {
+            Expression rewritten = rewrite(expression);
+            changed |= rewritten != expression;
+            result.add(rewritten);
+        }
+        return changed ? result : expressions;
+    }
+
+    @Override
+    public ASTNode visit(IntLiteral intLiteral) {
+        return intLiteral;
+    }
+
+    @Override
+    public ASTNode visit(BoolLiteral boolLiteral) {
+        return boolLiteral;
+    }
+
+    @Override
+    public ASTNode visit(StringLiteral stringLiteral) {
+        return stringLiteral;
+    }
+
+    @Override
+    public ASTNode visit(NullLiteral nullLiteral) {
+        return nullLiteral;
+    }
+
+    @Override
+    public ASTNode visit(IdentifierExpr identifierExpr) {
+        return identifierExpr;
+    }
+
+    @Override
+    public ASTNode visit(ThisExpr thisExpr) {
+        return thisExpr;
+    }
+}
@@ -0,0 +1,299 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+import com.compiler.semantic.PurityAnalyzer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Interprets pure methods over int/boolean values at compile time. Anything the interpreter
+// cannot reproduce exactly (heap access, division by zero, exhausted budgets) aborts the
+// evaluation so the call is left to run normally.
+class ConstantEvaluator {
+    private static final Object NORMAL = new Object();
+    private static final Object VOID = new Object();
+    private static final Object UNASSIGNED = new Object();
+    private static final int MAX_DEPTH = 256;
+
+    private final int stepBudget;
+    private final long deadline;
+    private int steps;
+    private int depth;
+
+    ConstantEvaluator(int stepBudget, long timeBudgetMillis) {
+        this.stepBudget = stepBudget;
+        this.deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+    }
+
+    static class AbortException extends RuntimeException {
+        AbortException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // Returns an Integer or Boolean, or throws AbortException
+    Object call(ClassDecl owner, MethodDecl method, List<Object> args) {
+        if (method.getPurity() != Purity.PURE) {
+            throw new AbortException("Not pure: " + method.getName());
+        }
+        if (++depth > MAX_DEPTH) {
+            throw new AbortException("Recursion too deep");
+        }
+
+        Frame frame = new Frame(owner);
+        frame.enterScope();
+        for (int i = 0; i < args.size(); i++) {
+            frame.define(method.getParameters().get(i).getName(), args.get(i));
+        }
+
+        Object result = execute(method.getBody(), frame);
+        depth--;
+
+        if (result == NORMAL || result == VOID) {
+            throw new AbortException("No value returned from " + method.getName());
+        }
+        return result;
+    }
+
+    private void tick() {
+        steps++;
+        if (steps > stepBudget) {
+            throw new AbortException("Step budget exhausted");
+        }
+        if ((steps & 1023) == 0 && System.nanoTime() > deadline) {
+            throw new AbortException("Time budget exhausted");
+        }
+    }
+
+    // Returns NORMAL when execution falls through, otherwise the returned value
+    private Object execute(Statement stmt, Frame frame) {
+        tick();
+
+        if (stmt instanceof BlockStmt) {
+            frame.enterScope();
+            try {
+                for (Statement inner : ((BlockStmt) stmt).getStatements()) {
+                    Object result = execute(inner, frame);
+                    if (result != NORMAL) {
+                        return result;
+                    }
+                }
+                return NORMAL;
+            } finally {
+                frame.exitScope();
+            }
+        }
+
+        if (stmt instanceof VarDeclStmt) {
+            VarDeclStmt decl = (VarDeclStmt) stmt;
+            Object value = decl.getInitializer() != null ? evaluate(decl.getInitializer(), frame) : UNASSIGNED;
+            frame.define(decl.getName(), value);
+            return NORMAL;
+        }
+
+        if (stmt instanceof IfStmt) {
+            IfStmt ifStmt = (IfStmt) stmt;
+            if (asBoolean(evaluate(ifStmt.getCondition(), frame))) {
+                return execute(ifStmt.getThenStmt(), frame);
+            }
+            return ifStmt.getElseStmt() != null ? execute(ifStmt.getElseStmt(), frame) : NORMAL;
+        }
+
+        if (stmt instanceof WhileStmt) {
+            WhileStmt whileStmt = (WhileStmt) stmt;
+            while (asBoolean(evaluate(whileStmt.getCondition(), frame))) {
+                Object result = execute(whileStmt.getBody(), frame);
+                if (result != NORMAL) {
+                    return result;
+                }
+            }
+            return NORMAL;
+        }
+
+        if (stmt instanceof ForStmt) {
+            ForStmt forStmt = (ForStmt) stmt;
+            frame.enterScope();
+            try {
+                if (forStmt.getInit() != null) {
+                    execute(forStmt.getInit(), frame);
+                }
+                while (forStmt.getCondition() == null || asBoolean(evaluate(forStmt.getCondition(), frame))) {
+                    Object result = execute(forStmt.getBody(), frame);
+                    if (result != NORMAL) {
+                        return result;
+                    }
+                    if (forStmt.getUpdate() != null) {
+                        evaluate(forStmt.getUpdate(), frame);
+                    }
+                }
+                return NORMAL;
+            } finally {
+                frame.exitScope();
+            }
+        }
+
+        if (stmt instanceof ReturnStmt) {
+            ReturnStmt returnStmt = (ReturnStmt) stmt;
+            return returnStmt.getValue() != null ? evaluate(returnStmt.getValue(), frame) : VOID;
+        }
+
+        if (stmt instanceof ExprStmt) {
+            evaluate(((ExprStmt) stmt).getExpression(), frame);
+            return NORMAL;
+        }
+
+        throw new AbortException("Unsupported statement");
+    }
+
+    private Object evaluate(Expression expr, Frame frame) {
+        tick();
+
+        if (expr instanceof IntLiteral) {
+            return ((IntLiteral) expr).getValue();
+        }
+
+        if (expr instanceof BoolLiteral) {
+            return ((BoolLiteral) expr).getValue();
+        }
+
+        if (expr instanceof IdentifierExpr) {
+            IdentifierExpr identifier = (IdentifierExpr) expr;
+            if (identifier.isField()) {
+                throw new AbortException("Field read");
+            }
+            return frame.lookup(identifier.getName());
+        }
+
+        if (expr instanceof AssignExpr) {
+            AssignExpr assign = (AssignExpr) expr;
+            if (!(assign.getTarget() instanceof IdentifierExpr) || ((IdentifierExpr) assign.getTarget()).isField()) {
+                throw new AbortException("Heap write");
+            }
+            Object value = evaluate(assign.getValue(), frame);
+            frame.assign(((IdentifierExpr) assign.getTarget()).getName(), value);
+            return value;
+        }
+
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            Object operand = evaluate(unary.getOperand(), frame);
+            return unary.getOperator() == UnaryExpr.UnaryOp.NEG ? -asInt(operand) : !asBoolean(operand);
+        }
+
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            // Both operands are always evaluated, matching the generated code
+            Object left = evaluate(binary.getLeft(), frame);
+            Object right = evaluate(binary.getRight(), frame);
+            return evaluateBinary(binary.getOperator(), left, right);
+        }
+
+        if (expr instanceof CallExpr) {
+            CallExpr call = (CallExpr) expr;
+            if (call.getCallee() != null && !(call.getCallee() instanceof ThisExpr)) {
+                throw new AbortException("Call on another object");
+            }
+            MethodDecl target = PurityAnalyzer.resolve(frame.owner, call.getMethodName());
+            if (target == null || target.getParameters().size() != call.getArguments().size()) {
+                throw new AbortException("Unresolved call: " + call.getMethodName());
+            }
+
+            List<Object> args = new ArrayList<>();
+            for (Expression arg : call.getArguments()) {
+                args.add(evaluate(arg, frame));
+            }
+            return call(frame.owner, target, args);
+        }
+
+        throw new AbortException("Unsupported expression");
+    }
+
+    static Object evaluateBinary(BinaryExpr.BinaryOp op, Object left, Object right) {
+        switch (op) {
+            case ADD: return asInt(left) + asInt(right);
+            case SUB: return asInt(left) - asInt(right);
+            case MUL: return asInt(left) * asInt(right);
+            case DIV:
+                if (asInt(right) == 0) {
+                    throw new AbortException("Division by zero");
+                }
+                return asInt(left) / asInt(right);
+            case MOD:
+                if (asInt(right) == 0) {
+                    throw new AbortException("Division by zero");
+                }
+                return asInt(left) % asInt(right);
+            case EQ: return left.equals(right);
+            case NE: return !left.equals(right);
+            case LT: return asInt(left) < asInt(right);
+            case GT: return asInt(left) > asInt(right);
+            case LE: return asInt(left) <= asInt(right);
+            case GE: return asInt(left) >= asInt(right);
+            case AND: return asBoolean(left) & asBoolean(right);
+            case OR: return asBoolean(left) | asBoolean(right);
+            default: throw new AbortException("Unknown operator");
+        }
+    }
+
+    private static int asInt(Object value) {
+        if (!(value instanceof Integer)) {
+            throw new AbortException("Expected int");
+        }
+        return (Integer) value;
+    }
+
+    private static boolean asBoolean(Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new AbortException("Expected boolean");
+        }
+        return (Boolean) value;
+    }
+
+    private static class Frame {
+        final ClassDecl owner;
+        final Deque<Map<String, Object>> scopes = new ArrayDeque<>();
+
+        Frame(ClassDecl owner) {
+            this.owner = owner;
+        }
+
+        void enterScope() {
+            scopes.push(new HashMap<>());
+        }
+
+        void exitScope() {
+            scopes.pop();
+        }
+
+        void define(String name, Object value) {
+            scopes.peek().put(name, value);
+        }
+
+        Object lookup(String name) {
+            for (Map<String, Object> scope : scopes) {
+                Object value = scope.get(name);
+                if (value != null) {
+                    if (value == UNASSIGNED) {
+                        throw new AbortException("Read of unassigned variable: " + name);
+                    }
+                    return value;
+                }
+            }
+            throw new AbortException("Unknown variable: " + name);
+        }
+
+        void assign(String name, Object value) {
+            for (Map<String, Object> scope : scopes) {
+                if (scope.containsKey(name)) {
+                    scope.put(name, value);
+                    return;
+                }
+            }
+            throw new AbortException("Unknown variable: " + name);
+        }
+    }
+}
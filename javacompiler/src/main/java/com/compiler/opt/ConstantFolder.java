@@ -0,0 +1,170 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+
+// Folds operators applied to int/boolean literals and simplifies algebraic identities such as
+// x + 0, x * 1, x * 0 and !!b. Folding follows JVM semantics: int arithmetic wraps on overflow
+// and division by zero is left in place so it still throws at run time. Since && and || evaluate
+// both operands, an operand is only dropped when evaluating it can have no observable effect.
+public class ConstantFolder extends ASTRewriter {
+    private int foldedExpressions;
+    private int simplifiedExpressions;
+
+    public int getFoldedExpressions() {
+        return foldedExpressions;
+    }
+
+    public int getSimplifiedExpressions() {
+        return simplifiedExpressions;
+    }
+
+    @Override
+    public ASTNode visit(BinaryExpr binaryExpr) {
+        BinaryExpr binary = (BinaryExpr) super.visit(binaryExpr);
+        Expression left = binary.getLeft();
+        Expression right = binary.getRight();
+
+        Object leftValue = literalValue(left);
+        Object rightValue = literalValue(right);
+        if (leftValue != null && rightValue != null) {
+            try {
+                Object value = ConstantEvaluator.evaluateBinary(binary.getOperator(), leftValue, rightValue);
+                foldedExpressions++;
+                return literal(value, binary);
+            } catch (ConstantEvaluator.AbortException e) {
+                return binary;
+            }
+        }
+
+        Expression simplified = simplify(binary, left, right, leftValue, rightValue);
+        if (simplified != binary) {
+            simplifiedExpressions++;
+        }
+        return simplified;
+    }
+
+    private Expression simplify(BinaryExpr binary, Expression left, Expression right,
+                                Object leftValue, Object rightValue) {
+        switch (binary.getOperator()) {
+            case ADD:
+                if (isInt(rightValue, 0)) return left;
+                if (isInt(leftValue, 0)) return right;
+                break;
+            case SUB:
+                if (isInt(rightValue, 0)) return left;
+                if (isInt(leftValue, 0)) {
+                    return typed(new UnaryExpr(UnaryExpr.UnaryOp.NEG, right, binary.getLine(), binary.getColumn()), INT);
+                }
+                break;
+            case MUL:
+                if (isInt(rightValue, 1)) return left;
+                if (isInt(leftValue, 1)) return right;
+                if ((isInt(rightValue, 0) && isSideEffectFree(left)) || (isInt(leftValue, 0) && isSideEffectFree(right))) {
+                    return literal(0, binary);
+                }
+                break;
+            case DIV:
+                if (isInt(rightValue, 1)) return left;
+                break;
+            case EQ:
+                // b == true is b, b == false is !b
+                if (rightValue instanceof Boolean) return condition(left, (Boolean) rightValue, binary);
+                if (leftValue instanceof Boolean) return condition(right, (Boolean) leftValue, binary);
+                break;
+            case NE:
+                if (rightValue instanceof Boolean) return condition(left, !(Boolean) rightValue, binary);
+                if (leftValue instanceof Boolean) return condition(right, !(Boolean) leftValue, binary);
+                break;
+            case AND:
+                if (Boolean.TRUE.equals(rightValue)) return left;
+                if (Boolean.TRUE.equals(leftValue)) return right;
+                if (Boolean.FALSE.equals(rightValue) && isSideEffectFree(left)) return literal(false, binary);
+                if (Boolean.FALSE.equals(leftValue) && isSideEffectFree(right)) return literal(false, binary);
+                break;
+            case OR:
+                if (Boolean.FALSE.equals(rightValue)) return left;
+                if (Boolean.FALSE.equals(leftValue)) return right;
+                if (Boolean.TRUE.equals(rightValue) && isSideEffectFree(left)) return literal(true, binary);
+                if (Boolean.TRUE.equals(leftValue) && isSideEffectFree(right)) return literal(true, binary);
+                break;
+            default:
+                break;
+        }
+        return binary;
+    }
+
+    @Override
+    public ASTNode visit(UnaryExpr unaryExpr) {
+        UnaryExpr unary = (UnaryExpr) super.visit(unaryExpr);
+        Expression operand = unary.getOperand();
+
+        if (operand instanceof IntLiteral && unary.getOperator() == UnaryExpr.UnaryOp.NEG) {
+            foldedExpressions++;
+            // Negating Integer.MIN_VALUE wraps around, exactly like INEG
+            return literal(-((IntLiteral) operand).getValue(), unary);
+        }
+        if (operand instanceof BoolLiteral && unary.getOperator() == UnaryExpr.UnaryOp.NOT) {
+            foldedExpressions++;
+            return literal(!((BoolLiteral) operand).getValue(), unary);
+        }
+
+        // !!b and -(-x)
+        if (operand instanceof UnaryExpr && ((UnaryExpr) operand).getOperator() == unary.getOperator()) {
+            simplifiedExpressions++;
+            return ((UnaryExpr) operand).getOperand();
+        }
+        return unary;
+    }
+
+    private Expression condition(Expression expression, boolean expected, BinaryExpr original) {
+        if (!BOOLEAN.equals(expression.getExprType())) {
+            return original;
+        }
+        if (expected) {
+            return expression;
+        }
+        if (expression instanceof UnaryExpr && ((UnaryExpr) expression).getOperator() == UnaryExpr.UnaryOp.NOT) {
+            return ((UnaryExpr) expression).getOperand();
+        }
+        return typed(new UnaryExpr(UnaryExpr.UnaryOp.NOT, expression, original.getLine(), original.getColumn()), BOOLEAN);
+    }
+
+    // Whether evaluating the expression can neither change state nor throw
+    static boolean isSideEffectFree(Expression expression) {
+        if (expression instanceof IntLiteral || expression instanceof BoolLiteral
+                || expression instanceof StringLiteral || expression instanceof NullLiteral
+                || expression instanceof IdentifierExpr || expression instanceof ThisExpr) {
+            return true;
+        }
+        if (expression instanceof UnaryExpr) {
+            return isSideEffectFree(((UnaryExpr) expression).getOperand());
+        }
+        if (expression instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expression;
+            BinaryExpr.BinaryOp op = binary.getOperator();
+            if ((op == BinaryExpr.BinaryOp.DIV || op == BinaryExpr.BinaryOp.MOD) && !isNonZeroLiteral(binary.getRight())) {
+                return false;
+            }
+            return isSideEffectFree(binary.getLeft()) && isSideEffectFree(binary.getRight());
+        }
+        return false;
+    }
+
+    private static boolean isNonZeroLiteral(Expression expression) {
+        return expression instanceof IntLiteral && ((IntLiteral) expression).getValue() != 0;
+    }
+
+    private static Object literalValue(Expression expression) {
+        if (expression instanceof IntLiteral) {
+            return ((IntLiteral) expression).getValue();
+        }
+        if (expression instanceof BoolLiteral) {
+            return ((BoolLiteral) expression).getValue();
+        }
+        return null;
+    }
+
+    private static boolean isInt(Object value, int expected) {
+        return value instanceof Integer && (Integer) value == expected;
+    }
+}
@@ -0,0 +1,325 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Sparse conditional constant propagation (Wegman and Zadeck) over SSA form. Each variable
+// starts unknown and can only move down to one constant and then to "varies"; a block is only
+// evaluated once an edge into it is known to execute, and a branch on a known condition only
+// marks the edge it takes. Phis meet just their executable inputs, so a value that is constant
+// on every path that actually runs is found even across loops and ifs.
+//
+// Afterwards uses of constant variables become the constant, their side-effect-free
+// definitions are deleted, branches on constants become jumps, and blocks that never execute
+// are removed.
+public class ConstantPropagator {
+    private static final int UNKNOWN = 0;
+    private static final int CONSTANT = 1;
+    private static final int VARIES = 2;
+
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private int[] states;
+    private Object[] values;
+    private boolean[] executableBlocks;
+    private List<List<Insn>> usesOf;
+    private Deque<BasicBlock[]> edgeWorklist;
+    private Deque<Insn> insnWorklist;
+    private Map<Insn, BasicBlock> owners;
+    private Set<Long> executableEdges;
+
+    private int constants;
+    private int removedInstructions;
+    private int removedBranches;
+    private int removedBlocks;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        int variableCount = method.getVariableCount();
+        states = new int[variableCount];
+        values = new Object[variableCount];
+        executableBlocks = new boolean[cfg.size()];
+        usesOf = new ArrayList<>();
+        for (int v = 0; v < variableCount; v++) {
+            usesOf.add(new ArrayList<>());
+        }
+        owners = new IdentityHashMap<>();
+        executableEdges = new HashSet<>();
+        edgeWorklist = new ArrayDeque<>();
+        insnWorklist = new ArrayDeque<>();
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                owners.put(insn, block);
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg)) {
+                        usesOf.get(Operand.index(arg)).add(insn);
+                    }
+                }
+            }
+        }
+        for (int v = 0; v <= method.getParameterCount(); v++) {
+            states[v] = VARIES;
+        }
+
+        propagate();
+        rewrite();
+    }
+
+    private void propagate() {
+        edgeWorklist.add(new BasicBlock[] {null, cfg.getEntry()});
+        while (!edgeWorklist.isEmpty() || !insnWorklist.isEmpty()) {
+            while (!edgeWorklist.isEmpty()) {
+                BasicBlock[] edge = edgeWorklist.poll();
+                BasicBlock from = edge[0];
+                BasicBlock to = edge[1];
+                if (from != null && !executableEdges.add(edgeKey(from, to))) {
+                    continue;
+                }
+                for (Insn phi : to.getPhis()) {
+                    visit(phi, to);
+                }
+                if (!executableBlocks[to.getId()]) {
+                    executableBlocks[to.getId()] = true;
+                    List<Insn> insns = to.getInsns();
+                    for (int i = to.getPhiCount(); i < insns.size(); i++) {
+                        visit(insns.get(i), to);
+                    }
+                    if (to.getTerminator() == null && to.getSuccessors().size() == 1) {
+                        edgeWorklist.add(new BasicBlock[] {to, to.getSuccessors().get(0)});
+                    }
+                }
+            }
+            while (!insnWorklist.isEmpty()) {
+                Insn insn = insnWorklist.poll();
+                BasicBlock block = owners.get(insn);
+                if (executableBlocks[block.getId()]) {
+                    visit(insn, block);
+                }
+            }
+        }
+    }
+
+    private static long edgeKey(BasicBlock from, BasicBlock to) {
+        return ((long) from.getId() << 32) | to.getId();
+    }
+
+    private void visit(Insn insn, BasicBlock block) {
+        switch (insn.getOpcode()) {
+            case PHI:
+                visitPhi(insn, block);
+                return;
+            case GOTO:
+                edgeWorklist.add(new BasicBlock[] {block, block.getSuccessors().get(0)});
+                return;
+            case IF_FALSE: {
+                int condition = insn.arg(0);
+                int state = stateOf(condition);
+                if (state == CONSTANT) {
+                    boolean taken = (Boolean) valueOf(condition);
+                    edgeWorklist.add(new BasicBlock[] {block, block.getSuccessors().get(taken ? 0 : 1)});
+                } else if (state == VARIES) {
+                    edgeWorklist.add(new BasicBlock[] {block, block.getSuccessors().get(0)});
+                    edgeWorklist.add(new BasicBlock[] {block, block.getSuccessors().get(1)});
+                }
+                return;
+            }
+            default:
+                break;
+        }
+        if (!Operand.isVar(insn.getDst())) {
+            return;
+        }
+
+        Opcode opcode = insn.getOpcode();
+        if (opcode == Opcode.MOVE) {
+            lower(insn.getDst(), stateOf(insn.arg(0)), valueOf(insn.arg(0)));
+            return;
+        }
+        if (!isFoldable(opcode)) {
+            lower(insn.getDst(), VARIES, null);
+            return;
+        }
+        int state = CONSTANT;
+        for (int arg : insn.getArgs()) {
+            state = Math.max(state, stateOf(arg));
+        }
+        if (state == UNKNOWN) {
+            return;
+        }
+        if (state == VARIES) {
+            lower(insn.getDst(), VARIES, null);
+            return;
+        }
+        Object a = valueOf(insn.arg(0));
+        Object b = insn.argCount() > 1 ? valueOf(insn.arg(1)) : null;
+        Object result = evaluate(opcode, a, b);
+        lower(insn.getDst(), result != null ? CONSTANT : VARIES, result);
+    }
+
+    private void visitPhi(Insn phi, BasicBlock block) {
+        int state = UNKNOWN;
+        Object value = null;
+        List<BasicBlock> predecessors = block.getPredecessors();
+        for (int i = 0; i < phi.argCount(); i++) {
+            if (!executableEdges.contains(edgeKey(predecessors.get(i), block))) {
+                continue;
+            }
+            int arg = phi.arg(i);
+            int argState = stateOf(arg);
+            if (argState == UNKNOWN) {
+                continue;
+            }
+            if (argState == VARIES || state == CONSTANT && !sameValue(value, valueOf(arg))) {
+                state = VARIES;
+                break;
+            }
+            state = CONSTANT;
+            value = valueOf(arg);
+        }
+        lower(phi.getDst(), state, value);
+    }
+
+    // Lattice values only move down; a change requeues the users of the variable
+    private void lower(int variable, int state, Object value) {
+        int v = Operand.index(variable);
+        if (state <= states[v]) {
+            return;
+        }
+        states[v] = state;
+        values[v] = value;
+        insnWorklist.addAll(usesOf.get(v));
+    }
+
+    private int stateOf(int operand) {
+        if (Operand.isConst(operand)) {
+            return isFoldableConstant(method.getConstant(operand)) ? CONSTANT : VARIES;
+        }
+        if (Operand.isVar(operand)) {
+            return states[Operand.index(operand)];
+        }
+        return VARIES;
+    }
+
+    private Object valueOf(int operand) {
+        if (Operand.isConst(operand)) {
+            return method.getConstant(operand);
+        }
+        return Operand.isVar(operand) ? values[Operand.index(operand)] : null;
+    }
+
+    // Strings and null stay out of the lattice: reference comparisons are left to run time
+    private static boolean isFoldableConstant(Object value) {
+        return value instanceof Integer || value instanceof Boolean;
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        return a.equals(b);
+    }
+
+    private static boolean isFoldable(Opcode opcode) {
+        switch (opcode) {
+            case ADD: case SUB: case MUL: case DIV: case MOD:
+            case EQ: case NE: case LT: case GT: case LE: case GE:
+            case AND: case OR: case SHL: case SHR: case NEG: case NOT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Result of an arithmetic, comparison, logical or bitwise opcode on Integer/Boolean operands, or
+    // null when it cannot be computed without running the program (division by zero)
+    static Object evaluate(Opcode opcode, Object a, Object b) {
+        switch (opcode) {
+            case NEG: return -(Integer) a;
+            case NOT: return !(Boolean) a;
+            case ADD: return (Integer) a + (Integer) b;
+            case SUB: return (Integer) a - (Integer) b;
+            case MUL: return (Integer) a * (Integer) b;
+            case DIV: return (Integer) b == 0 ? null : (Object) ((Integer) a / (Integer) b);
+            case MOD: return (Integer) b == 0 ? null : (Object) ((Integer) a % (Integer) b);
+            case EQ: return a.equals(b);
+            case NE: return !a.equals(b);
+            case LT: return (Integer) a < (Integer) b;
+            case GT: return (Integer) a > (Integer) b;
+            case LE: return (Integer) a <= (Integer) b;
+            case GE: return (Integer) a >= (Integer) b;
+            case AND: return a instanceof Integer ? (Object) ((Integer) a & (Integer) b) : (Boolean) a && (Boolean) b;
+            case OR: return a instanceof Integer ? (Object) ((Integer) a | (Integer) b) : (Boolean) a || (Boolean) b;
+            case SHL: return (Integer) a << (Integer) b;
+            case SHR: return (Integer) a >> (Integer) b;
+            default: return null;
+        }
+    }
+
+    private void rewrite() {
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Insn> kept = new ArrayList<>();
+            for (Insn insn : block.getInsns()) {
+                int dst = insn.getDst();
+                if (Operand.isVar(dst) && states[Operand.index(dst)] == CONSTANT) {
+                    // Everything foldable has no side effects, and a CALL never becomes constant
+                    constants++;
+                    removedInstructions++;
+                    continue;
+                }
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    if (Operand.isVar(args[i]) && states[Operand.index(args[i])] == CONSTANT) {
+                        args[i] = method.constant(values[Operand.index(args[i])]);
+                    }
+                }
+                kept.add(insn);
+            }
+            block.getInsns().clear();
+            block.getInsns().addAll(kept);
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            Insn terminator = block.getTerminator();
+            if (!executableBlocks[block.getId()] || terminator == null
+                    || terminator.getOpcode() != Opcode.IF_FALSE || !Operand.isConst(terminator.arg(0))) {
+                continue;
+            }
+            Object condition = method.getConstant(terminator.arg(0));
+            cfg.replaceBranch(block, block.getSuccessors().get((Boolean) condition ? 0 : 1));
+            removedBranches++;
+            removedInstructions++;
+        }
+
+        removedBlocks += cfg.removeUnreachableBlocks();
+    }
+
+    // Variables found to hold one constant on every path
+    public int getConstants() {
+        return constants;
+    }
+
+    // Definitions of constants and branches on them
+    public int getRemovedInstructions() {
+        return removedInstructions;
+    }
+
+    public int getRemovedBranches() {
+        return removedBranches;
+    }
+
+    public int getRemovedBlocks() {
+        return removedBlocks;
+    }
+}
@@ -0,0 +1,50 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Copy propagation over SSA form. The lowering computes every expression into a temp and then
+// copies it into the variable it is assigned to, and GVN, the inliner and the loop passes
+// leave copies of their own. Since an SSA variable never changes, every use of a copy can
+// read its source instead, so the copies are deleted and the instruction that computed the
+// source defines the value directly. Chains of copies resolve to their first source.
+public class CopyPropagator {
+    private int propagatedCopies;
+
+    public void run(ControlFlowGraph cfg) {
+        Map<Integer, Integer> sources = new HashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            block.getInsns().removeIf(insn -> {
+                if (insn.getOpcode() != Opcode.MOVE || !Operand.isVar(insn.getDst())) {
+                    return false;
+                }
+                sources.put(insn.getDst(), insn.arg(0));
+                propagatedCopies++;
+                return true;
+            });
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    Integer source = sources.get(args[i]);
+                    while (source != null) {
+                        args[i] = source;
+                        source = sources.get(source);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getPropagatedCopies() {
+        return propagatedCopies;
+    }
+}
@@ -0,0 +1,321 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Mark-and-sweep dead code elimination over SSA form (Cytron et al.'s aggressive variant).
+// Instructions with effects the program can observe are live from the start: output, stores,
+// calls, allocation, returns, and anything that may throw. Liveness then flows to the
+// definitions of the operands of live instructions, and to the branches that decide whether
+// a live instruction runs (its reverse dominance frontier). Everything unmarked is deleted.
+//
+// An unmarked branch becomes a jump to the nearest post-dominator that still does something.
+// Branches that leave a loop are always kept, so a loop that might not terminate is never
+// removed, and branch removal is skipped in methods with a block that cannot reach an exit.
+// A call whose result is unused keeps running but no longer stores it.
+public class DeadCodeEliminator {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private Set<Insn> live;
+    private boolean[] usefulBlocks;
+    private Deque<Insn> worklist;
+    private Map<Insn, BasicBlock> owners;
+    private Insn[] definitions;
+    private BitSet[] controlDependences;
+    private DominatorTree postDominators;
+
+    private int removedInstructions;
+    private int removedBranches;
+    private int removedBlocks;
+    private int droppedResults;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.live = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.usefulBlocks = new boolean[cfg.size()];
+        this.worklist = new ArrayDeque<>();
+        this.owners = new IdentityHashMap<>();
+        this.definitions = new Insn[method.getVariableCount()];
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                owners.put(insn, block);
+                if (Operand.isVar(insn.getDst())) {
+                    definitions[Operand.index(insn.getDst())] = insn;
+                }
+            }
+        }
+        computeControlDependences();
+
+        mark();
+        sweep();
+    }
+
+    // Reverse dominance frontiers: the branches each block is control dependent on. Left
+    // null when some block cannot reach an exit, which keeps every branch.
+    private void computeControlDependences() {
+        postDominators = DominatorTree.postDominators(cfg);
+        int exit = cfg.size();
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (!postDominators.isReachable(block.getId())) {
+                controlDependences = null;
+                return;
+            }
+        }
+        controlDependences = new BitSet[cfg.size()];
+        for (int i = 0; i < controlDependences.length; i++) {
+            controlDependences[i] = new BitSet();
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (block.getSuccessors().size() < 2) {
+                continue;
+            }
+            int ipdom = postDominators.getImmediateDominator(block.getId());
+            for (BasicBlock successor : block.getSuccessors()) {
+                int runner = successor.getId();
+                while (runner != ipdom && runner != exit) {
+                    controlDependences[runner].set(block.getId());
+                    runner = postDominators.getImmediateDominator(runner);
+                }
+            }
+        }
+    }
+
+    private void mark() {
+        LoopForest loops = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (hasEffect(method, insn) || insn.getOpcode() == Opcode.IF_FALSE
+                        && (controlDependences == null || exitsLoop(block, loops))) {
+                    markLive(insn);
+                }
+            }
+            // Falling off the end of a method is an effect of its own
+            if (block.getSuccessors().isEmpty()) {
+                usefulBlocks[block.getId()] = true;
+                markControlDependences(block);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            Insn insn = worklist.pop();
+            BasicBlock block = owners.get(insn);
+            for (int arg : insn.getArgs()) {
+                if (Operand.isVar(arg) && definitions[Operand.index(arg)] != null) {
+                    markLive(definitions[Operand.index(arg)]);
+                }
+            }
+            markControlDependences(block);
+            if (insn.getOpcode() == Opcode.PHI) {
+                // Which value arrives depends on the edge taken into the block
+                for (BasicBlock predecessor : block.getPredecessors()) {
+                    Insn terminator = predecessor.getTerminator();
+                    if (terminator != null && terminator.getOpcode() == Opcode.IF_FALSE) {
+                        markLive(terminator);
+                    }
+                    markControlDependences(predecessor);
+                }
+            }
+        }
+    }
+
+    private void markLive(Insn insn) {
+        if (live.add(insn)) {
+            worklist.push(insn);
+            usefulBlocks[owners.get(insn).getId()] = true;
+        }
+    }
+
+    private void markControlDependences(BasicBlock block) {
+        if (controlDependences == null) {
+            return;
+        }
+        BitSet branches = controlDependences[block.getId()];
+        for (int id = branches.nextSetBit(0); id >= 0; id = branches.nextSetBit(id + 1)) {
+            markLive(cfg.getBlock(id).getTerminator());
+        }
+    }
+
+    private static boolean exitsLoop(BasicBlock block, LoopForest loops) {
+        LoopForest.Loop loop = loops.getLoop(block);
+        if (loop == null) {
+            return false;
+        }
+        for (BasicBlock successor : block.getSuccessors()) {
+            if (!loop.contains(successor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether running the instruction can be observed other than through its result, so that
+    // it has to stay even when nothing reads what it defines
+    static boolean hasEffect(IRMethod method, Insn insn) {
+        switch (insn.getOpcode()) {
+            case MOVE: case ADD: case SUB: case MUL:
+            case EQ: case NE: case LT: case GT: case LE: case GE:
+            case AND: case OR: case SHL: case SHR: case NEG: case NOT: case PHI:
+            case IF_FALSE: case GOTO:
+                return false;
+            case DIV:
+            case MOD:
+                return !isNonZeroConstant(method, insn.arg(1));
+            case GETFIELD:
+                // Only a null receiver can make a field read fail
+                return insn.arg(0) != method.thisOperand();
+            default:
+                return true;
+        }
+    }
+
+    static boolean isNonZeroConstant(IRMethod method, int operand) {
+        if (!Operand.isConst(operand)) {
+            return false;
+        }
+        Object value = method.getConstant(operand);
+        return value instanceof Integer && (Integer) value != 0;
+    }
+
+    private void sweep() {
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Insn> kept = new ArrayList<>();
+            for (Insn insn : block.getInsns()) {
+                Opcode opcode = insn.getOpcode();
+                if (opcode == Opcode.GOTO || opcode == Opcode.IF_FALSE || live.contains(insn)) {
+                    kept.add(insn);
+                } else {
+                    removedInstructions++;
+                }
+            }
+            block.getInsns().clear();
+            block.getInsns().addAll(kept);
+        }
+
+        for (BasicBlock block : new ArrayList<>(cfg.getBlocks())) {
+            Insn terminator = block.getTerminator();
+            if (terminator != null && terminator.getOpcode() == Opcode.IF_FALSE && !live.contains(terminator)) {
+                bypassBranch(block);
+            }
+        }
+
+        // Results nothing reads: the call still runs, the store goes
+        BitSet used = new BitSet();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg)) {
+                        used.set(Operand.index(arg));
+                    }
+                }
+            }
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == Opcode.CALL && Operand.isVar(insn.getDst())
+                        && !used.get(Operand.index(insn.getDst()))) {
+                    insn.setDst(Operand.NONE);
+                    droppedResults++;
+                }
+            }
+        }
+
+        removedBlocks += cfg.removeUnreachableBlocks();
+        removedBlocks += cfg.removeEmptyBlocks();
+    }
+
+    // Replaces a dead branch with a jump to the nearest post-dominator that does something.
+    // No live instruction between them depends on the branch, so every path from the block
+    // brings the same values to that post-dominator's phis.
+    private void bypassBranch(BasicBlock block) {
+        int exit = cfg.size();
+        int target = postDominators.getImmediateDominator(block.getId());
+        while (target != exit && !usefulBlocks[target]) {
+            target = postDominators.getImmediateDominator(target);
+        }
+        if (target == exit) {
+            return;
+        }
+        BasicBlock destination = cfg.getBlock(target);
+
+        BasicBlock incoming = regionPredecessor(block, destination);
+        int index = destination.getPredecessors().indexOf(incoming);
+        int[] values = new int[destination.getPhiCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = destination.getPhis().get(i).arg(index);
+        }
+
+        block.getInsns().remove(block.getInsns().size() - 1);
+        for (BasicBlock successor : new ArrayList<>(block.getSuccessors())) {
+            cfg.removeEdge(block, successor);
+        }
+        cfg.addEdge(block, destination);
+        List<Insn> phis = destination.getPhis();
+        for (int i = 0; i < phis.size(); i++) {
+            Insn phi = phis.get(i);
+            int[] args = phi.getArgs();
+            int[] extended = new int[args.length + 1];
+            System.arraycopy(args, 0, extended, 0, args.length);
+            extended[args.length] = values[i];
+            phi.setArgs(extended);
+        }
+        removedBranches++;
+        removedInstructions++;
+    }
+
+    // A predecessor of the destination that the block reaches without passing through it
+    private static BasicBlock regionPredecessor(BasicBlock block, BasicBlock destination) {
+        Set<BasicBlock> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<BasicBlock> pending = new ArrayDeque<>();
+        pending.push(block);
+        seen.add(block);
+        while (!pending.isEmpty()) {
+            BasicBlock current = pending.pop();
+            for (BasicBlock successor : current.getSuccessors()) {
+                if (successor == destination) {
+                    return current;
+                }
+                if (seen.add(successor)) {
+                    pending.push(successor);
+                }
+            }
+        }
+        throw new IllegalStateException(destination + " does not post-dominate " + block);
+    }
+
+    // Unmarked instructions deleted, including dead branches
+    public int getRemovedInstructions() {
+        return removedInstructions;
+    }
+
+    public int getRemovedBranches() {
+        return removedBranches;
+    }
+
+    // Blocks left unreachable or empty
+    public int getRemovedBlocks() {
+        return removedBlocks;
+    }
+
+    // Calls kept for their effects whose unused results are no longer stored
+    public int getDroppedResults() {
+        return droppedResults;
+    }
+}
@@ -0,0 +1,54 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Liveness;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.BitSet;
+import java.util.List;
+
+// Liveness-based dead store elimination for code that is out of SSA form, where a variable
+// can be stored many times: a store whose variable is dead right after it is deleted when the
+// instruction has no other effect, and a call keeps running without storing its result.
+// Deleting a store can end the last use of another variable, so it repeats until stable.
+public class DeadStoreEliminator {
+    private int removedStores;
+
+    public void run(ControlFlowGraph cfg) {
+        IRMethod method = cfg.getMethod();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Liveness liveness = new Liveness(cfg);
+            for (BasicBlock block : cfg.getBlocks()) {
+                BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+                List<Insn> insns = block.getInsns();
+                for (int i = insns.size() - 1; i >= 0; i--) {
+                    Insn insn = insns.get(i);
+                    int dst = insn.getDst();
+                    if (Operand.isVar(dst) && !live.get(Operand.index(dst))) {
+                        if (!DeadCodeEliminator.hasEffect(method, insn)) {
+                            insns.remove(i);
+                            removedStores++;
+                            changed = true;
+                            continue;
+                        }
+                        if (insn.getOpcode() == Opcode.CALL) {
+                            insn.setDst(Operand.NONE);
+                            removedStores++;
+                        }
+                    }
+                    Liveness.transfer(insn, live);
+                }
+            }
+        }
+    }
+
+    public int getRemovedStores() {
+        return removedStores;
+    }
+}
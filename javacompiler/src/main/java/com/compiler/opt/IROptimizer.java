@@ -0,0 +1,204 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.SSABuilder;
+import com.compiler.ir.SSADestructor;
+import com.compiler.ir.SSAVerifier;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Runs the IR-level passes. Small methods are first inlined across the program. Then each
+// method's self tail calls become jumps, its graph is put into SSA form, the passes run on it
+// with the SSA verifier after every one of them, and the method is taken out of SSA, cleaned
+// up and written back as linear code for IRBytecodeGenerator.
+public class IROptimizer {
+    private final Map<String, Integer> statistics;
+    private final Set<String> classNames;
+
+    public IROptimizer() {
+        this.statistics = new LinkedHashMap<>();
+        this.classNames = new HashSet<>();
+    }
+
+    public void optimize(List<IRClass> classes) {
+        // Across methods, so it runs on the linear code before any method is optimized
+        Inliner inliner = new Inliner();
+        inliner.run(classes);
+        count("inline.calls", inliner.getInlinedCalls());
+        count("inline.added-instructions", inliner.getAddedInstructions());
+        count("inline.null-checks", inliner.getNullChecks());
+
+        for (IRClass irClass : classes) {
+            classNames.add(irClass.getName());
+        }
+        for (IRClass irClass : classes) {
+            for (IRMethod method : irClass.getMethods()) {
+                optimize(method);
+            }
+        }
+    }
+
+    public void optimize(IRMethod method) {
+        TailCallEliminator tailCalls = new TailCallEliminator();
+        tailCalls.run(method);
+        count("tre.eliminated-calls", tailCalls.getEliminatedCalls());
+        count("tre.accumulators", tailCalls.getAccumulators());
+
+        ControlFlowGraph cfg = ControlFlowGraph.build(method);
+
+        SSABuilder builder = new SSABuilder(cfg);
+        builder.build();
+        SSAVerifier.check(cfg, "SSA construction");
+        count("ssa.phis", builder.getInsertedPhis());
+
+        // Before SCCP, which then folds the zero values of replaced fields. Without the whole
+        // program at hand, the method's own class is the one known to be the program's.
+        Set<String> known = new HashSet<>(classNames);
+        known.add(method.getClassName());
+        ScalarReplacer replacer = new ScalarReplacer(known);
+        replacer.run(cfg);
+        SSAVerifier.check(cfg, "scalar replacement");
+        count("escape.replaced-objects", replacer.getReplacedObjects());
+        count("escape.removed-accesses", replacer.getRemovedAccesses());
+
+        propagate(cfg, "constant propagation");
+
+        ValueNumbering numbering = new ValueNumbering();
+        numbering.run(cfg);
+        SSAVerifier.check(cfg, "value numbering");
+        count("gvn.eliminated-expressions", numbering.getEliminatedExpressions());
+        count("gvn.eliminated-calls", numbering.getEliminatedCalls());
+        count("gvn.eliminated-phis", numbering.getEliminatedPhis());
+
+        LoadEliminator loads = new LoadEliminator();
+        loads.run(cfg);
+        SSAVerifier.check(cfg, "load elimination");
+        count("loads.eliminated", loads.getEliminatedLoads());
+        count("loads.forwarded-stores", loads.getForwardedStores());
+
+        // After GVN, so only the computations redundant on some paths are left to it
+        PartialRedundancyEliminator redundancies = new PartialRedundancyEliminator();
+        redundancies.run(cfg);
+        SSAVerifier.check(cfg, "partial redundancy elimination");
+        count("pre.inserted-expressions", redundancies.getInsertedExpressions());
+        count("pre.deleted-expressions", redundancies.getDeletedExpressions());
+        count("pre.phis", redundancies.getInsertedPhis());
+
+        // Before LICM fills the preheaders and the unroller copies the loops
+        LoopFuser fuser = new LoopFuser();
+        fuser.run(cfg);
+        SSAVerifier.check(cfg, "loop fusion");
+        count("fusion.loops", fuser.getFusedLoops());
+
+        LoopDistributor distributor = new LoopDistributor();
+        distributor.run(cfg);
+        SSAVerifier.check(cfg, "loop fission");
+        count("fission.loops", distributor.getDistributedLoops());
+        count("fission.added-loops", distributor.getAddedLoops());
+
+        LoopInvariantCodeMotion motion = new LoopInvariantCodeMotion();
+        motion.run(cfg);
+        SSAVerifier.check(cfg, "loop-invariant code motion");
+        count("licm.preheaders", motion.getPreheaders());
+        count("licm.hoisted", motion.getHoisted());
+        count("licm.guarded-loops", motion.getGuardedLoops());
+
+        // After LICM, which already reads the fields a loop never stores into in its preheader
+        ScalarPromoter promoter = new ScalarPromoter();
+        promoter.run(cfg);
+        SSAVerifier.check(cfg, "scalar promotion");
+        count("promotion.fields", promoter.getPromotedFields());
+        count("promotion.removed-accesses", promoter.getRemovedAccesses());
+
+        // Before unswitching, which would otherwise copy loops over conditions already decided
+        RangeFolder folder = new RangeFolder();
+        folder.run(cfg);
+        SSAVerifier.check(cfg, "range folding");
+        count("range.folded-comparisons", folder.getFoldedComparisons());
+        count("range.removed-branches", folder.getRemovedBranches());
+        count("range.simplified-divisions", folder.getSimplifiedDivisions());
+        count("range.removed-blocks", folder.getRemovedBlocks());
+
+        // After LICM, which moves the tests of invariant conditions out of the loops
+        LoopUnswitcher unswitcher = new LoopUnswitcher();
+        unswitcher.run(cfg);
+        SSAVerifier.check(cfg, "loop unswitching");
+        count("unswitch.loops", unswitcher.getUnswitchedLoops());
+        count("unswitch.added-instructions", unswitcher.getAddedInstructions());
+
+        StrengthReducer reducer = new StrengthReducer();
+        reducer.run(cfg);
+        SSAVerifier.check(cfg, "strength reduction");
+        count("sr.reduced-inductions", reducer.getReducedInductions());
+        count("sr.deleted-instructions", reducer.getDeletedInstructions());
+        count("sr.shifts", reducer.getShifts());
+        count("sr.masks", reducer.getMasks());
+
+        LoopUnroller unroller = new LoopUnroller();
+        unroller.run(cfg);
+        SSAVerifier.check(cfg, "loop unrolling");
+        count("unroll.full", unroller.getFullyUnrolled());
+        count("unroll.partial", unroller.getPartiallyUnrolled());
+        count("unroll.added-instructions", unroller.getAddedInstructions());
+        if (unroller.getFullyUnrolled() + unroller.getPartiallyUnrolled() > 0) {
+            // Copies of a fully unrolled loop run on constants, and moved bounds may fold
+            propagate(cfg, "constant propagation after unrolling");
+        }
+
+        CopyPropagator copies = new CopyPropagator();
+        copies.run(cfg);
+        SSAVerifier.check(cfg, "copy propagation");
+        count("copies.propagated", copies.getPropagatedCopies());
+
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        eliminator.run(cfg);
+        SSAVerifier.check(cfg, "dead code elimination");
+        count("dce.removed-instructions", eliminator.getRemovedInstructions());
+        count("dce.removed-branches", eliminator.getRemovedBranches());
+        count("dce.removed-blocks", eliminator.getRemovedBlocks());
+        count("dce.dropped-results", eliminator.getDroppedResults());
+
+        SSADestructor destructor = new SSADestructor(cfg);
+        destructor.destruct();
+        count("ssa.copies-inserted", destructor.getInsertedCopies());
+        count("ssa.copies-remaining", destructor.getRemainingCopies());
+
+        // Coalescing can leave stores that are dead only now that variables are shared
+        DeadStoreEliminator storeEliminator = new DeadStoreEliminator();
+        storeEliminator.run(cfg);
+        count("dse.removed-stores", storeEliminator.getRemovedStores());
+        count("cfg.removed-empty-blocks", cfg.removeEmptyBlocks());
+
+        TempCoalescer coalescer = new TempCoalescer();
+        coalescer.run(cfg);
+        count("coalesce.variables", coalescer.getCoalescedVariables());
+        count("coalesce.slots-before", coalescer.getSlotsBefore());
+        count("coalesce.slots-after", coalescer.getSlotsAfter());
+
+        cfg.linearize();
+    }
+
+    private void propagate(ControlFlowGraph cfg, String pass) {
+        ConstantPropagator propagator = new ConstantPropagator();
+        propagator.run(cfg);
+        SSAVerifier.check(cfg, pass);
+        count("sccp.constants", propagator.getConstants());
+        count("sccp.removed-instructions", propagator.getRemovedInstructions());
+        count("sccp.removed-branches", propagator.getRemovedBranches());
+        count("sccp.removed-blocks", propagator.getRemovedBlocks());
+    }
+
+    private void count(String key, int value) {
+        statistics.merge(key, value, Integer::sum);
+    }
+
+    public Map<String, Integer> getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,250 @@
+package com.compiler.opt;
+
+import com.compiler.ir.IRClass;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.MethodRef;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Inlines calls to small methods of any class in the program, on the linear IR before the
+// per-method passes run. The source language has no inheritance, so every call site has
+// exactly one target. A method that can reach itself through the call graph is never
+// inlined.
+//
+// Budgets keep the growth in check: a callee may have at most maxCalleeSize instructions,
+// a caller stops taking bodies once it has grown to maxCallerSize, and bodies inlined into
+// inlined bodies stop at maxDepth. The defaults keep tiny accessors and helpers well inside
+// the sizes HotSpot itself inlines and compiles (35 bytes for cold calls, 325 for hot ones).
+//
+// Callee variables map onto fresh caller variables of the same kind. A parameter the callee
+// never assigns reads the argument directly, and the callee's 'this' is the receiver; a
+// receiver other than 'this' is null-checked first, so a null still throws where the call
+// would have; later calls on the same receiver in the same block skip the check. Returns store into the call's result and jump past the body.
+public class Inliner {
+    public static final int DEFAULT_MAX_CALLEE_SIZE = 12;
+    public static final int DEFAULT_MAX_CALLER_SIZE = 120;
+    public static final int DEFAULT_MAX_DEPTH = 3;
+
+    private final int maxCalleeSize;
+    private final int maxCallerSize;
+    private final int maxDepth;
+    private final Map<String, IRMethod> methods;
+    private final Map<IRMethod, List<Insn>> originals;
+    private final Set<IRMethod> recursive;
+    private int inlinedCalls;
+    private int addedInstructions;
+    private int nullChecks;
+
+    // Size of the caller being rewritten, including what has been inlined so far
+    private int callerSize;
+
+    public Inliner() {
+        this(DEFAULT_MAX_CALLEE_SIZE, DEFAULT_MAX_CALLER_SIZE, DEFAULT_MAX_DEPTH);
+    }
+
+    public Inliner(int maxCalleeSize, int maxCallerSize, int maxDepth) {
+        this.maxCalleeSize = maxCalleeSize;
+        this.maxCallerSize = maxCallerSize;
+        this.maxDepth = maxDepth;
+        this.methods = new HashMap<>();
+        this.originals = new IdentityHashMap<>();
+        this.recursive = new HashSet<>();
+    }
+
+    public void run(List<IRClass> classes) {
+        for (IRClass irClass : classes) {
+            for (IRMethod method : irClass.getMethods()) {
+                methods.put(irClass.getName() + "." + method.getName(), method);
+                // Callees are copied from their code as written, not as already inlined into
+                originals.put(method, new ArrayList<>(method.getCode()));
+            }
+        }
+        for (IRMethod method : originals.keySet()) {
+            if (reaches(method, method, new HashSet<>())) {
+                recursive.add(method);
+            }
+        }
+
+        for (IRClass irClass : classes) {
+            for (IRMethod method : irClass.getMethods()) {
+                callerSize = size(originals.get(method));
+                Set<Integer> nonNull = new HashSet<>();
+                nonNull.add(method.thisOperand());
+                method.setCode(inline(method, originals.get(method), 0, nonNull));
+            }
+        }
+    }
+
+    private boolean reaches(IRMethod from, IRMethod target, Set<IRMethod> visited) {
+        if (!visited.add(from)) {
+            return false;
+        }
+        for (Insn insn : originals.get(from)) {
+            IRMethod callee = callee(from, insn);
+            if (callee == target || callee != null && reaches(callee, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The program method a CALL instruction invokes, or null
+    private IRMethod callee(IRMethod caller, Insn insn) {
+        if (insn.getOpcode() != Opcode.CALL) {
+            return null;
+        }
+        MethodRef target = (MethodRef) caller.getSymbol(insn.arg(0));
+        return methods.get(target.getOwner() + "." + target.getName());
+    }
+
+    private List<Insn> inline(IRMethod caller, List<Insn> code, int depth, Set<Integer> nonNull) {
+        List<Insn> result = new ArrayList<>();
+        // Receivers checked since the last label, until they are assigned again
+        Set<Integer> checked = new HashSet<>(nonNull);
+        for (Insn insn : code) {
+            if (insn.getOpcode() == Opcode.LABEL) {
+                checked = new HashSet<>(nonNull);
+            } else if (insn.hasDst()) {
+                checked.remove(insn.getDst());
+            }
+            IRMethod callee = callee(caller, insn);
+            if (callee == null || callee == caller || recursive.contains(callee) || depth >= maxDepth) {
+                result.add(insn);
+                continue;
+            }
+            int size = size(originals.get(callee));
+            if (size > maxCalleeSize || callerSize + size > maxCallerSize) {
+                result.add(insn);
+                continue;
+            }
+
+            callerSize += size;
+            inlinedCalls++;
+            int receiver = insn.arg(1);
+            if (checked.add(receiver)) {
+                result.add(new Insn(Opcode.NULLCHECK, Operand.NONE, receiver));
+                nullChecks++;
+                addedInstructions++;
+            }
+            List<Insn> body = copyBody(caller, callee, insn);
+            addedInstructions += size(body) - 1;
+            Set<Integer> inner = new HashSet<>(nonNull);
+            inner.add(receiver);
+            result.addAll(inline(caller, body, depth + 1, inner));
+            // The result is stored at the end of the body, as in b = b.next()
+            checked.remove(insn.getDst());
+        }
+        return result;
+    }
+
+    // The callee's code in the caller's operands
+    private List<Insn> copyBody(IRMethod caller, IRMethod callee, Insn call) {
+        List<Insn> body = originals.get(callee);
+        Map<Integer, Integer> operands = new HashMap<>();
+        List<Insn> copy = new ArrayList<>();
+
+        Set<Integer> assigned = new HashSet<>();
+        for (Insn insn : body) {
+            if (Operand.isVar(insn.getDst())) {
+                assigned.add(insn.getDst());
+            }
+        }
+        operands.put(callee.thisOperand(), call.arg(1));
+        for (int i = 0; i < callee.getParameterCount(); i++) {
+            int parameter = callee.variable(i + 1);
+            int argument = call.arg(i + 2);
+            if (assigned.contains(parameter)) {
+                int local = caller.newLocal(callee.getVariable(parameter).getName(), callee.getVariable(parameter).getType());
+                copy.add(new Insn(Opcode.MOVE, local, argument));
+                argument = local;
+            }
+            operands.put(parameter, argument);
+        }
+
+        int end = caller.newLabel();
+        boolean jumpsToEnd = false;
+        for (int i = 0; i < body.size(); i++) {
+            Insn insn = body.get(i);
+            boolean last = i == body.size() - 1;
+            if (insn.getOpcode() == Opcode.RETURN) {
+                if (call.hasDst() && insn.argCount() > 0) {
+                    copy.add(new Insn(Opcode.MOVE, call.getDst(), map(caller, callee, insn.arg(0), operands)));
+                }
+                if (!last) {
+                    copy.add(new Insn(Opcode.GOTO, Operand.NONE, end));
+                    jumpsToEnd = true;
+                }
+                continue;
+            }
+            int[] args = insn.getArgs().clone();
+            for (int a = 0; a < args.length; a++) {
+                args[a] = map(caller, callee, args[a], operands);
+            }
+            copy.add(new Insn(insn.getOpcode(), map(caller, callee, insn.getDst(), operands), args));
+        }
+        if (jumpsToEnd) {
+            copy.add(new Insn(Opcode.LABEL, Operand.NONE, end));
+        }
+        return copy;
+    }
+
+    private static int map(IRMethod caller, IRMethod callee, int operand, Map<Integer, Integer> operands) {
+        switch (Operand.kind(operand)) {
+            case Operand.TEMP:
+            case Operand.LOCAL:
+            case Operand.LABEL: {
+                Integer mapped = operands.get(operand);
+                if (mapped == null) {
+                    if (Operand.isLabel(operand)) {
+                        mapped = caller.newLabel();
+                    } else if (Operand.isTemp(operand)) {
+                        mapped = caller.newTemp(callee.getVariable(operand).getType());
+                    } else {
+                        mapped = caller.newLocal(callee.getVariable(operand).getName(), callee.getVariable(operand).getType());
+                    }
+                    operands.put(operand, mapped);
+                }
+                return mapped;
+            }
+            case Operand.CONST:
+                return caller.constant(callee.getConstant(operand));
+            case Operand.SYMBOL:
+                return caller.symbol(callee.getSymbol(operand));
+            default:
+                return operand;
+        }
+    }
+
+    // Instructions that generate code, so labels do not count
+    private static int size(List<Insn> code) {
+        int size = 0;
+        for (Insn insn : code) {
+            if (insn.getOpcode() != Opcode.LABEL) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public int getInlinedCalls() {
+        return inlinedCalls;
+    }
+
+    // Net growth: inlined bodies with their copies, jumps and null checks, minus the calls
+    public int getAddedInstructions() {
+        return addedInstructions;
+    }
+
+    public int getNullChecks() {
+        return nullChecks;
+    }
+}
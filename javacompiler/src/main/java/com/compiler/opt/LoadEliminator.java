@@ -0,0 +1,177 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Purity;
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.MethodRef;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Redundant load elimination and store-to-load forwarding over SSA form. Walking a block, it
+// remembers the value last read from or written to each field of an object and each element
+// of an array; a later load of the same location is deleted and its uses read that value.
+// What is known at the end of a block carries over into a successor entered from it alone,
+// so a chain of such blocks is handled as one.
+//
+// Locations are compared by the values of their object, field, array and index operands.
+// A store forgets whatever it may overwrite, under a type-based alias analysis: a field is
+// only reachable through that field, and an array only through arrays of the same type, so
+// storing into an int[] keeps what is known about boolean[] arrays. Two constant indices
+// that differ never meet either. Calls to methods that are not PURE or READ_ONLY may write
+// anything and forget it all. A deleted load could only have failed where the access it
+// repeats would have failed first, so no exception is lost.
+public class LoadEliminator {
+    private IRMethod method;
+    private Map<Integer, Integer> values;
+    private Map<Integer, Integer> replacements;
+    private int eliminatedLoads;
+    private int forwardedStores;
+
+    // The value held in a field of an object, or in an element of an array
+    private static final class Location {
+        private final Opcode load;
+        private final int base;
+        private final int key;
+        private final int value;
+        private final boolean stored;
+
+        Location(Opcode load, int base, int key, int value, boolean stored) {
+            this.load = load;
+            this.base = base;
+            this.key = key;
+            this.value = value;
+            this.stored = stored;
+        }
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        this.method = cfg.getMethod();
+        this.values = new HashMap<>();
+        this.replacements = new HashMap<>();
+
+        Map<BasicBlock, List<Location>> atExit = new HashMap<>();
+        for (BasicBlock block : cfg.reversePostorder()) {
+            List<Location> known = new ArrayList<>();
+            List<BasicBlock> predecessors = block.getPredecessors();
+            if (predecessors.size() == 1 && atExit.containsKey(predecessors.get(0))) {
+                known.addAll(atExit.get(predecessors.get(0)));
+            }
+            visit(block, known);
+            atExit.put(block, known);
+        }
+        rewriteUses(cfg);
+    }
+
+    private void visit(BasicBlock block, List<Location> known) {
+        Iterator<Insn> insns = block.getInsns().iterator();
+        while (insns.hasNext()) {
+            Insn insn = insns.next();
+            switch (insn.getOpcode()) {
+                case MOVE:
+                    if (Operand.isVar(insn.getDst())) {
+                        values.put(insn.getDst(), value(insn.arg(0)));
+                    }
+                    break;
+                case GETFIELD:
+                case ALOAD: {
+                    Location location = find(known, insn.getOpcode(), value(insn.arg(0)), value(insn.arg(1)));
+                    if (location == null) {
+                        known.add(new Location(insn.getOpcode(), value(insn.arg(0)), value(insn.arg(1)),
+                            insn.getDst(), false));
+                        break;
+                    }
+                    replacements.put(insn.getDst(), location.value);
+                    insns.remove();
+                    eliminatedLoads++;
+                    if (location.stored) {
+                        forwardedStores++;
+                    }
+                    break;
+                }
+                case PUTFIELD:
+                case ASTORE: {
+                    Opcode load = insn.getOpcode() == Opcode.PUTFIELD ? Opcode.GETFIELD : Opcode.ALOAD;
+                    Location stored = new Location(load, value(insn.arg(0)), value(insn.arg(1)),
+                        replacements.getOrDefault(insn.arg(2), insn.arg(2)), true);
+                    known.removeIf(location -> mayAlias(location, stored));
+                    known.add(stored);
+                    break;
+                }
+                case CALL: {
+                    Purity purity = ((MethodRef) method.getSymbol(insn.arg(0))).getPurity();
+                    if (purity != Purity.PURE && purity != Purity.READ_ONLY) {
+                        known.clear();
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static Location find(List<Location> known, Opcode load, int base, int key) {
+        for (Location location : known) {
+            if (location.load == load && location.base == base && location.key == key) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    // Whether a store to the second location may change what is known about the first
+    private boolean mayAlias(Location location, Location stored) {
+        if (location.load != stored.load) {
+            return false;
+        }
+        if (location.load == Opcode.GETFIELD) {
+            return location.key == stored.key;
+        }
+        if (location.base == stored.base) {
+            return location.key == stored.key || !Operand.isConst(location.key) || !Operand.isConst(stored.key);
+        }
+        Type type = method.typeOf(location.base);
+        Type storedType = method.typeOf(stored.base);
+        return type == null || storedType == null || type.equals(storedType);
+    }
+
+    // The source of a copy or the value read by a deleted load, so that locations reached
+    // through either compare equal; the copies themselves stay for copy propagation
+    private int value(int operand) {
+        operand = replacements.getOrDefault(operand, operand);
+        return Operand.isVar(operand) ? values.getOrDefault(operand, operand) : operand;
+    }
+
+    // Uses of deleted loads read the remembered value, which was computed before them in the
+    // same block or in one that leads only to it
+    private void rewriteUses(ControlFlowGraph cfg) {
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    if (replacements.containsKey(args[i])) {
+                        args[i] = replacements.get(args[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getEliminatedLoads() {
+        return eliminatedLoads;
+    }
+
+    // Loads among the eliminated ones that read a value stored before them
+    public int getForwardedStores() {
+        return forwardedStores;
+    }
+}
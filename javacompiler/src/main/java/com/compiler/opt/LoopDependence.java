@@ -0,0 +1,218 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.InductionVariables;
+import com.compiler.ir.InductionVariables.Induction;
+import com.compiler.ir.InductionVariables.TripCount;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The memory accesses of a counted loop, for the passes that reorder iterations of loops
+// running the same iterations. Reordering is only safe when nothing else in the loop could be
+// seen to happen in a different order, so a loop is simple when its only effects are these
+// accesses and none of them can fail: fields of this, and elements of arrays allocated in the
+// method, with a constant length or the loop's bound as length, that the induction variable
+// stays inside of.
+//
+// Arrays from different allocations never alias, and two accesses to one array are compared
+// by their indices: when both are affine in induction variables that start and step alike,
+// a*i + c and a*i + d touch the same element exactly when the iterations are
+// (c - d) / (a * step) apart. Any other pair of accesses to one field or array may touch the
+// same location in any two iterations.
+final class LoopDependence {
+    // Distance for pairs that never touch the same location, and for those that may do so in
+    // any two iterations
+    static final long NONE = Long.MIN_VALUE;
+    static final long ANY = Long.MAX_VALUE;
+
+    static final class Access {
+        private final Insn insn;
+        private final boolean write;
+        private final int array;
+        private final int field;
+        private final Induction index;
+
+        // The allocation for array elements, and NONE for fields
+        Access(Insn insn, boolean write, int array, int field, Induction index) {
+            this.insn = insn;
+            this.write = write;
+            this.array = array;
+            this.field = field;
+            this.index = index;
+        }
+
+        Insn getInsn() {
+            return insn;
+        }
+
+        boolean isWrite() {
+            return write;
+        }
+    }
+
+    private final IRMethod method;
+    private final InductionVariables inductions;
+    private final Map<Integer, Insn> definitions;
+    private final List<Access> accesses;
+    private boolean simple;
+
+    LoopDependence(ControlFlowGraph cfg, Loop loop, InductionVariables inductions) {
+        this.method = cfg.getMethod();
+        this.inductions = inductions;
+        this.definitions = new HashMap<>();
+        this.accesses = new ArrayList<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    definitions.put(insn.getDst(), insn);
+                }
+            }
+        }
+
+        simple = inductions.getTripCount() != null;
+        for (BasicBlock block : simple ? loop.getBlocks(cfg) : Collections.<BasicBlock>emptyList()) {
+            for (Insn insn : block.getInsns()) {
+                simple &= classify(insn);
+            }
+        }
+    }
+
+    // Records a memory access; returns whether the instruction keeps the loop simple
+    private boolean classify(Insn insn) {
+        switch (insn.getOpcode()) {
+            case GETFIELD:
+            case PUTFIELD:
+                if (insn.arg(0) != method.thisOperand()) {
+                    return false;
+                }
+                accesses.add(new Access(insn, insn.getOpcode() == Opcode.PUTFIELD, Operand.NONE, insn.arg(1), null));
+                return true;
+            case ALOAD:
+            case ASTORE: {
+                Induction index = inductions.getInduction(insn.arg(1));
+                accesses.add(new Access(insn, insn.getOpcode() == Opcode.ASTORE, resolve(insn.arg(0)),
+                    Operand.NONE, index));
+                return index != null && inBounds(insn.arg(0), index);
+            }
+            default:
+                return !DeadCodeEliminator.hasEffect(method, insn);
+        }
+    }
+
+    // Whether the index stays inside an array allocated with a constant length on every
+    // iteration the header's test lets through
+    private boolean inBounds(int array, Induction index) {
+        Insn allocation = definitions.get(resolve(array));
+        TripCount tripCount = inductions.getTripCount();
+        Long factor = constant(index.getFactor());
+        Long offset = constant(index.getOffset());
+        if (allocation == null || allocation.getOpcode() != Opcode.NEWARRAY
+                || index.getBase() != tripCount.getInduction() || factor == null || offset == null) {
+            return false;
+        }
+        Induction base = index.getBase();
+        Long init = constant(base.getInit());
+        Long length = constant(allocation.arg(0));
+        if (tripCount.isConstant() && init != null && length != null) {
+            if (tripCount.getCount() == 0) {
+                return true;
+            }
+            long first = factor * init + offset;
+            long last = factor * (init + (tripCount.getCount() - 1) * base.getStep()) + offset;
+            return Math.min(first, last) >= 0 && Math.max(first, last) < length;
+        }
+        // i < a.length for i counting up from zero or more
+        return factor == 1 && offset == 0 && init != null && init >= 0 && base.getStep() > 0
+            && tripCount.getComparison() == Opcode.LT && resolve(tripCount.getBound()) == resolve(allocation.arg(0));
+    }
+
+    // The number of iterations k - j for which access a in iteration j and b in iteration k
+    // touch the same location, NONE or ANY
+    static long distance(IRMethod method, Access a, Access b) {
+        if (!sameData(a, b)) {
+            return NONE;
+        }
+        if (a.array == Operand.NONE) {
+            return ANY;
+        }
+        Induction first = a.index.getBase();
+        Induction second = b.index.getBase();
+        if (first.getInit() != second.getInit() || first.getStep() != second.getStep()) {
+            return ANY;
+        }
+        long difference;
+        if (a.index.getOffset() == b.index.getOffset()) {
+            difference = 0;
+        } else {
+            Long c = constant(method, a.index.getOffset());
+            Long d = constant(method, b.index.getOffset());
+            if (c == null || d == null) {
+                return ANY;
+            }
+            difference = c - d;
+        }
+        if (a.index.getFactor() != b.index.getFactor()) {
+            return ANY;
+        }
+        Long factor = constant(method, a.index.getFactor());
+        if (factor == null) {
+            return ANY;
+        }
+        long stride = factor * first.getStep();
+        if (stride == 0) {
+            return difference == 0 ? ANY : NONE;
+        }
+        return difference % stride == 0 ? difference / stride : NONE;
+    }
+
+    // Whether both accesses are to the same field or the same array
+    static boolean sameData(Access a, Access b) {
+        return a.array == b.array && a.field == b.field;
+    }
+
+    // Whether either access writes, so that their order matters
+    static boolean conflict(Access a, Access b) {
+        return a.write || b.write;
+    }
+
+    List<Access> getAccesses() {
+        return accesses;
+    }
+
+    boolean isSimple() {
+        return simple;
+    }
+
+    private int resolve(int operand) {
+        for (int depth = 0; depth < 16; depth++) {
+            Insn definition = definitions.get(operand);
+            if (definition == null || definition.getOpcode() != Opcode.MOVE) {
+                break;
+            }
+            operand = definition.arg(0);
+        }
+        return operand;
+    }
+
+    private Long constant(int operand) {
+        return constant(method, resolve(operand));
+    }
+
+    private static Long constant(IRMethod method, int operand) {
+        if (!Operand.isConst(operand)) {
+            return null;
+        }
+        Object value = method.getConstant(operand);
+        return value instanceof Integer ? Long.valueOf((Integer) value) : null;
+    }
+}
@@ -0,0 +1,308 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.InductionVariables;
+import com.compiler.ir.InductionVariables.TripCount;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+import com.compiler.opt.LoopDependence.Access;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Loop fission (distribution) over SSA form, the inverse of LoopFuser. The body of a counted
+// loop is cut into streams: instructions connected through the values they compute, or
+// through working on the same array or field. Streams without any memory access join the
+// first one. When there are several, each gets a loop of its own, one after the other and
+// in the order the streams start in the body, so that every loop walks fewer arrays at once.
+//
+// Only simple loops in the sense of LoopDependence with a header holding just the phis and the
+// exit test, and a body of one block, are split. The loop of an earlier stream now runs all
+// its iterations before any iteration of a later stream. That is safe because nothing flows
+// between streams: values stay within one by construction, and since arrays from different
+// allocations never alias, neither does memory.
+public class LoopDistributor {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private int induction;
+    private int distributedLoops;
+    private int addedLoops;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        for (Loop loop : forest.innermostFirst()) {
+            List<List<Insn>> streams = streams(loop);
+            if (streams != null) {
+                distribute(loop, streams);
+                distributedLoops++;
+                addedLoops += streams.size() - 1;
+            }
+        }
+    }
+
+    // The streams of the loop's body in order, or null when it is not split
+    private List<List<Insn>> streams(Loop loop) {
+        BasicBlock header = loop.getHeader();
+        List<BasicBlock> blocks = loop.getBlocks(cfg);
+        if (blocks.size() != 2 || header.getPredecessors().size() != 2 || loop.getEntries().size() != 1
+                || header.getTerminator() == null || header.getTerminator().getOpcode() != Opcode.IF_FALSE) {
+            return null;
+        }
+        BasicBlock body = blocks.get(0) == header ? blocks.get(1) : blocks.get(0);
+        BasicBlock exit = exit(loop);
+        if (exit == null || exit.getPredecessors().size() != 1 || body.getSuccessors().size() != 1) {
+            return null;
+        }
+        InductionVariables inductions = new InductionVariables(cfg, loop);
+        TripCount tripCount = inductions.getTripCount();
+        LoopDependence dependence = new LoopDependence(cfg, loop, inductions);
+        if (tripCount == null || !dependence.isSimple()) {
+            return null;
+        }
+        induction = tripCount.getInduction().getVariable();
+        int condition = header.getTerminator().arg(0);
+        Insn test = inductions.getDefinition(condition);
+        List<Insn> increment = increment(loop);
+        if (header.getInsns().size() != header.getPhiCount() + 2 || increment == null
+                || header.getInsns().get(header.getPhiCount()) != test || uses(condition) != 1) {
+            return null;
+        }
+
+        // Everything but the loop control, grouped by the values and data it shares
+        List<Insn> members = new ArrayList<>();
+        for (Insn phi : header.getPhis()) {
+            if (phi.getDst() != induction) {
+                members.add(phi);
+            }
+        }
+        for (Insn insn : body.getInsns()) {
+            if (!increment.contains(insn) && insn.getOpcode() != Opcode.GOTO) {
+                members.add(insn);
+            }
+        }
+        int[] parent = new int[members.size()];
+        Map<Integer, Integer> defined = new HashMap<>();
+        Map<Insn, Integer> position = new IdentityHashMap<>();
+        for (int m = 0; m < members.size(); m++) {
+            parent[m] = m;
+            position.put(members.get(m), m);
+            if (Operand.isVar(members.get(m).getDst())) {
+                defined.put(members.get(m).getDst(), m);
+            }
+        }
+        for (int m = 0; m < members.size(); m++) {
+            for (int arg : members.get(m).getArgs()) {
+                Integer definition = defined.get(arg);
+                if (definition != null) {
+                    union(parent, m, definition);
+                }
+            }
+        }
+        List<Access> accesses = dependence.getAccesses();
+        for (Access a : accesses) {
+            for (Access b : accesses) {
+                if (LoopDependence.sameData(a, b)) {
+                    union(parent, position.get(a.getInsn()), position.get(b.getInsn()));
+                }
+            }
+        }
+
+        // Streams in the order of their first instruction in the body; phis come first, but
+        // belong to the stream updating them
+        Map<Integer, List<Insn>> byRoot = new HashMap<>();
+        List<Integer> roots = new ArrayList<>();
+        for (int m = 0; m < members.size(); m++) {
+            int root = find(parent, m);
+            if (members.get(m).getOpcode() != Opcode.PHI && !roots.contains(root)) {
+                roots.add(root);
+            }
+            byRoot.computeIfAbsent(root, k -> new ArrayList<>()).add(members.get(m));
+        }
+        List<List<Insn>> streams = new ArrayList<>();
+        List<List<Insn>> rest = new ArrayList<>();
+        for (int root : roots) {
+            List<Insn> stream = byRoot.get(root);
+            boolean accessing = false;
+            for (Access access : accesses) {
+                accessing |= stream.contains(access.getInsn());
+            }
+            (accessing ? streams : rest).add(stream);
+        }
+        if (streams.size() < 2) {
+            return null;
+        }
+        for (List<Insn> stream : rest) {
+            streams.get(0).addAll(stream);
+        }
+
+        return streams;
+    }
+
+    // The instructions in the latch adding a constant to the induction variable, through
+    // copies of the sum, in their order there; null when it is computed some other way
+    private List<Insn> increment(Loop loop) {
+        BasicBlock header = loop.getHeader();
+        BasicBlock latch = loop.getLatches().get(0);
+        int next = Operand.NONE;
+        for (Insn phi : header.getPhis()) {
+            if (phi.getDst() == induction) {
+                next = phi.arg(header.getPredecessors().indexOf(latch));
+            }
+        }
+        List<Insn> chain = new ArrayList<>();
+        List<Insn> insns = latch.getInsns();
+        for (int i = insns.size() - 1; i >= 0; i--) {
+            Insn insn = insns.get(i);
+            if (insn.getDst() != next) {
+                continue;
+            }
+            chain.add(0, insn);
+            if (insn.getOpcode() != Opcode.MOVE) {
+                boolean step = insn.getOpcode() == Opcode.ADD || insn.getOpcode() == Opcode.SUB;
+                return step && insn.arg(0) == induction && Operand.isConst(insn.arg(1)) ? chain : null;
+            }
+            next = insn.arg(0);
+        }
+        return null;
+    }
+
+    private static BasicBlock exit(Loop loop) {
+        List<BasicBlock> successors = loop.getHeader().getSuccessors();
+        if (loop.contains(successors.get(0)) == loop.contains(successors.get(1))) {
+            return null;
+        }
+        return loop.contains(successors.get(0)) ? successors.get(1) : successors.get(0);
+    }
+
+    private int uses(int operand) {
+        int uses = 0;
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (arg == operand) {
+                        uses++;
+                    }
+                }
+            }
+        }
+        return uses;
+    }
+
+    // Every stream after the first moves to a new loop with a copy of the loop control,
+    // entered where the previous loop leaves
+    private void distribute(Loop loop, List<List<Insn>> streams) {
+        BasicBlock header = loop.getHeader();
+        BasicBlock latch = loop.getLatches().get(0);
+        BasicBlock exit = exit(loop);
+        int entering = 1 - header.getPredecessors().indexOf(latch);
+        boolean staysOnTrue = loop.contains(header.getSuccessors().get(0));
+        Insn test = header.getInsns().get(header.getPhiCount());
+        List<Insn> increment = increment(loop);
+        int next = Operand.NONE;
+        int initial = Operand.NONE;
+        for (Insn phi : header.getPhis()) {
+            if (phi.getDst() == induction) {
+                initial = phi.arg(entering);
+                next = phi.arg(1 - entering);
+            }
+        }
+
+        BasicBlock previous = header;
+        for (int s = 1; s < streams.size(); s++) {
+            BasicBlock preheader = cfg.newBlock();
+            BasicBlock copiedHeader = cfg.newBlock();
+            BasicBlock copiedBody = cfg.newBlock();
+
+            Map<Integer, Integer> control = new HashMap<>();
+            control.put(induction, method.newTemp(method.typeOf(induction)));
+            for (Insn insn : increment) {
+                control.put(insn.getDst(), method.newTemp(method.typeOf(insn.getDst())));
+            }
+            control.put(test.getDst(), method.newTemp(method.typeOf(test.getDst())));
+            copiedHeader.getInsns().add(new Insn(Opcode.PHI, control.get(induction),
+                initial, control.get(next)));
+            // The body keeps its order, with the copied increment where the original was
+            List<Insn> stream = streams.get(s);
+            for (Insn insn : header.getPhis()) {
+                if (stream.contains(insn)) {
+                    insn.setArgs(new int[] {insn.arg(entering), insn.arg(1 - entering)});
+                    copiedHeader.getInsns().add(rename(insn, control));
+                }
+            }
+            copiedHeader.getInsns().add(rename(new Insn(test.getOpcode(), test.getDst(), test.getArgs().clone()), control));
+            copiedHeader.getInsns().add(new Insn(Opcode.IF_FALSE, Operand.NONE, control.get(test.getDst()), Operand.NONE));
+            for (Insn insn : latch.getInsns()) {
+                if (stream.contains(insn)) {
+                    copiedBody.getInsns().add(rename(insn, control));
+                } else if (increment.contains(insn)) {
+                    copiedBody.getInsns().add(rename(new Insn(insn.getOpcode(), insn.getDst(), insn.getArgs().clone()), control));
+                }
+            }
+            header.getInsns().removeAll(stream);
+            latch.getInsns().removeAll(stream);
+
+            List<BasicBlock> successors = previous.getSuccessors();
+            successors.set(successors.indexOf(exit), preheader);
+            preheader.getPredecessors().add(previous);
+            cfg.addEdge(preheader, copiedHeader);
+            if (staysOnTrue) {
+                cfg.addEdge(copiedHeader, copiedBody);
+                cfg.addEdge(copiedHeader, exit);
+            } else {
+                cfg.addEdge(copiedHeader, exit);
+                cfg.addEdge(copiedHeader, copiedBody);
+            }
+            cfg.addEdge(copiedBody, copiedHeader);
+            exit.getPredecessors().remove(previous);
+
+            cfg.placeBefore(preheader, exit);
+            cfg.placeBefore(copiedHeader, exit);
+            cfg.placeBefore(copiedBody, exit);
+            previous = copiedHeader;
+        }
+    }
+
+    // Puts the copied loop control in place of the original in the instruction's destination
+    // and operands
+    private static Insn rename(Insn insn, Map<Integer, Integer> control) {
+        insn.setDst(control.getOrDefault(insn.getDst(), insn.getDst()));
+        int[] args = insn.getArgs();
+        for (int a = 0; a < args.length; a++) {
+            args[a] = control.getOrDefault(args[a], args[a]);
+        }
+        return insn;
+    }
+
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    public int getDistributedLoops() {
+        return distributedLoops;
+    }
+
+    // Loops added by splitting, one fewer than the streams of each split loop
+    public int getAddedLoops() {
+        return addedLoops;
+    }
+}
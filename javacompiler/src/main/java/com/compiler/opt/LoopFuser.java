@@ -0,0 +1,271 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.InductionVariables;
+import com.compiler.ir.InductionVariables.TripCount;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+import com.compiler.opt.LoopDependence.Access;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Loop fusion over SSA form. Two counted loops running the same iterations one after the
+// other become one loop whose body runs the first loop's body and then the second's. The
+// code between them must be free of effects and independent of the first loop, and moves in
+// front of it. Fusion only pays when the loops work on the same array or field, like one
+// loop filling an array and the next summing it, so that each element is used again while it
+// is at hand; loops over unrelated data are left apart, as LoopDistributor would split them.
+//
+// Both loops must be innermost, have a single latch, leave only through the test in their
+// header and be simple in the sense of LoopDependence. The fused loop runs iteration k of the
+// second loop before the iterations after k of the first one, so two accesses where one
+// writes may only touch the same location when the second loop's iteration is no earlier.
+public class LoopFuser {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private int fusedLoops;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        List<BasicBlock> headers = new ArrayList<>();
+        Map<BasicBlock, List<BasicBlock>> entries = new HashMap<>();
+        for (Loop loop : forest.innermostFirst()) {
+            List<BasicBlock> loopEntries = loop.getEntries();
+            if (loopEntries.size() != 1 || loopEntries.get(0).getSuccessors().size() != 1) {
+                headers.add(loop.getHeader());
+                entries.put(loop.getHeader(), loopEntries);
+            }
+        }
+        for (BasicBlock header : headers) {
+            cfg.insertPreheader(header, entries.get(header));
+        }
+
+        // One pair at a time, since fusing renumbers the blocks and a fused loop may be
+        // fused again with the next one
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+            for (Loop first : forest.getLoops()) {
+                List<BasicBlock> between = new ArrayList<>();
+                Loop second = follower(forest, first, between);
+                if (second != null && fuse(first, second, between)) {
+                    fusedLoops++;
+                    changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // The loop entered straight after the given one leaves, through blocks that only lead
+    // from one to the other, or null
+    private Loop follower(LoopForest forest, Loop first, List<BasicBlock> between) {
+        if (!isCanonical(first)) {
+            return null;
+        }
+        BasicBlock block = first.getExits(cfg).get(0);
+        while (block.getPredecessors().size() == 1 && block.getPhiCount() == 0
+                && block.getSuccessors().size() == 1) {
+            between.add(block);
+            BasicBlock next = block.getSuccessors().get(0);
+            Loop loop = forest.getLoop(next);
+            if (loop != null && loop.getHeader() == next) {
+                return loop.getParent() == first.getParent() && isCanonical(loop) ? loop : null;
+            }
+            block = next;
+        }
+        return null;
+    }
+
+    // Innermost, entered from a preheader, with a single latch and leaving only from the
+    // header's test to a block of its own
+    private boolean isCanonical(Loop loop) {
+        BasicBlock header = loop.getHeader();
+        List<BasicBlock> exits = loop.getExits(cfg);
+        Insn test = header.getTerminator();
+        if (!loop.getChildren().isEmpty() || loop.getLatches().size() != 1 || loop.getEntries().size() != 1
+                || exits.size() != 1 || test == null || test.getOpcode() != Opcode.IF_FALSE
+                || header.getPredecessors().size() != 2 || exits.get(0).getPredecessors().size() != 1) {
+            return false;
+        }
+        BasicBlock latch = loop.getLatches().get(0);
+        return loop.contains(header.getSuccessors().get(0)) != loop.contains(header.getSuccessors().get(1))
+            && exit(loop) == exits.get(0) && latch.getSuccessors().size() == 1
+            && bodyStart(loop).getPredecessors().size() == 1 && bodyStart(loop).getPhiCount() == 0;
+    }
+
+    private static BasicBlock bodyStart(Loop loop) {
+        List<BasicBlock> successors = loop.getHeader().getSuccessors();
+        return loop.contains(successors.get(0)) ? successors.get(0) : successors.get(1);
+    }
+
+    private static BasicBlock exit(Loop loop) {
+        List<BasicBlock> successors = loop.getHeader().getSuccessors();
+        return loop.contains(successors.get(0)) ? successors.get(1) : successors.get(0);
+    }
+
+    private boolean fuse(Loop first, Loop second, List<BasicBlock> between) {
+        InductionVariables firstInductions = new InductionVariables(cfg, first);
+        InductionVariables secondInductions = new InductionVariables(cfg, second);
+        if (!sameIterations(firstInductions.getTripCount(), secondInductions.getTripCount())) {
+            return false;
+        }
+        BasicBlock header = second.getHeader();
+        int condition = header.getTerminator().arg(0);
+        Insn test = secondInductions.getDefinition(condition);
+        if (header.getInsns().size() != header.getPhiCount() + 2 || test == null
+                || header.getInsns().get(header.getPhiCount()) != test || uses(condition) != 1) {
+            return false;
+        }
+
+        // Nothing after the first loop may read what it computes, other than after both
+        BitSet definedInFirst = new BitSet();
+        for (BasicBlock block : first.getBlocks(cfg)) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    definedInFirst.set(Operand.index(insn.getDst()));
+                }
+            }
+        }
+        List<BasicBlock> reading = new ArrayList<>(between);
+        reading.addAll(second.getBlocks(cfg));
+        for (BasicBlock block : reading) {
+            for (Insn insn : block.getInsns()) {
+                if (between.contains(block)
+                        && (DeadCodeEliminator.hasEffect(method, insn) || insn.getOpcode().readsMemory())) {
+                    return false;
+                }
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg) && definedInFirst.get(Operand.index(arg))) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        LoopDependence firstAccesses = new LoopDependence(cfg, first, firstInductions);
+        LoopDependence secondAccesses = new LoopDependence(cfg, second, secondInductions);
+        if (!firstAccesses.isSimple() || !secondAccesses.isSimple()) {
+            return false;
+        }
+        boolean shared = false;
+        for (Access a : firstAccesses.getAccesses()) {
+            for (Access b : secondAccesses.getAccesses()) {
+                shared |= LoopDependence.sameData(a, b);
+                if (!LoopDependence.conflict(a, b)) {
+                    continue;
+                }
+                long distance = LoopDependence.distance(method, a, b);
+                if (distance != LoopDependence.NONE && (distance == LoopDependence.ANY || distance < 0)) {
+                    return false;
+                }
+            }
+        }
+        if (!shared) {
+            return false;
+        }
+
+        join(first, second, between, firstInductions.getTripCount().getInduction().getVariable(),
+            secondInductions.getTripCount().getInduction().getVariable());
+        return true;
+    }
+
+    // Same start, step and test against the same bound
+    private static boolean sameIterations(TripCount first, TripCount second) {
+        return first != null && second != null
+            && first.getInduction().getInit() == second.getInduction().getInit()
+            && first.getInduction().getStep() == second.getInduction().getStep()
+            && first.getComparison() == second.getComparison() && first.getBound() == second.getBound();
+    }
+
+    private int uses(int operand) {
+        int uses = 0;
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (arg == operand) {
+                        uses++;
+                    }
+                }
+            }
+        }
+        return uses;
+    }
+
+    // The first loop's latch runs into the second loop's body, whose latch goes back to the
+    // first header. That header takes over the second one's phis and its exit.
+    private void join(Loop first, Loop second, List<BasicBlock> between, int firstInduction, int secondInduction) {
+        BasicBlock firstHeader = first.getHeader();
+        BasicBlock secondHeader = second.getHeader();
+        BasicBlock preheader = first.getEntries().get(0);
+        BasicBlock firstLatch = first.getLatches().get(0);
+        BasicBlock secondLatch = second.getLatches().get(0);
+        BasicBlock secondBody = bodyStart(second);
+        BasicBlock firstExit = exit(first);
+        BasicBlock secondExit = exit(second);
+
+        for (BasicBlock block : between) {
+            for (Insn insn : block.getBody()) {
+                preheader.append(insn);
+            }
+        }
+
+        int entering = secondHeader.getPredecessors().indexOf(between.get(between.size() - 1));
+        int back = secondHeader.getPredecessors().indexOf(secondLatch);
+        List<Insn> phis = new ArrayList<>();
+        for (Insn phi : secondHeader.getPhis()) {
+            if (phi.getDst() == secondInduction) {
+                continue;
+            }
+            int[] args = new int[2];
+            args[firstHeader.getPredecessors().indexOf(preheader)] = phi.arg(entering);
+            args[firstHeader.getPredecessors().indexOf(firstLatch)] = phi.arg(back);
+            phi.setArgs(args);
+            phis.add(phi);
+        }
+        firstHeader.getInsns().addAll(firstHeader.getPhiCount(), phis);
+
+        replace(firstHeader.getPredecessors(), firstLatch, secondLatch);
+        replace(firstLatch.getSuccessors(), firstHeader, secondBody);
+        replace(secondBody.getPredecessors(), secondHeader, firstLatch);
+        replace(secondLatch.getSuccessors(), secondHeader, firstHeader);
+        replace(firstHeader.getSuccessors(), firstExit, secondExit);
+        replace(secondExit.getPredecessors(), secondHeader, firstHeader);
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int a = 0; a < args.length; a++) {
+                    if (args[a] == secondInduction) {
+                        args[a] = firstInduction;
+                    }
+                }
+            }
+        }
+        List<BasicBlock> removed = new ArrayList<>(between);
+        removed.add(secondHeader);
+        cfg.removeBlocks(removed);
+    }
+
+    private static void replace(List<BasicBlock> blocks, BasicBlock from, BasicBlock to) {
+        blocks.set(blocks.indexOf(from), to);
+    }
+
+    public int getFusedLoops() {
+        return fusedLoops;
+    }
+}
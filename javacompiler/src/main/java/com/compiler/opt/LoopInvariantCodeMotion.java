@@ -0,0 +1,386 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Purity;
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.MethodRef;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Loop-invariant code motion over SSA form. Every loop gets a preheader, and loops are
+// visited innermost first, so code hoisted out of an inner loop lands in the outer loop and
+// can move again. An instruction is invariant when none of its operands is defined inside
+// the loop; memory reads also need the loop to leave what they read alone.
+//
+// Instructions that cannot fault are hoisted speculatively. Division, field and array reads
+// and pure calls can throw, so they only move when they are sure to run on the first
+// iteration before anything observable: their block dominates every latch, no effect that
+// stays behind comes before them, and the only exit they could miss is the header's own
+// test. In that last case the test is evaluated once more in the preheader, on the values
+// entering the loop, and the hoisted code goes behind this guard.
+public class LoopInvariantCodeMotion {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private DominatorTree dominators;
+    private int hoisted;
+    private int guardedLoops;
+    private int preheaders;
+
+    // Where the current loop's hoisted code goes, and what it writes to memory
+    private BasicBlock target;
+    private boolean guarded;
+    private boolean writesUnknown;
+    private boolean writesAny;
+    private Set<Type> storedArrays;
+    private Set<Integer> storedFields;
+    private List<BasicBlock[]> placements;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.placements = new ArrayList<>();
+
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        if (forest.getLoops().isEmpty()) {
+            return;
+        }
+        List<BasicBlock> headers = new ArrayList<>();
+        List<List<BasicBlock>> entries = new ArrayList<>();
+        for (Loop loop : forest.innermostFirst()) {
+            headers.add(loop.getHeader());
+            entries.add(loop.getEntries());
+        }
+        for (int i = 0; i < headers.size(); i++) {
+            cfg.insertPreheader(headers.get(i), entries.get(i));
+            preheaders++;
+        }
+
+        dominators = DominatorTree.dominators(cfg);
+        forest = new LoopForest(cfg, dominators);
+        for (BasicBlock header : headers) {
+            if (hoist(forest.getLoop(header))) {
+                // A guard adds an edge out of the preheader
+                dominators = DominatorTree.dominators(cfg);
+                forest = new LoopForest(cfg, dominators);
+            }
+        }
+        for (BasicBlock[] placement : placements) {
+            cfg.placeBefore(placement[0], placement[1]);
+        }
+    }
+
+    // Returns whether the graph changed
+    private boolean hoist(Loop loop) {
+        target = loop.getEntries().get(0);
+        guarded = false;
+        summarizeWrites(loop);
+
+        BitSet definedInside = new BitSet();
+        for (BasicBlock block : loop.getBlocks(cfg)) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    definedInside.set(Operand.index(insn.getDst()));
+                }
+            }
+        }
+
+        for (BasicBlock block : cfg.reversePostorder()) {
+            if (!loop.contains(block)) {
+                continue;
+            }
+            List<Insn> insns = block.getInsns();
+            for (int i = block.getPhiCount(); i < insns.size(); i++) {
+                Insn insn = insns.get(i);
+                if (!isInvariant(insn, definedInside) || !canRead(insn)) {
+                    continue;
+                }
+                if (mayFault(insn) && !(runsFirst(loop, block, i) && guard(loop, block))) {
+                    continue;
+                }
+                insns.remove(i--);
+                target.append(insn);
+                definedInside.clear(Operand.index(insn.getDst()));
+                hoisted++;
+            }
+        }
+        return guarded;
+    }
+
+    private void summarizeWrites(Loop loop) {
+        writesUnknown = false;
+        writesAny = false;
+        storedArrays = new HashSet<>();
+        storedFields = new HashSet<>();
+        for (BasicBlock block : loop.getBlocks(cfg)) {
+            for (Insn insn : block.getInsns()) {
+                switch (insn.getOpcode()) {
+                    case PUTFIELD:
+                        storedFields.add(insn.arg(1));
+                        writesAny = true;
+                        break;
+                    case ASTORE:
+                        storedArrays.add(method.typeOf(insn.arg(0)));
+                        writesAny = true;
+                        break;
+                    case CALL: {
+                        Purity purity = ((MethodRef) method.getSymbol(insn.arg(0))).getPurity();
+                        if (purity == null || purity == Purity.SIDE_EFFECTING) {
+                            writesUnknown = true;
+                            writesAny = true;
+                        }
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private boolean isInvariant(Insn insn, BitSet definedInside) {
+        if (!Operand.isVar(insn.getDst())) {
+            return false;
+        }
+        switch (insn.getOpcode()) {
+            case MOVE: case ADD: case SUB: case MUL: case DIV: case MOD:
+            case EQ: case NE: case LT: case GT: case LE: case GE:
+            case AND: case OR: case SHL: case SHR: case NEG: case NOT:
+            case GETFIELD: case ALOAD: case CALL:
+                break;
+            default:
+                return false;
+        }
+        for (int arg : insn.getArgs()) {
+            if (Operand.isVar(arg) && definedInside.get(Operand.index(arg))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether nothing in the loop can change what a memory read or call returns
+    private boolean canRead(Insn insn) {
+        switch (insn.getOpcode()) {
+            case GETFIELD:
+                return !writesUnknown && !storedFields.contains(insn.arg(1));
+            case ALOAD:
+                return !writesUnknown && !storedArrays.contains(method.typeOf(insn.arg(0)));
+            case CALL: {
+                Purity purity = ((MethodRef) method.getSymbol(insn.arg(0))).getPurity();
+                return purity == Purity.PURE || purity == Purity.READ_ONLY && !writesAny;
+            }
+            default:
+                return true;
+        }
+    }
+
+    private boolean mayFault(Insn insn) {
+        switch (insn.getOpcode()) {
+            case DIV: case MOD:
+                return !DeadCodeEliminator.isNonZeroConstant(method, insn.arg(1));
+            case GETFIELD:
+                return insn.arg(0) != method.thisOperand();
+            case ALOAD: case CALL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Whether the instruction at index in block runs on the first iteration, before any effect
+    // that stays in the loop and before any exit other than the header's test
+    private boolean runsFirst(Loop loop, BasicBlock block, int index) {
+        for (BasicBlock latch : loop.getLatches()) {
+            if (!dominators.dominates(block.getId(), latch.getId())) {
+                return false;
+            }
+        }
+        for (BasicBlock source : loop.getBlocks(cfg)) {
+            if (source == loop.getHeader() || dominators.dominates(block.getId(), source.getId())) {
+                continue;
+            }
+            for (BasicBlock successor : source.getSuccessors()) {
+                if (!loop.contains(successor)) {
+                    return false;
+                }
+            }
+        }
+
+        for (int i = 0; i < index; i++) {
+            if (DeadCodeEliminator.hasEffect(method, block.getInsns().get(i))) {
+                return false;
+            }
+        }
+        for (BasicBlock before : blocksBefore(loop, block)) {
+            for (Insn insn : before.getInsns()) {
+                if (DeadCodeEliminator.hasEffect(method, insn)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Loop blocks on a path from the header to the block, not counting the block itself
+    // unless an inner loop leads back to it
+    private List<BasicBlock> blocksBefore(Loop loop, BasicBlock block) {
+        List<BasicBlock> result = new ArrayList<>();
+        if (block == loop.getHeader()) {
+            return result;
+        }
+        BitSet seen = new BitSet();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        worklist.push(block);
+        while (!worklist.isEmpty()) {
+            BasicBlock current = worklist.pop();
+            if (current == loop.getHeader()) {
+                continue;
+            }
+            for (BasicBlock predecessor : current.getPredecessors()) {
+                if (loop.contains(predecessor) && !seen.get(predecessor.getId())) {
+                    seen.set(predecessor.getId());
+                    result.add(predecessor);
+                    worklist.push(predecessor);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Makes the hoist target run only when the loop is entered. Nothing is needed for code
+    // from the header itself or when the header has no exit; otherwise the header must be the
+    // loop's only exit, to a block it alone enters, and compute its test without effects.
+    private boolean guard(Loop loop, BasicBlock block) {
+        BasicBlock header = loop.getHeader();
+        List<BasicBlock> exits = loop.getExits(cfg);
+        if (guarded || block == header || exits.isEmpty()) {
+            return true;
+        }
+        BasicBlock exit = exits.get(0);
+        Insn test = header.getTerminator();
+        if (exits.size() > 1 || test == null || test.getOpcode() != Opcode.IF_FALSE
+                || exit.getPredecessors().size() != 1 || header.getSuccessors().get(1) != exit) {
+            return false;
+        }
+        for (BasicBlock source : loop.getBlocks(cfg)) {
+            if (source != header && source.getSuccessors().contains(exit)) {
+                return false;
+            }
+        }
+        for (Insn insn : header.getBody()) {
+            if (insn.getOpcode() != Opcode.PHI && DeadCodeEliminator.hasEffect(method, insn)) {
+                return false;
+            }
+        }
+
+        // The header's computation on the values entering the loop, at the end of the preheader
+        BasicBlock preheader = target;
+        int entryIndex = header.getPredecessors().indexOf(preheader);
+        Map<Integer, Integer> entering = new HashMap<>();
+        for (Insn insn : header.getInsns()) {
+            if (insn.getOpcode() == Opcode.PHI) {
+                entering.put(insn.getDst(), insn.arg(entryIndex));
+                continue;
+            }
+            int[] args = insn.getArgs().clone();
+            for (int i = 0; i < args.length; i++) {
+                args[i] = entering.getOrDefault(args[i], args[i]);
+            }
+            int dst = Operand.NONE;
+            if (Operand.isVar(insn.getDst())) {
+                dst = method.newTemp(method.typeOf(insn.getDst()));
+                entering.put(insn.getDst(), dst);
+            }
+            preheader.getInsns().add(new Insn(insn.getOpcode(), dst, args));
+        }
+        target = cfg.splitEdge(preheader, header);
+        cfg.addEdge(preheader, exit);
+        placements.add(new BasicBlock[] {target, header});
+
+        for (Insn phi : exit.getPhis()) {
+            int[] args = phi.getArgs();
+            int[] extended = Arrays.copyOf(args, args.length + 1);
+            extended[args.length] = entering.getOrDefault(args[0], args[0]);
+            phi.setArgs(extended);
+        }
+
+        // Header values used after the loop now arrive from either test
+        List<Insn> merges = new ArrayList<>();
+        Map<Integer, Integer> merged = new HashMap<>();
+        for (Map.Entry<Integer, Integer> value : entering.entrySet()) {
+            int original = value.getKey();
+            if (!usedOutside(loop, original, exit)) {
+                continue;
+            }
+            int phi = method.newTemp(method.typeOf(original));
+            merges.add(new Insn(Opcode.PHI, phi, original, value.getValue()));
+            merged.put(original, phi);
+        }
+        for (BasicBlock outside : cfg.getBlocks()) {
+            if (loop.contains(outside) || outside == preheader || outside == target) {
+                continue;
+            }
+            List<Insn> insns = outside.getInsns();
+            int start = outside == exit ? outside.getPhiCount() : 0;
+            for (int i = start; i < insns.size(); i++) {
+                int[] args = insns.get(i).getArgs();
+                for (int a = 0; a < args.length; a++) {
+                    args[a] = merged.getOrDefault(args[a], args[a]);
+                }
+            }
+        }
+        exit.getInsns().addAll(exit.getPhiCount(), merges);
+
+        guarded = true;
+        guardedLoops++;
+        return true;
+    }
+
+    private boolean usedOutside(Loop loop, int operand, BasicBlock exit) {
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (loop.contains(block) || block == target) {
+                continue;
+            }
+            List<Insn> insns = block.getInsns();
+            int start = block == exit ? block.getPhiCount() : 0;
+            for (int i = start; i < insns.size(); i++) {
+                for (int arg : insns.get(i).getArgs()) {
+                    if (arg == operand) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getHoisted() {
+        return hoisted;
+    }
+
+    // Loops whose preheader repeats the header's test so that faulting code could move
+    public int getGuardedLoops() {
+        return guardedLoops;
+    }
+
+    public int getPreheaders() {
+        return preheaders;
+    }
+}
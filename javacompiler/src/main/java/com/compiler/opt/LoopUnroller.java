@@ -0,0 +1,381 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.InductionVariables;
+import com.compiler.ir.InductionVariables.Induction;
+import com.compiler.ir.InductionVariables.TripCount;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Loop unrolling over SSA form, for innermost loops that leave only through the test in their
+// header and have a single latch. Copies of the loop are chained so that one copy's latch
+// runs into the next copy's header; header phis become the values the previous copy computed
+// and the copied headers lose their exit test.
+//
+// A loop whose constant trip count and size fit the budgets is unrolled completely: the
+// copies run from the preheader, and the original header is left to run its test once more,
+// which now always leaves the loop. Other loops with a basic induction variable counting
+// towards an invariant bound get factor copies in a new loop that runs while factor more
+// iterations are sure to pass the test, i + (factor - 1) * step < bound, with the original
+// loop behind it running the remaining iterations. The bound is moved in the preheader,
+// which sends every iteration to the remainder loop when the moved bound would wrap around.
+public class LoopUnroller {
+    public static final int DEFAULT_MAX_TRIP_COUNT = 16;
+    public static final int DEFAULT_FACTOR = 4;
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final int maxTripCount;
+    private final int factor;
+    private final int maxSize;
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private int fullyUnrolled;
+    private int partiallyUnrolled;
+    private int addedInstructions;
+
+    public LoopUnroller() {
+        this(DEFAULT_MAX_TRIP_COUNT, DEFAULT_FACTOR, DEFAULT_MAX_SIZE);
+    }
+
+    // maxSize bounds the instructions in all copies of one loop together
+    public LoopUnroller(int maxTripCount, int factor, int maxSize) {
+        this.maxTripCount = maxTripCount;
+        this.factor = factor;
+        this.maxSize = maxSize;
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        int before = size(cfg.getBlocks());
+
+        // Copies are entered from a preheader that only leads to the loop
+        LoopForest loops = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        List<BasicBlock> headers = new ArrayList<>();
+        Map<BasicBlock, List<BasicBlock>> entries = new HashMap<>();
+        for (Loop loop : loops.innermostFirst()) {
+            List<BasicBlock> loopEntries = loop.getEntries();
+            if (loopEntries.size() != 1 || loopEntries.get(0).getSuccessors().size() != 1) {
+                headers.add(loop.getHeader());
+                entries.put(loop.getHeader(), loopEntries);
+            }
+        }
+        for (BasicBlock header : headers) {
+            cfg.insertPreheader(header, entries.get(header));
+        }
+
+        // Each loop is looked at once; unrolling renumbers the blocks, so the loops are found
+        // again after every change, and an outer loop may become innermost on the way
+        Set<BasicBlock> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (true) {
+            LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+            Loop next = null;
+            for (Loop loop : forest.innermostFirst()) {
+                if (loop.getChildren().isEmpty() && !seen.contains(loop.getHeader())) {
+                    next = loop;
+                    break;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            seen.add(next.getHeader());
+            BasicBlock main = unroll(next);
+            if (main != null) {
+                seen.add(main);
+            }
+        }
+        addedInstructions = size(cfg.getBlocks()) - before;
+    }
+
+    // The header of the new unrolled loop, if there is one
+    private BasicBlock unroll(Loop loop) {
+        BasicBlock header = loop.getHeader();
+        List<BasicBlock> entries = loop.getEntries();
+        Insn test = header.getTerminator();
+        if (loop.getLatches().size() != 1 || entries.size() != 1 || entries.get(0).getSuccessors().size() != 1
+            || test == null || test.getOpcode() != Opcode.IF_FALSE) {
+            return null;
+        }
+        List<BasicBlock> blocks = loop.getBlocks(cfg);
+        for (BasicBlock block : blocks) {
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (block != header && !loop.contains(successor)) {
+                    return null;
+                }
+            }
+        }
+        BasicBlock preheader = entries.get(0);
+
+        TripCount tripCount = new InductionVariables(cfg, loop).getTripCount();
+        if (tripCount == null) {
+            return null;
+        }
+        int size = size(blocks) - 1;
+        long count = tripCount.getCount();
+        if (count >= 0 && count <= maxTripCount && size * count <= maxSize) {
+            unrollFully(header, preheader, loop.getLatches().get(0), blocks, (int) count);
+            fullyUnrolled++;
+            return null;
+        }
+        if (factor >= 2 && size * factor <= maxSize && countsTowardsBound(tripCount)) {
+            BasicBlock main = unrollPartially(header, preheader, loop.getLatches().get(0), blocks, tripCount);
+            if (main != null) {
+                partiallyUnrolled++;
+            }
+            return main;
+        }
+        return null;
+    }
+
+    private static boolean countsTowardsBound(TripCount tripCount) {
+        long step = tripCount.getInduction().getStep();
+        switch (tripCount.getComparison()) {
+            case LT:
+            case LE:
+                return step > 0;
+            case GT:
+            case GE:
+                return step < 0;
+            default:
+                return false;
+        }
+    }
+
+    private void unrollFully(BasicBlock header, BasicBlock preheader, BasicBlock latch, List<BasicBlock> blocks, int count) {
+        int entryIndex = header.getPredecessors().indexOf(preheader);
+        int latchIndex = header.getPredecessors().indexOf(latch);
+        List<Insn> phis = header.getPhis();
+
+        if (count > 0) {
+            int[] values = new int[phis.size()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = phis.get(j).arg(entryIndex);
+            }
+            List<Copy> copies = copyLoop(header, latch, blocks, count, values);
+            Copy first = copies.get(0);
+            Copy last = copies.get(count - 1);
+
+            // preheader -> copies -> header, in place of preheader -> header
+            preheader.getSuccessors().set(preheader.getSuccessors().indexOf(header), first.block(header));
+            first.block(header).getPredecessors().add(preheader);
+            last.block(latch).getSuccessors().add(header);
+            header.getPredecessors().set(entryIndex, last.block(latch));
+            for (Insn phi : phis) {
+                phi.setArg(entryIndex, last.value(phi.arg(latchIndex)));
+            }
+            place(copies, header);
+        }
+
+        // The header's test now fails on the first run, which leaves the old body unreachable
+        BasicBlock exit = null;
+        for (BasicBlock successor : header.getSuccessors()) {
+            if (!blocks.contains(successor)) {
+                exit = successor;
+            }
+        }
+        cfg.replaceBranch(header, exit);
+        cfg.removeUnreachableBlocks();
+    }
+
+    private BasicBlock unrollPartially(BasicBlock header, BasicBlock preheader, BasicBlock latch, List<BasicBlock> blocks,
+                                       TripCount tripCount) {
+        Induction induction = tripCount.getInduction();
+        long distance = (long) (factor - 1) * induction.getStep();
+        if (distance != (int) distance) {
+            return null;
+        }
+        int entryIndex = header.getPredecessors().indexOf(preheader);
+        int latchIndex = header.getPredecessors().indexOf(latch);
+        List<Insn> phis = header.getPhis();
+        int condition = header.getTerminator().arg(0);
+        Type booleanType = method.typeOf(condition);
+        Type intType = method.typeOf(induction.getVariable());
+
+        // limit = bound - (factor - 1) * step; the preheader skips to the remainder loop when
+        // that wraps around
+        int bound = tripCount.getBound();
+        int limit = method.newTemp(intType);
+        int fits = method.newTemp(booleanType);
+        Insn jump = preheader.getTerminator();
+        if (jump != null) {
+            preheader.getInsns().remove(jump);
+        }
+        preheader.append(new Insn(Opcode.SUB, limit, bound, method.constant((int) distance)));
+        preheader.append(new Insn(distance > 0 ? Opcode.LT : Opcode.GT, fits, limit, bound));
+        preheader.append(new Insn(Opcode.IF_FALSE, Operand.NONE, fits, Operand.NONE));
+
+        // A plain i < limit test, which the JIT recognizes as a counted loop
+        BasicBlock main = cfg.newBlock();
+        int[] values = new int[phis.size()];
+        int variable = Operand.NONE;
+        for (int j = 0; j < values.length; j++) {
+            values[j] = method.newTemp(method.typeOf(phis.get(j).getDst()));
+            if (phis.get(j).getDst() == induction.getVariable()) {
+                variable = values[j];
+            }
+        }
+        int holds = method.newTemp(booleanType);
+        main.getInsns().add(new Insn(tripCount.getComparison(), holds, variable, limit));
+        main.getInsns().add(new Insn(Opcode.IF_FALSE, Operand.NONE, holds, Operand.NONE));
+
+        List<Copy> copies = copyLoop(header, latch, blocks, factor, values);
+        Copy first = copies.get(0);
+        Copy last = copies.get(factor - 1);
+        int[] entryValues = new int[phis.size()];
+        for (int j = 0; j < values.length; j++) {
+            Insn phi = phis.get(j);
+            entryValues[j] = phi.arg(entryIndex);
+            main.getInsns().add(j, new Insn(Opcode.PHI, values[j], entryValues[j], last.value(phi.arg(latchIndex))));
+            phi.setArg(entryIndex, values[j]);
+        }
+
+        // preheader -> main or the remainder loop; main -> the copies or the remainder loop
+        preheader.getSuccessors().set(preheader.getSuccessors().indexOf(header), main);
+        main.getPredecessors().add(preheader);
+        last.block(latch).getSuccessors().add(main);
+        main.getPredecessors().add(last.block(latch));
+        main.getSuccessors().add(first.block(header));
+        first.block(header).getPredecessors().add(main);
+        main.getSuccessors().add(header);
+        header.getPredecessors().set(entryIndex, main);
+        cfg.addEdge(preheader, header);
+        for (int j = 0; j < phis.size(); j++) {
+            int[] args = Arrays.copyOf(phis.get(j).getArgs(), header.getPredecessors().size());
+            args[args.length - 1] = entryValues[j];
+            phis.get(j).setArgs(args);
+        }
+
+        cfg.placeBefore(main, header);
+        place(copies, header);
+        return main;
+    }
+
+    // One copy of the loop's blocks and the variables they define
+    private static final class Copy {
+        final Map<BasicBlock, BasicBlock> blocks = new IdentityHashMap<>();
+        final Map<Integer, Integer> values = new HashMap<>();
+
+        BasicBlock block(BasicBlock original) {
+            return blocks.get(original);
+        }
+
+        int value(int operand) {
+            return values.getOrDefault(operand, operand);
+        }
+    }
+
+    // count copies chained latch to header, the first entered with the given header phi
+    // values. The last latch is left without its edge back.
+    private List<Copy> copyLoop(BasicBlock header, BasicBlock latch, List<BasicBlock> blocks, int count, int[] entryValues) {
+        int latchIndex = header.getPredecessors().indexOf(latch);
+        List<Insn> phis = header.getPhis();
+        List<Copy> copies = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            Copy copy = new Copy();
+            for (int j = 0; j < phis.size(); j++) {
+                Insn phi = phis.get(j);
+                copy.values.put(phi.getDst(), k == 0 ? entryValues[j] : copies.get(k - 1).value(phi.arg(latchIndex)));
+            }
+            for (BasicBlock block : blocks) {
+                copy.blocks.put(block, cfg.newBlock());
+                for (Insn insn : block.getInsns()) {
+                    if (Operand.isVar(insn.getDst()) && !(block == header && insn.getOpcode() == Opcode.PHI)) {
+                        copy.values.put(insn.getDst(), method.newTemp(method.typeOf(insn.getDst())));
+                    }
+                }
+            }
+            for (BasicBlock block : blocks) {
+                List<Insn> insns = block == header ? block.getBody().subList(block.getPhiCount(), block.getBody().size()) : block.getInsns();
+                for (Insn insn : insns) {
+                    if (insn.getOpcode() == Opcode.GOTO) {
+                        continue;
+                    }
+                    int[] args = insn.getArgs().clone();
+                    for (int a = 0; a < args.length; a++) {
+                        args[a] = copy.value(args[a]);
+                    }
+                    copy.block(block).getInsns().add(new Insn(insn.getOpcode(), copy.value(insn.getDst()), args));
+                }
+            }
+            copies.add(copy);
+        }
+
+        for (int k = 0; k < count; k++) {
+            Copy copy = copies.get(k);
+            for (BasicBlock block : blocks) {
+                BasicBlock clone = copy.block(block);
+                for (BasicBlock successor : block.getSuccessors()) {
+                    if (successor == header) {
+                        if (k + 1 < count) {
+                            clone.getSuccessors().add(copies.get(k + 1).block(header));
+                            copies.get(k + 1).block(header).getPredecessors().add(clone);
+                        }
+                    } else if (blocks.contains(successor)) {
+                        clone.getSuccessors().add(copy.block(successor));
+                    }
+                }
+                // Predecessors in the original order, which the copied phis rely on
+                if (block != header) {
+                    for (BasicBlock predecessor : block.getPredecessors()) {
+                        clone.getPredecessors().add(copy.block(predecessor));
+                    }
+                }
+            }
+        }
+        return copies;
+    }
+
+    // Lays the copies out in order before the given block
+    private void place(List<Copy> copies, BasicBlock position) {
+        for (Copy copy : copies) {
+            List<BasicBlock> clones = new ArrayList<>(copy.blocks.values());
+            clones.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            for (BasicBlock clone : clones) {
+                cfg.placeBefore(clone, position);
+            }
+        }
+    }
+
+    // Instructions other than phis and jumps, which is what a copy holds besides the header's test
+    private static int size(List<BasicBlock> blocks) {
+        int size = 0;
+        for (BasicBlock block : blocks) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() != Opcode.PHI && insn.getOpcode() != Opcode.GOTO) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    public int getFullyUnrolled() {
+        return fullyUnrolled;
+    }
+
+    public int getPartiallyUnrolled() {
+        return partiallyUnrolled;
+    }
+
+    // Instructions the copies added, less the loops that full unrolling removed
+    public int getAddedInstructions() {
+        return addedInstructions;
+    }
+}
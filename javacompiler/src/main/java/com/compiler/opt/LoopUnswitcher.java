@@ -0,0 +1,271 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Loop unswitching over SSA form. An if inside a loop whose condition is computed before the
+// loop, typically after LICM has hoisted the test, is decided once in the preheader instead:
+// the loop is copied, the original keeps only the then branch and the copy only the else
+// branch. Each version gets a preheader of its own, so the other loop passes see two plain
+// loops, and an inner loop unswitched this way may be unswitched again as part of its outer
+// loop.
+//
+// Only loops with one exit block, entered from nowhere else, are copied. Values from the loop
+// used after it are merged by a phi in that block, and each version leaving it by a single
+// edge gets a new exit block on that edge. A loop is copied only while it has at most
+// maxLoopSize instructions and the method has grown by less than maxGrowth.
+public class LoopUnswitcher {
+    public static final int DEFAULT_MAX_LOOP_SIZE = 48;
+    public static final int DEFAULT_MAX_GROWTH = 96;
+
+    private final int maxLoopSize;
+    private final int maxGrowth;
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private int unswitchedLoops;
+    private int addedInstructions;
+
+    public LoopUnswitcher() {
+        this(DEFAULT_MAX_LOOP_SIZE, DEFAULT_MAX_GROWTH);
+    }
+
+    public LoopUnswitcher(int maxLoopSize, int maxGrowth) {
+        this.maxLoopSize = maxLoopSize;
+        this.maxGrowth = maxGrowth;
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        List<BasicBlock> headers = new ArrayList<>();
+        Map<BasicBlock, List<BasicBlock>> entries = new HashMap<>();
+        for (Loop loop : forest.innermostFirst()) {
+            List<BasicBlock> loopEntries = loop.getEntries();
+            if (loopEntries.size() != 1 || loopEntries.get(0).getSuccessors().size() != 1) {
+                headers.add(loop.getHeader());
+                entries.put(loop.getHeader(), loopEntries);
+            }
+        }
+        for (BasicBlock header : headers) {
+            cfg.insertPreheader(header, entries.get(header));
+        }
+
+        // One loop at a time, since copying renumbers the blocks
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+            for (Loop loop : forest.innermostFirst()) {
+                int size = size(loop.getBlocks(cfg));
+                if (size > maxLoopSize || addedInstructions + size > maxGrowth) {
+                    continue;
+                }
+                BasicBlock branch = invariantBranch(loop);
+                if (branch != null && unswitch(loop, branch)) {
+                    addedInstructions += size;
+                    unswitchedLoops++;
+                    changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // A block inside the loop, other than the header, ending in a two-way branch on a value
+    // from outside the loop with both ways staying in it
+    private BasicBlock invariantBranch(Loop loop) {
+        Set<Integer> defined = definitions(loop);
+        for (BasicBlock block : loop.getBlocks(cfg)) {
+            Insn terminator = block.getTerminator();
+            if (block == loop.getHeader() || terminator == null || terminator.getOpcode() != Opcode.IF_FALSE) {
+                continue;
+            }
+            int condition = terminator.arg(0);
+            if (Operand.isVar(condition) && !defined.contains(condition)
+                && loop.contains(block.getSuccessors().get(0)) && loop.contains(block.getSuccessors().get(1))) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private Set<Integer> definitions(Loop loop) {
+        Set<Integer> defined = new HashSet<>();
+        for (BasicBlock block : loop.getBlocks(cfg)) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    defined.add(insn.getDst());
+                }
+            }
+        }
+        return defined;
+    }
+
+    private boolean unswitch(Loop loop, BasicBlock branch) {
+        BasicBlock header = loop.getHeader();
+        BasicBlock preheader = loop.getEntries().get(0);
+        List<BasicBlock> exits = loop.getExits(cfg);
+        if (loop.getEntries().size() != 1 || preheader.getSuccessors().size() != 1 || exits.size() != 1) {
+            return false;
+        }
+        BasicBlock exit = exits.get(0);
+        List<BasicBlock> blocks = loop.getBlocks(cfg);
+        for (BasicBlock predecessor : exit.getPredecessors()) {
+            if (!loop.contains(predecessor)) {
+                return false;
+            }
+        }
+        Set<Integer> defined = definitions(loop);
+        int condition = branch.getTerminator().arg(0);
+
+        // The copy, with fresh variables for everything the loop defines
+        Map<BasicBlock, BasicBlock> copies = new IdentityHashMap<>();
+        Map<Integer, Integer> values = new HashMap<>();
+        for (BasicBlock block : blocks) {
+            copies.put(block, cfg.newBlock());
+        }
+        for (int variable : defined) {
+            values.put(variable, method.newTemp(method.typeOf(variable)));
+        }
+        for (BasicBlock block : blocks) {
+            BasicBlock copy = copies.get(block);
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs().clone();
+                for (int a = 0; a < args.length; a++) {
+                    args[a] = values.getOrDefault(args[a], args[a]);
+                }
+                copy.getInsns().add(new Insn(insn.getOpcode(), values.getOrDefault(insn.getDst(), insn.getDst()), args));
+            }
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                copy.getPredecessors().add(copies.getOrDefault(predecessor, predecessor));
+            }
+        }
+        for (BasicBlock block : blocks) {
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (successor == exit) {
+                    int index = exit.getPredecessors().indexOf(block);
+                    copies.get(block).getSuccessors().add(exit);
+                    exit.getPredecessors().add(copies.get(block));
+                    for (Insn phi : exit.getPhis()) {
+                        int[] args = Arrays.copyOf(phi.getArgs(), exit.getPredecessors().size());
+                        args[args.length - 1] = values.getOrDefault(phi.arg(index), phi.arg(index));
+                        phi.setArgs(args);
+                    }
+                } else {
+                    copies.get(block).getSuccessors().add(copies.get(successor));
+                }
+            }
+        }
+
+        // Values from the loop used after it come from either version
+        mergeAtExit(loop, exit, defined, values, copies);
+
+        // The preheader decides: the original loop when the condition holds, the copy otherwise
+        Insn jump = preheader.getTerminator();
+        if (jump != null) {
+            preheader.getInsns().remove(jump);
+        }
+        preheader.append(new Insn(Opcode.IF_FALSE, Operand.NONE, condition, Operand.NONE));
+        preheader.getSuccessors().add(copies.get(header));
+
+        BasicBlock copiedBranch = copies.get(branch);
+        BasicBlock elseBlock = copies.get(branch.getSuccessors().get(1));
+        cfg.replaceBranch(branch, branch.getSuccessors().get(0));
+        cfg.replaceBranch(copiedBranch, elseBlock);
+
+        for (BasicBlock block : blocks) {
+            cfg.placeBefore(copies.get(block), exit);
+        }
+        BasicBlock copiedHeader = copies.get(header);
+        cfg.placeBefore(cfg.splitEdge(preheader, header), header);
+        cfg.placeBefore(cfg.splitEdge(preheader, copiedHeader), copiedHeader);
+        cfg.removeUnreachableBlocks();
+
+        // An exit of its own for each version, so that either can be unswitched again
+        List<BasicBlock> original = new ArrayList<>();
+        List<BasicBlock> copied = new ArrayList<>();
+        for (BasicBlock predecessor : exit.getPredecessors()) {
+            (copies.containsValue(predecessor) ? copied : original).add(predecessor);
+        }
+        for (List<BasicBlock> version : Arrays.asList(original, copied)) {
+            if (version.size() == 1) {
+                cfg.placeBefore(cfg.splitEdge(version.get(0), exit), exit);
+            }
+        }
+        return true;
+    }
+
+    private void mergeAtExit(Loop loop, BasicBlock exit, Set<Integer> defined, Map<Integer, Integer> values,
+                             Map<BasicBlock, BasicBlock> copies) {
+        Set<BasicBlock> copied = new HashSet<>(copies.values());
+        Map<Integer, Integer> merged = new HashMap<>();
+        List<Insn> phis = new ArrayList<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (loop.contains(block) || copied.contains(block)) {
+                continue;
+            }
+            int phiCount = block == exit ? block.getPhiCount() : 0;
+            List<Insn> insns = block.getInsns();
+            for (int i = phiCount; i < insns.size(); i++) {
+                int[] args = insns.get(i).getArgs();
+                for (int a = 0; a < args.length; a++) {
+                    if (!defined.contains(args[a])) {
+                        continue;
+                    }
+                    Integer phi = merged.get(args[a]);
+                    if (phi == null) {
+                        phi = method.newTemp(method.typeOf(args[a]));
+                        int[] phiArgs = new int[exit.getPredecessors().size()];
+                        for (int p = 0; p < phiArgs.length; p++) {
+                            phiArgs[p] = copied.contains(exit.getPredecessors().get(p)) ? values.get(args[a]) : args[a];
+                        }
+                        phis.add(new Insn(Opcode.PHI, phi, phiArgs));
+                        merged.put(args[a], phi);
+                    }
+                    args[a] = phi;
+                }
+            }
+        }
+        exit.getInsns().addAll(exit.getPhiCount(), phis);
+    }
+
+    // Instructions other than phis and jumps
+    private static int size(List<BasicBlock> blocks) {
+        int size = 0;
+        for (BasicBlock block : blocks) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() != Opcode.PHI && insn.getOpcode() != Opcode.GOTO) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    public int getUnswitchedLoops() {
+        return unswitchedLoops;
+    }
+
+    // Size of the loops that were copied
+    public int getAddedInstructions() {
+        return addedInstructions;
+    }
+}
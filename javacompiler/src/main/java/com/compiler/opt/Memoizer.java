@@ -0,0 +1,61 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+import com.compiler.semantic.PurityAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Marks pure, self-recursive methods over int/boolean values for memoization. The backend
+// then routes every call through a generated memo table (see MemoTableGenerator).
+public class Memoizer {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+
+    public Memoizer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Memoizer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Memo table size must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    // Requires purity results from the given analyzer; returns the memoized methods
+    public List<MethodDecl> apply(Program program, PurityAnalyzer purityAnalyzer) {
+        List<MethodDecl> memoized = new ArrayList<>();
+
+        for (ClassDecl classDecl : program.getClasses()) {
+            for (MethodDecl method : classDecl.getMethods()) {
+                if (isEligible(method) && purityAnalyzer.isRecursive(method)) {
+                    method.setMemoCapacity(capacity);
+                    memoized.add(method);
+                }
+            }
+        }
+
+        return memoized;
+    }
+
+    public static boolean isEligible(MethodDecl method) {
+        if (method.getPurity() != Purity.PURE || !isIntLike(method.getReturnType())) {
+            return false;
+        }
+        if (method.getParameters().isEmpty()) {
+            return false;
+        }
+        for (Parameter param : method.getParameters()) {
+            if (!isIntLike(param.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIntLike(Type type) {
+        return !type.isArray() && (type.getName().equals("int") || type.getName().equals("boolean"));
+    }
+}
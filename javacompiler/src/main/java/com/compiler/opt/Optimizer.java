@@ -0,0 +1,34 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Program;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Runs the AST-level optimization passes; the program must already be type- and purity-annotated
+public class Optimizer {
+    private final Map<String, Integer> statistics;
+
+    public Optimizer() {
+        this.statistics = new LinkedHashMap<>();
+    }
+
+    public void optimize(Program program) {
+        // Folding first turns constant argument expressions into literals for the partial
+        // evaluator, and folding again cleans up around the calls it replaced
+        ConstantFolder folder = new ConstantFolder();
+        folder.rewrite(program);
+
+        PartialEvaluator evaluator = new PartialEvaluator();
+        evaluator.rewrite(program);
+        statistics.put("partial-evaluation.folded-calls", evaluator.getFoldedCalls());
+
+        folder.rewrite(program);
+        statistics.put("constant-folding.folded", folder.getFoldedExpressions());
+        statistics.put("constant-folding.simplified", folder.getSimplifiedExpressions());
+    }
+
+    public Map<String, Integer> getStatistics() {
+        return statistics;
+    }
+}
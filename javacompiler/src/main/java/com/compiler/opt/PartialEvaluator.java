@@ -0,0 +1,84 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+import com.compiler.semantic.PurityAnalyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Replaces calls to pure methods whose arguments are all literals with the literal result,
+// e.g. fib(20) becomes 6765. Each call site gets its own step and time budget; calls that
+// exceed it, or that the interpreter cannot evaluate exactly, are left untouched.
+public class PartialEvaluator extends ASTRewriter {
+    public static final int DEFAULT_STEP_BUDGET = 1_000_000;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 200;
+
+    private static final Object FAILED = new Object();
+
+    private final int stepBudget;
+    private final long timeBudgetMillis;
+    private final Map<List<Object>, Object> results;
+    private int foldedCalls;
+
+    public PartialEvaluator() {
+        this(DEFAULT_STEP_BUDGET, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    public PartialEvaluator(int stepBudget, long timeBudgetMillis) {
+        this.stepBudget = stepBudget;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.results = new HashMap<>();
+    }
+
+    public int getFoldedCalls() {
+        return foldedCalls;
+    }
+
+    @Override
+    public ASTNode visit(CallExpr callExpr) {
+        CallExpr call = (CallExpr) super.visit(callExpr);
+
+        if (call.getCallee() != null && !(call.getCallee() instanceof ThisExpr)) {
+            return call;
+        }
+
+        MethodDecl target = PurityAnalyzer.resolve(currentClass, call.getMethodName());
+        if (target == null || target.getPurity() != Purity.PURE
+                || target.getParameters().size() != call.getArguments().size()) {
+            return call;
+        }
+
+        List<Object> args = new ArrayList<>();
+        for (Expression arg : call.getArguments()) {
+            if (arg instanceof IntLiteral) {
+                args.add(((IntLiteral) arg).getValue());
+            } else if (arg instanceof BoolLiteral) {
+                args.add(((BoolLiteral) arg).getValue());
+            } else {
+                return call;
+            }
+        }
+
+        List<Object> key = new ArrayList<>(Arrays.asList(target));
+        key.addAll(args);
+        Object value = results.get(key);
+        if (value == null) {
+            try {
+                value = new ConstantEvaluator(stepBudget, timeBudgetMillis).call(currentClass, target, args);
+            } catch (ConstantEvaluator.AbortException | StackOverflowError e) {
+                value = FAILED;
+            }
+            results.put(key, value);
+        }
+
+        if (value == FAILED) {
+            return call;
+        }
+
+        foldedCalls++;
+        return literal(value, call);
+    }
+}
@@ -0,0 +1,471 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Partial redundancy elimination by lazy code motion (Knoop, Ruthing and Steffen, in the edge
+// form of Drechsler and Stadel) over SSA form. An expression is an opcode with its operands as
+// written, so the definitions of those operands are the only kills. Anticipation and
+// availability give the earliest edges where each expression could be computed; pushing
+// these as late as the computations allow gives the edges where it is inserted and the
+// computations it makes fully redundant, which are deleted. No path computes an expression
+// more often than before.
+//
+// The computations left and the inserted ones each define their own variable, and each
+// deleted one is replaced by the value reaching it, with phis where several of them meet.
+// Only computations that cannot fault take part, since an inserted one may run earlier than
+// the original, before effects that should come first. GVN runs before and removes the
+// computations that are redundant on every path in dominator order; this pass catches the
+// rest, such as a computation in one arm of an if and again after the join.
+public class PartialRedundancyEliminator {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private List<Expression> expressions;
+    private Map<Expression, Integer> indices;
+    private List<BitSet> occurrences;
+    private List<Type> types;
+    private int insertedExpressions;
+    private int deletedExpressions;
+    private int insertedPhis;
+    private Map<Integer, Integer> replaced;
+
+    // For the expression being rewritten, the value it has at the end and start of a block
+    private Map<BasicBlock, Integer> exitValues;
+    private Map<BasicBlock, Integer> entryValues;
+    private Type type;
+
+    private static final class Expression {
+        private final Opcode opcode;
+        private final int[] operands;
+
+        Expression(Opcode opcode, int[] operands) {
+            this.opcode = opcode;
+            this.operands = operands;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Expression)) return false;
+            Expression other = (Expression) obj;
+            return opcode == other.opcode && Arrays.equals(operands, other.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return opcode.hashCode() * 31 + Arrays.hashCode(operands);
+        }
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.expressions = new ArrayList<>();
+        this.indices = new HashMap<>();
+        this.occurrences = new ArrayList<>();
+        this.types = new ArrayList<>();
+        this.replaced = new HashMap<>();
+
+        List<BasicBlock> blocks = new ArrayList<>(cfg.getBlocks());
+        int n = blocks.size();
+        BitSet[] computed = new BitSet[n];
+        BitSet[] exposed = new BitSet[n];
+        BitSet[] killed = new BitSet[n];
+        summarize(blocks, computed, exposed, killed);
+        if (expressions.isEmpty()) {
+            return;
+        }
+        BitSet all = new BitSet();
+        all.set(0, expressions.size());
+
+        // Available at the end of a block, and anticipated at its start
+        BitSet[] availableOut = new BitSet[n];
+        BitSet[] anticipatedIn = new BitSet[n];
+        BitSet[] anticipatedOut = new BitSet[n];
+        for (int b = 0; b < n; b++) {
+            availableOut[b] = (BitSet) all.clone();
+            anticipatedIn[b] = (BitSet) all.clone();
+            anticipatedOut[b] = new BitSet();
+        }
+        List<BasicBlock> order = cfg.reversePostorder();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                BitSet in = meet(block.getPredecessors(), availableOut, all);
+                in.andNot(killed[block.getId()]);
+                in.or(computed[block.getId()]);
+                if (!in.equals(availableOut[block.getId()])) {
+                    availableOut[block.getId()] = in;
+                    changed = true;
+                }
+            }
+        }
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = order.size() - 1; i >= 0; i--) {
+                BasicBlock block = order.get(i);
+                BitSet out = meet(block.getSuccessors(), anticipatedIn, all);
+                anticipatedOut[block.getId()] = out;
+                BitSet in = (BitSet) out.clone();
+                in.andNot(killed[block.getId()]);
+                in.or(exposed[block.getId()]);
+                if (!in.equals(anticipatedIn[block.getId()])) {
+                    anticipatedIn[block.getId()] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        // Pushes each earliest placement down while no computation needs it sooner
+        Map<BasicBlock, BitSet[]> later = new IdentityHashMap<>();
+        BitSet[] laterIn = new BitSet[n];
+        for (int b = 0; b < n; b++) {
+            laterIn[b] = (BitSet) all.clone();
+            later.put(blocks.get(b), new BitSet[blocks.get(b).getSuccessors().size()]);
+        }
+        // As if entered by an edge where everything anticipated is earliest
+        laterIn[cfg.getEntry().getId()] = (BitSet) anticipatedIn[cfg.getEntry().getId()].clone();
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                int b = block.getId();
+                List<BasicBlock> successors = block.getSuccessors();
+                for (int s = 0; s < successors.size(); s++) {
+                    BitSet edge = (BitSet) laterIn[b].clone();
+                    edge.andNot(exposed[b]);
+                    edge.or(earliest(block, successors.get(s), availableOut, anticipatedIn, anticipatedOut, killed));
+                    later.get(block)[s] = edge;
+                }
+                for (BasicBlock successor : successors) {
+                    if (successor == cfg.getEntry()) {
+                        continue;
+                    }
+                    BitSet in = (BitSet) all.clone();
+                    for (BasicBlock predecessor : successor.getPredecessors()) {
+                        BitSet[] edges = later.get(predecessor);
+                        int index = predecessor.getSuccessors().indexOf(successor);
+                        in.and(edges[index] != null ? edges[index] : all);
+                    }
+                    if (!in.equals(laterIn[successor.getId()])) {
+                        laterIn[successor.getId()] = in;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        // Inserts on the edges into the places where an expression stops being later. Splitting
+        // renumbers the blocks, so the edges are all found first.
+        List<BasicBlock[]> edges = new ArrayList<>();
+        List<BitSet> inserts = new ArrayList<>();
+        for (BasicBlock block : order) {
+            List<BasicBlock> successors = block.getSuccessors();
+            for (int s = 0; s < successors.size(); s++) {
+                BitSet insert = (BitSet) later.get(block)[s].clone();
+                insert.andNot(laterIn[successors.get(s).getId()]);
+                if (!insert.isEmpty() && successors.indexOf(successors.get(s)) == s) {
+                    edges.add(new BasicBlock[] {block, successors.get(s)});
+                    inserts.add(insert);
+                }
+            }
+        }
+        Map<Integer, List<BasicBlock>> insertedAtEntry = new HashMap<>();
+        for (int i = 0; i < edges.size(); i++) {
+            BasicBlock from = edges.get(i)[0];
+            BasicBlock to = edges.get(i)[1];
+            boolean atEntry = false;
+            BasicBlock target = from;
+            if (!allSuccessorsAre(from, to)) {
+                if (to.getPredecessors().size() == 1) {
+                    target = to;
+                    atEntry = true;
+                } else {
+                    target = cfg.splitEdge(from, to);
+                    cfg.placeBefore(target, to);
+                }
+            }
+            BitSet insert = inserts.get(i);
+            for (int e = insert.nextSetBit(0); e >= 0; e = insert.nextSetBit(e + 1)) {
+                Expression expression = expressions.get(e);
+                Insn insn = new Insn(expression.opcode, method.newTemp(types.get(e)), expression.operands.clone());
+                if (atEntry) {
+                    target.getInsns().add(target.getPhiCount(), insn);
+                    insertedAtEntry.computeIfAbsent(e, k -> new ArrayList<>()).add(target);
+                } else {
+                    target.append(insn);
+                }
+                insertedExpressions++;
+            }
+        }
+
+        for (int e = 0; e < expressions.size(); e++) {
+            List<BasicBlock> deletions = new ArrayList<>();
+            BitSet blocksWith = occurrences.get(e);
+            for (int b = blocksWith.nextSetBit(0); b >= 0; b = blocksWith.nextSetBit(b + 1)) {
+                if (exposed[b].get(e) && !laterIn[b].get(e)) {
+                    deletions.add(blocks.get(b));
+                }
+            }
+            if (!deletions.isEmpty()) {
+                rewrite(e, deletions, insertedAtEntry.getOrDefault(e, Collections.emptyList()));
+            }
+        }
+        rewriteUses();
+    }
+
+    // The blocks computing each expression, those computing it before anything it reads is
+    // defined, and those defining something it reads
+    private void summarize(List<BasicBlock> blocks, BitSet[] computed, BitSet[] exposed, BitSet[] killed) {
+        Map<Integer, BitSet> readers = new HashMap<>();
+        for (BasicBlock block : blocks) {
+            computed[block.getId()] = new BitSet();
+            for (Insn insn : block.getInsns()) {
+                Expression expression = expressionOf(insn);
+                if (expression == null) {
+                    continue;
+                }
+                Integer index = indices.get(expression);
+                if (index == null) {
+                    index = expressions.size();
+                    expressions.add(expression);
+                    indices.put(expression, index);
+                    occurrences.add(new BitSet());
+                    types.add(method.typeOf(insn.getDst()));
+                    for (int operand : expression.operands) {
+                        if (Operand.isVar(operand)) {
+                            readers.computeIfAbsent(operand, k -> new BitSet()).set(index);
+                        }
+                    }
+                }
+                computed[block.getId()].set(index);
+                occurrences.get(index).set(block.getId());
+            }
+        }
+        // In SSA form the definitions in a block come before the computations reading them
+        for (BasicBlock block : blocks) {
+            BitSet kills = new BitSet();
+            for (Insn insn : block.getInsns()) {
+                BitSet read = readers.get(insn.getDst());
+                if (read != null) {
+                    kills.or(read);
+                }
+            }
+            killed[block.getId()] = kills;
+            exposed[block.getId()] = (BitSet) computed[block.getId()].clone();
+            exposed[block.getId()].andNot(kills);
+        }
+    }
+
+    private BitSet earliest(BasicBlock from, BasicBlock to, BitSet[] availableOut, BitSet[] anticipatedIn,
+                            BitSet[] anticipatedOut, BitSet[] killed) {
+        BitSet result = (BitSet) anticipatedIn[to.getId()].clone();
+        result.andNot(availableOut[from.getId()]);
+        BitSet blocked = (BitSet) anticipatedOut[from.getId()].clone();
+        blocked.andNot(killed[from.getId()]);
+        result.andNot(blocked);
+        return result;
+    }
+
+    // Intersection over the given blocks, nothing when there are none
+    private static BitSet meet(List<BasicBlock> blocks, BitSet[] sets, BitSet all) {
+        if (blocks.isEmpty()) {
+            return new BitSet();
+        }
+        BitSet result = (BitSet) all.clone();
+        for (BasicBlock block : blocks) {
+            result.and(sets[block.getId()]);
+        }
+        return result;
+    }
+
+    // Deletes the first computation in each of the given blocks, which now all have the value
+    // of the expression coming in. Computations inserted at the start of a block come first.
+    private void rewrite(int e, List<BasicBlock> deletions, List<BasicBlock> insertedAtEntry) {
+        Expression expression = expressions.get(e);
+        type = types.get(e);
+        Map<BasicBlock, Insn> deleted = new IdentityHashMap<>();
+        for (BasicBlock block : deletions) {
+            List<Insn> insns = block.getInsns();
+            int start = insertedAtEntry.contains(block) ? block.getPhiCount() + 1 : 0;
+            for (int i = start; i < insns.size(); i++) {
+                if (expression.equals(expressionOf(insns.get(i)))) {
+                    deleted.put(block, insns.get(i));
+                    break;
+                }
+            }
+        }
+
+        // The last computation that stays in a block is the value it passes on
+        exitValues = new IdentityHashMap<>();
+        entryValues = new IdentityHashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (deleted.get(block) != insn && expression.equals(expressionOf(insn))) {
+                    exitValues.put(block, insn.getDst());
+                }
+            }
+        }
+
+        List<Insn> phis = new ArrayList<>();
+        for (BasicBlock block : deletions) {
+            Insn insn = deleted.get(block);
+            int value = insertedAtEntry.contains(block)
+                ? block.getInsns().get(block.getPhiCount()).getDst()
+                : valueAtEntry(block, phis);
+            replaced.put(insn.getDst(), value);
+            block.getInsns().remove(insn);
+            deletedExpressions++;
+        }
+        removeTrivialPhis(phis);
+        insertedPhis += phis.size();
+    }
+
+    private int valueAtExit(BasicBlock block, List<Insn> phis) {
+        Integer value = exitValues.get(block);
+        return value != null ? value : valueAtEntry(block, phis);
+    }
+
+    // The value reaching the start of a block, merged by a new phi where paths meet
+    private int valueAtEntry(BasicBlock block, List<Insn> phis) {
+        Integer value = entryValues.get(block);
+        if (value != null) {
+            return value;
+        }
+        List<BasicBlock> predecessors = block.getPredecessors();
+        if (predecessors.isEmpty()) {
+            throw new IllegalStateException("expression not available in " + method.getName());
+        }
+        if (predecessors.size() == 1) {
+            value = valueAtExit(predecessors.get(0), phis);
+            entryValues.put(block, value);
+            return value;
+        }
+        Insn phi = new Insn(Opcode.PHI, method.newTemp(type), new int[predecessors.size()]);
+        entryValues.put(block, phi.getDst());
+        for (int p = 0; p < predecessors.size(); p++) {
+            phi.setArg(p, valueAtExit(predecessors.get(p), phis));
+        }
+        block.getInsns().add(0, phi);
+        phis.add(phi);
+        return phi.getDst();
+    }
+
+    // A phi merging one value with itself, as around a loop that does not compute the
+    // expression, is that value
+    private void removeTrivialPhis(List<Insn> phis) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < phis.size(); i++) {
+                Insn phi = phis.get(i);
+                int value = Operand.NONE;
+                boolean trivial = true;
+                for (int arg : phi.getArgs()) {
+                    arg = resolve(arg);
+                    if (arg == phi.getDst() || arg == value) {
+                        continue;
+                    }
+                    if (value != Operand.NONE) {
+                        trivial = false;
+                        break;
+                    }
+                    value = arg;
+                }
+                if (trivial) {
+                    replaced.put(phi.getDst(), value);
+                    for (BasicBlock block : cfg.getBlocks()) {
+                        block.getInsns().remove(phi);
+                    }
+                    phis.remove(i--);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int resolve(int operand) {
+        Integer value = replaced.get(operand);
+        while (value != null) {
+            operand = value;
+            value = replaced.get(operand);
+        }
+        return operand;
+    }
+
+    private void rewriteUses() {
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = resolve(args[i]);
+                }
+            }
+        }
+    }
+
+    // Computations that depend only on their operands and cannot fault
+    private Expression expressionOf(Insn insn) {
+        if (!Operand.isVar(insn.getDst())) {
+            return null;
+        }
+        Opcode opcode = insn.getOpcode();
+        switch (opcode) {
+            case DIV: case MOD:
+                if (!DeadCodeEliminator.isNonZeroConstant(method, insn.arg(1))) {
+                    return null;
+                }
+                break;
+            case ADD: case SUB: case MUL:
+            case EQ: case NE: case LT: case LE: case GT: case GE:
+            case AND: case OR: case SHL: case SHR: case NEG: case NOT:
+                break;
+            default:
+                return null;
+        }
+        int[] operands = insn.getArgs().clone();
+        if (opcode.isCommutative() && operands[0] > operands[1]) {
+            int first = operands[0];
+            operands[0] = operands[1];
+            operands[1] = first;
+        }
+        return new Expression(opcode, operands);
+    }
+
+    private static boolean allSuccessorsAre(BasicBlock from, BasicBlock to) {
+        for (BasicBlock successor : from.getSuccessors()) {
+            if (successor != to) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getInsertedExpressions() {
+        return insertedExpressions;
+    }
+
+    public int getDeletedExpressions() {
+        return deletedExpressions;
+    }
+
+    // Phis merging the value of an expression where its computations meet
+    public int getInsertedPhis() {
+        return insertedPhis;
+    }
+}
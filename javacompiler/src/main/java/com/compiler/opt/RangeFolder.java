@@ -0,0 +1,84 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.ValueRanges;
+import com.compiler.ir.ValueRanges.Range;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Simplification over SSA form by what ValueRanges knows about int values. A comparison
+// whose operand ranges decide it, such as a second 'i >= 0' inside a loop counting up from
+// zero or an 'x < 10' below 'if (x < 5)', becomes a copy of the constant result, and a
+// branch on it turns into a jump, taking the blocks only it led to with it. Guards that
+// generated code repeats before every access thus disappear. Division and remainder of a
+// value known to lie below a positive divisor, and not to be negative, give 0 and the value
+// itself; StrengthReducer turns those by powers of two into shifts and masks using the same
+// ranges.
+public class RangeFolder {
+    private int foldedComparisons;
+    private int removedBranches;
+    private int simplifiedDivisions;
+    private int removedBlocks;
+
+    public void run(ControlFlowGraph cfg) {
+        IRMethod method = cfg.getMethod();
+        ValueRanges ranges = new ValueRanges(cfg);
+        Map<Integer, Boolean> decided = new HashMap<>();
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                Opcode opcode = insn.getOpcode();
+                if (opcode.isComparison()) {
+                    Boolean result = ranges.decide(opcode, insn.arg(0), insn.arg(1), block);
+                    if (result != null) {
+                        insn.set(Opcode.MOVE, insn.getDst(), method.constant(result));
+                        decided.put(insn.getDst(), result);
+                        foldedComparisons++;
+                    }
+                } else if (opcode == Opcode.DIV || opcode == Opcode.MOD) {
+                    Range dividend = ranges.getRange(insn.arg(0), block);
+                    Range divisor = ranges.getRange(insn.arg(1), block);
+                    if (dividend != null && divisor != null && dividend.isNonNegative()
+                            && dividend.getHigh() < divisor.getLow()) {
+                        int result = opcode == Opcode.DIV ? method.constant(0) : insn.arg(0);
+                        insn.set(Opcode.MOVE, insn.getDst(), result);
+                        simplifiedDivisions++;
+                    }
+                }
+            }
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            Insn terminator = block.getTerminator();
+            if (terminator == null || terminator.getOpcode() != Opcode.IF_FALSE || !decided.containsKey(terminator.arg(0))) {
+                continue;
+            }
+            cfg.replaceBranch(block, block.getSuccessors().get(decided.get(terminator.arg(0)) ? 0 : 1));
+            removedBranches++;
+        }
+        removedBlocks += cfg.removeUnreachableBlocks();
+    }
+
+    public int getFoldedComparisons() {
+        return foldedComparisons;
+    }
+
+    // Branches on folded comparisons turned into jumps
+    public int getRemovedBranches() {
+        return removedBranches;
+    }
+
+    // Divisions and remainders replaced by 0 or their dividend
+    public int getSimplifiedDivisions() {
+        return simplifiedDivisions;
+    }
+
+    public int getRemovedBlocks() {
+        return removedBlocks;
+    }
+}
@@ -0,0 +1,244 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.FieldRef;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.InductionVariables;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Scalar promotion of fields over SSA form. A field of this that a loop stores into is kept in
+// a variable for the whole loop instead: it is read once in the preheader, its loads and
+// stores inside the loop become uses and definitions of the variable, with phis where paths
+// meet, and it is written back on every way out of the loop.
+//
+// Nothing else may see the field while the loop runs, so the loop must not call anything or
+// touch the field through another object, which may be this. Nor may anything in it throw,
+// as the field would then be left behind: other than fields of this and division by nonzero
+// constants, which cannot fail, only the in-bounds array accesses of a loop that is simple in
+// the sense of LoopDependence are allowed. Loops are tried outermost first, so a field
+// promoted in an outer loop is gone from the loops inside it.
+public class ScalarPromoter {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private Map<Integer, Integer> replacements;
+    private int promotedFields;
+    private int removedAccesses;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        List<BasicBlock> headers = new ArrayList<>();
+        Map<BasicBlock, List<BasicBlock>> entries = new HashMap<>();
+        for (Loop loop : forest.innermostFirst()) {
+            List<BasicBlock> loopEntries = loop.getEntries();
+            if (loopEntries.size() != 1 || loopEntries.get(0).getSuccessors().size() != 1) {
+                headers.add(loop.getHeader());
+                entries.put(loop.getHeader(), loopEntries);
+            }
+        }
+        for (BasicBlock header : headers) {
+            cfg.insertPreheader(header, entries.get(header));
+        }
+
+        // One field at a time, since writing it back may split exit edges and renumber blocks
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+            List<Loop> loops = new ArrayList<>(forest.innermostFirst());
+            Collections.reverse(loops);
+            for (Loop loop : loops) {
+                Set<Integer> fields = candidates(loop);
+                if (!fields.isEmpty()) {
+                    promote(loop, fields.iterator().next());
+                    promotedFields++;
+                    changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // The fields of this the loop stores into, if nothing else in it could see them
+    private Set<Integer> candidates(Loop loop) {
+        Set<Integer> stored = new LinkedHashSet<>();
+        Set<Integer> aliased = new LinkedHashSet<>();
+        boolean faults = false;
+        for (BasicBlock block : loop.getBlocks(cfg)) {
+            for (Insn insn : block.getInsns()) {
+                switch (insn.getOpcode()) {
+                    case CALL:
+                        return Collections.emptySet();
+                    case PUTFIELD:
+                    case GETFIELD:
+                        if (insn.arg(0) != method.thisOperand()) {
+                            aliased.add(insn.arg(1));
+                            faults = true;
+                        } else if (insn.getOpcode() == Opcode.PUTFIELD) {
+                            stored.add(insn.arg(1));
+                        }
+                        break;
+                    case DIV:
+                    case MOD:
+                        faults |= !DeadCodeEliminator.isNonZeroConstant(method, insn.arg(1));
+                        break;
+                    default:
+                        faults |= insn.getOpcode().mayThrow();
+                        break;
+                }
+            }
+        }
+        if (faults && !new LoopDependence(cfg, loop, new InductionVariables(cfg, loop)).isSimple()) {
+            return Collections.emptySet();
+        }
+        stored.removeAll(aliased);
+        return stored;
+    }
+
+    private void promote(Loop loop, int field) {
+        BasicBlock preheader = loop.getEntries().get(0);
+        int initial = method.newTemp(((FieldRef) method.getSymbol(field)).getType());
+        preheader.append(new Insn(Opcode.GETFIELD, initial, method.thisOperand(), field));
+        replacements = new HashMap<>();
+
+        // The field's value leaving each block of the loop; blocks entered from more than one
+        // place, and the header, start with a phi
+        Map<BasicBlock, Integer> atExit = new HashMap<>();
+        Map<BasicBlock, Insn> phis = new HashMap<>();
+        for (BasicBlock block : cfg.reversePostorder()) {
+            if (!loop.contains(block)) {
+                continue;
+            }
+            int current;
+            List<BasicBlock> predecessors = block.getPredecessors();
+            if (block == loop.getHeader() || predecessors.size() != 1) {
+                Insn phi = new Insn(Opcode.PHI, method.newTemp(method.typeOf(initial)), new int[predecessors.size()]);
+                block.getInsns().add(0, phi);
+                phis.put(block, phi);
+                current = phi.getDst();
+            } else {
+                current = atExit.get(predecessors.get(0));
+            }
+            List<Insn> insns = block.getInsns();
+            for (int i = block.getPhiCount(); i < insns.size(); i++) {
+                Insn insn = insns.get(i);
+                if (insn.getOpcode() == Opcode.GETFIELD && insn.arg(1) == field) {
+                    replacements.put(insn.getDst(), current);
+                } else if (insn.getOpcode() == Opcode.PUTFIELD && insn.arg(1) == field) {
+                    current = resolve(insn.arg(2));
+                } else {
+                    continue;
+                }
+                insns.remove(i--);
+                removedAccesses++;
+            }
+            atExit.put(block, current);
+        }
+        for (Map.Entry<BasicBlock, Insn> entry : phis.entrySet()) {
+            List<BasicBlock> predecessors = entry.getKey().getPredecessors();
+            for (int p = 0; p < predecessors.size(); p++) {
+                BasicBlock predecessor = predecessors.get(p);
+                entry.getValue().setArg(p, loop.contains(predecessor) ? atExit.get(predecessor) : initial);
+            }
+        }
+        removeTrivialPhis(phis);
+
+        // Written back on each edge out of the loop and before returning from inside it
+        List<BasicBlock[]> edges = new ArrayList<>();
+        for (BasicBlock block : loop.getBlocks(cfg)) {
+            Insn terminator = block.getTerminator();
+            if (terminator != null && terminator.getOpcode() == Opcode.RETURN) {
+                block.append(store(field, resolve(atExit.get(block))));
+            }
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (!loop.contains(successor)) {
+                    edges.add(new BasicBlock[] {block, successor});
+                }
+            }
+        }
+        for (BasicBlock[] edge : edges) {
+            Insn store = store(field, resolve(atExit.get(edge[0])));
+            if (edge[1].getPredecessors().size() == 1) {
+                edge[1].getInsns().add(edge[1].getPhiCount(), store);
+            } else {
+                BasicBlock middle = cfg.splitEdge(edge[0], edge[1]);
+                middle.getInsns().add(store);
+                cfg.placeBefore(middle, edge[1]);
+            }
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int a = 0; a < args.length; a++) {
+                    args[a] = resolve(args[a]);
+                }
+            }
+        }
+    }
+
+    private Insn store(int field, int value) {
+        return new Insn(Opcode.PUTFIELD, Operand.NONE, method.thisOperand(), field, value);
+    }
+
+    // A phi whose operands are all one value, or itself around a loop, is that value
+    private void removeTrivialPhis(Map<BasicBlock, Insn> phis) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<BasicBlock, Insn> entry : phis.entrySet()) {
+                Insn phi = entry.getValue();
+                if (replacements.containsKey(phi.getDst())) {
+                    continue;
+                }
+                int value = Operand.NONE;
+                boolean trivial = true;
+                for (int arg : phi.getArgs()) {
+                    arg = resolve(arg);
+                    if (arg != phi.getDst() && arg != value) {
+                        trivial &= value == Operand.NONE;
+                        value = arg;
+                    }
+                }
+                if (trivial && value != Operand.NONE) {
+                    replacements.put(phi.getDst(), value);
+                    entry.getKey().getInsns().remove(phi);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int resolve(int operand) {
+        while (replacements.containsKey(operand)) {
+            operand = replacements.get(operand);
+        }
+        return operand;
+    }
+
+    // Pairs of a loop and a field of this kept in a variable across it
+    public int getPromotedFields() {
+        return promotedFields;
+    }
+
+    // Loads and stores of promoted fields taken out of their loops
+    public int getRemovedAccesses() {
+        return removedAccesses;
+    }
+}
@@ -0,0 +1,271 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.FieldRef;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Intraprocedural escape analysis and scalar replacement over SSA form. An object allocated by
+// NEW escapes when its reference is used for anything but reading and writing its fields:
+// passing it to a call or as a receiver, returning, printing or comparing it, storing it in a
+// field or an array, or merging it with other references in a phi. Copies of the reference
+// are followed. An object that does not escape is never seen outside its fields, so each
+// field becomes a variable, with the field's zero value at the allocation, phis where paths
+// meet, and the allocation itself goes.
+//
+// Only classes of the program are replaced, whose constructors do nothing. An object stored
+// in the field of another one escapes into it, but is replaced in a later round once the
+// other object has been.
+public class ScalarReplacer {
+    private final Set<String> classNames;
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private Map<Integer, Integer> replaced;
+    private int replacedObjects;
+    private int removedAccesses;
+
+    // For the field being replaced, the value it has where a block ends and starts
+    private Map<BasicBlock, Integer> exitValues;
+    private Map<BasicBlock, Integer> entryValues;
+    private Type type;
+
+    public ScalarReplacer(Set<String> classNames) {
+        this.classNames = classNames;
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.replaced = new HashMap<>();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Insn allocation : allocations()) {
+                Set<Integer> references = references(allocation);
+                if (references != null) {
+                    replace(allocation, references);
+                    replacedObjects++;
+                    changed = true;
+                }
+            }
+            rewriteUses();
+        }
+    }
+
+    private List<Insn> allocations() {
+        List<Insn> allocations = new ArrayList<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == Opcode.NEW
+                        && classNames.contains(((Type) method.getSymbol(insn.arg(0))).getName())) {
+                    allocations.add(insn);
+                }
+            }
+        }
+        return allocations;
+    }
+
+    // The allocated reference and its copies, or null when the object escapes
+    private Set<Integer> references(Insn allocation) {
+        Set<Integer> references = new HashSet<>();
+        references.add(allocation.getDst());
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (BasicBlock block : cfg.getBlocks()) {
+                for (Insn insn : block.getInsns()) {
+                    int[] args = insn.getArgs();
+                    for (int a = 0; a < args.length; a++) {
+                        if (!references.contains(resolve(args[a]))) {
+                            continue;
+                        }
+                        switch (insn.getOpcode()) {
+                            case MOVE:
+                                grown |= references.add(insn.getDst());
+                                break;
+                            case GETFIELD:
+                            case NULLCHECK:
+                                break;
+                            case PUTFIELD:
+                                if (a != 0) {
+                                    return null;
+                                }
+                                break;
+                            default:
+                                return null;
+                        }
+                    }
+                }
+            }
+        }
+        return references;
+    }
+
+    private void replace(Insn allocation, Set<Integer> references) {
+        Set<Integer> fields = new LinkedHashSet<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (isAccess(insn, references)) {
+                    fields.add(insn.arg(1));
+                }
+            }
+        }
+        for (int field : fields) {
+            replaceField(allocation, references, field);
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            block.getInsns().removeIf(insn -> insn == allocation
+                || isAccess(insn, references)
+                || insn.getOpcode() == Opcode.MOVE && references.contains(insn.getDst())
+                || insn.getOpcode() == Opcode.NULLCHECK && references.contains(resolve(insn.arg(0))));
+        }
+    }
+
+    // Deletes the loads of one field of the object, whose uses read the value last stored or
+    // the zero value from the allocation
+    private void replaceField(Insn allocation, Set<Integer> references, int field) {
+        type = ((FieldRef) method.getSymbol(field)).getType();
+        exitValues = new IdentityHashMap<>();
+        entryValues = new IdentityHashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn == allocation) {
+                    exitValues.put(block, method.defaultValue(type));
+                } else if (insn.getOpcode() == Opcode.PUTFIELD && isAccess(insn, references) && insn.arg(1) == field) {
+                    exitValues.put(block, insn.arg(2));
+                }
+            }
+        }
+
+        List<Insn> phis = new ArrayList<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            Integer current = null;
+            for (Insn insn : new ArrayList<>(block.getInsns())) {
+                if (insn == allocation) {
+                    current = method.defaultValue(type);
+                } else if (isAccess(insn, references) && insn.arg(1) == field) {
+                    if (insn.getOpcode() == Opcode.PUTFIELD) {
+                        current = insn.arg(2);
+                    } else {
+                        replaced.put(insn.getDst(), current != null ? current : valueAtEntry(block, phis));
+                    }
+                    removedAccesses++;
+                }
+            }
+        }
+        removeTrivialPhis(phis);
+    }
+
+    private boolean isAccess(Insn insn, Set<Integer> references) {
+        return (insn.getOpcode() == Opcode.GETFIELD || insn.getOpcode() == Opcode.PUTFIELD)
+            && references.contains(resolve(insn.arg(0)));
+    }
+
+    private int valueAtExit(BasicBlock block, List<Insn> phis) {
+        Integer value = exitValues.get(block);
+        return value != null ? value : valueAtEntry(block, phis);
+    }
+
+    // The value reaching the start of a block, merged by a new phi where paths meet. Paths
+    // from the method's entry that miss the allocation cannot reach a use of the object, so
+    // they carry the zero value.
+    private int valueAtEntry(BasicBlock block, List<Insn> phis) {
+        Integer value = entryValues.get(block);
+        if (value != null) {
+            return value;
+        }
+        List<BasicBlock> predecessors = block.getPredecessors();
+        if (predecessors.isEmpty()) {
+            return method.defaultValue(type);
+        }
+        if (predecessors.size() == 1) {
+            value = valueAtExit(predecessors.get(0), phis);
+            entryValues.put(block, value);
+            return value;
+        }
+        Insn phi = new Insn(Opcode.PHI, method.newTemp(type), new int[predecessors.size()]);
+        entryValues.put(block, phi.getDst());
+        for (int p = 0; p < predecessors.size(); p++) {
+            phi.setArg(p, valueAtExit(predecessors.get(p), phis));
+        }
+        block.getInsns().add(0, phi);
+        phis.add(phi);
+        return phi.getDst();
+    }
+
+    // A phi merging one value with itself, as around a loop that leaves the field alone, is
+    // that value
+    private void removeTrivialPhis(List<Insn> phis) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < phis.size(); i++) {
+                Insn phi = phis.get(i);
+                int value = Operand.NONE;
+                boolean trivial = true;
+                for (int arg : phi.getArgs()) {
+                    arg = resolve(arg);
+                    if (arg == phi.getDst() || arg == value) {
+                        continue;
+                    }
+                    if (value != Operand.NONE) {
+                        trivial = false;
+                        break;
+                    }
+                    value = arg;
+                }
+                if (trivial) {
+                    replaced.put(phi.getDst(), value);
+                    for (BasicBlock block : cfg.getBlocks()) {
+                        block.getInsns().remove(phi);
+                    }
+                    phis.remove(i--);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int resolve(int operand) {
+        Integer value = replaced.get(operand);
+        while (value != null) {
+            operand = value;
+            value = replaced.get(operand);
+        }
+        return operand;
+    }
+
+    private void rewriteUses() {
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = resolve(args[i]);
+                }
+            }
+        }
+    }
+
+    public int getReplacedObjects() {
+        return replacedObjects;
+    }
+
+    // Field loads and stores of replaced objects
+    public int getRemovedAccesses() {
+        return removedAccesses;
+    }
+}
@@ -0,0 +1,310 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.InductionVariables;
+import com.compiler.ir.InductionVariables.Induction;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+import com.compiler.ir.ValueRanges;
+import com.compiler.ir.ValueRanges.Range;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Strength reduction over SSA form. A derived induction variable factor * i + offset that
+// needs a multiplication becomes a header phi of its own, started in the preheader and
+// bumped by factor * step at every latch, so the loop body adds instead of multiplying.
+// Only the outermost expression of a chain is rewritten; (i * 4) + 8 turns into one phi and
+// the multiplication under it is deleted once nothing else reads it. int arithmetic wraps,
+// so the additive form gives the same bits as the product on every iteration.
+//
+// Afterwards multiplications by powers of two become shifts, and division and remainder by
+// powers of two become a shift and a mask when the dividend cannot be negative, where Java
+// rounds the same way as the shift. Whether it can is asked of ValueRanges where the
+// division is, which knows about induction variables counting up from a non-negative start
+// and about the branches taken to get there.
+public class StrengthReducer {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private ValueRanges ranges;
+    private int reducedInductions;
+    private int deletedInstructions;
+    private int shifts;
+    private int masks;
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        List<BasicBlock> headers = new ArrayList<>();
+        for (Loop loop : forest.innermostFirst()) {
+            if (!hasPreheader(loop)) {
+                headers.add(loop.getHeader());
+            }
+        }
+        if (!headers.isEmpty()) {
+            Map<BasicBlock, List<BasicBlock>> entries = new HashMap<>();
+            for (BasicBlock header : headers) {
+                entries.put(header, forest.getLoop(header).getEntries());
+            }
+            for (BasicBlock header : headers) {
+                cfg.insertPreheader(header, entries.get(header));
+            }
+            forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        }
+
+        for (Loop loop : forest.innermostFirst()) {
+            InductionVariables inductions = new InductionVariables(cfg, loop);
+            reduce(loop, inductions);
+        }
+        replacePowersOfTwo();
+    }
+
+    // A single outside predecessor that only leads to the header
+    private static boolean hasPreheader(Loop loop) {
+        List<BasicBlock> entries = loop.getEntries();
+        return entries.size() == 1 && entries.get(0).getSuccessors().size() == 1;
+    }
+
+    private void reduce(Loop loop, InductionVariables inductions) {
+        Map<Integer, List<Insn>> users = users();
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (Induction induction : inductions.getInductions()) {
+            if (!induction.isBasic() && needsMultiply(induction)) {
+                candidates.add(induction.getVariable());
+            }
+        }
+
+        for (int candidate : candidates) {
+            // Left to the expression that uses it
+            boolean inner = true;
+            for (Insn user : users.getOrDefault(candidate, new ArrayList<>())) {
+                if (!candidates.contains(user.getDst())) {
+                    inner = false;
+                }
+            }
+            if (inner) {
+                continue;
+            }
+            int value = introducePhi(loop, inductions.getInduction(candidate));
+            for (Insn user : users.getOrDefault(candidate, new ArrayList<>())) {
+                int[] args = user.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    if (args[i] == candidate) {
+                        args[i] = value;
+                    }
+                }
+            }
+            users.remove(candidate);
+            reducedInductions++;
+        }
+
+        // The old chains, unless something outside them still reads a part
+        for (int candidate : candidates) {
+            deleteIfUnused(candidate, inductions, users);
+        }
+    }
+
+    private boolean needsMultiply(Induction induction) {
+        Integer factor = intConstant(induction.getFactor());
+        return factor == null || factor != 1 && factor != 0;
+    }
+
+    // A header phi carrying factor * i + offset, started in the preheader and bumped at the latches
+    private int introducePhi(Loop loop, Induction induction) {
+        BasicBlock header = loop.getHeader();
+        BasicBlock preheader = loop.getEntries().get(0);
+        Induction base = induction.getBase();
+        Type type = method.typeOf(induction.getVariable());
+
+        int step = multiply(preheader, induction.getFactor(), method.constant(base.getStep()), type);
+        int start = multiply(preheader, induction.getFactor(), base.getInit(), type);
+        Integer offset = intConstant(induction.getOffset());
+        if (offset == null || offset != 0) {
+            start = add(preheader, start, induction.getOffset(), type);
+        }
+
+        int phi = method.newTemp(type);
+        List<BasicBlock> predecessors = header.getPredecessors();
+        int[] args = new int[predecessors.size()];
+        for (int i = 0; i < args.length; i++) {
+            BasicBlock predecessor = predecessors.get(i);
+            if (predecessor == preheader) {
+                args[i] = start;
+            } else {
+                int next = method.newTemp(type);
+                predecessor.append(new Insn(Opcode.ADD, next, phi, step));
+                args[i] = next;
+            }
+        }
+        header.getInsns().add(0, new Insn(Opcode.PHI, phi, args));
+        return phi;
+    }
+
+    private int multiply(BasicBlock block, int a, int b, Type type) {
+        Integer x = intConstant(a);
+        Integer y = intConstant(b);
+        if (x != null && y != null) {
+            return method.constant(x * y);
+        }
+        if (x != null && x == 1) {
+            return b;
+        }
+        if (y != null && y == 1) {
+            return a;
+        }
+        int result = method.newTemp(type);
+        block.append(new Insn(Opcode.MUL, result, a, b));
+        return result;
+    }
+
+    private int add(BasicBlock block, int a, int b, Type type) {
+        Integer x = intConstant(a);
+        Integer y = intConstant(b);
+        if (x != null && y != null) {
+            return method.constant(x + y);
+        }
+        int result = method.newTemp(type);
+        block.append(new Insn(Opcode.ADD, result, a, b));
+        return result;
+    }
+
+    private void deleteIfUnused(int variable, InductionVariables inductions, Map<Integer, List<Insn>> users) {
+        Insn definition = inductions.getDefinition(variable);
+        if (definition == null || definition.getOpcode() == Opcode.PHI || !users.getOrDefault(variable, new ArrayList<>()).isEmpty()) {
+            return;
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (block.getInsns().remove(definition)) {
+                deletedInstructions++;
+                break;
+            }
+        }
+        users.remove(variable);
+        for (int arg : definition.getArgs()) {
+            List<Insn> argUsers = users.get(arg);
+            if (argUsers != null) {
+                argUsers.remove(definition);
+                if (inductions.getInduction(arg) != null && !inductions.getInduction(arg).isBasic()) {
+                    deleteIfUnused(arg, inductions, users);
+                }
+            }
+        }
+    }
+
+    // Instructions reading each variable
+    private Map<Integer, List<Insn>> users() {
+        Map<Integer, List<Insn>> users = new HashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg)) {
+                        List<Insn> list = users.computeIfAbsent(arg, k -> new ArrayList<>());
+                        if (!list.contains(insn)) {
+                            list.add(insn);
+                        }
+                    }
+                }
+            }
+        }
+        return users;
+    }
+
+    private void replacePowersOfTwo() {
+        ranges = new ValueRanges(cfg);
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                switch (insn.getOpcode()) {
+                    case MUL: {
+                        int operand = insn.arg(0);
+                        int exponent = exponent(insn.arg(1));
+                        if (exponent < 0) {
+                            operand = insn.arg(1);
+                            exponent = exponent(insn.arg(0));
+                        }
+                        if (exponent == 0) {
+                            insn.set(Opcode.MOVE, insn.getDst(), operand);
+                        } else if (exponent > 0) {
+                            insn.set(Opcode.SHL, insn.getDst(), operand, method.constant(exponent));
+                            shifts++;
+                        }
+                        break;
+                    }
+                    case DIV: {
+                        int exponent = exponent(insn.arg(1));
+                        if (exponent == 0) {
+                            insn.set(Opcode.MOVE, insn.getDst(), insn.arg(0));
+                        } else if (exponent > 0 && isNonNegative(insn.arg(0), block)) {
+                            insn.set(Opcode.SHR, insn.getDst(), insn.arg(0), method.constant(exponent));
+                            shifts++;
+                        }
+                        break;
+                    }
+                    case MOD: {
+                        int exponent = exponent(insn.arg(1));
+                        if (exponent == 0) {
+                            insn.set(Opcode.MOVE, insn.getDst(), method.constant(0));
+                        } else if (exponent > 0 && isNonNegative(insn.arg(0), block)) {
+                            insn.set(Opcode.AND, insn.getDst(), insn.arg(0), method.constant((1 << exponent) - 1));
+                            masks++;
+                        }
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    // k for the constant 2^k, otherwise -1
+    private int exponent(int operand) {
+        Integer value = intConstant(operand);
+        if (value == null || value <= 0 || Integer.bitCount(value) != 1) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    private boolean isNonNegative(int operand, BasicBlock block) {
+        Range range = ranges.getRange(operand, block);
+        return range != null && range.isNonNegative();
+    }
+
+    private Integer intConstant(int operand) {
+        if (!Operand.isConst(operand)) {
+            return null;
+        }
+        Object value = method.getConstant(operand);
+        return value instanceof Integer ? (Integer) value : null;
+    }
+
+    public int getReducedInductions() {
+        return reducedInductions;
+    }
+
+    // Multiplications and additions of rewritten chains that nothing else read
+    public int getDeletedInstructions() {
+        return deletedInstructions;
+    }
+
+    public int getShifts() {
+        return shifts;
+    }
+
+    public int getMasks() {
+        return masks;
+    }
+}
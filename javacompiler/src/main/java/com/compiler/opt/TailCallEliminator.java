@@ -0,0 +1,209 @@
+package com.compiler.opt;
+
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.MethodRef;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Turns self-recursive calls in tail position into a jump back to the start of the method, on
+// the linear IR before the graph is built. The parameters are reassigned from the arguments,
+// through temporaries where an argument reads a parameter assigned before it. A call is in
+// tail position when only copies of its result, jumps and labels lie between it and a return
+// of that result. The receiver must be 'this'; a call on another object of the same class
+// still needs its own frame.
+//
+// Accumulator recursion, return n * fact(n - 1), has one ADD or MUL of the result with a
+// value computed before the call. int addition and multiplication wrap, so they are
+// associative and commutative: the pass keeps a running acc, starts it at 0 or 1, folds the
+// other operand into it at every such call and combines it into every remaining return.
+// Only one operator per method is accumulated; calls with the other stay calls.
+public class TailCallEliminator {
+    private IRMethod method;
+    private List<Insn> code;
+    private Map<Integer, Integer> labels;
+    // The operand each accumulating call folds into acc
+    private Map<Insn, Integer> folded;
+    private int eliminatedCalls;
+    private int accumulators;
+
+    public void run(IRMethod method) {
+        this.method = method;
+        this.code = method.getCode();
+        this.labels = new HashMap<>();
+        this.folded = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i).getOpcode() == Opcode.LABEL) {
+                labels.put(code.get(i).arg(0), i);
+            }
+        }
+
+        Map<Insn, Insn> sites = new HashMap<>();
+        Opcode accumulated = null;
+        for (Insn insn : code) {
+            if (!isSelfCall(insn)) {
+                continue;
+            }
+            Insn operation = tailOperation(insn);
+            if (operation == null) {
+                continue;
+            }
+            if (operation.getOpcode() != Opcode.RETURN) {
+                if (accumulated == null) {
+                    accumulated = operation.getOpcode();
+                } else if (accumulated != operation.getOpcode()) {
+                    continue;
+                }
+            }
+            sites.put(insn, operation);
+        }
+        if (sites.isEmpty()) {
+            return;
+        }
+
+        int acc = Operand.NONE;
+        List<Insn> result = new ArrayList<>();
+        if (accumulated != null) {
+            acc = method.newLocal("acc", method.getReturnType());
+            result.add(new Insn(Opcode.MOVE, acc, method.constant(accumulated == Opcode.ADD ? 0 : 1)));
+            accumulators++;
+        }
+        int start = method.newLabel();
+        result.add(new Insn(Opcode.LABEL, Operand.NONE, start));
+
+        for (Insn insn : code) {
+            Insn operation = sites.get(insn);
+            if (operation != null) {
+                if (operation.getOpcode() != Opcode.RETURN) {
+                    result.add(new Insn(accumulated, acc, acc, folded.get(insn)));
+                }
+                reassignParameters(insn, result);
+                result.add(new Insn(Opcode.GOTO, Operand.NONE, start));
+                eliminatedCalls++;
+            } else if (acc != Operand.NONE && insn.getOpcode() == Opcode.RETURN) {
+                int value = method.newTemp(method.getReturnType());
+                result.add(new Insn(accumulated, value, acc, insn.arg(0)));
+                result.add(new Insn(Opcode.RETURN, Operand.NONE, value));
+            } else {
+                result.add(insn);
+            }
+        }
+        method.setCode(result);
+    }
+
+    private boolean isSelfCall(Insn insn) {
+        if (insn.getOpcode() != Opcode.CALL || insn.arg(1) != method.thisOperand()) {
+            return false;
+        }
+        MethodRef target = (MethodRef) method.getSymbol(insn.arg(0));
+        return target.getOwner().equals(method.getClassName()) && target.getName().equals(method.getName());
+    }
+
+    // What the call's result goes through on the way out: the RETURN itself, or the one ADD
+    // or MUL folding it with a value from before the call. null if the call is not in tail
+    // position.
+    private Insn tailOperation(Insn call) {
+        Set<Integer> chain = new HashSet<>();
+        int value = call.getDst();
+        chain.add(value);
+        Insn operation = null;
+        Set<Integer> visited = new HashSet<>();
+        int i = code.indexOf(call) + 1;
+        while (i < code.size() && visited.add(i)) {
+            Insn insn = code.get(i);
+            switch (insn.getOpcode()) {
+                case LABEL:
+                    i++;
+                    break;
+                case GOTO:
+                    i = labels.get(insn.arg(0));
+                    break;
+                case MOVE:
+                    if (value == Operand.NONE || insn.arg(0) != value) {
+                        return null;
+                    }
+                    value = insn.getDst();
+                    chain.add(value);
+                    i++;
+                    break;
+                case ADD:
+                case MUL: {
+                    if (operation != null || value == Operand.NONE || !isInt(insn.getDst())) {
+                        return null;
+                    }
+                    // One side is the result; the other was computed before the call
+                    int other;
+                    if (insn.arg(0) == value) {
+                        other = insn.arg(1);
+                    } else if (insn.arg(1) == value) {
+                        other = insn.arg(0);
+                    } else {
+                        return null;
+                    }
+                    if (chain.contains(other)) {
+                        return null;
+                    }
+                    folded.put(call, other);
+                    operation = insn;
+                    value = insn.getDst();
+                    chain.add(value);
+                    i++;
+                    break;
+                }
+                case RETURN:
+                    if (value == Operand.NONE ? insn.argCount() != 0 : insn.argCount() == 0 || insn.arg(0) != value) {
+                        return null;
+                    }
+                    return operation != null ? operation : insn;
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private boolean isInt(int operand) {
+        return method.typeOf(operand).getName().equals("int") && !method.typeOf(operand).isArray();
+    }
+
+    // Parameters take the arguments as a parallel assignment
+    private void reassignParameters(Insn call, List<Insn> result) {
+        int count = method.getParameterCount();
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = call.arg(i + 2);
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < i; j++) {
+                if (values[i] == method.variable(j + 1) && values[j] != values[i]) {
+                    int temp = method.newTemp(method.typeOf(values[i]));
+                    result.add(new Insn(Opcode.MOVE, temp, values[i]));
+                    values[i] = temp;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int parameter = method.variable(i + 1);
+            if (values[i] != parameter) {
+                result.add(new Insn(Opcode.MOVE, parameter, values[i]));
+            }
+        }
+    }
+
+    public int getEliminatedCalls() {
+        return eliminatedCalls;
+    }
+
+    // Methods that needed a running accumulator
+    public int getAccumulators() {
+        return accumulators;
+    }
+}
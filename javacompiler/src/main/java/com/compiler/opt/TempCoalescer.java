@@ -0,0 +1,180 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Type;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Liveness;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+// Coalescing of variables for code that is out of SSA form. SSADestructor merges the two
+// sides of each copy it can; what is left are variables that were never copied into each
+// other but are not live at the same time, each still getting a local slot of its own in
+// IRBytecodeGenerator. Variables of one type whose live ranges do not overlap are merged
+// greedily, in order of appearance, into the first group they fit into. A variable
+// interferes with everything live where it is defined, except the source of a copy into it.
+//
+// 'this' and the parameters keep their slots. Temps used at most once are left alone too,
+// since the backend keeps them on the operand stack and merging would give them a slot.
+// Slot counts are reported before and after, counted as the backend numbers them.
+public class TempCoalescer {
+    private IRMethod method;
+    private int[] useCounts;
+    private int coalescedVariables;
+    private int slotsBefore;
+    private int slotsAfter;
+
+    public void run(ControlFlowGraph cfg) {
+        this.method = cfg.getMethod();
+        int variableCount = method.getVariableCount();
+        countUses(cfg);
+        slotsBefore = slots(cfg);
+
+        BitSet[] interference = new BitSet[variableCount];
+        for (int v = 0; v < variableCount; v++) {
+            interference[v] = new BitSet();
+        }
+        Liveness liveness = new Liveness(cfg);
+        for (BasicBlock block : cfg.getBlocks()) {
+            BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+            List<Insn> insns = block.getInsns();
+            for (int i = insns.size() - 1; i >= 0; i--) {
+                Insn insn = insns.get(i);
+                if (Operand.isVar(insn.getDst())) {
+                    int dst = Operand.index(insn.getDst());
+                    int source = insn.getOpcode() == Opcode.MOVE && Operand.isVar(insn.arg(0))
+                        ? Operand.index(insn.arg(0)) : -1;
+                    for (int v = live.nextSetBit(0); v >= 0; v = live.nextSetBit(v + 1)) {
+                        if (v != dst && v != source) {
+                            interference[dst].set(v);
+                            interference[v].set(dst);
+                        }
+                    }
+                }
+                Liveness.transfer(insn, live);
+            }
+        }
+
+        // Each group is named after its first member and interferes with what any member does
+        int[] renamed = new int[variableCount];
+        for (int v = 0; v < variableCount; v++) {
+            renamed[v] = v;
+        }
+        List<Integer> groups = new ArrayList<>();
+        BitSet seen = new BitSet();
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int operand : operands(insn)) {
+                    if (!Operand.isVar(operand) || seen.get(Operand.index(operand))) {
+                        continue;
+                    }
+                    int v = Operand.index(operand);
+                    seen.set(v);
+                    if (!isCandidate(operand)) {
+                        continue;
+                    }
+                    Type type = method.getVariable(operand).getType();
+                    int group = -1;
+                    for (int g : groups) {
+                        if (!interference[g].get(v) && type.equals(method.getVariable(method.variable(g)).getType())) {
+                            group = g;
+                            break;
+                        }
+                    }
+                    if (group < 0) {
+                        groups.add(v);
+                        continue;
+                    }
+                    renamed[v] = group;
+                    interference[group].or(interference[v]);
+                    for (int u = interference[v].nextSetBit(0); u >= 0; u = interference[v].nextSetBit(u + 1)) {
+                        interference[u].set(group);
+                    }
+                    coalescedVariables++;
+                }
+            }
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    insn.setDst(method.variable(renamed[Operand.index(insn.getDst())]));
+                }
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    if (Operand.isVar(args[i])) {
+                        args[i] = method.variable(renamed[Operand.index(args[i])]);
+                    }
+                }
+            }
+            block.getInsns().removeIf(insn -> insn.getOpcode() == Opcode.MOVE && insn.getDst() == insn.arg(0));
+        }
+        countUses(cfg);
+        slotsAfter = slots(cfg);
+    }
+
+    private static List<Integer> operands(Insn insn) {
+        List<Integer> operands = new ArrayList<>();
+        for (int arg : insn.getArgs()) {
+            operands.add(arg);
+        }
+        operands.add(insn.getDst());
+        return operands;
+    }
+
+    private boolean isCandidate(int operand) {
+        return !method.isIncoming(operand) && method.getVariable(operand).getType() != null
+            && !(Operand.isTemp(operand) && useCounts[Operand.index(operand)] <= 1);
+    }
+
+    private void countUses(ControlFlowGraph cfg) {
+        useCounts = new int[method.getVariableCount()];
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int arg : insn.getArgs()) {
+                    if (Operand.isVar(arg)) {
+                        useCounts[Operand.index(arg)]++;
+                    }
+                }
+            }
+        }
+    }
+
+    // 'this', the parameters and every other variable in the code but the temps used at most
+    // once, which need no slot or stay on the operand stack
+    private int slots(ControlFlowGraph cfg) {
+        BitSet slotted = new BitSet();
+        for (int v = 0; v <= method.getParameterCount(); v++) {
+            slotted.set(v);
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                for (int operand : operands(insn)) {
+                    if (Operand.isVar(operand) && !(Operand.isTemp(operand) && useCounts[Operand.index(operand)] <= 1)) {
+                        slotted.set(Operand.index(operand));
+                    }
+                }
+            }
+        }
+        return slotted.cardinality();
+    }
+
+    // Variables renamed into another one
+    public int getCoalescedVariables() {
+        return coalescedVariables;
+    }
+
+    public int getSlotsBefore() {
+        return slotsBefore;
+    }
+
+    public int getSlotsAfter() {
+        return slotsAfter;
+    }
+}
@@ -0,0 +1,228 @@
+package com.compiler.opt;
+
+import com.compiler.ast.Purity;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.MethodRef;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.Operand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dominator-based global value numbering (Briggs, Cooper and Simpson) over SSA form. Blocks
+// are visited in dominator-tree preorder with a scoped table from expressions to the variable
+// that first computed them; an expression already in the table was computed in a dominating
+// block, so the later instruction is deleted and its uses read the earlier variable.
+//
+// Expressions are keyed on the value numbers of their operands, with commutative operands
+// sorted and GT/GE flipped to LT/LE, and a copy has its source's value number. Only
+// computations that depend on nothing but their operands take part: arithmetic, comparisons,
+// logic and calls to PURE methods. A repeated division or pure call is safe to drop, since
+// if the first one throws the second is never reached. Heap reads are left alone. A phi whose
+// inputs all have one value number, or that repeats a phi of the same block, is redundant too.
+public class ValueNumbering {
+    private ControlFlowGraph cfg;
+    private IRMethod method;
+    private DominatorTree dominators;
+    private int[] numbers;
+    private BitSet deleted;
+    private Map<Expression, Integer> table;
+    private int eliminatedExpressions;
+    private int eliminatedCalls;
+    private int eliminatedPhis;
+
+    private static final class Expression {
+        private final Opcode opcode;
+        private final int[] operands;
+
+        Expression(Opcode opcode, int[] operands) {
+            this.opcode = opcode;
+            this.operands = operands;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Expression)) return false;
+            Expression other = (Expression) obj;
+            return opcode == other.opcode && Arrays.equals(operands, other.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return opcode.hashCode() * 31 + Arrays.hashCode(operands);
+        }
+    }
+
+    public void run(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.method = cfg.getMethod();
+        this.dominators = DominatorTree.dominators(cfg);
+        this.table = new HashMap<>();
+        this.numbers = new int[method.getVariableCount()];
+        this.deleted = new BitSet();
+        for (int v = 0; v < numbers.length; v++) {
+            numbers[v] = method.variable(v);
+        }
+
+        visit(cfg.getEntry());
+        rewriteUses();
+    }
+
+    private void visit(BasicBlock block) {
+        List<Expression> added = new ArrayList<>();
+        List<Insn> kept = new ArrayList<>();
+
+        for (Insn insn : block.getInsns()) {
+            int dst = insn.getDst();
+            if (insn.getOpcode() == Opcode.MOVE && Operand.isVar(dst)) {
+                numbers[Operand.index(dst)] = number(insn.arg(0));
+                kept.add(insn);
+                continue;
+            }
+            if (insn.getOpcode() == Opcode.PHI) {
+                int value = commonInput(insn);
+                if (value != Operand.NONE) {
+                    numbers[Operand.index(dst)] = value;
+                    deleted.set(Operand.index(dst));
+                    eliminatedPhis++;
+                    continue;
+                }
+            }
+
+            Expression expression = Operand.isVar(dst) ? expressionOf(insn, block) : null;
+            if (expression == null) {
+                kept.add(insn);
+                continue;
+            }
+            Integer leader = table.get(expression);
+            if (leader != null) {
+                numbers[Operand.index(dst)] = leader;
+                deleted.set(Operand.index(dst));
+                if (insn.getOpcode() == Opcode.PHI) {
+                    eliminatedPhis++;
+                } else {
+                    eliminatedExpressions++;
+                    if (insn.getOpcode() == Opcode.CALL) {
+                        eliminatedCalls++;
+                    }
+                }
+                continue;
+            }
+            table.put(expression, dst);
+            added.add(expression);
+            kept.add(insn);
+        }
+        block.getInsns().clear();
+        block.getInsns().addAll(kept);
+
+        for (int child : dominators.getChildren(block.getId())) {
+            visit(cfg.getBlock(child));
+        }
+        for (Expression expression : added) {
+            table.remove(expression);
+        }
+    }
+
+    // The one value all inputs of a phi carry, not counting the phi itself around a loop, or NONE
+    private int commonInput(Insn phi) {
+        int value = Operand.NONE;
+        for (int arg : phi.getArgs()) {
+            int number = number(arg);
+            if (number == phi.getDst()) {
+                continue;
+            }
+            if (value != Operand.NONE && number != value) {
+                return Operand.NONE;
+            }
+            value = number;
+        }
+        return value;
+    }
+
+    // The value-numbered key of a computation that depends only on its operands, or null
+    private Expression expressionOf(Insn insn, BasicBlock block) {
+        Opcode opcode = insn.getOpcode();
+        switch (opcode) {
+            case ADD: case SUB: case MUL: case DIV: case MOD:
+            case EQ: case NE: case LT: case LE: case GT: case GE:
+            case AND: case OR: case SHL: case SHR: case NEG: case NOT:
+                break;
+            case PHI: {
+                // Phis only repeat each other within one block
+                int[] operands = new int[insn.argCount() + 1];
+                operands[0] = block.getId();
+                for (int i = 0; i < insn.argCount(); i++) {
+                    operands[i + 1] = number(insn.arg(i));
+                }
+                return new Expression(opcode, operands);
+            }
+            case CALL: {
+                MethodRef target = (MethodRef) method.getSymbol(insn.arg(0));
+                if (target.getPurity() != Purity.PURE) {
+                    return null;
+                }
+                break;
+            }
+            default:
+                return null;
+        }
+
+        int[] operands = new int[insn.argCount()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = number(insn.arg(i));
+        }
+        if (opcode == Opcode.GT || opcode == Opcode.GE) {
+            opcode = opcode == Opcode.GT ? Opcode.LT : Opcode.LE;
+            swap(operands);
+        } else if (opcode.isCommutative() && operands[0] > operands[1]) {
+            swap(operands);
+        }
+        return new Expression(opcode, operands);
+    }
+
+    private static void swap(int[] operands) {
+        int first = operands[0];
+        operands[0] = operands[1];
+        operands[1] = first;
+    }
+
+    private int number(int operand) {
+        return Operand.isVar(operand) ? numbers[Operand.index(operand)] : operand;
+    }
+
+    // Uses of deleted variables read their leader, which dominates them. Copies stay, so their
+    // uses are left for copy propagation.
+    private void rewriteUses() {
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                int[] args = insn.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    if (Operand.isVar(args[i]) && deleted.get(Operand.index(args[i]))) {
+                        args[i] = numbers[Operand.index(args[i])];
+                    }
+                }
+            }
+        }
+    }
+
+    public int getEliminatedExpressions() {
+        return eliminatedExpressions;
+    }
+
+    // Pure calls among the eliminated expressions
+    public int getEliminatedCalls() {
+        return eliminatedCalls;
+    }
+
+    public int getEliminatedPhis() {
+        return eliminatedPhis;
+    }
+}
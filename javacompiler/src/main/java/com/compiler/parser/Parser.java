@@ -126,7 +126,7 @@ public class Parser {
             return parseReturnStatement();
         } else if (check(TokenType.LBRACE)) {
             return parseBlock();
-        } else if (isType() && peek().getType() == TokenType.IDENTIFIER) {
+        } else if (isVarDeclStart()) {
             return parseVarDeclStatement();
         } else {
             return parseExpressionStatement();
@@ -175,7 +175,7 @@ public class Parser {
         
         Statement init = null;
         if (!check(TokenType.SEMICOLON)) {
-            if (isType() && peek().getType() == TokenType.IDENTIFIER) {
+            if (isVarDeclStart()) {
                 init = parseVarDeclStatement();
             } else {
                 Expression expr = parseExpression();
@@ -485,7 +485,7 @@ public class Parser {
         int line = currentToken.getLine();
         int column = currentToken.getColumn();
         
-        Type type = parseType();
+        Type type = new Type(parseTypeName());
         
         if (match(TokenType.LBRACKET)) {
             Expression size = parseExpression();
@@ -513,6 +513,17 @@ public class Parser {
     }
 
     private Type parseType() {
+        String typeName = parseTypeName();
+        
+        boolean isArray = match(TokenType.LBRACKET);
+        if (isArray) {
+            expect(TokenType.RBRACKET);
+        }
+        
+        return new Type(typeName, isArray);
+    }
+
+    private String parseTypeName() {
         String typeName;
         
         if (match(TokenType.INT)) {
@@ -527,12 +538,7 @@ public class Parser {
             throw new ParseException("Expected type, got: " + currentToken);
         }
         
-        boolean isArray = match(TokenType.LBRACKET);
-        if (isArray) {
-            expect(TokenType.RBRACKET);
-        }
-        
-        return new Type(typeName, isArray);
+        return typeName;
     }
 
     private boolean isType() {
@@ -540,6 +546,19 @@ public class Parser {
                check(TokenType.VOID) || check(TokenType.IDENTIFIER);
     }
 
+    private boolean isVarDeclStart() {
+        if (!isType()) {
+            return false;
+        }
+        if (peek().getType() == TokenType.IDENTIFIER) {
+            return true;
+        }
+        // Array type such as "int[] a"
+        return peek().getType() == TokenType.LBRACKET
+            && peekAhead(2).getType() == TokenType.RBRACKET
+            && peekAhead(3).getType() == TokenType.IDENTIFIER;
+    }
+
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
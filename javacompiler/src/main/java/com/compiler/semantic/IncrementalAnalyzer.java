@@ -0,0 +1,143 @@
+package com.compiler.semantic;
+
+import com.compiler.ast.*;
+import com.compiler.util.ASTHasher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Re-checks only the methods whose text changed plus those that resolved against a changed
+// class, method or field signature; unchanged methods are carried over with their annotations.
+// Methods are compared by a structural hash, and signatures are only described again for
+// classes whose declarations changed, so the fixed cost of a run is one cheap walk of the tree.
+public class IncrementalAnalyzer {
+    private Map<String, Unit> units;
+    private SignatureTable signatures;
+
+    public IncrementalAnalyzer() {
+        this.units = new HashMap<>();
+        this.signatures = SignatureTable.empty();
+    }
+
+    // Returns the ids of the units that were re-checked, e.g. "Test.add(int,int)" or "Test.<fields>"
+    public Set<String> analyze(Program program) {
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        analyzer.declareClasses(program);
+
+        SignatureTable newSignatures = signatures.update(program);
+        Set<String> changed = newSignatures.changedSince(signatures);
+        Map<String, Unit> next = new HashMap<>();
+        Set<String> checked = new LinkedHashSet<>();
+        String currentId = null;
+
+        try {
+            for (ClassDecl classDecl : program.getClasses()) {
+                currentId = classDecl.getName() + ".<fields>";
+                List<FieldDecl> fields = classDecl.getFields();
+                long fingerprint = fingerprint(fields);
+                Unit previous = units.get(currentId);
+
+                if (isReusable(previous, fingerprint, changed)) {
+                    for (int i = 0; i < fields.size(); i++) {
+                        fields.set(i, (FieldDecl) previous.nodes.get(i));
+                    }
+                    next.put(currentId, previous);
+                } else {
+                    analyzer.analyzeFields(classDecl);
+                    next.put(currentId, new Unit(fingerprint, analyzer.getDependencies(classDecl), fields));
+                    checked.add(currentId);
+                }
+
+                List<MethodDecl> methods = classDecl.getMethods();
+                for (int i = 0; i < methods.size(); i++) {
+                    MethodDecl method = methods.get(i);
+                    currentId = unitId(classDecl, method, next);
+                    fingerprint = ASTHasher.hash(method);
+                    previous = units.get(currentId);
+
+                    if (isReusable(previous, fingerprint, changed)) {
+                        methods.set(i, (MethodDecl) previous.nodes.get(0));
+                        next.put(currentId, previous);
+                    } else {
+                        analyzer.analyzeMethod(classDecl, method);
+                        next.put(currentId, new Unit(fingerprint, analyzer.getDependencies(method),
+                            Collections.singletonList(method)));
+                        checked.add(currentId);
+                    }
+                }
+            }
+        } catch (SemanticException e) {
+            // Units not reached keep their old state and the signature baseline is not advanced,
+            // so the next run re-checks everything this edit could have affected
+            Map<String, Unit> merged = new HashMap<>(units);
+            merged.putAll(next);
+            merged.remove(currentId);
+            units = merged;
+            throw e;
+        }
+
+        units = next;
+        signatures = newSignatures;
+        return checked;
+    }
+
+    public Set<String> getDependencies(String unitId) {
+        Unit unit = units.get(unitId);
+        return unit != null ? unit.dependencies : Collections.emptySet();
+    }
+
+    private boolean isReusable(Unit previous, long fingerprint, Set<String> changed) {
+        if (previous == null || previous.fingerprint != fingerprint) {
+            return false;
+        }
+
+        for (String dependency : previous.dependencies) {
+            if (changed.contains(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String unitId(ClassDecl classDecl, MethodDecl method, Map<String, Unit> taken) {
+        StringBuilder sb = new StringBuilder(classDecl.getName()).append(".").append(method.getName()).append("(");
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(method.getParameters().get(i).getType());
+        }
+        String id = sb.append(")").toString();
+
+        // Duplicate declarations are legal for the parser; keep them apart by position
+        String unique = id;
+        for (int n = 2; taken.containsKey(unique); n++) {
+            unique = id + "#" + n;
+        }
+        return unique;
+    }
+
+    private long fingerprint(List<FieldDecl> fields) {
+        ASTHasher hasher = new ASTHasher();
+        for (FieldDecl field : fields) {
+            field.accept(hasher);
+        }
+        return hasher.value();
+    }
+
+    private static class Unit {
+        final long fingerprint;
+        final Set<String> dependencies;
+        final List<? extends ASTNode> nodes;
+
+        Unit(long fingerprint, Set<String> dependencies, List<? extends ASTNode> nodes) {
+            this.fingerprint = fingerprint;
+            this.dependencies = dependencies;
+            this.nodes = nodes;
+        }
+    }
+}
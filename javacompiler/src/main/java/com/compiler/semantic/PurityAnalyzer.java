@@ -0,0 +1,327 @@
+package com.compiler.semantic;
+
+import com.compiler.ast.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Classifies every method as PURE, READ_ONLY or SIDE_EFFECTING over the program's call graph.
+// Must run after SemanticAnalyzer, which marks identifiers that resolve to fields.
+public class PurityAnalyzer implements ASTVisitor<Void> {
+    private final Map<String, ClassDecl> classes;
+    private final Map<MethodDecl, Purity> localEffects;
+    private final Map<MethodDecl, Set<MethodDecl>> callGraph;
+    private ClassDecl currentClass;
+    private MethodDecl currentMethod;
+    private Purity currentEffect;
+
+    public PurityAnalyzer() {
+        this.classes = new HashMap<>();
+        this.localEffects = new LinkedHashMap<>();
+        this.callGraph = new HashMap<>();
+    }
+
+    public void analyze(Program program) {
+        for (ClassDecl classDecl : program.getClasses()) {
+            classes.put(classDecl.getName(), classDecl);
+        }
+
+        // First pass: effects of each body in isolation, plus the call edges
+        program.accept(this);
+
+        // Second pass: propagate callee effects until nothing changes. Starting from the
+        // local effects keeps recursive cycles as pure as their bodies allow.
+        Map<MethodDecl, Purity> result = new HashMap<>(localEffects);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (MethodDecl method : localEffects.keySet()) {
+                Purity purity = result.get(method);
+                for (MethodDecl callee : callGraph.get(method)) {
+                    purity = purity.join(result.get(callee));
+                }
+                if (purity != result.get(method)) {
+                    result.put(method, purity);
+                    changed = true;
+                }
+            }
+        }
+
+        for (Map.Entry<MethodDecl, Purity> entry : result.entrySet()) {
+            entry.getKey().setPurity(entry.getValue());
+        }
+    }
+
+    // Program methods the given method may call directly
+    public Set<MethodDecl> getCallees(MethodDecl method) {
+        Set<MethodDecl> callees = callGraph.get(method);
+        return callees != null ? Collections.unmodifiableSet(callees) : Collections.emptySet();
+    }
+
+    public boolean isRecursive(MethodDecl method) {
+        Set<MethodDecl> visited = new LinkedHashSet<>();
+        return reaches(method, method, visited);
+    }
+
+    private boolean reaches(MethodDecl from, MethodDecl target, Set<MethodDecl> visited) {
+        for (MethodDecl callee : getCallees(from)) {
+            if (callee == target) {
+                return true;
+            }
+            if (visited.add(callee) && reaches(callee, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Resolves a call the same way SemanticAnalyzer does: first method with that name
+    public static MethodDecl resolve(ClassDecl classDecl, String methodName) {
+        if (classDecl == null) {
+            return null;
+        }
+        for (MethodDecl method : classDecl.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private void effect(Purity purity) {
+        currentEffect = currentEffect.join(purity);
+    }
+
+    @Override
+    public Void visit(Program program) {
+        for (ClassDecl classDecl : program.getClasses()) {
+            classDecl.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(ClassDecl classDecl) {
+        currentClass = classDecl;
+        for (MethodDecl method : classDecl.getMethods()) {
+            method.accept(this);
+        }
+        currentClass = null;
+        return null;
+    }
+
+    @Override
+    public Void visit(FieldDecl fieldDecl) {
+        return null;
+    }
+
+    @Override
+    public Void visit(MethodDecl methodDecl) {
+        currentMethod = methodDecl;
+        currentEffect = Purity.PURE;
+        callGraph.put(methodDecl, new LinkedHashSet<>());
+
+        methodDecl.getBody().accept(this);
+
+        localEffects.put(methodDecl, currentEffect);
+        currentMethod = null;
+        return null;
+    }
+
+    @Override
+    public Void visit(Parameter parameter) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BlockStmt blockStmt) {
+        for (Statement stmt : blockStmt.getStatements()) {
+            stmt.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(VarDeclStmt varDeclStmt) {
+        if (varDeclStmt.getInitializer() != null) {
+            varDeclStmt.getInitializer().accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(IfStmt ifStmt) {
+        ifStmt.getCondition().accept(this);
+        ifStmt.getThenStmt().accept(this);
+        if (ifStmt.getElseStmt() != null) {
+            ifStmt.getElseStmt().accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(WhileStmt whileStmt) {
+        whileStmt.getCondition().accept(this);
+        whileStmt.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(ForStmt forStmt) {
+        if (forStmt.getInit() != null) {
+            forStmt.getInit().accept(this);
+        }
+        if (forStmt.getCondition() != null) {
+            forStmt.getCondition().accept(this);
+        }
+        if (forStmt.getUpdate() != null) {
+            forStmt.getUpdate().accept(this);
+        }
+        forStmt.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(ReturnStmt returnStmt) {
+        if (returnStmt.getValue() != null) {
+            returnStmt.getValue().accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(ExprStmt exprStmt) {
+        exprStmt.getExpression().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryExpr binaryExpr) {
+        binaryExpr.getLeft().accept(this);
+        binaryExpr.getRight().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(UnaryExpr unaryExpr) {
+        unaryExpr.getOperand().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(AssignExpr assignExpr) {
+        Expression target = assignExpr.getTarget();
+
+        if (target instanceof IdentifierExpr) {
+            if (((IdentifierExpr) target).isField()) {
+                effect(Purity.SIDE_EFFECTING);
+            }
+        } else if (target instanceof FieldAccessExpr) {
+            ((FieldAccessExpr) target).getObject().accept(this);
+            effect(Purity.SIDE_EFFECTING);
+        } else if (target instanceof ArrayAccessExpr) {
+            ((ArrayAccessExpr) target).getArray().accept(this);
+            ((ArrayAccessExpr) target).getIndex().accept(this);
+            effect(Purity.SIDE_EFFECTING);
+        } else {
+            target.accept(this);
+            effect(Purity.SIDE_EFFECTING);
+        }
+
+        assignExpr.getValue().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(CallExpr callExpr) {
+        Expression callee = callExpr.getCallee();
+        if (callee != null) {
+            callee.accept(this);
+        }
+        for (Expression arg : callExpr.getArguments()) {
+            arg.accept(this);
+        }
+
+        MethodDecl target = null;
+        if (callee == null || callee instanceof ThisExpr) {
+            target = resolve(currentClass, callExpr.getMethodName());
+        } else if (callee.getExprType() != null) {
+            target = resolve(classes.get(callee.getExprType().getName()), callExpr.getMethodName());
+        }
+
+        if (target != null) {
+            callGraph.get(currentMethod).add(target);
+        } else {
+            // println and anything outside the program
+            effect(Purity.SIDE_EFFECTING);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(FieldAccessExpr fieldAccessExpr) {
+        fieldAccessExpr.getObject().accept(this);
+        effect(Purity.READ_ONLY);
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayAccessExpr arrayAccessExpr) {
+        arrayAccessExpr.getArray().accept(this);
+        arrayAccessExpr.getIndex().accept(this);
+        effect(Purity.READ_ONLY);
+        return null;
+    }
+
+    @Override
+    public Void visit(NewExpr newExpr) {
+        // A fresh object has an identity, so two calls are never interchangeable
+        if (newExpr.getArguments() != null) {
+            for (Expression arg : newExpr.getArguments()) {
+                arg.accept(this);
+            }
+        }
+        if (newExpr.getArraySize() != null) {
+            newExpr.getArraySize().accept(this);
+        }
+        effect(Purity.SIDE_EFFECTING);
+        return null;
+    }
+
+    @Override
+    public Void visit(IntLiteral intLiteral) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BoolLiteral boolLiteral) {
+        return null;
+    }
+
+    @Override
+    public Void visit(StringLiteral stringLiteral) {
+        return null;
+    }
+
+    @Override
+    public Void visit(NullLiteral nullLiteral) {
+        return null;
+    }
+
+    @Override
+    public Void visit(IdentifierExpr identifierExpr) {
+        if (identifierExpr.isField()) {
+            effect(Purity.READ_ONLY);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(ThisExpr thisExpr) {
+        return null;
+    }
+}
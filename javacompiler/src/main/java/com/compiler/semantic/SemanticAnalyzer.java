@@ -2,31 +2,88 @@ package com.compiler.semantic;
 
 import com.compiler.ast.*;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class SemanticAnalyzer implements ASTVisitor<Type> {
     private final SymbolTable symbolTable;
     private ClassDecl currentClass;
     private MethodDecl currentMethod;
     private final Map<String, ClassDecl> classes;
+    private final Map<ASTNode, Set<String>> dependencies;
+    private Set<String> currentDependencies;
 
     public SemanticAnalyzer() {
         this.symbolTable = new SymbolTable();
         this.classes = new HashMap<>();
+        this.dependencies = new HashMap<>();
     }
 
     public void analyze(Program program) {
         // First pass: collect all class declarations
+        declareClasses(program);
+        
+        // Second pass: analyze each class
+        program.accept(this);
+    }
+
+    public void declareClasses(Program program) {
         for (ClassDecl classDecl : program.getClasses()) {
             if (classes.containsKey(classDecl.getName())) {
                 throw new SemanticException("Duplicate class: " + classDecl.getName());
             }
             classes.put(classDecl.getName(), classDecl);
         }
+    }
+
+    // Checks the field declarations of a single class; classes must already be declared
+    public void analyzeFields(ClassDecl classDecl) {
+        currentClass = classDecl;
+        symbolTable.enterScope();
+        currentDependencies = beginDependencies(classDecl);
         
-        // Second pass: analyze each class
-        program.accept(this);
+        for (FieldDecl field : classDecl.getFields()) {
+            field.accept(this);
+        }
+        
+        currentDependencies = null;
+        symbolTable.exitScope();
+        currentClass = null;
+    }
+
+    // Checks a single method against the (already checked) fields of its class
+    public void analyzeMethod(ClassDecl classDecl, MethodDecl methodDecl) {
+        currentClass = classDecl;
+        symbolTable.enterScope();
+        
+        for (FieldDecl field : classDecl.getFields()) {
+            symbolTable.define(field.getName(), field.getType());
+        }
+        methodDecl.accept(this);
+        
+        symbolTable.exitScope();
+        currentClass = null;
+    }
+
+    // Signature keys (see SignatureTable) the given method or class fields resolved against
+    public Set<String> getDependencies(ASTNode node) {
+        Set<String> deps = dependencies.get(node);
+        return deps != null ? Collections.unmodifiableSet(deps) : Collections.emptySet();
+    }
+
+    private Set<String> beginDependencies(ASTNode node) {
+        Set<String> deps = new LinkedHashSet<>();
+        dependencies.put(node, deps);
+        return deps;
+    }
+
+    private void recordDependency(String key) {
+        if (currentDependencies != null) {
+            currentDependencies.add(key);
+        }
     }
 
     @Override
@@ -43,9 +100,11 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
         symbolTable.enterScope();
         
         // Add fields to symbol table
+        currentDependencies = beginDependencies(classDecl);
         for (FieldDecl field : classDecl.getFields()) {
             field.accept(this);
         }
+        currentDependencies = null;
         
         // Analyze methods
         for (MethodDecl method : classDecl.getMethods()) {
@@ -78,6 +137,7 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
     @Override
     public Type visit(MethodDecl methodDecl) {
         currentMethod = methodDecl;
+        currentDependencies = beginDependencies(methodDecl);
         symbolTable.enterScope();
         
         // Add parameters to symbol table
@@ -89,6 +149,7 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
         methodDecl.getBody().accept(this);
         
         symbolTable.exitScope();
+        currentDependencies = null;
         currentMethod = null;
         return methodDecl.getReturnType();
     }
@@ -314,6 +375,7 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
         Type resultType = new Type("int"); // Default to int for simplicity
         
         if (currentClass != null) {
+            recordDependency(SignatureTable.methodKey(currentClass.getName(), callExpr.getMethodName()));
             for (MethodDecl method : currentClass.getMethods()) {
                 if (method.getName().equals(callExpr.getMethodName())) {
                     resultType = method.getReturnType();
@@ -361,8 +423,14 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
 
     @Override
     public Type visit(NewExpr newExpr) {
-        for (Expression arg : newExpr.getArguments()) {
-            arg.accept(this);
+        if (!newExpr.isArrayCreation()) {
+            recordDependency(SignatureTable.classKey(newExpr.getType().getName()));
+        }
+        
+        if (newExpr.getArguments() != null) {
+            for (Expression arg : newExpr.getArguments()) {
+                arg.accept(this);
+            }
         }
         
         if (newExpr.getArraySize() != null) {
@@ -405,6 +473,13 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
             throw new SemanticException("Undefined variable: " + identifierExpr.getName());
         }
         
+        // The outermost scope holds the fields of the current class
+        boolean isField = currentClass != null && symbolTable.scopeLevelOf(identifierExpr.getName()) == 0;
+        identifierExpr.setField(isField);
+        if (isField) {
+            recordDependency(SignatureTable.fieldKey(currentClass.getName(), identifierExpr.getName()));
+        }
+        
         identifierExpr.setExprType(type);
         return type;
     }
@@ -415,6 +490,7 @@ public class SemanticAnalyzer implements ASTVisitor<Type> {
             throw new SemanticException("'this' outside class");
         }
         
+        recordDependency(SignatureTable.classKey(currentClass.getName()));
         Type type = new Type(currentClass.getName());
         thisExpr.setExprType(type);
         return type;
@@ -0,0 +1,161 @@
+package com.compiler.semantic;
+
+import com.compiler.ast.*;
+import com.compiler.util.ASTHasher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// Externally visible signatures of a program, keyed the same way SemanticAnalyzer records dependencies.
+// They are kept per class together with a hash of the declarations they came from, so an updated
+// table only describes the classes whose fields or method headers changed.
+public class SignatureTable {
+    private final Map<String, ClassSignatures> classes;
+
+    private SignatureTable(Map<String, ClassSignatures> classes) {
+        this.classes = classes;
+    }
+
+    public static SignatureTable of(Program program) {
+        return empty().update(program);
+    }
+
+    // The table of the given program, sharing this table's signatures of every class whose
+    // declarations hash the same as before
+    public SignatureTable update(Program program) {
+        Map<String, ClassSignatures> next = new HashMap<>();
+
+        for (ClassDecl classDecl : program.getClasses()) {
+            long hash = declarationHash(classDecl);
+            ClassSignatures previous = classes.get(classDecl.getName());
+            if (previous != null && previous.hash == hash) {
+                next.put(classDecl.getName(), previous);
+            } else {
+                next.put(classDecl.getName(), new ClassSignatures(hash, describe(classDecl)));
+            }
+        }
+
+        return new SignatureTable(next);
+    }
+
+    private static long declarationHash(ClassDecl classDecl) {
+        ASTHasher hasher = new ASTHasher().add(classDecl.getName()).add(classDecl.getFields().size());
+        for (FieldDecl field : classDecl.getFields()) {
+            hasher.add(field.getName()).add(field.getType());
+        }
+        hasher.add(classDecl.getMethods().size());
+        for (MethodDecl method : classDecl.getMethods()) {
+            hasher.add(method.getName()).add(method.getReturnType()).add(method.getParameters().size());
+            for (Parameter parameter : method.getParameters()) {
+                hasher.add(parameter.getType());
+            }
+        }
+        return hasher.value();
+    }
+
+    private static Map<String, String> describe(ClassDecl classDecl) {
+        Map<String, String> signatures = new HashMap<>();
+        String className = classDecl.getName();
+        signatures.put(classKey(className), className);
+
+        for (FieldDecl field : classDecl.getFields()) {
+            String key = fieldKey(className, field.getName());
+            String signature = field.getType().toString();
+            // A duplicated field is an error, but the signature must still differ from a single one
+            signatures.merge(key, signature, (a, b) -> a + "|" + b);
+        }
+
+        // Calls resolve to the first method with a matching name
+        for (MethodDecl method : classDecl.getMethods()) {
+            signatures.putIfAbsent(methodKey(className, method.getName()), describe(method));
+        }
+
+        return signatures;
+    }
+
+    public static String classKey(String className) {
+        return "class:" + className;
+    }
+
+    public static String fieldKey(String className, String fieldName) {
+        return "field:" + className + "." + fieldName;
+    }
+
+    public static String methodKey(String className, String methodName) {
+        return "method:" + className + "." + methodName;
+    }
+
+    public static String describe(MethodDecl method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.getReturnType()).append(" ").append(method.getName()).append("(");
+
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(method.getParameters().get(i).getType());
+        }
+
+        return sb.append(")").toString();
+    }
+
+    public String get(String key) {
+        int start = key.indexOf(':') + 1;
+        int end = key.indexOf('.', start);
+        ClassSignatures signatures = classes.get(end < 0 ? key.substring(start) : key.substring(start, end));
+        return signatures != null ? signatures.signatures.get(key) : null;
+    }
+
+    // Keys whose signature was added, removed or changed between the two tables; classes whose
+    // signatures were carried over are skipped without comparing them
+    public Set<String> changedSince(SignatureTable previous) {
+        Set<String> changed = new HashSet<>();
+
+        for (Map.Entry<String, ClassSignatures> entry : classes.entrySet()) {
+            ClassSignatures before = previous.classes.get(entry.getKey());
+            if (before != entry.getValue()) {
+                diff(entry.getValue().signatures, before != null ? before.signatures : Collections.emptyMap(), changed);
+            }
+        }
+
+        for (Map.Entry<String, ClassSignatures> entry : previous.classes.entrySet()) {
+            if (!classes.containsKey(entry.getKey())) {
+                changed.addAll(entry.getValue().signatures.keySet());
+            }
+        }
+
+        return changed;
+    }
+
+    private static void diff(Map<String, String> now, Map<String, String> before, Set<String> changed) {
+        for (Map.Entry<String, String> entry : now.entrySet()) {
+            if (!Objects.equals(entry.getValue(), before.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+
+        for (String key : before.keySet()) {
+            if (!now.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+    }
+
+    public static SignatureTable empty() {
+        return new SignatureTable(new HashMap<>());
+    }
+
+    private static class ClassSignatures {
+        final long hash;
+        final Map<String, String> signatures;
+
+        ClassSignatures(long hash, Map<String, String> signatures) {
+            this.hash = hash;
+            this.signatures = signatures;
+        }
+    }
+}
@@ -40,6 +40,15 @@ public class SymbolTable {
         return null;
     }
 
+    public int scopeLevelOf(String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public Type lookupInCurrentScope(String name) {
         if (scopes.isEmpty()) {
             return null;
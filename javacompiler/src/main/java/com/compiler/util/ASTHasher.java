@@ -0,0 +1,244 @@
+package com.compiler.util;
+
+import com.compiler.ast.*;
+
+import java.util.List;
+
+// 64-bit hash of the structure of a subtree, computed in one walk: node kinds, names, types,
+// operators and literals, but not positions, so two subtrees that check the same way hash the
+// same. Names are hashed char by char rather than through String.hashCode, whose 32 bits
+// collide on short identifiers such as "Aa" and "BB".
+public class ASTHasher implements ASTVisitor<Void> {
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    private static final long NONE = 0x9e3779b97f4a7c15L;
+
+    private long hash = OFFSET;
+
+    public static long hash(ASTNode node) {
+        ASTHasher hasher = new ASTHasher();
+        node.accept(hasher);
+        return hasher.value();
+    }
+
+    public long value() {
+        return hash;
+    }
+
+    public ASTHasher add(long value) {
+        hash = (hash ^ value) * PRIME;
+        return this;
+    }
+
+    public ASTHasher add(String text) {
+        add(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * PRIME;
+        }
+        return this;
+    }
+
+    public ASTHasher add(Type type) {
+        return add(type.getName()).add(type.isArray() ? 1 : 0);
+    }
+
+    private void node(ASTNode node) {
+        if (node == null) {
+            add(NONE);
+        } else {
+            node.accept(this);
+        }
+    }
+
+    private void nodes(List<? extends ASTNode> nodes) {
+        add(nodes.size());
+        for (ASTNode node : nodes) {
+            node.accept(this);
+        }
+    }
+
+    @Override
+    public Void visit(Program program) {
+        add(1);
+        nodes(program.getClasses());
+        return null;
+    }
+
+    @Override
+    public Void visit(ClassDecl classDecl) {
+        add(2).add(classDecl.getName());
+        nodes(classDecl.getFields());
+        nodes(classDecl.getMethods());
+        return null;
+    }
+
+    @Override
+    public Void visit(FieldDecl fieldDecl) {
+        add(3).add(fieldDecl.getType()).add(fieldDecl.getName());
+        node(fieldDecl.getInitializer());
+        return null;
+    }
+
+    @Override
+    public Void visit(MethodDecl methodDecl) {
+        add(4).add(methodDecl.getReturnType()).add(methodDecl.getName());
+        nodes(methodDecl.getParameters());
+        methodDecl.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(Parameter parameter) {
+        add(5).add(parameter.getType()).add(parameter.getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(BlockStmt blockStmt) {
+        add(6);
+        nodes(blockStmt.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(VarDeclStmt varDeclStmt) {
+        add(7).add(varDeclStmt.getType()).add(varDeclStmt.getName());
+        node(varDeclStmt.getInitializer());
+        return null;
+    }
+
+    @Override
+    public Void visit(IfStmt ifStmt) {
+        add(8);
+        ifStmt.getCondition().accept(this);
+        ifStmt.getThenStmt().accept(this);
+        node(ifStmt.getElseStmt());
+        return null;
+    }
+
+    @Override
+    public Void visit(WhileStmt whileStmt) {
+        add(9);
+        whileStmt.getCondition().accept(this);
+        whileStmt.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(ForStmt forStmt) {
+        add(10);
+        node(forStmt.getInit());
+        node(forStmt.getCondition());
+        node(forStmt.getUpdate());
+        forStmt.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(ReturnStmt returnStmt) {
+        add(11);
+        node(returnStmt.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(ExprStmt exprStmt) {
+        add(12);
+        exprStmt.getExpression().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryExpr binaryExpr) {
+        add(13).add(binaryExpr.getOperator().ordinal());
+        binaryExpr.getLeft().accept(this);
+        binaryExpr.getRight().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(UnaryExpr unaryExpr) {
+        add(14).add(unaryExpr.getOperator().ordinal());
+        unaryExpr.getOperand().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(AssignExpr assignExpr) {
+        add(15);
+        assignExpr.getTarget().accept(this);
+        assignExpr.getValue().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(CallExpr callExpr) {
+        add(16).add(callExpr.getMethodName());
+        node(callExpr.getCallee());
+        nodes(callExpr.getArguments());
+        return null;
+    }
+
+    @Override
+    public Void visit(FieldAccessExpr fieldAccessExpr) {
+        add(17).add(fieldAccessExpr.getFieldName());
+        fieldAccessExpr.getObject().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayAccessExpr arrayAccessExpr) {
+        add(18);
+        arrayAccessExpr.getArray().accept(this);
+        arrayAccessExpr.getIndex().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(NewExpr newExpr) {
+        add(19).add(newExpr.getType());
+        node(newExpr.getArraySize());
+        if (newExpr.getArguments() == null) {
+            add(NONE);
+        } else {
+            nodes(newExpr.getArguments());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(IntLiteral intLiteral) {
+        add(20).add(intLiteral.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(BoolLiteral boolLiteral) {
+        add(21).add(boolLiteral.getValue() ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visit(StringLiteral stringLiteral) {
+        add(22).add(stringLiteral.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(NullLiteral nullLiteral) {
+        add(23);
+        return null;
+    }
+
+    @Override
+    public Void visit(IdentifierExpr identifierExpr) {
+        add(24).add(identifierExpr.getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(ThisExpr thisExpr) {
+        add(25);
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+package com.compiler;
+
+import com.compiler.ast.Program;
+import com.compiler.backend.IRBytecodeGenerator;
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.IRGenerator;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.Opcode;
+import com.compiler.ir.SSABuilder;
+import com.compiler.ir.SSAVerifier;
+import com.compiler.lexer.Lexer;
+import com.compiler.opt.ConstantPropagator;
+import com.compiler.parser.Parser;
+import com.compiler.semantic.PurityAnalyzer;
+import com.compiler.semantic.SemanticAnalyzer;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public final class CompilerTestSupport {
+
+    private CompilerTestSupport() {
+    }
+
+    public static Program parse(String source) {
+        return new Parser(new Lexer(source).tokenize()).parse();
+    }
+
+    // Parses and runs semantic and purity analysis
+    public static Program analyze(String source) {
+        Program program = parse(source);
+        new SemanticAnalyzer().analyze(program);
+        new PurityAnalyzer().analyze(program);
+        return program;
+    }
+
+    public static List<IRClass> lower(Program program) {
+        return new IRGenerator().generate(program);
+    }
+
+    // The named method lowered to IR, searching the classes in declaration order
+    public static IRMethod method(List<IRClass> classes, String name) {
+        for (IRClass irClass : classes) {
+            IRMethod method = irClass.getMethod(name);
+            if (method != null) {
+                return method;
+            }
+        }
+        throw new AssertionError("No method " + name);
+    }
+
+    public static IRMethod method(String source, String name) {
+        return method(lower(analyze(source)), name);
+    }
+
+    // Constant propagation, which the loop passes expect to have run before them:
+    // runOnSSA(method, CONSTANTS.andThen(pass::run), label)
+    public static final Consumer<ControlFlowGraph> CONSTANTS = cfg -> new ConstantPropagator().run(cfg);
+
+    // Builds the method's graph in SSA form, runs the pass on it and checks the result is
+    // still valid SSA, naming the pass in the failure
+    public static ControlFlowGraph runOnSSA(IRMethod method, Consumer<ControlFlowGraph> pass, String label) {
+        ControlFlowGraph cfg = ControlFlowGraph.build(method);
+        new SSABuilder(cfg).build();
+        pass.accept(cfg);
+        SSAVerifier.check(cfg, label);
+        return cfg;
+    }
+
+    public static int count(IRMethod method, Opcode opcode) {
+        int count = 0;
+        for (Insn insn : method.getCode()) {
+            if (insn.getOpcode() == opcode) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static int calls(IRMethod method) {
+        return count(method, Opcode.CALL);
+    }
+
+    public static int count(ControlFlowGraph cfg, Opcode opcode) {
+        int count = 0;
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == opcode) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public static int loops(ControlFlowGraph cfg) {
+        return new LoopForest(cfg, DominatorTree.dominators(cfg)).getLoops().size();
+    }
+
+    // Bytecode from the IR backend
+    public static Map<String, byte[]> compileIR(List<IRClass> classes) {
+        return new IRBytecodeGenerator().generate(classes);
+    }
+
+    public static Object newInstance(Map<String, byte[]> classes, String className) throws Exception {
+        ClassLoader loader = new ClassLoader(CompilerTestSupport.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        return loader.loadClass(className).getDeclaredConstructor().newInstance();
+    }
+
+    public static Object invoke(Object target, String methodName, Object... args) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterCount() == args.length) {
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(methodName);
+    }
+}
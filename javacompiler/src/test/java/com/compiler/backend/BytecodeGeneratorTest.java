@@ -0,0 +1,66 @@
+package com.compiler.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BytecodeGeneratorTest {
+
+    private static final String PROGRAM = "class Test { int total; int[] values; " +
+        "int square(int n) { return n * n; } " +
+        "int sumOfSquares(int n) { int sum; sum = 0; int i; " +
+        "for (i = 1; i <= n; i = i + 1) { sum = sum + square(i); } return sum; } " +
+        "void add(int n) { total = total + n; } " +
+        "int accumulate(int n) { total = 0; add(n); add(n * 2); return total; } " +
+        "int fill(int n) { values = new int[n]; int i; " +
+        "for (i = 0; i < n; i = i + 1) { values[i] = i * 3; } return values[n - 1]; } " +
+        "int countTrue(int n) { boolean[] flags; flags = new boolean[n]; int i; " +
+        "for (i = 0; i < n; i = i + 2) { flags[i] = true; } int count; count = 0; " +
+        "for (i = 0; i < n; i = i + 1) { if (flags[i]) { count = count + 1; } } return count; } " +
+        "int max(int a, int b) { if (a > b) { return a; } else { return b; } } " +
+        "int chain(int n) { int a; int b; a = b = n; return a + b; } }";
+
+    @Test
+    public void testCallsBetweenProgramMethods() throws Exception {
+        Object test = compile();
+        assertEquals(55, invoke(test, "sumOfSquares", 5));
+        assertEquals(9, invoke(test, "max", 9, 4));
+        assertEquals(9, invoke(test, "max", 4, 9));
+    }
+
+    @Test
+    public void testVoidCallsAndFieldAssignment() throws Exception {
+        assertEquals(21, invoke(compile(), "accumulate", 7));
+    }
+
+    @Test
+    public void testArrayFieldStoresAndLoads() throws Exception {
+        assertEquals(12, invoke(compile(), "fill", 5));
+    }
+
+    @Test
+    public void testBooleanArrays() throws Exception {
+        assertEquals(3, invoke(compile(), "countTrue", 5));
+    }
+
+    @Test
+    public void testAssignmentLeavesValue() throws Exception {
+        assertEquals(8, invoke(compile(), "chain", 4));
+    }
+
+    @Test
+    public void testGenerateReturnsEveryClass() {
+        Map<String, byte[]> classes = new BytecodeGenerator().generate(analyze("class A { } class B { }"));
+        assertEquals(2, classes.size());
+        assertTrue(classes.containsKey("A"));
+        assertTrue(classes.containsKey("B"));
+    }
+
+    // Loading the class runs the verifier, which needs stack map frames at every branch target
+    private Object compile() throws Exception {
+        return newInstance(new BytecodeGenerator().generate(analyze(PROGRAM)), "Test");
+    }
+}
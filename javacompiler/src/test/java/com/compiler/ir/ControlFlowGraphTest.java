@@ -0,0 +1,135 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Program;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlFlowGraphTest {
+
+    private static final String NESTED = "class Test { " +
+        "int grid(int n) { int s; s = 0; int i; int j; " +
+        "for (i = 0; i < n; i = i + 1) { for (j = 0; j < i; j = j + 1) { s = s + j; } } " +
+        "while (s > 100) { s = s - 7; } return s; } " +
+        "int pick(int x) { if (x > 0) { return 1; } else { x = 0 - x; } return x; } " +
+        "int spin(int x) { while (true) { x = x + 1; } } }";
+
+    private ControlFlowGraph cfg(String methodName) {
+        return ControlFlowGraph.build(method(NESTED, methodName));
+    }
+
+    @Test
+    public void testEdgesAreSymmetric() {
+        ControlFlowGraph cfg = cfg("grid");
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (BasicBlock successor : block.getSuccessors()) {
+                assertTrue(successor.getPredecessors().contains(block), block + " -> " + successor);
+            }
+            for (BasicBlock predecessor : block.getPredecessors()) {
+                assertTrue(predecessor.getSuccessors().contains(block), predecessor + " -> " + block);
+            }
+            Insn terminator = block.getTerminator();
+            if (terminator != null && terminator.getOpcode() == Opcode.IF_FALSE) {
+                assertEquals(2, block.getSuccessors().size());
+            }
+        }
+        assertTrue(cfg.getEntry().getPredecessors().isEmpty());
+    }
+
+    @Test
+    public void testDominatorsAndPostDominators() {
+        ControlFlowGraph cfg = cfg("pick");
+        DominatorTree dominators = DominatorTree.dominators(cfg);
+        DominatorTree postDominators = DominatorTree.postDominators(cfg);
+
+        BasicBlock entry = cfg.getEntry();
+        BasicBlock thenBlock = entry.getSuccessors().get(0);
+        BasicBlock elseBlock = entry.getSuccessors().get(1);
+        BasicBlock join = elseBlock.getSuccessors().get(0);
+        while (join.getTerminator() == null || join.getTerminator().getOpcode() != Opcode.RETURN) {
+            join = join.getSuccessors().get(0);
+        }
+
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (dominators.isReachable(block.getId())) {
+                assertTrue(dominators.dominates(entry.getId(), block.getId()));
+            }
+        }
+        assertFalse(dominators.dominates(thenBlock.getId(), join.getId()));
+        assertTrue(dominators.dominates(elseBlock.getId(), join.getId()));
+        assertEquals(DominatorTree.NONE, dominators.getImmediateDominator(entry.getId()));
+        assertEquals(2, count(cfg, Opcode.RETURN));
+
+        // Both returns lead to the virtual exit, so neither post-dominates the entry
+        assertEquals(cfg.size(), postDominators.getRoot());
+        assertEquals(cfg.size(), postDominators.getImmediateDominator(entry.getId()));
+        assertTrue(postDominators.dominates(join.getId(), elseBlock.getId()));
+        assertFalse(postDominators.dominates(join.getId(), thenBlock.getId()));
+    }
+
+    @Test
+    public void testLoopNestingForest() {
+        ControlFlowGraph cfg = cfg("grid");
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+
+        assertEquals(3, forest.getLoops().size());
+        assertEquals(2, forest.getRoots().size());
+
+        LoopForest.Loop outer = forest.getRoots().get(0).getChildren().isEmpty()
+            ? forest.getRoots().get(1) : forest.getRoots().get(0);
+        assertEquals(1, outer.getChildren().size());
+        LoopForest.Loop inner = outer.getChildren().get(0);
+        assertEquals(2, inner.getDepth());
+        assertSame(outer, inner.getParent());
+        assertTrue(outer.contains(inner.getHeader()));
+        assertFalse(inner.contains(outer.getHeader()));
+        assertEquals(1, inner.getLatches().size());
+        assertEquals(1, outer.getExits(cfg).size());
+        assertSame(inner, forest.getLoop(inner.getLatches().get(0)));
+        assertEquals(0, forest.getDepth(cfg.getEntry()));
+        assertEquals(1, loops(cfg("spin")));
+    }
+
+    @Test
+    public void testUnreachableBlocks() {
+        // The GOTO after 'return 1' ends up in a block of its own that nothing jumps to
+        ControlFlowGraph cfg = cfg("pick");
+        DominatorTree dominators = DominatorTree.dominators(cfg);
+
+        int unreachable = 0;
+        for (BasicBlock block : cfg.getBlocks()) {
+            if (!dominators.isReachable(block.getId())) {
+                unreachable++;
+            }
+        }
+        assertEquals(1, unreachable);
+        int size = cfg.size();
+        assertEquals(1, cfg.removeUnreachableBlocks());
+        assertEquals(size - 1, cfg.size());
+        for (int i = 0; i < cfg.size(); i++) {
+            assertEquals(i, cfg.getBlock(i).getId());
+        }
+    }
+
+    @Test
+    public void testLinearizeRoundTrip() throws Exception {
+        Program program = analyze(NESTED);
+        List<IRClass> classes = lower(program);
+        int before = IRGenerator.countInstructions(classes);
+
+        for (IRMethod method : classes.get(0).getMethods()) {
+            ControlFlowGraph.build(method).linearize();
+        }
+
+        assertTrue(IRGenerator.countInstructions(classes) <= before);
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(99, invoke(test, "grid", 10));
+        assertEquals(0, invoke(test, "grid", 0));
+        assertEquals(1, invoke(test, "pick", 5));
+        assertEquals(5, invoke(test, "pick", -5));
+    }
+}
@@ -0,0 +1,186 @@
+package com.compiler.ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataflowAnalysisTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int count(int n) { int i; i = 0; while (i < n) { i = i + 1; } return i; } " +
+        "int pick(boolean c) { int x; if (c) { int y; y = 1; x = y; } else { x = 2; } return x; } }";
+
+    // Instructions defining a variable, and which of them reach each block
+    static final class ReachingDefinitions extends DataflowAnalysis {
+        private final List<Insn> definitions;
+        private final Map<Insn, Integer> numbers;
+        private final Map<Integer, BitVector> byVariable;
+
+        ReachingDefinitions(ControlFlowGraph cfg) {
+            super(cfg, Direction.FORWARD, Meet.UNION, definitions(cfg).size());
+            this.definitions = definitions(cfg);
+            this.numbers = new IdentityHashMap<>();
+            this.byVariable = new HashMap<>();
+            for (int d = 0; d < definitions.size(); d++) {
+                numbers.put(definitions.get(d), d);
+                byVariable.computeIfAbsent(definitions.get(d).getDst(), v -> new BitVector(definitions.size())).set(d);
+            }
+            solve();
+        }
+
+        private static List<Insn> definitions(ControlFlowGraph cfg) {
+            List<Insn> definitions = new ArrayList<>();
+            for (BasicBlock block : cfg.getBlocks()) {
+                for (Insn insn : block.getInsns()) {
+                    if (Operand.isVar(insn.getDst())) {
+                        definitions.add(insn);
+                    }
+                }
+            }
+            return definitions;
+        }
+
+        // A definition ends every other one of its variable
+        @Override
+        protected void local(BasicBlock block, BitVector gen, BitVector kill) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    BitVector same = byVariable.get(insn.getDst());
+                    gen.andNot(same);
+                    kill.or(same);
+                    gen.set(numbers.get(insn));
+                }
+            }
+        }
+
+        List<Insn> reaching(BasicBlock block) {
+            List<Insn> reaching = new ArrayList<>();
+            BitVector in = getIn(block);
+            for (int d = in.nextSetBit(0); d >= 0; d = in.nextSetBit(d + 1)) {
+                reaching.add(definitions.get(d));
+            }
+            return reaching;
+        }
+    }
+
+    // Variables assigned on every path from the entry; 'this' and the parameters at the start
+    static final class DefiniteAssignment extends DataflowAnalysis {
+        DefiniteAssignment(ControlFlowGraph cfg) {
+            super(cfg, Direction.FORWARD, Meet.INTERSECTION, cfg.getMethod().getVariableCount());
+            solve();
+        }
+
+        @Override
+        protected void local(BasicBlock block, BitVector gen, BitVector kill) {
+            for (Insn insn : block.getInsns()) {
+                if (Operand.isVar(insn.getDst())) {
+                    gen.set(Operand.index(insn.getDst()));
+                }
+            }
+        }
+
+        @Override
+        protected void boundary(BasicBlock block, BitVector value) {
+            for (int v = 0; v <= cfg.getMethod().getParameterCount(); v++) {
+                value.set(v);
+            }
+        }
+    }
+
+    private ControlFlowGraph cfg(String name) {
+        return ControlFlowGraph.build(method(PROGRAM, name));
+    }
+
+    private static BasicBlock returning(ControlFlowGraph cfg) {
+        for (BasicBlock block : cfg.getBlocks()) {
+            Insn terminator = block.getTerminator();
+            if (terminator != null && terminator.getOpcode() == Opcode.RETURN) {
+                return block;
+            }
+        }
+        throw new AssertionError("no RETURN");
+    }
+
+    private static int variable(IRMethod method, String name) {
+        for (int v = 0; v < method.getVariableCount(); v++) {
+            if (name.equals(method.getVariable(method.variable(v)).getName())) {
+                return v;
+            }
+        }
+        throw new AssertionError("no variable " + name);
+    }
+
+    @Test
+    public void testForwardUnion() {
+        ControlFlowGraph cfg = cfg("count");
+        int i = cfg.getMethod().variable(variable(cfg.getMethod(), "i"));
+        int reaching = 0;
+        for (Insn definition : new ReachingDefinitions(cfg).reaching(returning(cfg))) {
+            if (definition.getDst() == i) {
+                reaching++;
+            }
+        }
+        // i = 0 when the loop never runs, and i = i + 1 around it
+        assertEquals(2, reaching);
+    }
+
+    @Test
+    public void testForwardIntersection() {
+        ControlFlowGraph cfg = cfg("pick");
+        BitVector assigned = new DefiniteAssignment(cfg).getIn(returning(cfg));
+        assertTrue(assigned.get(variable(cfg.getMethod(), "x")));
+        assertFalse(assigned.get(variable(cfg.getMethod(), "y")));
+        assertTrue(assigned.get(0));
+        assertTrue(assigned.get(1));
+    }
+
+    @Test
+    public void testLivenessMatchesRoundRobinOnLargeGraphs() {
+        ControlFlowGraph cfg = DataflowBenchmark.graph(200);
+        assertTrue(cfg.size() > 1000);
+        Liveness liveness = new Liveness(cfg);
+        DataflowBenchmark.RoundRobinLiveness expected = new DataflowBenchmark.RoundRobinLiveness(cfg);
+        for (BasicBlock block : cfg.getBlocks()) {
+            assertEquals(expected.liveIn[block.getId()], liveness.getLiveIn(block), block.toString());
+            assertEquals(expected.liveOut[block.getId()], liveness.getLiveOut(block), block.toString());
+        }
+        // Loops are at most two deep, so every block settles after a few visits
+        assertTrue(liveness.getVisits() <= 4 * cfg.size(), liveness.getVisits() + " visits");
+    }
+
+    @Test
+    public void testBitVector() {
+        BitVector bits = new BitVector(130);
+        bits.set(0);
+        bits.set(64);
+        bits.set(129);
+        assertEquals(3, bits.cardinality());
+        assertEquals(64, bits.nextSetBit(1));
+        assertEquals(129, bits.nextSetBit(65));
+        assertEquals(-1, bits.nextSetBit(130));
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(64);
+        expected.set(129);
+        assertEquals(expected, bits.toBitSet());
+
+        BitVector full = new BitVector(130);
+        full.fill();
+        assertEquals(130, full.cardinality());
+        full.andNot(bits);
+        assertEquals(127, full.cardinality());
+        full.or(bits);
+        full.and(bits);
+        assertEquals(bits, full);
+        full.clear();
+        assertTrue(full.isEmpty());
+    }
+}
@@ -0,0 +1,137 @@
+package com.compiler.ir;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+
+// Microbenchmarks for DataflowAnalysis on synthetic methods with thousands of blocks. Not a
+// test; run it after 'mvn test-compile' with
+//   java -cp target/classes:target/test-classes:<asm jars> com.compiler.ir.DataflowBenchmark
+// Each size is solved by Liveness, by the round-robin BitSet solver Liveness used before
+// (kept here as the reference), and by the forward reaching definitions and definite
+// assignment problems of DataflowAnalysisTest. Times are the median of several runs after
+// warming up; visits per block show how close to linear the worklist stays.
+public final class DataflowBenchmark {
+    private static final int[] SIZES = {250, 1000, 2000};
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 11;
+
+    private DataflowBenchmark() {
+    }
+
+    // A method of the given number of segments, each a loop with a branch and a nested loop in
+    // it, whose variables stay live across the segments that follow
+    static String program(int segments) {
+        StringBuilder source = new StringBuilder("class Big { int run(int n) { int s; s = 0; int i; int j; ");
+        for (int k = 0; k < segments; k++) {
+            source.append("int a").append(k).append("; a").append(k).append(" = ").append(k).append("; ");
+        }
+        for (int k = 0; k < segments; k++) {
+            source.append("for (i = 0; i < n; i = i + 1) { ")
+                .append("if (i % 3 == ").append(k % 3).append(") { a").append(k).append(" = a").append(k).append(" + i; } ")
+                .append("else { s = s + a").append(k / 2).append("; } ")
+                .append("j = 0; while (j < i) { s = s - a").append(k).append("; j = j + 1; } } ");
+        }
+        source.append("return s; } }");
+        return source.toString();
+    }
+
+    static ControlFlowGraph graph(int segments) {
+        return ControlFlowGraph.build(method(program(segments), "run"));
+    }
+
+    // The fixpoint iteration Liveness ran before it moved onto DataflowAnalysis: every block
+    // in postorder, with BitSets allocated per visit, until a whole pass changes nothing
+    static final class RoundRobinLiveness {
+        final BitSet[] liveIn;
+        final BitSet[] liveOut;
+
+        RoundRobinLiveness(ControlFlowGraph cfg) {
+            int blockCount = cfg.size();
+            liveIn = new BitSet[blockCount];
+            liveOut = new BitSet[blockCount];
+            BitSet[] uses = new BitSet[blockCount];
+            BitSet[] defs = new BitSet[blockCount];
+            for (BasicBlock block : cfg.getBlocks()) {
+                int id = block.getId();
+                uses[id] = new BitSet();
+                defs[id] = new BitSet();
+                liveIn[id] = new BitSet();
+                liveOut[id] = new BitSet();
+                List<Insn> insns = block.getInsns();
+                for (int i = insns.size() - 1; i >= block.getPhiCount(); i--) {
+                    Liveness.transfer(insns.get(i), uses[id]);
+                    if (Operand.isVar(insns.get(i).getDst())) {
+                        defs[id].set(Operand.index(insns.get(i).getDst()));
+                    }
+                }
+                for (Insn phi : block.getPhis()) {
+                    defs[id].set(Operand.index(phi.getDst()));
+                    uses[id].clear(Operand.index(phi.getDst()));
+                }
+            }
+
+            List<BasicBlock> order = cfg.reversePostorder();
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = order.size() - 1; i >= 0; i--) {
+                    BasicBlock block = order.get(i);
+                    int id = block.getId();
+                    BitSet out = new BitSet();
+                    for (BasicBlock successor : block.getSuccessors()) {
+                        out.or(liveIn[successor.getId()]);
+                        int index = successor.getPredecessors().indexOf(block);
+                        for (Insn phi : successor.getPhis()) {
+                            if (Operand.isVar(phi.arg(index))) {
+                                out.set(Operand.index(phi.arg(index)));
+                            }
+                        }
+                    }
+                    BitSet in = (BitSet) out.clone();
+                    in.andNot(defs[id]);
+                    in.or(uses[id]);
+                    if (!in.equals(liveIn[id]) || !out.equals(liveOut[id])) {
+                        liveIn[id] = in;
+                        liveOut[id] = out;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private interface Run {
+        Object run(ControlFlowGraph cfg);
+    }
+
+    private static double medianMillis(ControlFlowGraph cfg, Run run) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run.run(cfg);
+        }
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            run.run(cfg);
+            times[i] = System.nanoTime() - start;
+        }
+        java.util.Arrays.sort(times);
+        return times[RUNS / 2] / 1e6;
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %10s %12s %12s %12s %12s %14s%n", "blocks", "variables",
+            "liveness", "round-robin", "reaching", "assigned", "visits/block");
+        for (int segments : SIZES) {
+            ControlFlowGraph cfg = graph(segments);
+            double liveness = medianMillis(cfg, Liveness::new);
+            double roundRobin = medianMillis(cfg, RoundRobinLiveness::new);
+            double reaching = medianMillis(cfg, DataflowAnalysisTest.ReachingDefinitions::new);
+            double assigned = medianMillis(cfg, DataflowAnalysisTest.DefiniteAssignment::new);
+            double visits = (double) new Liveness(cfg).getVisits() / cfg.size();
+            System.out.printf("%8d %10d %10.2fms %10.2fms %10.2fms %10.2fms %14.2f%n", cfg.size(),
+                cfg.getMethod().getVariableCount(), liveness, roundRobin, reaching, assigned, visits);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Program;
+import com.compiler.backend.BytecodeGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IRGeneratorTest {
+
+    private static final String SAMPLE = "class Sample { int total; " +
+        "int sum(int[] values, int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { s = s + values[i]; } return s; } " +
+        "int fill(int n) { int[] a; a = new int[n]; int i; i = 0; while (i < n) { a[i] = i * i; i = i + 1; } return sum(a, n); } " +
+        "int classify(int x) { if (x < 0) { return -1; } else { if (x == 0) { return 0; } } return 1; } " +
+        "boolean flags(boolean a, boolean b) { return !(a && b) || a == b; } " +
+        "int accumulate(int x) { total = total + x; return total; } " +
+        "int order(int x) { return x + (x = 5) * x; } }";
+
+    @Test
+    public void testOperandEncoding() {
+        int temp = Operand.make(Operand.TEMP, 7);
+        int symbol = Operand.make(Operand.SYMBOL, 123456);
+
+        assertEquals(Operand.TEMP, Operand.kind(temp));
+        assertEquals(7, Operand.index(temp));
+        assertEquals(Operand.SYMBOL, Operand.kind(symbol));
+        assertEquals(123456, Operand.index(symbol));
+        assertTrue(Operand.isVar(temp));
+        assertFalse(Operand.isValue(symbol));
+        assertNotEquals(Operand.NONE, Operand.make(Operand.TEMP, 0));
+    }
+
+    @Test
+    public void testLowersToThreeAddressCode() {
+        IRMethod method = method("class Test { int f; " +
+            "int calc(int a, int b) { int c; c = a * b + 1; f = c; return f; } }", "calc");
+
+        assertEquals(String.join("\n",
+            "  METHOD int calc(int a, int b)",
+            "    c = MOVE 0",
+            "    t0 = MUL a, b",
+            "    t1 = ADD t0, 1",
+            "    c = MOVE t1",
+            "    PUTFIELD this, Test.f, c",
+            "    t2 = GETFIELD this, Test.f",
+            "    RETURN t2",
+            "  END_METHOD", ""), IRPrinter.render(method));
+    }
+
+    @Test
+    public void testPoolsConstantsAndSymbols() {
+        IRMethod method = method("class Test { int f; int g(int a) { f = 1; f = a + 1; return f + 1; } }", "g");
+
+        int one = method.constant(1);
+        int putsOfOne = 0;
+        int fieldSymbol = Operand.NONE;
+        for (Insn insn : method.getCode()) {
+            for (int i = 0; i < insn.argCount(); i++) {
+                if (insn.arg(i) == one) {
+                    putsOfOne++;
+                }
+            }
+            if (insn.getOpcode() == Opcode.PUTFIELD || insn.getOpcode() == Opcode.GETFIELD) {
+                assertTrue(fieldSymbol == Operand.NONE || fieldSymbol == insn.arg(1));
+                fieldSymbol = insn.arg(1);
+            }
+        }
+        assertEquals(3, putsOfOne);
+        assertEquals(2, count(method, Opcode.PUTFIELD));
+        assertEquals(new FieldRef("Test", "f", null), method.getSymbol(fieldSymbol));
+    }
+
+    @Test
+    public void testIRBackendMatchesASTBackend() throws Exception {
+        Program program = analyze(SAMPLE);
+        Object expected = newInstance(new BytecodeGenerator().generate(program), "Sample");
+        Object actual = newInstance(compileIR(lower(program)), "Sample");
+
+        assertEquals(invoke(expected, "fill", 10), invoke(actual, "fill", 10));
+        for (int x : new int[] {-3, 0, 8}) {
+            assertEquals(invoke(expected, "classify", x), invoke(actual, "classify", x));
+        }
+        for (boolean a : new boolean[] {false, true}) {
+            for (boolean b : new boolean[] {false, true}) {
+                assertEquals(invoke(expected, "flags", a, b), invoke(actual, "flags", a, b));
+            }
+        }
+        invoke(actual, "accumulate", 4);
+        assertEquals(10, invoke(actual, "accumulate", 6));
+    }
+
+    @Test
+    public void testLocalsAreReadBeforeLaterAssignments() throws Exception {
+        List<IRClass> classes = lower(analyze(SAMPLE));
+        Object sample = newInstance(compileIR(classes), "Sample");
+
+        assertEquals(2 + 25, invoke(sample, "order", 2));
+    }
+}
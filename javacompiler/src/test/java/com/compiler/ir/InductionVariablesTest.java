@@ -0,0 +1,77 @@
+package com.compiler.ir;
+
+import com.compiler.ir.InductionVariables.Induction;
+import com.compiler.ir.InductionVariables.TripCount;
+import com.compiler.ir.LoopForest.Loop;
+import org.junit.jupiter.api.Test;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InductionVariablesTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int up(int n) { int s; s = 0; int i; for (i = 0; i < 10; i = i + 3) { s = s + (i * 4 + 1); } return s; } " +
+        "int down() { int s; s = 0; int i; for (i = 10; i > 0; i = i - 2) { s = s + i; } return s; } " +
+        "int inclusive() { int s; s = 0; int i; for (i = 0; i <= 10; i = i + 1) { s = s + i; } return s; } " +
+        "int skip() { int s; s = 0; int i; for (i = 1; i != 7; i = i + 2) { s = s + i; } return s; } " +
+        "int never() { int s; s = 0; int i; for (i = 5; i < 5; i = i + 1) { s = s + i; } return s; } " +
+        "int wraps() { int s; s = 0; int i; for (i = 2147483640; i < 2147483647; i = i + 5) { s = s + 1; } return s; } " +
+        "int bounded(int n, int k) { int s; s = 0; int i; for (i = 0; n > i; i = i + 1) { s = s + i * k; } return s; } " +
+        "int irregular(int n) { int i; i = 0; while (i < n) { if (n > 3) { i = i + 1; } else { i = i + 2; } } return i; } }";
+
+    private InductionVariables analyze(String name) {
+        IRMethod method = method(PROGRAM, name);
+        ControlFlowGraph cfg = ControlFlowGraph.build(method);
+        new SSABuilder(cfg).build();
+        Loop loop = new LoopForest(cfg, DominatorTree.dominators(cfg)).getLoops().get(0);
+        return new InductionVariables(cfg, loop);
+    }
+
+    private long tripCount(String name) {
+        return analyze(name).getTripCount().getCount();
+    }
+
+    @Test
+    public void testBasicAndDerivedVariables() {
+        InductionVariables up = analyze("up");
+        assertEquals(1, up.getBasic().size());
+        Induction i = up.getBasic().get(0);
+        assertEquals(3, i.getStep());
+
+        // i * 4 and i * 4 + 1, plus the incremented i and its copy on the way to the latch
+        int derived = 0;
+        for (Induction induction : up.getInductions()) {
+            if (!induction.isBasic()) {
+                assertSame(i, induction.getBase());
+                derived++;
+            }
+        }
+        assertEquals(4, derived);
+
+        // Steps that differ between the branches make no induction variable
+        assertTrue(analyze("irregular").getBasic().isEmpty());
+        assertNull(analyze("irregular").getTripCount());
+    }
+
+    @Test
+    public void testConstantTripCounts() {
+        assertEquals(4, tripCount("up"));
+        assertEquals(5, tripCount("down"));
+        assertEquals(11, tripCount("inclusive"));
+        assertEquals(3, tripCount("skip"));
+        assertEquals(0, tripCount("never"));
+
+        // 2147483645 + 5 wraps around to a negative value that passes the test again
+        assertEquals(-1, tripCount("wraps"));
+    }
+
+    @Test
+    public void testSymbolicTripCount() {
+        TripCount tripCount = analyze("bounded").getTripCount();
+        assertFalse(tripCount.isConstant());
+        assertEquals(Opcode.LT, tripCount.getComparison());
+        assertTrue(Operand.isVar(tripCount.getBound()));
+        assertEquals(1, tripCount.getInduction().getStep());
+    }
+}
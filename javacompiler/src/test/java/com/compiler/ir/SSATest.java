@@ -0,0 +1,118 @@
+package com.compiler.ir;
+
+import com.compiler.ast.Program;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SSATest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int grid(int n) { int s; s = 0; int i; int j; " +
+        "for (i = 0; i < n; i = i + 1) { for (j = 0; j < i; j = j + 1) { s = s + j; } } " +
+        "return s; } " +
+        "int swap(int n) { int a; a = 1; int b; b = 2; " +
+        "while (n > 0) { int t; t = a; a = b; b = t; n = n - 1; } return a * 10 + b; } " +
+        "int lost(int n) { int x; x = 0; int y; y = 0; " +
+        "while (x < n) { y = x; x = x + 1; } return y * 100 + x; } " +
+        "int branch(int x, boolean flip) { int r; if (flip) { r = 0 - x; } else { r = x; } " +
+        "if (r < 0) { r = r + 1000; } return r; } " +
+        "int countdown(int n) { while (n > 0) { n = n - 2; } return n; } }";
+
+    private ControlFlowGraph ssa(IRMethod method) {
+        ControlFlowGraph cfg = ControlFlowGraph.build(method);
+        new SSABuilder(cfg).build();
+        return cfg;
+    }
+
+    @Test
+    public void testConstructionSatisfiesInvariants() {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        for (IRMethod method : classes.get(0).getMethods()) {
+            ControlFlowGraph cfg = ssa(method);
+            assertEquals(Collections.emptyList(), SSAVerifier.verify(cfg), method.getName());
+        }
+
+        // s needs a phi in both headers, i and j one in their own; the one j would get in the
+        // outer header is dead, since j is reset before the inner loop
+        ControlFlowGraph grid = ssa(method(PROGRAM, "grid"));
+        int phis = 0;
+        for (BasicBlock block : grid.getBlocks()) {
+            phis += block.getPhiCount();
+        }
+        assertEquals(4, phis);
+    }
+
+    @Test
+    public void testDominanceFrontiers() {
+        ControlFlowGraph cfg = ControlFlowGraph.build(method(PROGRAM, "branch"));
+        cfg.removeUnreachableBlocks();
+        BitSet[] frontiers = DominatorTree.dominators(cfg).dominanceFrontiers(cfg);
+
+        BasicBlock thenBlock = cfg.getEntry().getSuccessors().get(0);
+        BasicBlock elseBlock = cfg.getEntry().getSuccessors().get(1);
+        BasicBlock join = elseBlock.getSuccessors().get(0);
+        assertEquals(BitSet.valueOf(new long[] {1L << join.getId()}), frontiers[thenBlock.getId()]);
+        assertEquals(frontiers[thenBlock.getId()], frontiers[elseBlock.getId()]);
+        assertTrue(frontiers[cfg.getEntry().getId()].isEmpty());
+    }
+
+    @Test
+    public void testVerifierReportsBrokenInvariants() {
+        IRMethod method = method(PROGRAM, "lost");
+        ControlFlowGraph cfg = ssa(method);
+
+        // Redefine the first version of x at the end of the entry block
+        Insn first = cfg.getEntry().getInsns().get(0);
+        cfg.getEntry().append(new Insn(Opcode.MOVE, first.getDst(), method.constant(7)));
+        assertTrue(SSAVerifier.verify(cfg).stream().anyMatch(error -> error.contains("more than once")));
+        assertThrows(IllegalStateException.class, () -> SSAVerifier.check(cfg, "test"));
+
+        ControlFlowGraph broken = ssa(method(PROGRAM, "lost"));
+        BasicBlock header = broken.getEntry().getSuccessors().get(0);
+        Insn phi = header.getPhis().get(0);
+        phi.setArgs(new int[] {phi.arg(0)});
+        assertTrue(SSAVerifier.verify(broken).stream().anyMatch(error -> error.contains("operands for")));
+    }
+
+    @Test
+    public void testRoundTripPreservesBehaviour() throws Exception {
+        Program program = analyze(PROGRAM);
+        List<IRClass> classes = lower(program);
+        for (IRMethod method : classes.get(0).getMethods()) {
+            ControlFlowGraph cfg = ssa(method);
+            SSAVerifier.check(cfg, "construction");
+            new SSADestructor(cfg).destruct();
+            for (BasicBlock block : cfg.getBlocks()) {
+                assertEquals(0, block.getPhiCount());
+            }
+            cfg.linearize();
+        }
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(120, invoke(test, "grid", 10));
+        assertEquals(21, invoke(test, "swap", 3));
+        assertEquals(12, invoke(test, "swap", 4));
+        assertEquals(405, invoke(test, "lost", 5));
+        assertEquals(0, invoke(test, "lost", 0));
+        assertEquals(993, invoke(test, "branch", 7, true));
+        assertEquals(7, invoke(test, "branch", 7, false));
+        assertEquals(-1, invoke(test, "countdown", 7));
+    }
+
+    @Test
+    public void testCoalescingRemovesPhiCopies() {
+        IRMethod method = method(PROGRAM, "grid");
+        ControlFlowGraph cfg = ssa(method);
+        SSADestructor destructor = new SSADestructor(cfg);
+        destructor.destruct();
+
+        assertTrue(destructor.getInsertedCopies() > 0);
+        assertEquals(0, destructor.getRemainingCopies());
+    }
+}
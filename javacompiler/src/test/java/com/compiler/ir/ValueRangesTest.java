@@ -0,0 +1,64 @@
+package com.compiler.ir;
+
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.ValueRanges.Range;
+import org.junit.jupiter.api.Test;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueRangesTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int counted() { int s; s = 0; int i; for (i = 0; i < 10; i = i + 3) { s = s + i; } return s; } " +
+        "int bounded(int n) { int s; s = 0; int i; for (i = 5; i <= n; i = i + 1) { s = s + i; } return s; } " +
+        "int down(int n) { int s; s = 0; int i; for (i = n; i > 0; i = i - 2) { s = s + i; } return s; } " +
+        "int guarded(int x) { if (x > 3) { if (x < 10) { return x; } } return 0; } " +
+        "int negated(int x) { if (x < 0) { return 0; } return x; } " +
+        "int mixed(int x) { int a; a = x % 8; int b; b = a * 3 + 1; return b; } }";
+
+    private ControlFlowGraph build(String name) {
+        IRMethod method = method(PROGRAM, name);
+        ControlFlowGraph cfg = ControlFlowGraph.build(method);
+        new SSABuilder(cfg).build();
+        return cfg;
+    }
+
+    // The range of the basic induction variable of the method's only loop
+    private Range induction(String name) {
+        ControlFlowGraph cfg = build(name);
+        Loop loop = new LoopForest(cfg, DominatorTree.dominators(cfg)).getLoops().get(0);
+        int variable = new InductionVariables(cfg, loop).getTripCount().getInduction().getVariable();
+        return new ValueRanges(cfg).getRange(variable);
+    }
+
+    // The range of what the first RETURN of a variable hands back, where it does
+    private Range returned(String name) {
+        ControlFlowGraph cfg = build(name);
+        ValueRanges ranges = new ValueRanges(cfg);
+        for (BasicBlock block : cfg.getBlocks()) {
+            Insn terminator = block.getTerminator();
+            if (terminator != null && terminator.getOpcode() == Opcode.RETURN && Operand.isVar(terminator.arg(0))) {
+                return ranges.getRange(terminator.arg(0), block);
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testInductionVariablesStayWithinTheirBounds() {
+        // 0, 3, 6, 9 pass the test and 12 fails it
+        assertEquals("[0, 12]", induction("counted").toString());
+        // The last value passing 'i <= n' is at most the largest int, and one more wraps
+        assertEquals(Range.FULL, induction("bounded"));
+        assertEquals(Range.FULL, induction("down"));
+    }
+
+    @Test
+    public void testBranchesNarrowRanges() {
+        assertEquals("[4, 9]", returned("guarded").toString());
+        assertEquals("[0, " + Integer.MAX_VALUE + "]", returned("negated").toString());
+        // x % 8 lies in [-7, 7]
+        assertEquals("[-20, 22]", returned("mixed").toString());
+    }
+}
@@ -0,0 +1,120 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+import com.compiler.backend.BytecodeGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConstantFolderTest {
+
+    @Test
+    public void testFoldsArithmeticWithIntOverflow() throws Exception {
+        Program program = analyze("class Test { " +
+            "int a() { return 1 + 2 * 3; } " +
+            "int b() { return 2147483647 + 1; } " +
+            "int c() { return -(0 - 2147483647 - 1); } " +
+            "int d() { return -7 / 2 + -7 % 2; } }");
+
+        new ConstantFolder().rewrite(program);
+
+        assertEquals(7, intValue(program, "a"));
+        assertEquals(Integer.MIN_VALUE, intValue(program, "b"));
+        assertEquals(Integer.MIN_VALUE, intValue(program, "c"));
+        assertEquals(-4, intValue(program, "d"));
+
+        Object instance = newInstance(new BytecodeGenerator().generate(program), "Test");
+        assertEquals(Integer.MIN_VALUE, invoke(instance, "b"));
+    }
+
+    @Test
+    public void testFoldsComparisonsAndLogic() {
+        Program program = analyze("class Test { " +
+            "boolean a() { return 3 < 4 && !(2 == 3); } " +
+            "boolean b() { return !true || 5 >= 6; } }");
+
+        ConstantFolder folder = new ConstantFolder();
+        folder.rewrite(program);
+
+        assertEquals(Boolean.TRUE, ((BoolLiteral) returnValue(program, "a")).getValue());
+        assertEquals(Boolean.FALSE, ((BoolLiteral) returnValue(program, "b")).getValue());
+        assertEquals(7, folder.getFoldedExpressions());
+    }
+
+    @Test
+    public void testKeepsDivisionByZero() throws Exception {
+        Program program = analyze("class Test { int a() { return 1 / 0; } int b(int x) { return x % 0 * 0; } }");
+
+        new ConstantFolder().rewrite(program);
+
+        assertTrue(returnValue(program, "a") instanceof BinaryExpr);
+        assertTrue(returnValue(program, "b") instanceof BinaryExpr);
+    }
+
+    @Test
+    public void testSimplifiesIdentities() {
+        Program program = analyze("class Test { " +
+            "int a(int x) { return (x + 0) * 1 - 0; } " +
+            "int b(int x) { return 0 * x; } " +
+            "boolean c(boolean b) { return !!b; } " +
+            "boolean d(boolean b) { return (b == false) && true; } " +
+            "int e(int x) { return 0 - x; } }");
+
+        ConstantFolder folder = new ConstantFolder();
+        folder.rewrite(program);
+
+        assertEquals("x", identifierName(program, "a"));
+        assertEquals(0, intValue(program, "b"));
+        assertEquals("b", identifierName(program, "c"));
+        assertEquals(UnaryExpr.UnaryOp.NOT, unaryOperator(program, "d"));
+        assertEquals(UnaryExpr.UnaryOp.NEG, unaryOperator(program, "e"));
+        assertEquals(8, folder.getSimplifiedExpressions());
+    }
+
+    @Test
+    public void testKeepsOperandsWithSideEffects() throws Exception {
+        Program program = analyze("class Test { int n; " +
+            "int bump() { n = n + 1; return n; } " +
+            "int a() { return bump() * 0; } " +
+            "boolean b(boolean x) { boolean r; r = (x = true) && false; return r; } " +
+            "int c() { int r; r = a() + a(); return n; } }");
+
+        new ConstantFolder().rewrite(program);
+
+        assertTrue(returnValue(program, "a") instanceof BinaryExpr);
+
+        Object instance = newInstance(new BytecodeGenerator().generate(program), "Test");
+        assertEquals(2, invoke(instance, "c"));
+    }
+
+    private int intValue(Program program, String methodName) {
+        Expression value = returnValue(program, methodName);
+        assertTrue(value instanceof IntLiteral, methodName + " was not folded");
+        return ((IntLiteral) value).getValue();
+    }
+
+    private String identifierName(Program program, String methodName) {
+        Expression value = returnValue(program, methodName);
+        assertTrue(value instanceof IdentifierExpr, methodName + " was not simplified to a variable");
+        return ((IdentifierExpr) value).getName();
+    }
+
+    private UnaryExpr.UnaryOp unaryOperator(Program program, String methodName) {
+        Expression value = returnValue(program, methodName);
+        assertTrue(value instanceof UnaryExpr, methodName + " was not simplified to a unary expression");
+        return ((UnaryExpr) value).getOperator();
+    }
+
+    private Expression returnValue(Program program, String methodName) {
+        for (MethodDecl method : program.getClasses().get(0).getMethods()) {
+            if (method.getName().equals(methodName)) {
+                List<Statement> statements = method.getBody().getStatements();
+                return ((ReturnStmt) statements.get(statements.size() - 1)).getValue();
+            }
+        }
+        throw new AssertionError("No method " + methodName);
+    }
+}
@@ -0,0 +1,82 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConstantPropagatorTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int join(boolean flag) { int x; x = 3; int y; " +
+        "if (flag) { y = x + 1; } else { y = 4; } return y * 2; } " +
+        "int branch(int n) { int limit; limit = 10; int r; r = n; " +
+        "if (limit > 5) { r = r + limit; } else { r = 0 - r; } return r; } " +
+        "int loop(int n) { int k; k = 5; int i; i = 0; int s; s = 0; " +
+        "while (i < n) { if (k != 5) { k = 7; } s = s + k; i = i + 1; } return s + k; } " +
+        "int divide(int n) { int z; z = 0; if (n > 0) { return n / z; } return 1; } }";
+
+    @Test
+    public void testConstantsMeetAtJoins() {
+        ConstantPropagator propagator = new ConstantPropagator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "join"), propagator::run, "constant propagation");
+
+        // y is 4 on both paths, so the result is known although the branch is not
+        assertEquals(1, count(cfg, Opcode.IF_FALSE));
+        assertEquals(0, count(cfg, Opcode.PHI));
+        assertEquals(0, count(cfg, Opcode.MUL));
+        assertEquals(0, propagator.getRemovedBranches());
+    }
+
+    @Test
+    public void testConstantBranchesAreResolved() {
+        ConstantPropagator propagator = new ConstantPropagator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "branch"), propagator::run, "constant propagation");
+
+        assertEquals(0, count(cfg, Opcode.IF_FALSE));
+        assertEquals(0, count(cfg, Opcode.NEG) + count(cfg, Opcode.SUB));
+        assertEquals(1, propagator.getRemovedBranches());
+        assertTrue(propagator.getRemovedBlocks() >= 1);
+    }
+
+    @Test
+    public void testConstantsSurviveLoopEdges() {
+        // k = 7 is never executed, so k stays 5 around the back edge
+        ConstantPropagator propagator = new ConstantPropagator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "loop"), propagator::run, "constant propagation");
+
+        assertEquals(1, count(cfg, Opcode.IF_FALSE));
+        assertEquals(0, count(cfg, Opcode.NE));
+        assertEquals(1, propagator.getRemovedBranches());
+    }
+
+    @Test
+    public void testDivisionByZeroIsLeftToRunTime() {
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "divide"), new ConstantPropagator()::run,
+            "constant propagation");
+        assertEquals(1, count(cfg, Opcode.DIV));
+    }
+
+    @Test
+    public void testOptimizedProgramBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("sccp.removed-instructions") > 0);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(8, invoke(test, "join", true));
+        assertEquals(8, invoke(test, "join", false));
+        assertEquals(13, invoke(test, "branch", 3));
+        assertEquals(20, invoke(test, "loop", 3));
+        assertEquals(5, invoke(test, "loop", 0));
+        assertEquals(1, invoke(test, "divide", 0));
+        Exception thrown = assertThrows(Exception.class, () -> invoke(test, "divide", 4));
+        assertTrue(thrown.getCause() instanceof ArithmeticException);
+    }
+}
@@ -0,0 +1,48 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CopyPropagatorTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int chain(int a, int b) { int x; x = a + b; int y; y = x; int z; z = y; return z * 2 + x; } " +
+        "int loop(int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { int t; t = s + i; s = t; } return s; } }";
+
+    @Test
+    public void testChainsOfCopiesReadTheirSource() {
+        CopyPropagator propagator = new CopyPropagator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "chain"), propagator::run, "copy propagation");
+        // Besides y = x and z = y, the lowering copies each computed value into its variable
+        assertTrue(propagator.getPropagatedCopies() >= 3);
+        assertEquals(0, count(cfg, Opcode.MOVE));
+    }
+
+    @Test
+    public void testCopiesIntoPhisArePropagated() {
+        CopyPropagator propagator = new CopyPropagator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "loop"), propagator::run, "copy propagation");
+        assertTrue(propagator.getPropagatedCopies() >= 3);
+        assertEquals(0, count(cfg, Opcode.MOVE));
+    }
+
+    @Test
+    public void testPropagatedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("copies.propagated") > 0);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(3 * 7, invoke(test, "chain", 3, 4));
+        assertEquals(10, invoke(test, "loop", 5));
+        assertEquals(0, invoke(test, "loop", 0));
+    }
+}
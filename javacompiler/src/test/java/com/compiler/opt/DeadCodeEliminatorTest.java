@@ -0,0 +1,95 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.IRGenerator;
+import com.compiler.ir.Insn;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadCodeEliminatorTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int unused(int a, int b) { int x; x = a * b + 3; return a; } " +
+        "int deadBranch(int x) { int y; y = 0; if (x > 0) { y = 1; } else { y = 2; } return x; } " +
+        "int noElse(int x) { if (x > 0) { x = x + 1; } return x; } " +
+        "int effects(int a, int b) { int q; q = a / b; int r; r = twice(a); System.out.println(a); return a; } " +
+        "int spin(int x) { int n; n = 0; while (x != 0) { x = x - 2; n = n + 1; } return 7; } " +
+        "int twice(int a) { return a + a; } " +
+        "int overwrite(int a) { int x; x = a + 1; x = a + 2; return x; } }";
+
+    @Test
+    public void testUnusedValuesAreRemoved() {
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "unused"), new DeadCodeEliminator()::run,
+            "dead code elimination");
+        assertEquals(0, count(cfg, Opcode.MUL) + count(cfg, Opcode.ADD) + count(cfg, Opcode.MOVE));
+    }
+
+    @Test
+    public void testBranchesWithoutLiveCodeAreRemoved() {
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "deadBranch"), eliminator::run, "dead code elimination");
+
+        assertEquals(0, count(cfg, Opcode.IF_FALSE));
+        assertEquals(0, count(cfg, Opcode.PHI));
+        assertEquals(1, eliminator.getRemovedBranches());
+        assertEquals(2, cfg.size());
+    }
+
+    @Test
+    public void testEffectsAreKept() {
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "effects"), eliminator::run, "dead code elimination");
+
+        assertEquals(1, count(cfg, Opcode.DIV));
+        assertEquals(1, count(cfg, Opcode.CALL));
+        assertEquals(1, count(cfg, Opcode.PRINT));
+        assertEquals(1, eliminator.getDroppedResults());
+
+        // The loop may not terminate, so it stays even though nothing uses n or x afterwards
+        ControlFlowGraph spin = runOnSSA(method(PROGRAM, "spin"), new DeadCodeEliminator()::run,
+            "dead code elimination");
+        assertEquals(1, count(spin, Opcode.IF_FALSE));
+        assertEquals(1, count(spin, Opcode.SUB));
+        assertEquals(0, count(spin, Opcode.ADD));
+    }
+
+    @Test
+    public void testDeadStoresOutOfSSA() {
+        ControlFlowGraph cfg = ControlFlowGraph.build(method(PROGRAM, "overwrite"));
+        DeadStoreEliminator eliminator = new DeadStoreEliminator();
+        eliminator.run(cfg);
+
+        // The default value from the declaration, then the first assignment and its temp
+        assertEquals(3, eliminator.getRemovedStores());
+        assertEquals(1, count(cfg, Opcode.ADD));
+    }
+
+    @Test
+    public void testOptimizedCodeIsSmallerAndBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        int before = IRGenerator.countInstructions(classes);
+        new IROptimizer().optimize(classes);
+        assertTrue(IRGenerator.countInstructions(classes) < before);
+
+        // No jump over an empty else survives
+        for (Insn insn : classes.get(0).getMethod("noElse").getCode()) {
+            assertNotEquals(Opcode.GOTO, insn.getOpcode());
+        }
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(4, invoke(test, "unused", 4, 5));
+        assertEquals(-3, invoke(test, "deadBranch", -3));
+        assertEquals(6, invoke(test, "noElse", 5));
+        assertEquals(-5, invoke(test, "noElse", -5));
+        assertEquals(7, invoke(test, "spin", 10));
+        assertEquals(6, invoke(test, "overwrite", 4));
+        Exception thrown = assertThrows(Exception.class, () -> invoke(test, "effects", 1, 0));
+        assertTrue(thrown.getCause() instanceof ArithmeticException);
+    }
+}
@@ -0,0 +1,93 @@
+package com.compiler.opt;
+
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InlinerTest {
+
+    private static final String PROGRAM =
+        "class Box { int value; " +
+        "int get() { return value; } " +
+        "void set(int v) { value = v; } } " +
+        "class Test { int count; " +
+        "int getCount() { return count; } " +
+        "int twice(int x) { return x + x; } " +
+        "int clamp(int x) { if (x < 0) { x = 0; } return x; } " +
+        "int quad(int x) { return twice(twice(x)); } " +
+        "int fact(int n) { if (n < 2) { return 1; } return n * fact(n - 1); } " +
+        "int accessors() { count = 3; return getCount() + twice(4) + clamp(-5) + clamp(6); } " +
+        "int nested(int x) { return quad(x); } " +
+        "int recursive(int n) { return fact(n); } " +
+        "int boxed(Box b, int v) { b.set(v); return b.get() + b.get(); } " +
+        "int fresh(int v) { Box b; b = new Box(); return boxed(b, v); } }";
+
+    @Test
+    public void testSmallMethodsAreInlined() {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        Inliner inliner = new Inliner();
+        inliner.run(classes);
+        assertEquals(0, calls(method(classes, "accessors")));
+        assertEquals(0, calls(method(classes, "nested")));
+        // Calls on 'this' need no null check
+        assertEquals(0, count(method(classes, "accessors"), Opcode.NULLCHECK));
+
+        // One check per receiver, however many calls go through it
+        assertEquals(0, calls(method(classes, "boxed")));
+        assertEquals(1, count(method(classes, "boxed"), Opcode.NULLCHECK));
+        assertTrue(inliner.getInlinedCalls() > 0);
+        assertTrue(inliner.getAddedInstructions() > 0);
+    }
+
+    @Test
+    public void testRecursiveMethodsStayCalls() {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        new Inliner().run(classes);
+        assertEquals(1, calls(method(classes, "recursive")));
+        assertEquals(1, calls(method(classes, "fact")));
+    }
+
+    @Test
+    public void testBudgets() {
+        // quad inlined into nested, but not the calls to twice within it
+        List<IRClass> shallow = lower(analyze(PROGRAM));
+        new Inliner(Inliner.DEFAULT_MAX_CALLEE_SIZE, Inliner.DEFAULT_MAX_CALLER_SIZE, 1).run(shallow);
+        assertEquals(2, calls(method(shallow, "nested")));
+
+        // Even an accessor is a load and a return
+        List<IRClass> small = lower(analyze(PROGRAM));
+        new Inliner(1, Inliner.DEFAULT_MAX_CALLER_SIZE, Inliner.DEFAULT_MAX_DEPTH).run(small);
+        assertEquals(4, calls(method(small, "accessors")));
+
+        // A caller that may not grow keeps every call
+        List<IRClass> tight = lower(analyze(PROGRAM));
+        Inliner inliner = new Inliner(Inliner.DEFAULT_MAX_CALLEE_SIZE, 0, Inliner.DEFAULT_MAX_DEPTH);
+        inliner.run(tight);
+        assertEquals(0, inliner.getInlinedCalls());
+    }
+
+    @Test
+    public void testInlinedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("inline.calls") > 0);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(3 + 8 + 0 + 6, invoke(test, "accessors"));
+        assertEquals(20, invoke(test, "nested", 5));
+        assertEquals(120, invoke(test, "recursive", 5));
+        assertEquals(14, invoke(test, "fresh", 7));
+
+        // The inlined b.set(v) throws where the call would have
+        InvocationTargetException thrown = assertThrows(InvocationTargetException.class,
+            () -> invoke(test, "boxed", null, 7));
+        assertInstanceOf(NullPointerException.class, thrown.getCause());
+    }
+}
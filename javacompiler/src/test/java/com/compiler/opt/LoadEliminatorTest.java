@@ -0,0 +1,88 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadEliminatorTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int n; int m; " +
+        "int reads() { return n + n * m + m; } " +
+        "int forward(int a) { n = a; return n + 1; } " +
+        "int otherField(int a) { int x; x = n; m = a; return x + n; } " +
+        "int otherType(int[] a, boolean[] p, int i) { int x; x = a[i]; p[0] = true; return x + a[i]; } " +
+        "int sameType(int[] a, int[] b, int i) { int x; x = a[i]; b[0] = 1; return x + a[i]; } " +
+        "int indices(int[] a) { a[0] = 1; a[1] = 2; return a[0] + a[1]; } " +
+        "int get() { return n; } " +
+        "int bump() { n = n + 1; return n; } " +
+        "int readOnly() { int x; x = n; int y; y = get(); return x + n + y; } " +
+        "int sideEffect() { int x; x = n; int y; y = bump(); return x + n + y; } " +
+        "int branch(boolean p) { int x; x = n; if (p) { return x + n; } return 0; } " +
+        "int merge(boolean p, int a) { if (p) { n = a; } return n; } }";
+
+    @Test
+    public void testRepeatedLoadsAreReadOnce() {
+        LoadEliminator eliminator = new LoadEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "reads"), eliminator::run, "load elimination");
+        assertEquals(2, eliminator.getEliminatedLoads());
+        assertEquals(0, eliminator.getForwardedStores());
+        assertEquals(2, count(cfg, Opcode.GETFIELD));
+    }
+
+    @Test
+    public void testStoredValuesAreForwarded() {
+        LoadEliminator forward = new LoadEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "forward"), forward::run, "load elimination");
+        assertEquals(1, forward.getForwardedStores());
+        assertEquals(0, count(cfg, Opcode.GETFIELD));
+
+        LoadEliminator indices = new LoadEliminator();
+        cfg = runOnSSA(method(PROGRAM, "indices"), indices::run, "load elimination");
+        assertEquals(2, indices.getForwardedStores());
+        assertEquals(0, count(cfg, Opcode.ALOAD));
+    }
+
+    @Test
+    public void testStoresOnlyForgetWhatTheyMayOverwrite() {
+        for (String name : new String[] {"otherField", "otherType", "readOnly", "branch"}) {
+            LoadEliminator eliminator = new LoadEliminator();
+            runOnSSA(method(PROGRAM, name), eliminator::run, "load elimination");
+            assertEquals(1, eliminator.getEliminatedLoads(), name);
+        }
+        for (String name : new String[] {"sameType", "sideEffect", "merge"}) {
+            LoadEliminator eliminator = new LoadEliminator();
+            runOnSSA(method(PROGRAM, name), eliminator::run, "load elimination");
+            assertEquals(0, eliminator.getEliminatedLoads(), name);
+        }
+    }
+
+    @Test
+    public void testEliminatedLoadsBehaveTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("loads.eliminated") >= 5);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(4, invoke(test, "forward", 3));
+        assertEquals(3, invoke(test, "reads"));
+        assertEquals(6, invoke(test, "otherField", 5));
+        assertEquals(3 + 3 * 5 + 5, invoke(test, "reads"));
+        int[] a = {7, 8};
+        assertEquals(16, invoke(test, "otherType", a, new boolean[1], 1));
+        assertEquals(7 + 1, invoke(test, "sameType", a, a, 0));
+        assertEquals(3, invoke(test, "indices", a));
+        assertEquals(9, invoke(test, "readOnly"));
+        assertEquals(3 + 4 + 4, invoke(test, "sideEffect"));
+        assertEquals(8, invoke(test, "branch", true));
+        assertEquals(4, invoke(test, "merge", false, 9));
+        assertEquals(9, invoke(test, "merge", true, 9));
+    }
+}
@@ -0,0 +1,73 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopDistributorTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int two() { int[] a; a = new int[16]; int[] b; b = new int[16]; int i; " +
+        "for (i = 0; i < 16; i = i + 1) { a[i] = i * 2; b[i] = i + 5; } return a[7] + b[9]; } " +
+        "int sums(int n) { int[] a; a = new int[n]; int[] b; b = new int[n]; int s; s = 0; int t; t = 0; int i; " +
+        "for (i = 0; i < n; i = i + 1) { a[i] = i; s = s + i; b[i] = s; t = t + b[i] * 2; } " +
+        "return s * 1000 + t; } " +
+        "int linked() { int[] a; a = new int[16]; int[] b; b = new int[16]; int i; " +
+        "for (i = 0; i < 16; i = i + 1) { a[i] = i; b[i] = a[i] * 3; } return b[5]; } " +
+        "int param(int[] a, int[] b) { int i; for (i = 0; i < 4; i = i + 1) { a[i] = i; b[i] = i; } " +
+        "return a[1] + b[2]; } }";
+
+    @Test
+    public void testIndependentArraysGetLoopsOfTheirOwn() {
+        LoopDistributor distributor = new LoopDistributor();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "two"), CONSTANTS.andThen(distributor::run), "loop fission");
+        assertEquals(1, distributor.getDistributedLoops());
+        assertEquals(1, distributor.getAddedLoops());
+        assertEquals(2, loops(cfg));
+    }
+
+    @Test
+    public void testValuesFlowingBetweenArraysKeepThemTogether() {
+        // b[i] = s ties b to the sum s, but a only shares the induction variable
+        LoopDistributor sums = new LoopDistributor();
+        assertEquals(2, loops(runOnSSA(method(PROGRAM, "sums"), CONSTANTS.andThen(sums::run), "loop fission")));
+        assertEquals(1, sums.getAddedLoops());
+
+        LoopDistributor linked = new LoopDistributor();
+        assertEquals(1, loops(runOnSSA(method(PROGRAM, "linked"), CONSTANTS.andThen(linked::run), "loop fission")));
+        assertEquals(0, linked.getDistributedLoops());
+
+        // Parameters may be the same array
+        LoopDistributor param = new LoopDistributor();
+        assertEquals(1, loops(runOnSSA(method(PROGRAM, "param"), CONSTANTS.andThen(param::run), "loop fission")));
+        assertEquals(0, param.getDistributedLoops());
+    }
+
+    @Test
+    public void testDistributedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("fission.added-loops") >= 2);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(14 + 14, invoke(test, "two"));
+        for (int n = 0; n <= 6; n++) {
+            int s = 0;
+            int t = 0;
+            for (int i = 0; i < n; i++) {
+                s += i;
+                t += s * 2;
+            }
+            assertEquals(s * 1000 + t, invoke(test, "sums", n));
+        }
+        assertEquals(15, invoke(test, "linked"));
+        int[] shared = new int[4];
+        assertEquals(3, invoke(test, "param", shared, shared));
+    }
+}
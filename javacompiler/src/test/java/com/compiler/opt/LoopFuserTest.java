@@ -0,0 +1,77 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopFuserTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int fillSum(int n) { int[] a; a = new int[16]; int i; for (i = 0; i < 16; i = i + 1) { a[i] = i * 3; } " +
+        "int m; m = n * 2; int s; s = 0; int j; for (j = 0; j < 16; j = j + 1) { s = s + a[j] * m; } return s; } " +
+        "int ahead() { int[] a; a = new int[17]; int i; for (i = 0; i < 16; i = i + 1) { a[i] = i; } " +
+        "int s; s = 0; int j; for (j = 0; j < 16; j = j + 1) { s = s + a[j + 1]; } return s; } " +
+        "int behind() { int[] a; a = new int[17]; int i; for (i = 0; i < 16; i = i + 1) { a[i + 1] = i; } " +
+        "int s; s = 0; int j; for (j = 0; j < 16; j = j + 1) { s = s + a[j]; } return s; } " +
+        "int unrelated() { int[] a; a = new int[8]; int[] b; b = new int[8]; int i; " +
+        "for (i = 0; i < 8; i = i + 1) { a[i] = i; } int j; for (j = 0; j < 8; j = j + 1) { b[j] = j; } " +
+        "return a[3] + b[5]; } " +
+        "int shorter() { int[] a; a = new int[8]; int i; for (i = 0; i < 8; i = i + 1) { a[i] = i; } " +
+        "int s; s = 0; int j; for (j = 0; j < 7; j = j + 1) { s = s + a[j]; } return s; } " +
+        "int param(int[] a) { int i; for (i = 0; i < 4; i = i + 1) { a[i] = i; } " +
+        "int s; s = 0; int j; for (j = 0; j < 4; j = j + 1) { s = s + a[j]; } return s; } }";
+
+    @Test
+    public void testFillingAndSummingLoopsAreFused() {
+        LoopFuser fuser = new LoopFuser();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "fillSum"), CONSTANTS.andThen(fuser::run), "loop fusion");
+        assertEquals(1, fuser.getFusedLoops());
+        assertEquals(1, loops(cfg));
+    }
+
+    @Test
+    public void testReadingAnElementBeforeItIsWrittenIsNotFused() {
+        // Iteration j of the second loop reads what iteration j + 1 of the first one writes
+        LoopFuser ahead = new LoopFuser();
+        assertEquals(2, loops(runOnSSA(method(PROGRAM, "ahead"), CONSTANTS.andThen(ahead::run), "loop fusion")));
+        assertEquals(0, ahead.getFusedLoops());
+
+        // Reading what an earlier iteration wrote is fine
+        LoopFuser behind = new LoopFuser();
+        runOnSSA(method(PROGRAM, "behind"), CONSTANTS.andThen(behind::run), "loop fusion");
+        assertEquals(1, behind.getFusedLoops());
+    }
+
+    @Test
+    public void testLoopsThatDoNotMatchAreLeftApart() {
+        for (String name : new String[] {"unrelated", "shorter", "param"}) {
+            LoopFuser fuser = new LoopFuser();
+            ControlFlowGraph cfg = runOnSSA(method(PROGRAM, name), CONSTANTS.andThen(fuser::run), "loop fusion");
+            assertEquals(0, fuser.getFusedLoops(), name);
+            assertEquals(2, loops(cfg), name);
+        }
+    }
+
+    @Test
+    public void testFusedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("fusion.loops") >= 2);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        for (int n = -2; n <= 2; n++) {
+            assertEquals(360 * 2 * n, invoke(test, "fillSum", n));
+        }
+        assertEquals(120, invoke(test, "ahead"));
+        assertEquals(105, invoke(test, "behind"));
+        assertEquals(8, invoke(test, "unrelated"));
+        assertEquals(21, invoke(test, "shorter"));
+        assertEquals(6, invoke(test, "param", new int[4]));
+    }
+}
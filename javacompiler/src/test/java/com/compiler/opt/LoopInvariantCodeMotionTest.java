@@ -0,0 +1,119 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopInvariantCodeMotionTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int k; " +
+        "int product(int a, int b, int n) { int s; s = 0; int i; " +
+        "  for (i = 0; i < n; i = i + 1) { s = s + a * b + i; } return s; } " +
+        "int nested(int a, int b, int n) { int s; s = 0; int i; int j; " +
+        "  for (i = 0; i < n; i = i + 1) { for (j = 0; j < n; j = j + 1) { s = s + a * b; } } return s; } " +
+        "int quotient(int a, int b, int n) { int s; s = 0; int i; " +
+        "  for (i = 0; i < n; i = i + 1) { s = s + a / b; } return s + i; } " +
+        "int printsFirst(int a, int b, int n) { int s; s = 0; int i; " +
+        "  for (i = 0; i < n; i = i + 1) { System.out.println(i); s = s + a / b; } return s; } " +
+        "int element(int[] arr, int j, int n) { int s; s = 0; int i; " +
+        "  for (i = 0; i < n; i = i + 1) { s = s + arr[j]; } return s; } " +
+        "int readField(int n) { int s; s = 0; int i; " +
+        "  for (i = 0; i < n; i = i + 1) { s = s + k; } return s; } " +
+        "int writeField(int n) { int i; " +
+        "  for (i = 0; i < n; i = i + 1) { k = k + 1; } return k; } }";
+
+    // Occurrences of the opcode inside loops
+    private static int countInLoops(ControlFlowGraph cfg, Opcode opcode) {
+        LoopForest forest = new LoopForest(cfg, DominatorTree.dominators(cfg));
+        int count = 0;
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Insn insn : block.getInsns()) {
+                if (insn.getOpcode() == opcode && forest.getLoop(block) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testInvariantArithmeticLeavesTheLoop() {
+        LoopInvariantCodeMotion motion = new LoopInvariantCodeMotion();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "product"), motion::run, "loop-invariant code motion");
+        assertEquals(0, countInLoops(cfg, Opcode.MUL));
+        assertEquals(3, countInLoops(cfg, Opcode.ADD));
+        assertEquals(0, motion.getGuardedLoops());
+
+        // Out of the inner loop first, then out of the outer one
+        ControlFlowGraph nested = runOnSSA(method(PROGRAM, "nested"), new LoopInvariantCodeMotion()::run,
+            "loop-invariant code motion");
+        assertEquals(0, countInLoops(nested, Opcode.MUL));
+    }
+
+    @Test
+    public void testFaultingCodeMovesBehindAGuard() {
+        LoopInvariantCodeMotion motion = new LoopInvariantCodeMotion();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "quotient"), motion::run, "loop-invariant code motion");
+        assertEquals(0, countInLoops(cfg, Opcode.DIV));
+        assertEquals(1, motion.getGuardedLoops());
+
+        ControlFlowGraph element = runOnSSA(method(PROGRAM, "element"), new LoopInvariantCodeMotion()::run,
+            "loop-invariant code motion");
+        assertEquals(0, countInLoops(element, Opcode.ALOAD));
+    }
+
+    @Test
+    public void testFaultingCodeStaysAfterEffects() {
+        LoopInvariantCodeMotion motion = new LoopInvariantCodeMotion();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "printsFirst"), motion::run, "loop-invariant code motion");
+        assertEquals(1, countInLoops(cfg, Opcode.DIV));
+        assertEquals(0, motion.getGuardedLoops());
+    }
+
+    @Test
+    public void testFieldReadsMoveOnlyWithoutStores() {
+        ControlFlowGraph read = runOnSSA(method(PROGRAM, "readField"), new LoopInvariantCodeMotion()::run,
+            "loop-invariant code motion");
+        assertEquals(0, countInLoops(read, Opcode.GETFIELD));
+
+        ControlFlowGraph written = runOnSSA(method(PROGRAM, "writeField"), new LoopInvariantCodeMotion()::run,
+            "loop-invariant code motion");
+        assertEquals(1, countInLoops(written, Opcode.GETFIELD));
+    }
+
+    @Test
+    public void testHoistedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("licm.hoisted") > 0);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(3 * 12 + 3, invoke(test, "product", 3, 4, 3));
+        assertEquals(9 * 12, invoke(test, "nested", 3, 4, 3));
+        assertEquals(3 * 3 + 3, invoke(test, "quotient", 7, 2, 3));
+        assertEquals(9, invoke(test, "printsFirst", 7, 2, 3));
+        assertEquals(15, invoke(test, "element", new int[] {1, 5, 9}, 1, 3));
+        assertEquals(0, invoke(test, "readField", 4));
+        assertEquals(4, invoke(test, "writeField", 4));
+
+        // A loop that never runs must not fault on code hoisted out of it
+        assertEquals(0, invoke(test, "quotient", 7, 0, 0));
+        assertEquals(0, invoke(test, "element", null, 5, 0));
+        Exception thrown = assertThrows(Exception.class, () -> invoke(test, "quotient", 7, 0, 1));
+        assertTrue(thrown.getCause() instanceof ArithmeticException);
+        thrown = assertThrows(Exception.class, () -> invoke(test, "element", new int[0], 0, 1));
+        assertTrue(thrown.getCause() instanceof ArrayIndexOutOfBoundsException);
+    }
+}
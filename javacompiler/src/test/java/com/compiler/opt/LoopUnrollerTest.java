@@ -0,0 +1,103 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopUnrollerTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "void fill(int[] a) { int i; for (i = 0; i < 10; i = i + 1) { a[i] = i * 2; } } " +
+        "int sum(int[] a, int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { s = s + a[i]; } return s; } " +
+        "int down(int n) { int s; s = 0; int i; for (i = 100; i >= n; i = i - 3) { s = s * 3 + i; } return s; } " +
+        "int edge(int n) { int c; c = 0; int i; for (i = -2147483647; i < n; i = i + 1) { c = c + 1; } return c; } " +
+        "int hundred() { int s; s = 0; int i; for (i = 0; i < 100; i = i + 1) { s = s + i; } return s; } " +
+        "int early(int n) { int i; for (i = 0; i < 8; i = i + 1) { if (i == n) { return i * 10; } } return -1; } }";
+
+    @Test
+    public void testConstantTripCountUnrollsFully() {
+        LoopUnroller unroller = new LoopUnroller();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "fill"), unroller::run, "loop unrolling");
+        assertEquals(1, unroller.getFullyUnrolled());
+        assertEquals(0, loops(cfg));
+        assertEquals(10, count(cfg, Opcode.ASTORE));
+
+        // The return leaves the loop from inside the body, so the loop stays
+        LoopUnroller early = new LoopUnroller();
+        assertEquals(1, loops(runOnSSA(method(PROGRAM, "early"), early::run, "loop unrolling")));
+        assertEquals(0, early.getFullyUnrolled());
+    }
+
+    @Test
+    public void testComputedTripCountUnrollsPartially() {
+        LoopUnroller unroller = new LoopUnroller();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "sum"), unroller::run, "loop unrolling");
+        assertEquals(1, unroller.getPartiallyUnrolled());
+        // The unrolled loop and the remainder loop behind it
+        assertEquals(2, loops(cfg));
+        assertEquals(LoopUnroller.DEFAULT_FACTOR + 1, count(cfg, Opcode.ALOAD));
+        assertTrue(unroller.getAddedInstructions() > 0);
+
+        // Too many iterations to unroll fully
+        LoopUnroller counted = new LoopUnroller();
+        runOnSSA(method(PROGRAM, "hundred"), counted::run, "loop unrolling");
+        assertEquals(0, counted.getFullyUnrolled());
+        assertEquals(1, counted.getPartiallyUnrolled());
+    }
+
+    @Test
+    public void testBudgets() {
+        LoopUnroller small = new LoopUnroller(LoopUnroller.DEFAULT_MAX_TRIP_COUNT, LoopUnroller.DEFAULT_FACTOR, 8);
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "fill"), small::run, "loop unrolling");
+        assertEquals(0, small.getFullyUnrolled() + small.getPartiallyUnrolled());
+        assertEquals(1, loops(cfg));
+
+        LoopUnroller twice = new LoopUnroller(4, 2, LoopUnroller.DEFAULT_MAX_SIZE);
+        ControlFlowGraph twiceCfg = runOnSSA(method(PROGRAM, "fill"), twice::run, "loop unrolling");
+        assertEquals(1, twice.getPartiallyUnrolled());
+        assertEquals(3, count(twiceCfg, Opcode.ASTORE));
+    }
+
+    @Test
+    public void testUnrolledCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("unroll.full") >= 1);
+        assertTrue(optimizer.getStatistics().get("unroll.partial") >= 3);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        int[] filled = new int[10];
+        invoke(test, "fill", (Object) filled);
+        assertArrayEquals(new int[] {0, 2, 4, 6, 8, 10, 12, 14, 16, 18}, filled);
+        int[] values = {3, 1, 4, 1, 5, 9, 2, 6, 5, 3};
+        for (int n = 0; n <= values.length; n++) {
+            int expected = 0;
+            for (int i = 0; i < n; i++) {
+                expected += values[i];
+            }
+            assertEquals(expected, invoke(test, "sum", values, n));
+        }
+        for (int n = 80; n <= 102; n++) {
+            int expected = 0;
+            for (int i = 100; i >= n; i -= 3) {
+                expected = expected * 3 + i;
+            }
+            assertEquals(expected, invoke(test, "down", n));
+        }
+        assertEquals(4950, invoke(test, "hundred"));
+        assertEquals(50, invoke(test, "early", 5));
+        assertEquals(-1, invoke(test, "early", 9));
+
+        // n - 3 wraps around to a large bound, so the iteration is left to the remainder loop
+        assertEquals(1, invoke(test, "edge", -2147483646));
+        assertEquals(0, invoke(test, "edge", -2147483647));
+        assertEquals(7, invoke(test, "edge", -2147483640));
+    }
+}
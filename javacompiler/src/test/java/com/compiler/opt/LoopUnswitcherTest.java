@@ -0,0 +1,91 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopUnswitcherTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int scale(int[] a, int n, boolean twice) { int s; s = 0; int i; " +
+        "for (i = 0; i < n; i = i + 1) { if (twice) { s = s + a[i] * 2; } else { s = s + a[i]; } } return s; } " +
+        "int positive(int[] a, int n, int k) { int s; s = 0; int i; " +
+        "for (i = 0; i < n; i = i + 1) { if (k > 0) { s = s + a[i]; } } return s * 100 + i; } " +
+        "int both(int[] a, int n, boolean p, boolean q) { int s; s = 0; int i; " +
+        "for (i = 0; i < n; i = i + 1) { if (p) { s = s + 1; } if (q) { s = s + a[i]; } } return s; } " +
+        "int varying(int[] a, int n) { int s; s = 0; int i; " +
+        "for (i = 0; i < n; i = i + 1) { if (a[i] > 0) { s = s + a[i]; } } return s; } }";
+
+    // The k > 0 test must be outside the loop first
+    private static final Consumer<ControlFlowGraph> HOISTING = cfg -> new LoopInvariantCodeMotion().run(cfg);
+
+    @Test
+    public void testInvariantConditionsSplitTheLoop() {
+        for (String name : new String[] {"scale", "positive"}) {
+            LoopUnswitcher unswitcher = new LoopUnswitcher();
+            ControlFlowGraph cfg = runOnSSA(method(PROGRAM, name), HOISTING.andThen(unswitcher::run),
+                "loop unswitching");
+            assertEquals(1, unswitcher.getUnswitchedLoops(), name);
+            assertEquals(2, loops(cfg), name);
+        }
+
+        // One version per combination of p and q
+        LoopUnswitcher unswitcher = new LoopUnswitcher();
+        assertEquals(4, loops(runOnSSA(method(PROGRAM, "both"), HOISTING.andThen(unswitcher::run),
+            "loop unswitching")));
+        assertEquals(3, unswitcher.getUnswitchedLoops());
+    }
+
+    @Test
+    public void testVaryingConditionStays() {
+        LoopUnswitcher unswitcher = new LoopUnswitcher();
+        assertEquals(1, loops(runOnSSA(method(PROGRAM, "varying"), HOISTING.andThen(unswitcher::run),
+            "loop unswitching")));
+        assertEquals(0, unswitcher.getUnswitchedLoops());
+    }
+
+    @Test
+    public void testBudgets() {
+        LoopUnswitcher small = new LoopUnswitcher(4, LoopUnswitcher.DEFAULT_MAX_GROWTH);
+        assertEquals(1, loops(runOnSSA(method(PROGRAM, "scale"), HOISTING.andThen(small::run), "loop unswitching")));
+
+        // Room for the first copy only
+        LoopUnswitcher once = new LoopUnswitcher(LoopUnswitcher.DEFAULT_MAX_LOOP_SIZE, 16);
+        assertEquals(2, loops(runOnSSA(method(PROGRAM, "both"), HOISTING.andThen(once::run), "loop unswitching")));
+        assertEquals(1, once.getUnswitchedLoops());
+    }
+
+    @Test
+    public void testUnswitchedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("unswitch.loops") >= 5);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        int[] values = {3, -1, 4, 1, -5, 9, 2};
+        for (int n = 0; n <= values.length; n++) {
+            int sum = 0;
+            int positives = 0;
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+                positives += values[i] > 0 ? values[i] : 0;
+            }
+            assertEquals(sum * 2, invoke(test, "scale", values, n, true));
+            assertEquals(sum, invoke(test, "scale", values, n, false));
+            assertEquals(sum * 100 + n, invoke(test, "positive", values, n, 1));
+            assertEquals(n, invoke(test, "positive", values, n, 0));
+            assertEquals(n + sum, invoke(test, "both", values, n, true, true));
+            assertEquals(n, invoke(test, "both", values, n, true, false));
+            assertEquals(sum, invoke(test, "both", values, n, false, true));
+            assertEquals(0, invoke(test, "both", values, n, false, false));
+            assertEquals(positives, invoke(test, "varying", values, n));
+        }
+    }
+}
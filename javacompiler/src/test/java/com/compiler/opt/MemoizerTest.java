@@ -0,0 +1,89 @@
+package com.compiler.opt;
+
+import com.compiler.ast.MethodDecl;
+import com.compiler.ast.Program;
+import com.compiler.backend.BytecodeGenerator;
+import com.compiler.semantic.PurityAnalyzer;
+import com.compiler.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoizerTest {
+
+    private static final String FIBONACCI =
+        "class Fibonacci { int fib(int n) { if (n <= 1) { return n; } return fib(n - 1) + fib(n - 2); } }";
+
+    @Test
+    public void testSelectsPureRecursiveMethods() {
+        String source = "class Test { int x; " +
+            "int fib(int n) { if (n <= 1) { return n; } return fib(n - 1) + fib(n - 2); } " +
+            "int square(int n) { return n * n; } " +
+            "int count(int n) { if (n <= 0) { return x; } return count(n - 1); } }";
+        Program program = parse(source);
+        new SemanticAnalyzer().analyze(program);
+        PurityAnalyzer purity = new PurityAnalyzer();
+        purity.analyze(program);
+
+        List<MethodDecl> memoized = new Memoizer().apply(program, purity);
+        assertEquals(1, memoized.size());
+        assertEquals("fib", memoized.get(0).getName());
+    }
+
+    @Test
+    public void testMemoizedFibonacciIsLinear() throws Exception {
+        Object fibonacci = compile(FIBONACCI, Memoizer.DEFAULT_CAPACITY);
+
+        // Exponential without the memo table; int overflow must match Java semantics
+        int expected = assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> (Integer) invoke(fibonacci, "fib", 80));
+        assertEquals(referenceFib(80), expected);
+        assertEquals(55, invoke(fibonacci, "fib", 10));
+    }
+
+    @Test
+    public void testEvictionKeepsResultsCorrect() throws Exception {
+        String source = "class Binomial { int choose(int n, int k) { " +
+            "if (k == 0) { return 1; } if (k == n) { return 1; } " +
+            "return choose(n - 1, k - 1) + choose(n - 1, k); } }";
+
+        Object binomial = compile(source, 8);
+        assertEquals(155117520, invoke(binomial, "choose", 30, 15));
+        assertEquals(184756, invoke(binomial, "choose", 20, 10));
+    }
+
+    @Test
+    public void testReassignedParameterDoesNotCorruptKey() throws Exception {
+        String source = "class Sum { int sum(int n) { int r; r = 0; if (n > 0) { r = n + sum(n - 1); } n = 0; return r; } }";
+
+        Object sum = compile(source, 64);
+        assertEquals(5050, invoke(sum, "sum", 100));
+        assertEquals(55, invoke(sum, "sum", 10));
+    }
+
+    private Object compile(String source, int capacity) throws Exception {
+        Program program = parse(source);
+        new SemanticAnalyzer().analyze(program);
+        PurityAnalyzer purity = new PurityAnalyzer();
+        purity.analyze(program);
+        assertFalse(new Memoizer(capacity).apply(program, purity).isEmpty());
+
+        String className = program.getClasses().get(0).getName();
+        return newInstance(new BytecodeGenerator().generate(program), className);
+    }
+
+    private int referenceFib(int n) {
+        int a = 0;
+        int b = 1;
+        for (int i = 0; i < n; i++) {
+            int next = a + b;
+            a = b;
+            b = next;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,83 @@
+package com.compiler.opt;
+
+import com.compiler.ast.*;
+import com.compiler.backend.BytecodeGenerator;
+import org.junit.jupiter.api.Test;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartialEvaluatorTest {
+
+    private static final String FIB = "int fib(int n) { if (n <= 1) { return n; } return fib(n - 1) + fib(n - 2); } ";
+
+    @Test
+    public void testFoldsPureCallWithConstantArguments() throws Exception {
+        Program program = analyze("class Fibonacci { " + FIB + "int main() { return fib(20); } }");
+
+        PartialEvaluator evaluator = new PartialEvaluator();
+        evaluator.rewrite(program);
+
+        assertEquals(1, evaluator.getFoldedCalls());
+        Expression value = returnValue(program, "main");
+        assertTrue(value instanceof IntLiteral);
+        assertEquals(6765, ((IntLiteral) value).getValue());
+        assertEquals(new Type("int"), value.getExprType());
+
+        Object instance = newInstance(new BytecodeGenerator().generate(program), "Fibonacci");
+        assertEquals(6765, invoke(instance, "main"));
+    }
+
+    @Test
+    public void testStepBudgetFallsBackToCall() {
+        Program program = analyze("class Fibonacci { " + FIB + "int main() { return fib(25); } }");
+
+        PartialEvaluator evaluator = new PartialEvaluator(1000, 1000);
+        evaluator.rewrite(program);
+
+        assertEquals(0, evaluator.getFoldedCalls());
+        assertTrue(returnValue(program, "main") instanceof CallExpr);
+    }
+
+    @Test
+    public void testNonTerminatingCallIsLeftAlone() {
+        Program program = analyze("class Test { " +
+            "int spin(int n) { while (n > 0) { n = n + 1; } return n; } " +
+            "int forever(int n) { return forever(n + 1); } " +
+            "int main() { return spin(1) + forever(0); } }");
+
+        PartialEvaluator evaluator = new PartialEvaluator();
+        evaluator.rewrite(program);
+
+        assertEquals(0, evaluator.getFoldedCalls());
+    }
+
+    @Test
+    public void testKeepsRuntimeFailuresAndImpureCalls() {
+        Program program = analyze("class Test { int x; " +
+            "int div(int a, int b) { return a / b; } " +
+            "int getX(int a) { return x + a; } " +
+            "boolean positive(int a) { return a > 0; } " +
+            "int main() { int r; r = div(1, 0) + getX(1); return r; } " +
+            "boolean flag() { return positive(3); } }");
+
+        PartialEvaluator evaluator = new PartialEvaluator();
+        evaluator.rewrite(program);
+
+        assertEquals(1, evaluator.getFoldedCalls());
+        Expression value = returnValue(program, "flag");
+        assertTrue(value instanceof BoolLiteral);
+        assertTrue(((BoolLiteral) value).getValue());
+        assertEquals(new Type("boolean"), value.getExprType());
+    }
+
+    private Expression returnValue(Program program, String methodName) {
+        for (MethodDecl method : program.getClasses().get(0).getMethods()) {
+            if (method.getName().equals(methodName)) {
+                java.util.List<Statement> statements = method.getBody().getStatements();
+                return ((ReturnStmt) statements.get(statements.size() - 1)).getValue();
+            }
+        }
+        throw new AssertionError("No method " + methodName);
+    }
+}
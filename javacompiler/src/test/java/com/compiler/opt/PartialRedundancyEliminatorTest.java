@@ -0,0 +1,84 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartialRedundancyEliminatorTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int arm(int a, int b, boolean p) { int x; x = 0; if (p) { x = a * b; } return x + a * b; } " +
+        "int siblings(int a, int b) { int x; if (a > 0) { x = a * b; } else { x = a * b + 1; } return x + a * b; } " +
+        "int changed(int a, int b, boolean p) { int x; x = 0; if (p) { x = a * b; a = a + 1; } return x + a * b; } " +
+        "int loop(int a, int b, int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { " +
+        "if (i % 2 == 0) { s = s + a * b; } s = s + a * b; } return s; } " +
+        "int divide(int a, int b, boolean p) { int x; x = 0; if (p) { x = a / b; } return x + a / b; } }";
+
+    // Redundancy is found among the value numbers
+    private static final Consumer<ControlFlowGraph> NUMBERING = cfg -> new ValueNumbering().run(cfg);
+
+    @Test
+    public void testComputationAfterOneArmMovesIntoTheOther() {
+        PartialRedundancyEliminator eliminator = new PartialRedundancyEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "arm"), NUMBERING.andThen(eliminator::run),
+            "partial redundancy elimination");
+        assertEquals(1, eliminator.getInsertedExpressions());
+        assertEquals(1, eliminator.getDeletedExpressions());
+        assertEquals(1, eliminator.getInsertedPhis());
+        // Still two products in the code, but one on each path
+        assertEquals(2, count(cfg, Opcode.MUL));
+    }
+
+    @Test
+    public void testComputationInBothArmsIsNotRepeated() {
+        PartialRedundancyEliminator eliminator = new PartialRedundancyEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "siblings"), NUMBERING.andThen(eliminator::run),
+            "partial redundancy elimination");
+        assertEquals(0, eliminator.getInsertedExpressions());
+        assertEquals(1, eliminator.getDeletedExpressions());
+        assertEquals(2, count(cfg, Opcode.MUL));
+    }
+
+    @Test
+    public void testKilledAndFaultingComputationsStay() {
+        // The product after the join reads a new a on one path
+        PartialRedundancyEliminator changed = new PartialRedundancyEliminator();
+        runOnSSA(method(PROGRAM, "changed"), NUMBERING.andThen(changed::run), "partial redundancy elimination");
+        assertEquals(0, changed.getDeletedExpressions());
+
+        // Computing a / b on the other path could throw where the original does not
+        PartialRedundancyEliminator divide = new PartialRedundancyEliminator();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "divide"), NUMBERING.andThen(divide::run),
+            "partial redundancy elimination");
+        assertEquals(0, divide.getDeletedExpressions());
+        assertEquals(2, count(cfg, Opcode.DIV));
+    }
+
+    @Test
+    public void testEliminatedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("pre.deleted-expressions") >= 3);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        for (int a = -3; a <= 3; a++) {
+            for (int b = 1; b <= 4; b++) {
+                assertEquals(2 * a * b, invoke(test, "arm", a, b, true));
+                assertEquals(a * b, invoke(test, "arm", a, b, false));
+                assertEquals(a > 0 ? 2 * a * b : 2 * a * b + 1, invoke(test, "siblings", a, b));
+                assertEquals(a * b + (a + 1) * b, invoke(test, "changed", a, b, true));
+                assertEquals(a * b, invoke(test, "changed", a, b, false));
+                assertEquals(a * b * 8, invoke(test, "loop", a, b, 5));
+                assertEquals(2 * (a / b), invoke(test, "divide", a, b, true));
+            }
+        }
+    }
+}
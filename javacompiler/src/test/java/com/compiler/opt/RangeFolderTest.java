@@ -0,0 +1,73 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeFolderTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int nested(int x) { if (x < 5) { if (x < 10) { return 1; } return 2; } return 3; } " +
+        "int guards(int[] a, int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { " +
+        "if (i >= 0) { s = s + a[i]; } if (i == -1) { s = s - 1; } } return s; } " +
+        "int small(int x) { if (x >= 0) { if (x < 8) { return x % 8 + x / 16; } } return x % 8; } " +
+        "int unknown(int x, int y) { return x % y + x / y; } }";
+
+    @Test
+    public void testDecidedComparisonsAndBranches() {
+        RangeFolder folder = new RangeFolder();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "nested"), folder::run, "range folding");
+        assertEquals(1, count(cfg, Opcode.LT));
+        assertEquals(1, folder.getFoldedComparisons());
+        assertEquals(1, folder.getRemovedBranches());
+        assertEquals(2, count(cfg, Opcode.RETURN));
+
+        // i counts up from 0, so it is never negative
+        RangeFolder guards = new RangeFolder();
+        ControlFlowGraph guardsCfg = runOnSSA(method(PROGRAM, "guards"), guards::run, "range folding");
+        assertEquals(0, count(guardsCfg, Opcode.GE) + count(guardsCfg, Opcode.EQ));
+        assertEquals(2, guards.getFoldedComparisons());
+        assertEquals(2, guards.getRemovedBranches());
+    }
+
+    @Test
+    public void testDivisionsBelowTheDivisor() {
+        RangeFolder folder = new RangeFolder();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "small"), folder::run, "range folding");
+        // Only the remainder outside the guards is left, where x may be anything
+        assertEquals(1, count(cfg, Opcode.MOD));
+        assertEquals(0, count(cfg, Opcode.DIV));
+        assertEquals(2, folder.getSimplifiedDivisions());
+
+        RangeFolder unknown = new RangeFolder();
+        ControlFlowGraph unknownCfg = runOnSSA(method(PROGRAM, "unknown"), unknown::run, "range folding");
+        assertEquals(1, count(unknownCfg, Opcode.MOD));
+        assertEquals(1, count(unknownCfg, Opcode.DIV));
+        assertEquals(0, unknown.getSimplifiedDivisions());
+    }
+
+    @Test
+    public void testFoldedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("range.folded-comparisons") >= 3);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(1, invoke(test, "nested", 4));
+        assertEquals(1, invoke(test, "nested", Integer.MIN_VALUE));
+        assertEquals(3, invoke(test, "nested", 5));
+        assertEquals(1 + 2 + 3, invoke(test, "guards", new int[] {1, 2, 3, 4}, 3));
+        assertEquals(0, invoke(test, "guards", new int[] {1}, -5));
+        assertEquals(7, invoke(test, "small", 7));
+        assertEquals(0, invoke(test, "small", 8));
+        assertEquals(-7, invoke(test, "small", -15));
+        assertEquals(-7 % 3 + -7 / 3, invoke(test, "unknown", -7, 3));
+    }
+}
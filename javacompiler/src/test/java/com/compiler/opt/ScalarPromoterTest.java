@@ -0,0 +1,104 @@
+package com.compiler.opt;
+
+import com.compiler.ir.BasicBlock;
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.DominatorTree;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Insn;
+import com.compiler.ir.LoopForest;
+import com.compiler.ir.LoopForest.Loop;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScalarPromoterTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int total; int count; " +
+        "int accumulate(int n) { int i; for (i = 0; i < n; i = i + 1) { total = total + i; count = count + 1; } " +
+        "return total * 100 + count; } " +
+        "int branchy(int n) { int i; for (i = 0; i < n; i = i + 1) { if (i % 2 == 0) { total = total + i; } } return total; } " +
+        "int early(int n) { int i; for (i = 0; i < n; i = i + 1) { total = total + 1; if (total > 10) { return i; } } return 0; } " +
+        "int local() { int[] a; a = new int[8]; int i; for (i = 0; i < 8; i = i + 1) { total = total + a[i] + i; } return total; } " +
+        "int param(int[] a) { int i; for (i = 0; i < 4; i = i + 1) { total = total + a[i]; } return total; } " +
+        "int one() { return 1; } " +
+        "int calls(int n) { int i; for (i = 0; i < n; i = i + 1) { total = total + one(); } return total; } " +
+        "int aliased(Test t, int n) { int i; for (i = 0; i < n; i = i + 1) { total = total + 1; t.total = t.total + 2; } " +
+        "return total; } " +
+        "int reset() { total = 0; count = 0; return 0; } }";
+
+    // Field accesses left inside loops
+    private static int accessesInLoops(ControlFlowGraph cfg) {
+        int count = 0;
+        for (Loop loop : new LoopForest(cfg, DominatorTree.dominators(cfg)).getLoops()) {
+            for (BasicBlock block : loop.getBlocks(cfg)) {
+                for (Insn insn : block.getInsns()) {
+                    if (insn.getOpcode() == Opcode.GETFIELD || insn.getOpcode() == Opcode.PUTFIELD) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testAccumulatorFieldsLiveInVariables() {
+        ScalarPromoter promoter = new ScalarPromoter();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "accumulate"), CONSTANTS.andThen(promoter::run),
+            "scalar promotion");
+        assertEquals(2, promoter.getPromotedFields());
+        assertEquals(4, promoter.getRemovedAccesses());
+        assertEquals(0, accessesInLoops(cfg));
+    }
+
+    @Test
+    public void testPathsAndExitsAreFollowed() {
+        for (String name : new String[] {"branchy", "early", "local"}) {
+            ScalarPromoter promoter = new ScalarPromoter();
+            ControlFlowGraph cfg = runOnSSA(method(PROGRAM, name), CONSTANTS.andThen(promoter::run),
+                "scalar promotion");
+            assertEquals(1, promoter.getPromotedFields(), name);
+            assertEquals(0, accessesInLoops(cfg), name);
+        }
+    }
+
+    @Test
+    public void testFieldsOthersCouldSeeStay() {
+        // An array access that may fail, a call and a store through another reference
+        for (String name : new String[] {"param", "calls", "aliased"}) {
+            ScalarPromoter promoter = new ScalarPromoter();
+            runOnSSA(method(PROGRAM, name), CONSTANTS.andThen(promoter::run), "scalar promotion");
+            assertEquals(0, promoter.getPromotedFields(), name);
+        }
+    }
+
+    @Test
+    public void testPromotedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("promotion.fields") >= 4);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(10 * 100 + 5, invoke(test, "accumulate", 5));
+        invoke(test, "reset");
+        assertEquals(0 + 2 + 4, invoke(test, "branchy", 6));
+        invoke(test, "reset");
+        assertEquals(10, invoke(test, "early", 20));
+        assertEquals(0, invoke(test, "early", 20));
+        invoke(test, "reset");
+        assertEquals(0, invoke(test, "early", 0));
+        assertEquals(28, invoke(test, "local"));
+        assertEquals(28 + 10, invoke(test, "param", new int[] {1, 2, 3, 4}));
+        invoke(test, "reset");
+        assertEquals(3, invoke(test, "calls", 3));
+        invoke(test, "reset");
+        assertEquals(3 * 3, invoke(test, "aliased", test, 3));
+        assertThrows(Exception.class, () -> invoke(test, "param", new int[2]));
+    }
+}
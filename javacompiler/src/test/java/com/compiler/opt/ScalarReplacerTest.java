@@ -0,0 +1,84 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScalarReplacerTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "Point last; " +
+        "int point(int a, int b) { Point p; p = new Point(); p.x = a; p.y = b; return p.x * p.y; } " +
+        "int branches(int a, boolean c) { Point p; p = new Point(); if (c) { p.x = a; } return p.x + 1; } " +
+        "int loop(int n) { Point p; p = new Point(); int i; for (i = 0; i < n; i = i + 1) { p.x = p.x + i; p.y = p.y + 1; } " +
+        "return p.x * 100 + p.y; } " +
+        "int perIteration(int n) { int s; s = 0; Point p; int i; for (i = 0; i < n; i = i + 1) { p = new Point(); " +
+        "p.x = p.x + i; s = s + p.x; } return s; } " +
+        "Point make(int a) { Point p; p = new Point(); p.x = a; return p; } " +
+        "int made(int a) { Point q; q = make(a); return q.x + q.y; } " +
+        "int use(Point p) { return p.x; } " +
+        "int passed(int a) { Point p; p = new Point(); p.x = a; return use(p); } " +
+        "Point returned(int a) { Point p; p = new Point(); p.x = a; return p; } " +
+        "int stored(int a) { Point p; p = new Point(); p.x = a; last = p; return p.x; } } " +
+        "class Point { int x; int y; }";
+
+    private static ScalarReplacer replacer() {
+        return new ScalarReplacer(new HashSet<>(Arrays.asList("Test", "Point")));
+    }
+
+    @Test
+    public void testLocalObjectsBecomeVariables() {
+        for (String name : new String[] {"point", "branches", "loop", "perIteration"}) {
+            ScalarReplacer replacer = replacer();
+            ControlFlowGraph cfg = runOnSSA(method(PROGRAM, name), replacer::run, "scalar replacement");
+            assertEquals(1, replacer.getReplacedObjects(), name);
+            assertEquals(0, count(cfg, Opcode.NEW), name);
+            assertEquals(0, count(cfg, Opcode.GETFIELD) + count(cfg, Opcode.PUTFIELD), name);
+        }
+    }
+
+    @Test
+    public void testEscapingObjectsStay() {
+        for (String name : new String[] {"passed", "returned", "stored"}) {
+            ScalarReplacer replacer = replacer();
+            ControlFlowGraph cfg = runOnSSA(method(PROGRAM, name), replacer::run, "scalar replacement");
+            assertEquals(0, replacer.getReplacedObjects(), name);
+            assertEquals(1, count(cfg, Opcode.NEW), name);
+        }
+
+        // Classes outside the program may do anything when constructed
+        ScalarReplacer unknown = new ScalarReplacer(Collections.singleton("Test"));
+        runOnSSA(method(PROGRAM, "point"), unknown::run, "scalar replacement");
+        assertEquals(0, unknown.getReplacedObjects());
+    }
+
+    @Test
+    public void testReplacedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        // Including the object make returns, once it is inlined into made
+        assertTrue(optimizer.getStatistics().get("escape.replaced-objects") >= 5);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(12, invoke(test, "point", 3, 4));
+        assertEquals(6, invoke(test, "branches", 5, true));
+        assertEquals(1, invoke(test, "branches", 5, false));
+        assertEquals(10 * 100 + 5, invoke(test, "loop", 5));
+        assertEquals(0, invoke(test, "loop", 0));
+        assertEquals(10, invoke(test, "perIteration", 5));
+        assertEquals(7, invoke(test, "made", 7));
+        assertEquals(8, invoke(test, "passed", 8));
+        assertNotNull(invoke(test, "returned", 9));
+        assertEquals(2, invoke(test, "stored", 2));
+    }
+}
@@ -0,0 +1,87 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StrengthReducerTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int affine(int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { s = s + (i * 12 + 5); } return s; } " +
+        "int scaled(int n, int k) { int s; s = 0; int i; for (i = 2; i < n; i = i + 3) { s = s + i * k; } return s; } " +
+        "int element(int[] a, int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { s = s + a[i * 2 + 1]; } return s; } " +
+        "int halves(int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { s = s + i / 4 + i % 8; } return s; } " +
+        "int signed(int x) { return x / 4 + x % 8 + x * 8; } " +
+        "int checked(int x) { if (x >= 0) { return x / 4 + x % 8; } return 0; } }";
+
+    @Test
+    public void testMultipliesBecomeAdditions() {
+        StrengthReducer reducer = new StrengthReducer();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "affine"), reducer::run, "strength reduction");
+        assertEquals(0, count(cfg, Opcode.MUL));
+        assertEquals(1, reducer.getReducedInductions());
+        assertEquals(2, reducer.getDeletedInstructions());
+
+        // An invariant factor is multiplied by the start and the step once, in the preheader,
+        // where k * 2 then becomes a shift
+        StrengthReducer scaled = new StrengthReducer();
+        ControlFlowGraph scaledCfg = runOnSSA(method(PROGRAM, "scaled"), scaled::run, "strength reduction");
+        assertEquals(1, count(scaledCfg, Opcode.MUL));
+        assertEquals(1, count(scaledCfg, Opcode.SHL));
+        assertEquals(1, scaled.getReducedInductions());
+    }
+
+    @Test
+    public void testPowersOfTwo() {
+        StrengthReducer reducer = new StrengthReducer();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "halves"), reducer::run, "strength reduction");
+        assertEquals(1, count(cfg, Opcode.SHR));
+        assertEquals(1, count(cfg, Opcode.AND));
+        assertEquals(0, count(cfg, Opcode.DIV) + count(cfg, Opcode.MOD));
+
+        // x may be negative, where -7 / 4 == -1 but -7 >> 2 == -2
+        StrengthReducer signed = new StrengthReducer();
+        ControlFlowGraph signedCfg = runOnSSA(method(PROGRAM, "signed"), signed::run, "strength reduction");
+        assertEquals(1, count(signedCfg, Opcode.DIV));
+        assertEquals(1, count(signedCfg, Opcode.MOD));
+        assertEquals(1, count(signedCfg, Opcode.SHL));
+        assertEquals(0, signed.getMasks());
+
+        // Below the test x is known not to be negative
+        StrengthReducer checked = new StrengthReducer();
+        ControlFlowGraph checkedCfg = runOnSSA(method(PROGRAM, "checked"), checked::run, "strength reduction");
+        assertEquals(0, count(checkedCfg, Opcode.DIV) + count(checkedCfg, Opcode.MOD));
+        assertEquals(1, checked.getShifts());
+        assertEquals(1, checked.getMasks());
+    }
+
+    @Test
+    public void testReducedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("sr.reduced-inductions") >= 3);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(12 * 45 + 5 * 10, invoke(test, "affine", 10));
+        assertEquals(0, invoke(test, "affine", 0));
+        assertEquals((2 + 5 + 8) * 7, invoke(test, "scaled", 10, 7));
+        assertEquals(2 + 4 + 6, invoke(test, "element", new int[] {1, 2, 3, 4, 5, 6, 7}, 3));
+        int expected = 0;
+        for (int i = 0; i < 20; i++) {
+            expected += i / 4 + i % 8;
+        }
+        assertEquals(expected, invoke(test, "halves", 20));
+        assertEquals(-7 / 4 + -7 % 8 + -7 * 8, invoke(test, "signed", -7));
+        assertEquals(Integer.MAX_VALUE / 4 + Integer.MAX_VALUE % 8 + Integer.MAX_VALUE * 8,
+            invoke(test, "signed", Integer.MAX_VALUE));
+        assertEquals(13 / 4 + 13 % 8, invoke(test, "checked", 13));
+        assertEquals(0, invoke(test, "checked", -13));
+    }
+}
@@ -0,0 +1,93 @@
+package com.compiler.opt;
+
+import com.compiler.ir.IRClass;
+import com.compiler.ir.IRMethod;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TailCallEliminatorTest {
+
+    private static final String PROGRAM = "class Test { int calls; " +
+        "int sum(int n, int acc) { if (n == 0) { return acc; } return sum(n - 1, acc + n); } " +
+        "int fact(int n) { if (n < 2) { return 1; } return n * fact(n - 1); } " +
+        "int fib(int n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } " +
+        "int swap(int a, int b, int n) { if (n == 0) { return a * 10 + b; } return swap(b, a, n - 1); } " +
+        "void count(int n) { if (n > 0) { calls = calls + 1; count(n - 1); } } " +
+        "int mixed(int n) { if (n < 1) { return 1; } if (n % 2 == 0) { return n + mixed(n - 1); } return n * mixed(n - 1); } " +
+        "int later(int n) { if (n == 0) { return 0; } return later(n - 1) - 1; } " +
+        "int other(Test t, int n) { if (n == 0) { return 0; } return t.other(t, n - 1); } }";
+
+    private static TailCallEliminator eliminate(IRMethod method) {
+        TailCallEliminator eliminator = new TailCallEliminator();
+        eliminator.run(method);
+        return eliminator;
+    }
+
+    @Test
+    public void testTailCallsBecomeJumps() {
+        for (String name : new String[] {"sum", "swap", "count"}) {
+            IRMethod method = method(PROGRAM, name);
+            TailCallEliminator eliminator = eliminate(method);
+            assertEquals(1, eliminator.getEliminatedCalls(), name);
+            assertEquals(0, eliminator.getAccumulators(), name);
+            assertEquals(0, calls(method), name);
+        }
+    }
+
+    @Test
+    public void testAccumulators() {
+        IRMethod fact = method(PROGRAM, "fact");
+        assertEquals(1, eliminate(fact).getAccumulators());
+        assertEquals(0, calls(fact));
+
+        // fib(n - 1) is folded into acc, leaving one call per iteration
+        IRMethod fib = method(PROGRAM, "fib");
+        assertEquals(1, eliminate(fib).getEliminatedCalls());
+        assertEquals(1, calls(fib));
+
+        // Only one operator is accumulated
+        IRMethod mixed = method(PROGRAM, "mixed");
+        assertEquals(1, eliminate(mixed).getEliminatedCalls());
+        assertEquals(1, calls(mixed));
+    }
+
+    @Test
+    public void testCallsOutOfTailPositionStay() {
+        // Subtraction does not reassociate, and another receiver needs its own frame
+        for (String name : new String[] {"later", "other"}) {
+            IRMethod method = method(PROGRAM, name);
+            assertEquals(0, eliminate(method).getEliminatedCalls(), name);
+            assertEquals(1, calls(method), name);
+        }
+    }
+
+    @Test
+    public void testEliminatedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("tre.eliminated-calls") >= 6);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(3628800, invoke(test, "fact", 10));
+        assertEquals(1, invoke(test, "fact", 0));
+        assertEquals(55, invoke(test, "fib", 10));
+        assertEquals(12, invoke(test, "swap", 1, 2, 4));
+        assertEquals(21, invoke(test, "swap", 1, 2, 5));
+        assertEquals(-5, invoke(test, "later", 5));
+        int expected = 1;
+        for (int n = 1; n <= 7; n++) {
+            expected = n % 2 == 0 ? n + expected : n * expected;
+        }
+        assertEquals(expected, invoke(test, "mixed", 7));
+
+        // Far deeper than the default thread stack allows for real recursion
+        assertEquals((int) (1000000L * 1000001 / 2), invoke(test, "sum", 1000000, 0));
+        invoke(test, "count", 1000000);
+        assertEquals(1000000, test.getClass().getField("calls").get(test));
+    }
+}
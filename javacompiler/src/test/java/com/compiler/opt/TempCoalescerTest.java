@@ -0,0 +1,68 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.IRMethod;
+import com.compiler.ir.SSABuilder;
+import com.compiler.ir.SSADestructor;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TempCoalescerTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int phases(int n) { int s; s = 0; int i; for (i = 0; i < n; i = i + 1) { s = s + i; } " +
+        "int t; t = 1; int j; for (j = 0; j < n; j = j + 1) { t = t * 2; } return s + t; } " +
+        "int overlapping(int a, int b) { int x; x = a * b; int y; y = a + b; return x * y + x - y; } " +
+        "boolean types(int n) { int k; k = n * n; boolean p; p = k > 10; boolean q; q = p == true; return q; } }";
+
+    private TempCoalescer coalesce(IRMethod method) {
+        ControlFlowGraph cfg = ControlFlowGraph.build(method);
+        new SSABuilder(cfg).build();
+        new SSADestructor(cfg).destruct();
+        new DeadStoreEliminator().run(cfg);
+        TempCoalescer coalescer = new TempCoalescer();
+        coalescer.run(cfg);
+        return coalescer;
+    }
+
+    @Test
+    public void testVariablesLiveAtDifferentTimesShareASlot() {
+        // The second loop's counter and product reuse what the first loop no longer needs
+        TempCoalescer coalescer = coalesce(method(PROGRAM, "phases"));
+        assertTrue(coalescer.getCoalescedVariables() >= 1);
+        assertTrue(coalescer.getSlotsAfter() < coalescer.getSlotsBefore());
+        assertEquals(coalescer.getSlotsBefore() - coalescer.getCoalescedVariables(), coalescer.getSlotsAfter());
+    }
+
+    @Test
+    public void testLiveOrDifferentlyTypedVariablesStayApart() {
+        TempCoalescer overlapping = coalesce(method(PROGRAM, "overlapping"));
+        assertEquals(0, overlapping.getCoalescedVariables());
+        assertEquals(overlapping.getSlotsBefore(), overlapping.getSlotsAfter());
+
+        // k is dead once p is computed, as p is once q is, but only p and q share a type
+        TempCoalescer types = coalesce(method(PROGRAM, "types"));
+        assertEquals(1, types.getCoalescedVariables());
+    }
+
+    @Test
+    public void testCoalescedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("coalesce.slots-after")
+            < optimizer.getStatistics().get("coalesce.slots-before"));
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(10 + 32, invoke(test, "phases", 5));
+        assertEquals(1, invoke(test, "phases", 0));
+        assertEquals(12 * 7 + 12 - 7, invoke(test, "overlapping", 3, 4));
+        assertEquals(true, invoke(test, "types", 4));
+        assertEquals(false, invoke(test, "types", 3));
+    }
+}
@@ -0,0 +1,90 @@
+package com.compiler.opt;
+
+import com.compiler.ir.ControlFlowGraph;
+import com.compiler.ir.IRClass;
+import com.compiler.ir.Opcode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.compiler.CompilerTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueNumberingTest {
+
+    private static final String PROGRAM = "class Test { " +
+        "int n; " +
+        "int repeated(int a, int b) { int x; x = a * b + 1; int y; y = b * a + 1; return x + y; } " +
+        "int flipped(int a, int b) { boolean p; p = a < b; boolean q; q = b > a; if (p == q) { return 1; } return 0; } " +
+        "int dominated(int a, int b) { int x; x = a / b; if (a > 0) { return a / b; } return x; } " +
+        "int siblings(int a, int b) { int x; if (a > 0) { x = a * b; } else { x = a * b + 1; } return x + a * b; } " +
+        "int copies(int a, int b) { int c; c = a; return c + b - (a + b); } " +
+        "int square(int a) { return a * a; } " +
+        "int pureCalls(int a) { return square(a) + square(a); } " +
+        "int bump() { n = n + 1; return n; } " +
+        "int impureCalls() { return bump() + bump(); } }";
+
+    @Test
+    public void testCommutedExpressionsShareANumber() {
+        ValueNumbering numbering = new ValueNumbering();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "repeated"), numbering::run, "value numbering");
+
+        assertEquals(1, count(cfg, Opcode.MUL));
+        assertEquals(2, numbering.getEliminatedExpressions());
+
+        ControlFlowGraph flipped = runOnSSA(method(PROGRAM, "flipped"), new ValueNumbering()::run, "value numbering");
+        assertEquals(1, count(flipped, Opcode.LT) + count(flipped, Opcode.GT));
+    }
+
+    @Test
+    public void testOnlyDominatingComputationsAreReused() {
+        ValueNumbering numbering = new ValueNumbering();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "dominated"), numbering::run, "value numbering");
+        assertEquals(1, count(cfg, Opcode.DIV));
+
+        // Neither branch dominates the join, so the product after it is computed again
+        ControlFlowGraph siblings = runOnSSA(method(PROGRAM, "siblings"), new ValueNumbering()::run, "value numbering");
+        assertEquals(3, count(siblings, Opcode.MUL));
+    }
+
+    @Test
+    public void testCopiesCarryTheirSourceNumber() {
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "copies"), new ValueNumbering()::run, "value numbering");
+        assertEquals(1, count(cfg, Opcode.ADD));
+    }
+
+    @Test
+    public void testOnlyPureCallsAreEliminated() {
+        ValueNumbering numbering = new ValueNumbering();
+        ControlFlowGraph cfg = runOnSSA(method(PROGRAM, "pureCalls"), numbering::run, "value numbering");
+        assertEquals(1, count(cfg, Opcode.CALL));
+        assertEquals(1, numbering.getEliminatedCalls());
+
+        ValueNumbering impure = new ValueNumbering();
+        ControlFlowGraph bumps = runOnSSA(method(PROGRAM, "impureCalls"), impure::run, "value numbering");
+        assertEquals(2, count(bumps, Opcode.CALL));
+        assertEquals(0, impure.getEliminatedCalls());
+    }
+
+    @Test
+    public void testNumberedCodeBehavesTheSame() throws Exception {
+        List<IRClass> classes = lower(analyze(PROGRAM));
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(classes);
+        assertTrue(optimizer.getStatistics().get("gvn.eliminated-expressions") > 0);
+
+        Object test = newInstance(compileIR(classes), "Test");
+        assertEquals(2 * (3 * 4 + 1), invoke(test, "repeated", 3, 4));
+        assertEquals(1, invoke(test, "flipped", 3, 4));
+        assertEquals(1, invoke(test, "flipped", 4, 3));
+        assertEquals(3, invoke(test, "dominated", 7, 2));
+        assertEquals(-3, invoke(test, "dominated", -7, 2));
+        assertEquals(24, invoke(test, "siblings", 3, 4));
+        assertEquals(-23, invoke(test, "siblings", -3, 4));
+        assertEquals(0, invoke(test, "copies", 3, 4));
+        assertEquals(50, invoke(test, "pureCalls", 5));
+        assertEquals(3, invoke(test, "impureCalls"));
+        Exception thrown = assertThrows(Exception.class, () -> invoke(test, "dominated", 1, 0));
+        assertTrue(thrown.getCause() instanceof ArithmeticException);
+    }
+}
@@ -92,6 +92,28 @@ public class ParserTest {
         assertTrue(exprStmt.getExpression() instanceof AssignExpr);
     }
 
+    @Test
+    public void testLocalArrayDeclaration() {
+        String source = "class Test { void test() { int[] a; a = new int[3]; for (int[] b = a; b != null; b = null) { } } }";
+        Program program = parse(source);
+
+        MethodDecl method = program.getClasses().get(0).getMethods().get(0);
+        BlockStmt body = method.getBody();
+
+        VarDeclStmt varDecl = (VarDeclStmt) body.getStatements().get(0);
+        assertEquals("int", varDecl.getType().getName());
+        assertTrue(varDecl.getType().isArray());
+
+        AssignExpr assign = (AssignExpr) ((ExprStmt) body.getStatements().get(1)).getExpression();
+        NewExpr newExpr = (NewExpr) assign.getValue();
+        assertTrue(newExpr.isArrayCreation());
+        assertEquals("int", newExpr.getType().getName());
+        assertTrue(newExpr.getArraySize() instanceof IntLiteral);
+
+        ForStmt forStmt = (ForStmt) body.getStatements().get(2);
+        assertTrue(((VarDeclStmt) forStmt.getInit()).getType().isArray());
+    }
+
     private Program parse(String source) {
         Lexer lexer = new Lexer(source);
         List<Token> tokens = lexer.tokenize();
@@ -0,0 +1,126 @@
+package com.compiler.semantic;
+
+import com.compiler.ast.Program;
+import com.compiler.lexer.Lexer;
+import com.compiler.lexer.Token;
+import com.compiler.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalAnalyzerTest {
+
+    private static final String BASE =
+        "class Test { int x; " +
+        "int helper(int a) { return a + 1; } " +
+        "int useHelper() { return helper(2); } " +
+        "int useField() { return x; } " +
+        "int standalone() { int y; y = 3; return y; } }";
+
+    @Test
+    public void testFirstRunChecksEverything() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        Set<String> checked = analyzer.analyze(parse(BASE));
+
+        assertEquals(5, checked.size());
+        assertTrue(analyzer.getDependencies("Test.useHelper()").contains("method:Test.helper"));
+        assertTrue(analyzer.getDependencies("Test.useField()").contains("field:Test.x"));
+    }
+
+    @Test
+    public void testUnchangedProgramChecksNothing() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        analyzer.analyze(parse(BASE));
+
+        assertTrue(analyzer.analyze(parse(BASE)).isEmpty());
+    }
+
+    @Test
+    public void testBodyEditChecksOnlyThatMethod() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        analyzer.analyze(parse(BASE));
+
+        Set<String> checked = analyzer.analyze(parse(BASE.replace("y = 3;", "y = 4;")));
+        assertEquals(set("Test.standalone()"), checked);
+    }
+
+    @Test
+    public void testRenameToCollidingStringHashIsNoticed() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        String aa = BASE.replace("int y; y = 3; return y;", "int Aa; Aa = 3; return Aa;");
+        analyzer.analyze(parse(aa));
+
+        // "Aa" and "BB" have the same String.hashCode
+        Set<String> checked = analyzer.analyze(parse(aa.replace("Aa", "BB")));
+        assertEquals(set("Test.standalone()"), checked);
+    }
+
+    @Test
+    public void testUnchangedClassesKeepTheirSignatures() {
+        String other = "class Other { int z; int get() { return z; } }";
+        SignatureTable before = SignatureTable.of(parse(BASE + other));
+        SignatureTable after = before.update(parse(BASE.replace("y = 3;", "y = 4;") + other.replace("int z;", "boolean z;")));
+
+        assertEquals(set("field:Other.z"), after.changedSince(before));
+        assertEquals("boolean", after.get("field:Other.z"));
+        assertEquals("int helper(int)", after.get("method:Test.helper"));
+        assertEquals("Test", after.get("class:Test"));
+    }
+
+    @Test
+    public void testSignatureChangeChecksDependents() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        analyzer.analyze(parse(BASE));
+
+        String edited = BASE.replace("int helper(int a) { return a + 1; }",
+            "boolean helper(int a) { return a > 1; }");
+        assertThrows(SemanticException.class, () -> analyzer.analyze(parse(edited)));
+
+        // The failing caller stays dirty until it is fixed
+        String fixed = edited.replace("int useHelper() { return helper(2); }",
+            "boolean useHelper() { return helper(2); }");
+        Set<String> checked = analyzer.analyze(parse(fixed));
+        assertTrue(checked.contains("Test.useHelper()"));
+        assertFalse(checked.contains("Test.useField()"));
+        assertFalse(checked.contains("Test.standalone()"));
+    }
+
+    @Test
+    public void testRemovedFieldChecksReaders() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        analyzer.analyze(parse(BASE));
+
+        String edited = BASE.replace("int x; ", "int z; ");
+        assertThrows(SemanticException.class, () -> analyzer.analyze(parse(edited)));
+    }
+
+    @Test
+    public void testUnchangedMethodsKeepAnnotations() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        analyzer.analyze(parse(BASE));
+
+        Program edited = parse(BASE.replace("y = 3;", "y = 4;"));
+        analyzer.analyze(edited);
+
+        // useField was not re-checked, so its node must be the analyzed one from the first run
+        com.compiler.ast.ReturnStmt ret = (com.compiler.ast.ReturnStmt)
+            edited.getClasses().get(0).getMethods().get(2).getBody().getStatements().get(0);
+        assertNotNull(ret.getValue().getExprType());
+    }
+
+    private Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private Program parse(String source) {
+        Lexer lexer = new Lexer(source);
+        List<Token> tokens = lexer.tokenize();
+        Parser parser = new Parser(tokens);
+        return parser.parse();
+    }
+}
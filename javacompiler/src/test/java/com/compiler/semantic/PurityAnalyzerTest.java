@@ -0,0 +1,91 @@
+package com.compiler.semantic;
+
+import com.compiler.ast.ClassDecl;
+import com.compiler.ast.MethodDecl;
+import com.compiler.ast.Program;
+import com.compiler.ast.Purity;
+import com.compiler.lexer.Lexer;
+import com.compiler.lexer.Token;
+import com.compiler.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PurityAnalyzerTest {
+
+    @Test
+    public void testRecursiveArithmeticIsPure() {
+        String source = "class Fibonacci { int fib(int n) { if (n <= 1) { return n; } return fib(n - 1) + fib(n - 2); } }";
+        Program program = analyze(source);
+
+        assertEquals(Purity.PURE, method(program, "fib").getPurity());
+    }
+
+    @Test
+    public void testFieldAndArrayReadsAreReadOnly() {
+        String source = "class Test { int x; " +
+            "int getX() { return x; } " +
+            "int first(int[] a) { return a[0]; } }";
+        Program program = analyze(source);
+
+        assertEquals(Purity.READ_ONLY, method(program, "getX").getPurity());
+        assertEquals(Purity.READ_ONLY, method(program, "first").getPurity());
+    }
+
+    @Test
+    public void testWritesAllocationAndPrintAreSideEffecting() {
+        String source = "class Test { int x; " +
+            "void setX() { x = 1; } " +
+            "void store(int[] a) { a[0] = 1; } " +
+            "void alloc() { int[] a; a = new int[3]; } " +
+            "void print() { System.out.println(\"hi\"); } " +
+            "int local() { int y; y = 2; return y; } }";
+        Program program = analyze(source);
+
+        assertEquals(Purity.SIDE_EFFECTING, method(program, "setX").getPurity());
+        assertEquals(Purity.SIDE_EFFECTING, method(program, "store").getPurity());
+        assertEquals(Purity.SIDE_EFFECTING, method(program, "alloc").getPurity());
+        assertEquals(Purity.SIDE_EFFECTING, method(program, "print").getPurity());
+        assertEquals(Purity.PURE, method(program, "local").getPurity());
+    }
+
+    @Test
+    public void testEffectsPropagateThroughCalls() {
+        String source = "class Test { int x; " +
+            "int a(int n) { if (n > 0) { return b(n - 1); } return 0; } " +
+            "int b(int n) { return a(n); } " +
+            "int c(int n) { return d() + n; } " +
+            "int d() { return x; } " +
+            "int e() { setX(); return 1; } " +
+            "void setX() { x = 2; } }";
+        Program program = analyze(source);
+
+        assertEquals(Purity.PURE, method(program, "a").getPurity());
+        assertEquals(Purity.PURE, method(program, "b").getPurity());
+        assertEquals(Purity.READ_ONLY, method(program, "c").getPurity());
+        assertEquals(Purity.SIDE_EFFECTING, method(program, "e").getPurity());
+    }
+
+    private MethodDecl method(Program program, String name) {
+        for (ClassDecl classDecl : program.getClasses()) {
+            for (MethodDecl method : classDecl.getMethods()) {
+                if (method.getName().equals(name)) {
+                    return method;
+                }
+            }
+        }
+        throw new AssertionError("No method " + name);
+    }
+
+    private Program analyze(String source) {
+        Lexer lexer = new Lexer(source);
+        List<Token> tokens = lexer.tokenize();
+        Parser parser = new Parser(tokens);
+        Program program = parser.parse();
+        new SemanticAnalyzer().analyze(program);
+        new PurityAnalyzer().analyze(program);
+        return program;
+    }
+}